@@ -0,0 +1,460 @@
+package com.qppd.smartfan;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.SeekBar;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.google.android.material.appbar.MaterialToolbar;
+import com.google.android.material.snackbar.Snackbar;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.qppd.smartfan.core.control.GroupCommandResult;
+import com.qppd.smartfan.core.control.GroupController;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.data.DeviceReading;
+import com.qppd.smartfan.data.DeviceSubscriptionManager;
+import com.qppd.smartfan.data.FirebaseDataSource;
+import com.qppd.smartfan.utils.Constants;
+import com.qppd.smartfan.utils.DeviceMetadataCache;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public class DevicesActivity extends AppCompatActivity {
+    // Tiles repaint at most once per second no matter how often devices report
+    private static final long TILE_REFRESH_INTERVAL_MS = 1000;
+    private static final int MENU_CONTROL_ALL = 1;
+    private static final int MENU_CONTROL_GROUP = 2;
+    private static final int MENU_NEW_GROUP = 3;
+
+    private CoordinatorLayout coordinatorLayout;
+    private RecyclerView recyclerViewDevices;
+    private TextView textViewNoDevices;
+    private DeviceTileAdapter adapter;
+    private final List<String> deviceIds = new ArrayList<>();
+    private final Set<DeviceTileAdapter.TileViewHolder> attachedTiles = new HashSet<>();
+
+    private DatabaseReference dbRef;
+    private String uid;
+    private boolean started;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_devices);
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            getSupportActionBar().setDisplayShowHomeEnabled(true);
+        }
+        toolbar.setNavigationOnClickListener(v -> onBackPressed());
+
+        coordinatorLayout = findViewById(R.id.coordinatorLayout);
+        textViewNoDevices = findViewById(R.id.textViewNoDevices);
+        recyclerViewDevices = findViewById(R.id.recyclerViewDevices);
+        recyclerViewDevices.setLayoutManager(new GridLayoutManager(this, 2));
+        recyclerViewDevices.setHasFixedSize(true);
+        adapter = new DeviceTileAdapter();
+        recyclerViewDevices.setAdapter(adapter);
+
+        dbRef = FirebaseDatabase.getInstance().getReference();
+        uid = FirebaseAuth.getInstance().getCurrentUser().getUid();
+
+        loadDevices();
+    }
+
+    private void loadDevices() {
+        // Render the cached device list first, then refresh it in the background
+        DeviceMetadataCache metadataCache = DeviceMetadataCache.getInstance(this);
+        showDevices(metadataCache.getKnownDeviceIds());
+        metadataCache.refresh(dbRef, uid, this::showDevices);
+    }
+
+    private void showDevices(List<String> refreshedIds) {
+        if (isFinishing()) return;
+        deviceIds.clear();
+        deviceIds.addAll(refreshedIds);
+        adapter.notifyDataSetChanged();
+        textViewNoDevices.setVisibility(deviceIds.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(0, MENU_CONTROL_ALL, Menu.NONE, getString(R.string.devices_control_all));
+        menu.add(0, MENU_CONTROL_GROUP, Menu.NONE, getString(R.string.devices_control_group));
+        menu.add(0, MENU_NEW_GROUP, Menu.NONE, getString(R.string.devices_new_group));
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int itemId = item.getItemId();
+        if (itemId == MENU_CONTROL_ALL) {
+            showGroupControlDialog(getString(R.string.devices_title), new ArrayList<>(deviceIds), null);
+            return true;
+        } else if (itemId == MENU_CONTROL_GROUP) {
+            showGroupPicker();
+            return true;
+        } else if (itemId == MENU_NEW_GROUP) {
+            showNewGroupDialog();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showGroupPicker() {
+        FirebaseDataSource.getInstance().fetchGroups(uid, new DataCallback<List<DeviceGroup>>() {
+            @Override
+            public void onSuccess(List<DeviceGroup> groups) {
+                if (isFinishing()) return;
+                if (groups.isEmpty()) {
+                    showSnackbar(getString(R.string.group_none), true);
+                    return;
+                }
+                String[] names = new String[groups.size()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = groups.get(i).name != null ? groups.get(i).name : groups.get(i).id;
+                }
+                new AlertDialog.Builder(DevicesActivity.this)
+                    .setTitle(getString(R.string.devices_control_group))
+                    .setItems(names, (dialog, which) -> showGroupControlDialog(names[which],
+                        groups.get(which).deviceIds, groups.get(which)))
+                    .show();
+            }
+
+            @Override
+            public void onError(Exception error) {
+                showSnackbar("Failed to load groups: " + error.getMessage(), false);
+            }
+        });
+    }
+
+    // group is null for the implicit group of all linked fans, which cannot be deleted
+    private void showGroupControlDialog(String title, List<String> members, @Nullable DeviceGroup group) {
+        int padding = Math.round(24 * getResources().getDisplayMetrics().density);
+        LinearLayout content = new LinearLayout(this);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.setPadding(padding, padding / 2, padding, 0);
+
+        TextView speedLabel = new TextView(this);
+        SeekBar speedBar = new SeekBar(this);
+        speedBar.setMax(100);
+        speedBar.setProgress(50);
+        speedLabel.setText(getString(R.string.group_speed, speedBar.getProgress()));
+        CheckBox autoMode = new CheckBox(this);
+        autoMode.setText(getString(R.string.group_auto_mode));
+        speedBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                speedLabel.setText(getString(R.string.group_speed, progress));
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        });
+        autoMode.setOnCheckedChangeListener((button, checked) -> speedBar.setEnabled(!checked));
+        content.addView(speedLabel);
+        content.addView(speedBar);
+        content.addView(autoMode);
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this)
+            .setTitle(title)
+            .setView(content)
+            .setPositiveButton(getString(R.string.group_apply), (dialog, which) -> applyToGroup(members,
+                autoMode.isChecked() ? ControlState.autoMode() : ControlState.manualSpeed(speedBar.getProgress())))
+            .setNegativeButton(getString(R.string.dialog_cancel), null);
+        if (group != null) {
+            builder.setNeutralButton(getString(R.string.group_delete), (dialog, which) ->
+                FirebaseDataSource.getInstance().deleteGroup(uid, group.id, null));
+        }
+        builder.show();
+    }
+
+    private void applyToGroup(List<String> members, ControlState changes) {
+        // One multi-path write per chunk of fans instead of a write per field per fan
+        new GroupController(FirebaseDataSource.getInstance()).apply(members, changes,
+            new DataCallback<GroupCommandResult>() {
+                @Override
+                public void onSuccess(GroupCommandResult result) {
+                    if (isFinishing()) return;
+                    if (result.isSuccess()) {
+                        showSnackbar(getString(R.string.group_updated, result.getDeviceCount()), true);
+                    } else {
+                        showSnackbar(getString(R.string.group_partially_updated, result.getSucceeded().size(),
+                            result.getDeviceCount(), getDeviceNames(result.getFailed())), false);
+                    }
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    showSnackbar("Failed to update fans: " + error.getMessage(), false);
+                }
+            });
+    }
+
+    private String getDeviceNames(Map<String, Exception> failed) {
+        DeviceMetadataCache metadataCache = DeviceMetadataCache.getInstance(this);
+        StringBuilder names = new StringBuilder();
+        for (String deviceId : failed.keySet()) {
+            String name = metadataCache.getName(deviceId);
+            if (names.length() > 0) names.append(", ");
+            names.append(name != null ? name : deviceId);
+        }
+        return names.toString();
+    }
+
+    private void showNewGroupDialog() {
+        EditText nameInput = new EditText(this);
+        nameInput.setHint(getString(R.string.group_name_hint));
+        new AlertDialog.Builder(this)
+            .setTitle(getString(R.string.devices_new_group))
+            .setView(nameInput)
+            .setPositiveButton(getString(R.string.dialog_confirm), (dialog, which) -> {
+                String name = nameInput.getText().toString().trim();
+                if (!name.isEmpty()) {
+                    showGroupMembersDialog(name);
+                }
+            })
+            .setNegativeButton(getString(R.string.dialog_cancel), null)
+            .show();
+    }
+
+    private void showGroupMembersDialog(String name) {
+        List<String> candidates = new ArrayList<>(deviceIds);
+        DeviceMetadataCache metadataCache = DeviceMetadataCache.getInstance(this);
+        String[] labels = new String[candidates.size()];
+        boolean[] checked = new boolean[candidates.size()];
+        for (int i = 0; i < labels.length; i++) {
+            String deviceName = metadataCache.getName(candidates.get(i));
+            labels[i] = deviceName != null ? deviceName : candidates.get(i);
+        }
+        new AlertDialog.Builder(this)
+            .setTitle(getString(R.string.group_members_title))
+            .setMultiChoiceItems(labels, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+            .setPositiveButton(getString(R.string.dialog_confirm), (dialog, which) -> {
+                List<String> members = new ArrayList<>();
+                for (int i = 0; i < checked.length; i++) {
+                    if (checked[i]) members.add(candidates.get(i));
+                }
+                if (members.isEmpty()) return;
+                FirebaseDataSource dataSource = FirebaseDataSource.getInstance();
+                dataSource.saveGroup(uid, new DeviceGroup(dataSource.newGroupId(uid), name, members),
+                    new DataCallback<Void>() {
+                        @Override
+                        public void onSuccess(Void value) {
+                            showSnackbar(getString(R.string.group_saved), true);
+                        }
+
+                        @Override
+                        public void onError(Exception error) {
+                            showSnackbar("Failed to save group: " + error.getMessage(), false);
+                        }
+                    });
+            })
+            .setNegativeButton(getString(R.string.dialog_cancel), null)
+            .show();
+    }
+
+    private void selectDevice(String deviceId) {
+        dbRef.child(Constants.FIREBASE_SMARTFAN_PATH).child(Constants.FIREBASE_USERS_PATH).child(uid)
+            .child(Constants.FIREBASE_DEVICE_ID_PATH).setValue(deviceId)
+            .addOnSuccessListener(aVoid -> finish())
+            .addOnFailureListener(e -> showSnackbar("Failed to switch device: " + e.getMessage(), false));
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        for (DeviceTileAdapter.TileViewHolder tile : attachedTiles) {
+            tile.resume();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        // Nothing is visible, so stop paying for live updates
+        for (DeviceTileAdapter.TileViewHolder tile : attachedTiles) {
+            tile.pause();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Detaching the adapter recycles every tile, which cancels its subscription
+        recyclerViewDevices.setAdapter(null);
+        attachedTiles.clear();
+    }
+
+    private void showSnackbar(String message, boolean isSuccess) {
+        Snackbar snackbar = Snackbar.make(coordinatorLayout, message, Snackbar.LENGTH_SHORT);
+        if (!isSuccess) {
+            snackbar.setBackgroundTint(getColor(R.color.accent_red));
+        }
+        snackbar.show();
+    }
+
+    // RecyclerView Adapter for device tiles. Tiles only hold a live subscription while on screen.
+    private class DeviceTileAdapter extends RecyclerView.Adapter<DeviceTileAdapter.TileViewHolder> {
+
+        @NonNull
+        @Override
+        public TileViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_device_tile, parent, false);
+            return new TileViewHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull TileViewHolder holder, int position) {
+            holder.bind(deviceIds.get(position));
+        }
+
+        @Override
+        public int getItemCount() {
+            return deviceIds.size();
+        }
+
+        @Override
+        public void onViewAttachedToWindow(@NonNull TileViewHolder holder) {
+            attachedTiles.add(holder);
+            if (started) {
+                holder.resume();
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(@NonNull TileViewHolder holder) {
+            attachedTiles.remove(holder);
+            holder.pause();
+        }
+
+        @Override
+        public void onViewRecycled(@NonNull TileViewHolder holder) {
+            holder.unbind();
+        }
+
+        class TileViewHolder extends RecyclerView.ViewHolder implements DeviceSubscriptionManager.Listener {
+            TextView textViewTileName, textViewTileStatus, textViewTileTemp, textViewTileSpeed, textViewTileWatt;
+            String deviceId;
+            DeviceSubscriptionManager.Subscription subscription;
+
+            TileViewHolder(@NonNull View itemView) {
+                super(itemView);
+                textViewTileName = itemView.findViewById(R.id.textViewTileName);
+                textViewTileStatus = itemView.findViewById(R.id.textViewTileStatus);
+                textViewTileTemp = itemView.findViewById(R.id.textViewTileTemp);
+                textViewTileSpeed = itemView.findViewById(R.id.textViewTileSpeed);
+                textViewTileWatt = itemView.findViewById(R.id.textViewTileWatt);
+                itemView.setOnClickListener(v -> {
+                    if (deviceId != null) {
+                        selectDevice(deviceId);
+                    }
+                });
+            }
+
+            void bind(String newDeviceId) {
+                String deviceName = DeviceMetadataCache.getInstance(DevicesActivity.this).getName(newDeviceId);
+                if (deviceName != null) {
+                    textViewTileName.setText(deviceName);
+                } else {
+                    textViewTileName.setText("Device " + newDeviceId.substring(0, Math.min(8, newDeviceId.length())));
+                }
+
+                if (newDeviceId.equals(deviceId)) return;
+
+                boolean wasLive = subscription != null && attachedTiles.contains(this) && started;
+                unbind();
+                deviceId = newDeviceId;
+                showReading(DeviceSubscriptionManager.getInstance().peek(newDeviceId));
+                if (wasLive) {
+                    resume();
+                }
+            }
+
+            void resume() {
+                if (deviceId == null) return;
+                if (subscription == null) {
+                    subscription = DeviceSubscriptionManager.getInstance()
+                        .subscribe(deviceId, TILE_REFRESH_INTERVAL_MS, this);
+                } else {
+                    subscription.resume();
+                }
+            }
+
+            void pause() {
+                if (subscription != null) {
+                    subscription.pause();
+                }
+            }
+
+            void unbind() {
+                if (subscription != null) {
+                    subscription.cancel();
+                    subscription = null;
+                }
+                deviceId = null;
+            }
+
+            @Override
+            public void onReading(String readingDeviceId, DeviceReading reading) {
+                showReading(reading);
+            }
+
+            @Override
+            public void onError(String readingDeviceId, DatabaseError error) {
+                showReading(DeviceReading.offline());
+            }
+
+            private void showReading(DeviceReading reading) {
+                if (reading == null || !reading.online) {
+                    textViewTileStatus.setText(getString(R.string.dashboard_device_offline));
+                    textViewTileStatus.setTextColor(getColor(R.color.status_offline));
+                    textViewTileTemp.setText("--°C");
+                    textViewTileSpeed.setText("Speed: -");
+                    textViewTileWatt.setText("-");
+                    return;
+                }
+
+                textViewTileStatus.setText(getString(R.string.dashboard_device_online));
+                textViewTileStatus.setTextColor(getColor(R.color.status_online));
+                textViewTileTemp.setText(reading.temperature != null
+                    ? String.format(Locale.getDefault(), "%.1f°C", reading.temperature) : "--°C");
+                textViewTileSpeed.setText(reading.fanSpeed != null
+                    ? String.format(Locale.getDefault(), "Speed: %d", reading.fanSpeed) : "Speed: -");
+                textViewTileWatt.setText(reading.watt != null
+                    ? String.format(Locale.getDefault(), "%.2fW", reading.watt) : "-");
+            }
+        }
+    }
+}
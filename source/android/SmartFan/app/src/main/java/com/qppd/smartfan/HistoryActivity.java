@@ -1,7 +1,10 @@
 package com.qppd.smartfan;
 
-import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -26,8 +29,8 @@ import com.github.mikephil.charting.components.YAxis;
 import com.github.mikephil.charting.data.*;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 import com.github.mikephil.charting.formatter.ValueFormatter;
-import com.github.mikephil.charting.interfaces.datasets.ILineDataSet;
-import com.github.mikephil.charting.interfaces.datasets.IBarDataSet;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
 import android.graphics.Color;
 import android.content.Intent;
 import android.net.Uri;
@@ -37,17 +40,70 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.efficiency.EfficiencyModel;
+import com.qppd.smartfan.core.efficiency.EfficiencyTrend;
+import com.qppd.smartfan.core.history.ChartCache;
+import com.qppd.smartfan.core.history.ChartData;
+import com.qppd.smartfan.core.history.CsvExporter;
+import com.qppd.smartfan.core.history.DetailCache;
+import com.qppd.smartfan.core.history.Downsampler;
+import com.qppd.smartfan.core.history.DutyCycle;
+import com.qppd.smartfan.core.history.HistoryFilter;
+import com.qppd.smartfan.core.history.HistorySeries;
+import com.qppd.smartfan.core.history.LevelOfDetail;
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogDigests;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.history.LogEntryComparators;
+import com.qppd.smartfan.core.history.LogTime;
+import com.qppd.smartfan.core.history.PartitionedLogFetch;
+import com.qppd.smartfan.core.history.SeriesSlide;
+import com.qppd.smartfan.core.history.TimeSeries;
+import com.qppd.smartfan.core.history.UsageHeatmap;
+import com.qppd.smartfan.core.recorder.FlightRecorder;
+import com.qppd.smartfan.core.tsdb.TimeSeriesStore;
+import com.qppd.smartfan.data.FirebaseDataSource;
+import com.qppd.smartfan.data.LiveRecorder;
+import com.qppd.smartfan.ui.HeatmapView;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.Locale;
 import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class HistoryActivity extends AppCompatActivity {
     private RecyclerView recyclerViewLogs;
     private LogAdapter adapter;
     private ArrayList<LogEntry> logsList = new ArrayList<>();
+    // Today's rows, listened to, and the earlier days by UTC day start; merged into logsList
+    private List<LogEntry> todayEntries = new ArrayList<>();
+    private List<String> todayBlocks = new ArrayList<>();
+    private final TreeMap<Long, List<LogEntry>> earlierDays = new TreeMap<>();
+    private static final int MAX_DAYS_IN_FLIGHT = 4;
+    private Registration dayFetch;
+    private int failedDays;
+    // Today's rows by key; the child events of one delivery are applied together
+    private final TreeMap<String, LogEntry> todayRows = new TreeMap<>();
+    private List<LogEntry> todayAppended = new ArrayList<>();
+    private boolean todayChanged;
+    private boolean todayRowsPosted;
+    // Listeners kept until the screen is destroyed
+    private Query todayLogsQuery;
+    private ChildEventListener todayLogsListener;
+    private Query todayBlocksQuery;
+    private ValueEventListener todayBlocksListener;
+    private DatabaseReference generalDataRef;
+    private ValueEventListener generalDataListener;
+    // Reads and writes the history cached on the phone
+    private final ExecutorService historyExecutor = Executors.newSingleThreadExecutor();
     private DatabaseReference dbRef;
     private String uid;
     private String currentDeviceId; // Add device ID field
@@ -59,43 +115,85 @@ public class HistoryActivity extends AppCompatActivity {
     private ChipGroup chipGroupFilter;
     private MaterialButton buttonExport;
     
-    // Time filter options (in milliseconds)
+    // Time filter options (in milliseconds); the recent one adds the recorded live readings
+    private static final long FILTER_RECENT = SmartFanApplication.RECORDER_HOURS * 60 * 60 * 1000L;
     private static final long FILTER_24H = 24 * 60 * 60 * 1000L;
     private static final long FILTER_7DAYS = 7 * 24 * 60 * 60 * 1000L;
     private static final long FILTER_30DAYS = 30 * 24 * 60 * 60 * 1000L;
     
     private long currentTimeFilter = FILTER_24H; // Default to 24 hours
+
+    // The recent filter redraws as live readings are recorded, at most this often
+    private static final long LIVE_REFRESH_MILLIS = 10000;
+    private final Handler liveHandler = new Handler(Looper.getMainLooper());
+    private final Runnable liveRefresh = this::refreshLive;
+    private boolean liveRefreshPending;
+    private long lastLiveRefresh;
+    private final LiveRecorder.Listener liveListener = this::onLiveRecorded;
+    
+    // Line charts are downsampled to this many points; more cannot be told apart on screen
+    private static final int MAX_CHART_POINTS = 500;
+
+    // Zoomed in, the temperature chart swaps its overview for the raw rows around the view
+    private static final int DETAIL_CACHE_ROWS = 20000;
+    private final DetailCache detailCache = new DetailCache(DETAIL_CACHE_ROWS);
+    private TimeSeries temperatureOverview;
+    private TimeSeries powerOverview;
+    private boolean overviewDownsampled;
+    private LevelOfDetail.Window pendingDetail;
+
+    // Series of the filters viewed so far, so switching back to one needs no recomputation
+    private static final int CHART_CACHE_POINTS = 300000;
+    private final ChartCache chartCache = new ChartCache(CHART_CACHE_POINTS);
+    // Charts are built on the history thread; one overtaken by a later request is not shown
+    private volatile int chartRequests;
+
+    // Data sets live as long as the charts; new rows move their points in place
+    private static final int TEMPERATURE_COLOR = Color.parseColor("#FF5722"); // Orange
+    private static final int TEMPERATURE_FILL_COLOR = Color.parseColor("#FFCCBC"); // Light orange
+    private static final int POWER_COLOR = Color.parseColor("#4CAF50"); // Green
+    private static final int FAN_SPEED_COLOR = Color.parseColor("#2196F3"); // Blue
+    private LineDataSet temperatureDataSet;
+    private LineDataSet powerDataSet;
+    private LineData lineData;
+    private BarDataSet fanSpeedDataSet;
+    private BarData barData;
+    private Description fanSpeedDescription;
+    // What the data sets hold, null while empty
+    private TimeSeries temperatureShown;
+    private TimeSeries powerShown;
+    // Chart x values are seconds from this time: as floats, epoch milliseconds only resolve
+    // about two minutes. Moved up once it is a week behind, so the offsets stay small
+    private static final long CHART_REBASE_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+    private long chartBaseMillis = System.currentTimeMillis();
+
+    // Hour-of-day by day averages of the loaded history; new rows are added, other changes rebuild it
+    private static final int HEATMAP_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private final ExecutorService heatmapExecutor = Executors.newFixedThreadPool(HEATMAP_THREADS);
+    private HeatmapView heatmapView;
+    private ChipGroup chipGroupHeatmap;
+    private UsageHeatmap.Quantity heatmapQuantity = UsageHeatmap.Quantity.TEMPERATURE;
+    private UsageHeatmap heatmap;
+    private long heatmapFromMillis;
+    private long heatmapToMillis;
+    private boolean heatmapBuilding;
+    // Rows changed while a rebuild was reading them
+    private boolean heatmapStale;
+
+    // Power draw against the fan's healthy curve, fitted to the oldest of the cached months
+    private static final long EFFICIENCY_DAYS = 180;
+    private static final int EFFICIENCY_BASELINE_SAMPLES = 2000; // About a day and a half running
+    private static final int EFFICIENCY_DRIFT_SAMPLES = 720;     // About half a day running
+    private static final double EFFICIENCY_DRIFT_THRESHOLD = 0.15;
+    private LineChart chartEfficiency;
+    private TextView textEfficiencyStatus;
+    private LineDataSet efficiencyDataSet;
+    private EfficiencyTrend efficiencyTrend;
     
     // Export functionality
     private ActivityResultLauncher<Intent> createFileLauncher;
     private String pendingCsvData;
 
-    // Data class to hold log entry information - Updated to match ESP8266 Firebase structure
-    public static class LogEntry {
-        public Long timestamp;        // Unix timestamp (int64 from ESP8266)
-        public String datetime;       // Human-readable datetime string from ESP8266 (YYYY-MM-DD HH:MM:SS)
-        public Double temperature;    // Temperature reading
-        public Long fanSpeed;         // Fan speed setting
-        public Double voltage;        // Voltage measurement
-        public Double current;        // Current measurement  
-        public Double watt;           // Power consumption in watts
-        public Double kwh;            // Energy consumption in kWh
-        
-        public LogEntry() {}
-        
-        public LogEntry(Long timestamp, String datetime, Double temperature, Long fanSpeed, 
-                       Double voltage, Double current, Double watt, Double kwh) {
-            this.timestamp = timestamp;
-            this.datetime = datetime;
-            this.temperature = temperature;
-            this.fanSpeed = fanSpeed;
-            this.voltage = voltage;
-            this.current = current;
-            this.watt = watt;
-            this.kwh = kwh;
-        }
-    }
-
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -131,6 +229,10 @@ public class HistoryActivity extends AppCompatActivity {
         // Initialize filter components
         chipGroupFilter = findViewById(R.id.chipGroupFilter);
         buttonExport = findViewById(R.id.buttonExport);
+        heatmapView = findViewById(R.id.heatmapUsage);
+        chartEfficiency = findViewById(R.id.chartEfficiency);
+        textEfficiencyStatus = findViewById(R.id.textEfficiencyStatus);
+        chipGroupHeatmap = findViewById(R.id.chipGroupHeatmap);
 
         dbRef = FirebaseDatabase.getInstance().getReference();
         uid = FirebaseAuth.getInstance().getCurrentUser().getUid();
@@ -141,6 +243,7 @@ public class HistoryActivity extends AppCompatActivity {
         // Setup charts
         setupTemperatureChart();
         setupFanSpeedChart();
+        setupEfficiencyChart();
         
         // Setup filter listeners
         setupFilterListeners();
@@ -171,8 +274,7 @@ public class HistoryActivity extends AppCompatActivity {
         xAxis.setValueFormatter(new ValueFormatter() {
             @Override
             public String getFormattedValue(float value) {
-                long timestamp = (long) value;
-                return new SimpleDateFormat("HH:mm", Locale.getDefault()).format(new Date(timestamp));
+                return LogTime.formatHourMinute(toMillis(value), TimeZone.getDefault());
             }
         });
         
@@ -186,6 +288,64 @@ public class HistoryActivity extends AppCompatActivity {
         
         // Legend
         chartTemperature.getLegend().setEnabled(true);
+
+        temperatureDataSet = new LineDataSet(new ArrayList<Entry>(), "Temperature (°C)");
+        temperatureDataSet.setColor(TEMPERATURE_COLOR);
+        temperatureDataSet.setCircleColor(TEMPERATURE_COLOR);
+        temperatureDataSet.setLineWidth(2f);
+        temperatureDataSet.setCircleRadius(3f);
+        temperatureDataSet.setDrawCircleHole(false);
+        temperatureDataSet.setValueTextSize(9f);
+        temperatureDataSet.setDrawFilled(true);
+        temperatureDataSet.setFillColor(TEMPERATURE_FILL_COLOR);
+
+        // Added to the chart while there is power data
+        powerDataSet = new LineDataSet(new ArrayList<Entry>(), "Power (W)");
+        powerDataSet.setColor(POWER_COLOR);
+        powerDataSet.setCircleColor(POWER_COLOR);
+        powerDataSet.setLineWidth(2f);
+        powerDataSet.setCircleRadius(3f);
+        powerDataSet.setDrawCircleHole(false);
+        powerDataSet.setValueTextSize(9f);
+        powerDataSet.setAxisDependency(YAxis.AxisDependency.RIGHT);
+
+        lineData = new LineData(temperatureDataSet);
+
+        // Only once a gesture ends, so pinching and dragging stay smooth
+        chartTemperature.setOnChartGestureListener(new OnChartGestureListener() {
+            @Override
+            public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+                requestDetail();
+            }
+
+            @Override
+            public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {
+            }
+
+            @Override
+            public void onChartLongPressed(MotionEvent me) {
+            }
+
+            @Override
+            public void onChartDoubleTapped(MotionEvent me) {
+            }
+
+            @Override
+            public void onChartSingleTapped(MotionEvent me) {
+            }
+
+            @Override
+            public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {
+            }
+
+            @Override
+            public void onChartScale(MotionEvent me, float scaleX, float scaleY) {
+            }
+
+            @Override
+            public void onChartTranslate(MotionEvent me, float dX, float dY) {
+            }
+        });
     }
     
     private void setupFanSpeedChart() {
@@ -196,24 +356,22 @@ public class HistoryActivity extends AppCompatActivity {
         chartFanSpeed.setDrawGridBackground(false);
         
         // Description
-        Description desc = new Description();
-        desc.setText("Fan speed over time (%)");
-        desc.setTextSize(12f);
-        chartFanSpeed.setDescription(desc);
+        fanSpeedDescription = new Description();
+        fanSpeedDescription.setText("Time at fan speed (%)");
+        fanSpeedDescription.setTextSize(12f);
+        chartFanSpeed.setDescription(fanSpeedDescription);
         
-        // X-axis
+        // X-axis: one bar per speed band
+        String[] bandLabels = new String[DutyCycle.BANDS];
+        for (int band = 0; band < DutyCycle.BANDS; band++) {
+            bandLabels[band] = DutyCycle.bandLabel(band);
+        }
         XAxis xAxis = chartFanSpeed.getXAxis();
         xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         xAxis.setDrawGridLines(true);
         xAxis.setGranularity(1f);
-        xAxis.setLabelCount(5);
-        xAxis.setValueFormatter(new ValueFormatter() {
-            @Override
-            public String getFormattedValue(float value) {
-                long timestamp = (long) value;
-                return new SimpleDateFormat("HH:mm", Locale.getDefault()).format(new Date(timestamp));
-            }
-        });
+        xAxis.setLabelCount(DutyCycle.BANDS);
+        xAxis.setValueFormatter(new IndexAxisValueFormatter(bandLabels));
         
         // Y-axis
         YAxis leftAxis = chartFanSpeed.getAxisLeft();
@@ -226,13 +384,62 @@ public class HistoryActivity extends AppCompatActivity {
         
         // Legend
         chartFanSpeed.getLegend().setEnabled(true);
+
+        ArrayList<BarEntry> bands = new ArrayList<>(DutyCycle.BANDS);
+        for (int band = 0; band < DutyCycle.BANDS; band++) {
+            bands.add(new BarEntry(band, 0f));
+        }
+        fanSpeedDataSet = new BarDataSet(bands, "Share of time (%)");
+        fanSpeedDataSet.setColor(FAN_SPEED_COLOR);
+        fanSpeedDataSet.setValueTextSize(9f);
+        barData = new BarData(fanSpeedDataSet);
+        barData.setBarWidth(0.9f);
     }
     
+    private void setupEfficiencyChart() {
+        chartEfficiency.setDragEnabled(true);
+        chartEfficiency.setScaleEnabled(true);
+        chartEfficiency.setPinchZoom(true);
+        chartEfficiency.setDrawGridBackground(false);
+
+        Description desc = new Description();
+        desc.setText("Daily draw against normal (%)");
+        desc.setTextSize(12f);
+        chartEfficiency.setDescription(desc);
+
+        // One point per day
+        SimpleDateFormat dayFormat = new SimpleDateFormat("MM-dd", Locale.getDefault());
+        XAxis xAxis = chartEfficiency.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setDrawGridLines(true);
+        xAxis.setLabelCount(5);
+        xAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getFormattedValue(float value) {
+                return dayFormat.format(new Date(toMillis(value)));
+            }
+        });
+
+        chartEfficiency.getAxisLeft().setDrawGridLines(true);
+        chartEfficiency.getAxisRight().setEnabled(false);
+        chartEfficiency.getLegend().setEnabled(true);
+
+        efficiencyDataSet = new LineDataSet(new ArrayList<Entry>(), "Draw (% of normal)");
+        efficiencyDataSet.setColor(POWER_COLOR);
+        efficiencyDataSet.setCircleColor(POWER_COLOR);
+        efficiencyDataSet.setLineWidth(2f);
+        efficiencyDataSet.setCircleRadius(3f);
+        efficiencyDataSet.setDrawCircleHole(false);
+        efficiencyDataSet.setValueTextSize(9f);
+    }
+
     private void setupFilterListeners() {
         chipGroupFilter.setOnCheckedStateChangeListener((group, checkedIds) -> {
             if (!checkedIds.isEmpty()) {
                 int checkedId = checkedIds.get(0);
-                if (checkedId == R.id.chip24h) {
+                if (checkedId == R.id.chipRecent) {
+                    currentTimeFilter = FILTER_RECENT;
+                } else if (checkedId == R.id.chip24h) {
                     currentTimeFilter = FILTER_24H;
                 } else if (checkedId == R.id.chip7days) {
                     currentTimeFilter = FILTER_7DAYS;
@@ -246,6 +453,20 @@ public class HistoryActivity extends AppCompatActivity {
         });
         
         buttonExport.setOnClickListener(v -> exportData());
+
+        chipGroupHeatmap.setOnCheckedStateChangeListener((group, checkedIds) -> {
+            if (!checkedIds.isEmpty()) {
+                int checkedId = checkedIds.get(0);
+                if (checkedId == R.id.chipHeatmapTemperature) {
+                    heatmapQuantity = UsageHeatmap.Quantity.TEMPERATURE;
+                } else if (checkedId == R.id.chipHeatmapPower) {
+                    heatmapQuantity = UsageHeatmap.Quantity.POWER;
+                } else if (checkedId == R.id.chipHeatmapFanOn) {
+                    heatmapQuantity = UsageHeatmap.Quantity.FAN_ON;
+                }
+                heatmapView.setHeatmap(heatmap, heatmapQuantity);
+            }
+        });
     }
     
     private void setupExportLauncher() {
@@ -276,128 +497,83 @@ public class HistoryActivity extends AppCompatActivity {
         }
     }
     
-    private List<LogEntry> getFilteredData() {
-        List<LogEntry> filteredList = new ArrayList<>();
-        
-        try {
-            if (logsList == null || logsList.isEmpty()) {
-                return filteredList;
-            }
-            
-            long currentTime = System.currentTimeMillis();
-            long cutoffTime = currentTime - currentTimeFilter;
-            
-            for (LogEntry entry : logsList) {
-                if (entry != null && (entry.datetime != null || entry.timestamp != null)) {
-                    long entryTime = 0;
-                    
-                    // Prefer datetime string parsing over timestamp
-                    if (entry.datetime != null && !entry.datetime.trim().isEmpty()) {
-                        try {
-                            // Parse datetime string (format: "2025-09-23 03:47:26")
-                            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                            Date date = sdf.parse(entry.datetime);
-                            if (date != null) {
-                                entryTime = date.getTime();
-                            }
-                        } catch (Exception e) {
-                            // If datetime parsing fails, fall back to timestamp
-                            if (entry.timestamp != null && entry.timestamp > 0) {
-                                entryTime = entry.timestamp * 1000; // Convert to milliseconds
-                            }
-                        }
-                    } else if (entry.timestamp != null && entry.timestamp > 0) {
-                        entryTime = entry.timestamp * 1000; // Convert to milliseconds
-                    }
-                    
-                    if (entryTime > 0) {
-                        // For debugging: Check if timestamp seems to be in the future
-                        if (entryTime > currentTime + (24 * 60 * 60 * 1000)) {
-                            // Include it but log the issue for debugging
-                            System.out.println("Warning: Entry time appears to be in future: " + entry.datetime);
-                            filteredList.add(entry);
-                        } else if (entryTime >= cutoffTime && entryTime <= currentTime) {
-                            filteredList.add(entry);
-                        }
-                    }
-                }
-            }
-            
-            // Sort the filtered data by datetime (oldest to newest for proper chart progression)
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                filteredList.sort((a, b) -> {
-                    return compareDatetime(a, b);
-                });
-            } else {
-                // For older Android versions, use Collections.sort
-                Collections.sort(filteredList, new Comparator<LogEntry>() {
-                    @Override
-                    public int compare(LogEntry a, LogEntry b) {
-                        return compareDatetime(a, b);
-                    }
-                });
-            }
-        } catch (Exception e) {
-            System.err.println("Error filtering data: " + e.getMessage());
-            e.printStackTrace();
+    // Reads the recorder for the recent filter, so better off the main thread
+    private List<LogEntry> filteredData(List<LogEntry> rows, String deviceId, long filter, long now) {
+        if (filter == FILTER_RECENT && deviceId != null) {
+            // The logs every few minutes, with every live reading the dashboard received in between
+            List<LogEntry> recent = FlightRecorder.mergeWithLogs(rows, recordedEntries(deviceId, now - FILTER_RECENT));
+            return HistoryFilter.filterByWindow(recent, now, filter);
         }
-        
-        return filteredList;
+        // Oldest to newest for proper chart progression
+        return HistoryFilter.filterByWindow(rows, now, filter);
     }
-    
-    private int compareDatetime(LogEntry a, LogEntry b) {
+
+    private List<LogEntry> recordedEntries(String deviceId, long fromMillis) {
         try {
-            // Primary comparison by datetime string
-            if (a.datetime != null && !a.datetime.trim().isEmpty() && 
-                b.datetime != null && !b.datetime.trim().isEmpty()) {
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                Date dateA = sdf.parse(a.datetime);
-                Date dateB = sdf.parse(b.datetime);
-                if (dateA != null && dateB != null) {
-                    return dateA.compareTo(dateB);
-                }
-            }
-            
-            // Fallback to timestamp comparison
-            if (a.timestamp != null && b.timestamp != null) {
-                return Long.compare(a.timestamp, b.timestamp);
-            }
-            
-            // Handle null cases
-            if (a.datetime == null && a.timestamp == null) return 1;
-            if (b.datetime == null && b.timestamp == null) return -1;
-            
-        } catch (Exception e) {
-            // If parsing fails, fall back to timestamp
-            if (a.timestamp != null && b.timestamp != null) {
-                return Long.compare(a.timestamp, b.timestamp);
-            }
+            FlightRecorder recorder = ((SmartFanApplication) getApplication()).getFlightRecorder(deviceId);
+            return FlightRecorder.toLogEntries(recorder.read(fromMillis));
+        } catch (IOException e) {
+            System.err.println("Error reading recorded readings: " + e.getMessage());
+            return Collections.emptyList();
         }
-        
-        return 0;
     }
     
+    // The data is built on the history thread and only the result drawn here
     private void updateCharts() {
+        temperatureOverview = null;
+        powerOverview = null;
+        pendingDetail = null;
+        if (isFinishing()) return;
+        int request = ++chartRequests;
+        long now = System.currentTimeMillis();
+        TimeZone zone = TimeZone.getDefault();
+        String deviceId = currentDeviceId;
+        long filter = currentTimeFilter;
+        // Filters viewed before come from the cache; the recent one changes with every live reading
+        ChartCache.Lookup lookup = deviceId != null && filter != FILTER_RECENT
+            ? chartCache.lookup(deviceId, filter) : null;
+        List<LogEntry> rows = lookup != null && lookup.cached != null ? null : new ArrayList<>(logsList);
+        historyExecutor.execute(() -> {
+            if (request != chartRequests) return;
+            ChartData built = null;
+            try {
+                built = rows == null ? lookup.extend(now, zone) : chartData(rows, deviceId, filter, now, zone);
+            } catch (RuntimeException e) {
+                System.err.println("Error building charts: " + e.getMessage());
+                e.printStackTrace();
+            }
+            ChartData result = built;
+            runOnUiThread(() -> {
+                if (request != chartRequests || isFinishing()) return;
+                if (lookup != null && result != null) {
+                    chartCache.put(lookup, result);
+                }
+                showCharts(result);
+            });
+        });
+    }
+
+    private ChartData chartData(List<LogEntry> rows, String deviceId, long filter, long now, TimeZone zone) {
+        List<LogEntry> filteredData = filteredData(rows, deviceId, filter, now);
+        if (filteredData == null || filteredData.isEmpty()) return null;
+        // Validate filtered data before building the charts
+        List<LogEntry> validData = HistoryFilter.withTimestamp(filteredData);
+        if (validData.isEmpty()) return null;
+        return ChartData.build(validData, now, filter, zone, MAX_CHART_POINTS);
+    }
+
+    private void showCharts(ChartData chartData) {
         try {
-            List<LogEntry> filteredData = getFilteredData();
-            
-            if (filteredData == null || filteredData.isEmpty()) {
+            if (chartData == null) {
                 // Clear charts if no data
                 clearAllCharts();
                 return;
             }
+            rebaseCharts(System.currentTimeMillis());
             
-            // Validate filtered data before updating charts
-            List<LogEntry> validData = validateChartData(filteredData);
-            
-            if (validData.isEmpty()) {
-                clearAllCharts();
-                return;
-            }
-            
-            updateTemperatureChart(validData);
-            updateFanSpeedChart(validData);
-            updatePowerChart(validData);
+            updateTemperatureChart(chartData);
+            updateFanSpeedChart(chartData);
+            updatePowerChart(chartData);
         } catch (Exception e) {
             // Catch any exceptions to prevent app crash
             System.err.println("Error updating charts: " + e.getMessage());
@@ -405,7 +581,29 @@ public class HistoryActivity extends AppCompatActivity {
             clearAllCharts();
         }
     }
-    
+
+    // Refills the charts from a new base once the old one is too far behind
+    private void rebaseCharts(long nowMillis) {
+        if (nowMillis - chartBaseMillis < CHART_REBASE_MILLIS) return;
+        chartBaseMillis = nowMillis;
+        temperatureShown = null;
+        powerShown = null;
+        if (chartTemperature != null) {
+            chartTemperature.fitScreen();
+        }
+        if (efficiencyTrend != null) {
+            updateEfficiencyChart();
+        }
+    }
+
+    private float toX(long timeMillis) {
+        return (timeMillis - chartBaseMillis) / 1000f;
+    }
+
+    private long toMillis(float x) {
+        return chartBaseMillis + Math.round(x * 1000d);
+    }
+
     private void clearAllCharts() {
         try {
             if (chartTemperature != null) {
@@ -421,200 +619,60 @@ public class HistoryActivity extends AppCompatActivity {
         }
     }
     
-    private List<LogEntry> validateChartData(List<LogEntry> data) {
-        List<LogEntry> validData = new ArrayList<>();
-        
-        if (data == null) {
-            return validData;
-        }
-        
-        for (LogEntry entry : data) {
-            if (entry != null && entry.timestamp != null && entry.timestamp > 0) {
-                validData.add(entry);
-            }
-        }
-        
-        return validData;
-    }
-    
-    private void updatePowerChart(List<LogEntry> data) {
+    private void updatePowerChart(ChartData data) {
         try {
-            if (data == null || data.isEmpty()) {
-                return; // No power data to add
+            // Drawn next to the temperature, so not without it
+            if (chartTemperature == null || chartTemperature.getData() != lineData) {
+                return;
             }
-            
-            // We'll use the fan speed chart to also show power data by creating a combined view
-            // or we can add power data as a secondary dataset to the fan speed chart
-            
-            ArrayList<Entry> powerEntries = new ArrayList<>();
-            
-            for (LogEntry entry : data) {
-                if (entry != null && entry.watt != null && !entry.watt.isNaN() && 
-                    !entry.watt.isInfinite() && entry.watt > 0) {
-                    
-                    float xValue = 0f;
-                    
-                    // Use datetime string for X-axis instead of timestamp
-                    if (entry.datetime != null && !entry.datetime.trim().isEmpty()) {
-                        try {
-                            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                            Date date = sdf.parse(entry.datetime);
-                            if (date != null) {
-                                xValue = date.getTime(); // Convert to milliseconds for X-axis
-                            }
-                        } catch (Exception e) {
-                            // Fallback to timestamp if datetime parsing fails
-                            if (entry.timestamp != null && entry.timestamp > 0) {
-                                xValue = entry.timestamp * 1000f;
-                            }
-                        }
-                    } else if (entry.timestamp != null && entry.timestamp > 0) {
-                        xValue = entry.timestamp * 1000f; // Convert to milliseconds for X-axis
-                    }
-                    
-                    if (xValue > 0) {
-                        float watt = entry.watt.floatValue();
-                        
-                        // Validate reasonable power values (0-1000W for a fan)
-                        if (watt >= 0 && watt <= 1000) {
-                            powerEntries.add(new Entry(xValue, watt));
-                        }
-                    }
+            TimeSeries powerSeries = data.power;
+            YAxis rightAxis = chartTemperature.getAxisRight();
+            if (powerSeries.isEmpty()) {
+                if (lineData.removeDataSet(powerDataSet)) {
+                    rightAxis.setEnabled(false);
+                    refreshTemperatureChart();
                 }
-            }
-            
-            if (powerEntries.isEmpty()) {
                 return; // No valid power data to add
             }
+            powerOverview = powerSeries;
             
-            // Sort power entries by datetime for proper line drawing
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                powerEntries.sort((a, b) -> Float.compare(a.getX(), b.getX()));
-            } else {
-                Collections.sort(powerEntries, new Comparator<Entry>() {
-                    @Override
-                    public int compare(Entry a, Entry b) {
-                        return Float.compare(a.getX(), b.getX());
-                    }
-                });
-            }
-            
-            // Add power data as a secondary line to the temperature chart
-            LineDataSet powerDataSet = new LineDataSet(powerEntries, "Power (W)");
-            powerDataSet.setColor(Color.parseColor("#4CAF50")); // Green color
-            powerDataSet.setCircleColor(Color.parseColor("#4CAF50"));
-            powerDataSet.setLineWidth(2f);
-            powerDataSet.setCircleRadius(3f);
-            powerDataSet.setDrawCircleHole(false);
-            powerDataSet.setValueTextSize(9f);
-            powerDataSet.setAxisDependency(YAxis.AxisDependency.RIGHT);
-            
-            if (chartTemperature != null) {
-                // Enable right Y-axis for power data
-                YAxis rightAxis = chartTemperature.getAxisRight();
-                if (rightAxis != null) {
-                    rightAxis.setEnabled(true);
-                    rightAxis.setAxisMinimum(0f);
-                    rightAxis.setDrawGridLines(false);
-                }
-                
-                // Get existing data and add power data
-                LineData existingData = chartTemperature.getLineData();
-                if (existingData != null) {
-                    existingData.addDataSet(powerDataSet);
-                    chartTemperature.setData(existingData);
-                }
+            // Power is a secondary line on the temperature chart, on the right Y-axis
+            if (lineData.getIndexOfDataSet(powerDataSet) < 0) {
+                rightAxis.setEnabled(true);
+                rightAxis.setAxisMinimum(0f);
+                rightAxis.setDrawGridLines(false);
+                lineData.addDataSet(powerDataSet);
             }
+            slide(powerDataSet, powerShown, powerSeries);
+            powerShown = powerSeries;
+            refreshTemperatureChart();
         } catch (Exception e) {
             System.err.println("Error updating power chart: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
-    private void updateTemperatureChart(List<LogEntry> data) {
+    private void updateTemperatureChart(ChartData data) {
         try {
-            if (data == null || data.isEmpty()) {
+            TimeSeries temperatureSeries = data.temperature;
+            overviewDownsampled = data.temperatureDownsampled;
+            if (temperatureSeries.isEmpty()) {
                 if (chartTemperature != null) {
                     chartTemperature.clear();
                     chartTemperature.invalidate();
                 }
                 return;
             }
+            temperatureOverview = temperatureSeries;
+            slide(temperatureDataSet, temperatureShown, temperatureSeries);
+            temperatureShown = temperatureSeries;
             
-            ArrayList<Entry> temperatureEntries = new ArrayList<>();
-            
-            for (LogEntry entry : data) {
-                if (entry != null && entry.temperature != null && 
-                    !entry.temperature.isNaN() && !entry.temperature.isInfinite()) {
-                    
-                    float xValue = 0f;
-                    
-                    // Use datetime string for X-axis instead of timestamp
-                    if (entry.datetime != null && !entry.datetime.trim().isEmpty()) {
-                        try {
-                            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                            Date date = sdf.parse(entry.datetime);
-                            if (date != null) {
-                                xValue = date.getTime(); // Convert to milliseconds for X-axis
-                            }
-                        } catch (Exception e) {
-                            // Fallback to timestamp if datetime parsing fails
-                            if (entry.timestamp != null && entry.timestamp > 0) {
-                                xValue = entry.timestamp * 1000f;
-                            }
-                        }
-                    } else if (entry.timestamp != null && entry.timestamp > 0) {
-                        xValue = entry.timestamp * 1000f; // Convert to milliseconds for X-axis
-                    }
-                    
-                    if (xValue > 0) {
-                        float temperature = entry.temperature.floatValue();
-                        
-                        // Additional validation for reasonable temperature values
-                        if (temperature >= -50 && temperature <= 100) {
-                            temperatureEntries.add(new Entry(xValue, temperature));
-                        }
-                    }
-                }
-            }
-            
-            if (temperatureEntries.isEmpty()) {
-                if (chartTemperature != null) {
-                    chartTemperature.clear();
-                    chartTemperature.invalidate();
-                }
-                return;
-            }
-            
-            // Sort entries by X value (datetime) to ensure proper line drawing
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                temperatureEntries.sort((a, b) -> Float.compare(a.getX(), b.getX()));
-            } else {
-                Collections.sort(temperatureEntries, new Comparator<Entry>() {
-                    @Override
-                    public int compare(Entry a, Entry b) {
-                        return Float.compare(a.getX(), b.getX());
-                    }
-                });
-            }
-            
-            LineDataSet dataSet = new LineDataSet(temperatureEntries, "Temperature (°C)");
-            dataSet.setColor(Color.parseColor("#FF5722")); // Orange color
-            dataSet.setCircleColor(Color.parseColor("#FF5722"));
-            dataSet.setLineWidth(2f);
-            dataSet.setCircleRadius(3f);
-            dataSet.setDrawCircleHole(false);
-            dataSet.setValueTextSize(9f);
-            dataSet.setDrawFilled(true);
-            dataSet.setFillColor(Color.parseColor("#FFCCBC")); // Light orange fill
-            
-            ArrayList<ILineDataSet> dataSets = new ArrayList<>();
-            dataSets.add(dataSet);
-            
-            LineData lineData = new LineData(dataSets);
             if (chartTemperature != null) {
-                chartTemperature.setData(lineData);
-                chartTemperature.invalidate(); // Refresh chart
+                // Cleared charts drop their data
+                if (chartTemperature.getData() != lineData) {
+                    chartTemperature.setData(lineData);
+                }
+                refreshTemperatureChart();
             }
         } catch (Exception e) {
             System.err.println("Error updating temperature chart: " + e.getMessage());
@@ -626,9 +684,11 @@ public class HistoryActivity extends AppCompatActivity {
         }
     }
     
-    private void updateFanSpeedChart(List<LogEntry> data) {
+    private void updateFanSpeedChart(ChartData data) {
         try {
-            if (data == null || data.isEmpty()) {
+            DutyCycle fanSpeed = data.fanSpeed;
+            long total = fanSpeed.totalMillis();
+            if (total == 0) {
                 if (chartFanSpeed != null) {
                     chartFanSpeed.clear();
                     chartFanSpeed.invalidate();
@@ -636,75 +696,20 @@ public class HistoryActivity extends AppCompatActivity {
                 return;
             }
             
-            ArrayList<BarEntry> fanSpeedEntries = new ArrayList<>();
-            ArrayList<String> labels = new ArrayList<>();
-            
-            int index = 0;
-            for (LogEntry entry : data) {
-                if (entry != null && entry.fanSpeed != null && entry.fanSpeed >= 0) {
-                    
-                    float fanSpeed = entry.fanSpeed.floatValue();
-                    
-                    // Additional validation for reasonable fan speed values (0-100%)
-                    if (fanSpeed >= 0 && fanSpeed <= 100) {
-                        fanSpeedEntries.add(new BarEntry(index, fanSpeed));
-                        
-                        // Create time label using datetime string
-                        String timeLabel = "--:--";
-                        if (entry.datetime != null && !entry.datetime.trim().isEmpty()) {
-                            try {
-                                // Parse datetime string (format: "2025-09-23 03:47:26")
-                                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                                Date date = sdf.parse(entry.datetime);
-                                if (date != null) {
-                                    timeLabel = new SimpleDateFormat("HH:mm", Locale.getDefault()).format(date);
-                                }
-                            } catch (Exception e) {
-                                // Fallback to timestamp if datetime parsing fails
-                                if (entry.timestamp != null && entry.timestamp > 0) {
-                                    timeLabel = new SimpleDateFormat("HH:mm", Locale.getDefault())
-                                        .format(new Date(entry.timestamp * 1000));
-                                }
-                            }
-                        } else if (entry.timestamp != null && entry.timestamp > 0) {
-                            timeLabel = new SimpleDateFormat("HH:mm", Locale.getDefault())
-                                .format(new Date(entry.timestamp * 1000));
-                        }
-                        
-                        labels.add(timeLabel);
-                        index++;
-                    }
-                }
-            }
-            
-            if (fanSpeedEntries.isEmpty() || labels.isEmpty()) {
-                if (chartFanSpeed != null) {
-                    chartFanSpeed.clear();
-                    chartFanSpeed.invalidate();
-                }
-                return;
+            // A bar per band whatever the window, updated in place
+            for (int band = 0; band < DutyCycle.BANDS; band++) {
+                fanSpeedDataSet.getEntryForIndex(band).setY(100f * fanSpeed.bandMillis(band) / total);
             }
-            
-            BarDataSet dataSet = new BarDataSet(fanSpeedEntries, "Fan Speed (%)");
-            dataSet.setColor(Color.parseColor("#2196F3")); // Blue color
-            dataSet.setValueTextSize(9f);
-            
-            ArrayList<IBarDataSet> dataSets = new ArrayList<>();
-            dataSets.add(dataSet);
-            
-            BarData barData = new BarData(dataSets);
-            barData.setBarWidth(0.9f);
+            fanSpeedDataSet.notifyDataSetChanged();
+            fanSpeedDescription.setText(String.format(Locale.getDefault(), "%d cycles, longest run %s",
+                fanSpeed.cycles(), formatDuration(fanSpeed.longestRunMillis())));
             
             if (chartFanSpeed != null) {
-                chartFanSpeed.setData(barData);
-                
-                // Update X-axis labels with validation
-                XAxis xAxis = chartFanSpeed.getXAxis();
-                if (xAxis != null && !labels.isEmpty()) {
-                    xAxis.setValueFormatter(new IndexAxisValueFormatter(labels));
-                    xAxis.setLabelCount(Math.min(labels.size(), 5));
+                if (chartFanSpeed.getData() != barData) {
+                    chartFanSpeed.setData(barData);
                 }
-                
+                barData.notifyDataChanged();
+                chartFanSpeed.notifyDataSetChanged();
                 chartFanSpeed.invalidate(); // Refresh chart
             }
         } catch (Exception e) {
@@ -716,47 +721,178 @@ public class HistoryActivity extends AppCompatActivity {
             }
         }
     }
+
+    private static String formatDuration(long millis) {
+        long minutes = millis / 60000;
+        if (minutes < 60) return minutes + "m";
+        return (minutes / 60) + "h " + (minutes % 60) + "m";
+    }
+
+    // Moves the data set from the shown series to the next one, in place while the window
+    // slides: only the points of the buckets at its ends change
+    private void slide(LineDataSet dataSet, TimeSeries shown, TimeSeries next) {
+        SeriesSlide slide = shown == null ? null : SeriesSlide.between(shown, next);
+        if (slide == null) {
+            dataSet.setValues(toEntries(next));
+            return;
+        }
+        List<Entry> entries = dataSet.getValues();
+        entries.subList(0, slide.dropped).clear();
+        entries.subList(entries.size() - slide.removed, entries.size()).clear();
+        for (int i = slide.addedFrom; i < next.size(); i++) {
+            entries.add(new Entry(toX(next.timeMillis[i]), next.values[i]));
+        }
+        dataSet.notifyDataSetChanged();
+    }
+
+    private void refreshTemperatureChart() {
+        lineData.notifyDataChanged();
+        chartTemperature.notifyDataSetChanged();
+        chartTemperature.invalidate(); // Refresh chart
+    }
     
-    private void exportData() {
-        List<LogEntry> filteredData = getFilteredData();
-        
-        if (filteredData.isEmpty()) {
-            Toast.makeText(this, "No data to export", Toast.LENGTH_SHORT).show();
+    private void requestDetail() {
+        // The live view mixes in recorded readings that the log sources do not have
+        if (temperatureOverview == null || !overviewDownsampled || currentDeviceId == null
+                || currentTimeFilter == FILTER_RECENT) {
             return;
         }
-        
-        StringBuilder csvData = new StringBuilder();
-        csvData.append("Timestamp,DateTime,Temperature(°C),Fan Speed(%),Voltage(V),Current(A),Power(W),Energy(kWh)\n");
-        
-        for (LogEntry entry : filteredData) {
-            csvData.append(entry.timestamp != null ? entry.timestamp : "")
-                   .append(",")
-                   .append(entry.datetime != null ? "\"" + entry.datetime + "\"" : "")
-                   .append(",")
-                   .append(entry.temperature != null ? entry.temperature : "")
-                   .append(",")
-                   .append(entry.fanSpeed != null ? entry.fanSpeed : "")
-                   .append(",")
-                   .append(entry.voltage != null ? entry.voltage : "")
-                   .append(",")
-                   .append(entry.current != null ? entry.current : "")
-                   .append(",")
-                   .append(entry.watt != null ? entry.watt : "")
-                   .append(",")
-                   .append(entry.kwh != null ? entry.kwh : "")
-                   .append("\n");
+        long from = toMillis(chartTemperature.getLowestVisibleX());
+        long to = toMillis(chartTemperature.getHighestVisibleX());
+        if (LevelOfDetail.visiblePoints(temperatureOverview, from, to) >= MAX_CHART_POINTS / 2) {
+            return; // Zoomed out far enough that the overview shows as much as fits
         }
-        
+        LevelOfDetail.Window window = LevelOfDetail.Window.covering(from, to);
+        List<LogEntry> cached = detailCache.find(window.fromMillis, window.toMillis);
+        if (cached != null) {
+            showDetail(window, cached);
+        } else if (!window.equals(pendingDetail)) {
+            pendingDetail = window;
+            fetchDetail(currentDeviceId, window);
+        }
+    }
+
+    // The phone's cache when it has every day of the window, else one query bounded to it
+    private void fetchDetail(String deviceId, LevelOfDetail.Window window) {
+        historyExecutor.execute(() -> {
+            List<LogEntry> rows = null;
+            try {
+                TimeSeriesStore store = ((SmartFanApplication) getApplication()).getHistoryStore();
+                long fromSeconds = window.fromMillis / 1000;
+                long lastSeconds = (window.toMillis - 1) / 1000;
+                if (storeHasDays(store, deviceId, fromSeconds, lastSeconds)) {
+                    rows = store.scan(deviceId, fromSeconds, lastSeconds);
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading cached history: " + e.getMessage());
+            }
+            List<LogEntry> local = rows;
+            runOnUiThread(() -> {
+                if (local != null) {
+                    onDetailLoaded(window, local);
+                    return;
+                }
+                FirebaseDataSource.getInstance().fetchLogs(deviceId, window.fromMillis, window.toMillis,
+                    new DataCallback<List<LogEntry>>() {
+                        @Override
+                        public void onSuccess(List<LogEntry> value) {
+                            onDetailLoaded(window, value);
+                        }
+
+                        @Override
+                        public void onError(Exception error) {
+                            if (window.equals(pendingDetail)) pendingDetail = null;
+                            System.err.println("Error loading chart detail: " + error.getMessage());
+                        }
+                    });
+            });
+        });
+    }
+
+    // A window partly outside the cached days would show a gap where Firebase has rows; today
+    // is still being written, so it never counts as cached
+    private static boolean storeHasDays(TimeSeriesStore store, String deviceId, long fromSeconds, long lastSeconds) {
+        long today = LogBlocks.blockStart(System.currentTimeMillis() / 1000, LogBlocks.DAY_SECONDS);
+        if (lastSeconds >= today) return false;
+        for (long day = LogBlocks.blockStart(fromSeconds, LogBlocks.DAY_SECONDS); day <= lastSeconds;
+                day += LogBlocks.DAY_SECONDS) {
+            if (!store.hasDay(deviceId, day)) return false;
+        }
+        return true;
+    }
+
+    private void onDetailLoaded(LevelOfDetail.Window window, List<LogEntry> rows) {
+        // Dropped if the filter or data changed meanwhile
+        if (!window.equals(pendingDetail) || isFinishing()) return;
+        pendingDetail = null;
+        detailCache.put(window, rows);
+        long from = toMillis(chartTemperature.getLowestVisibleX());
+        long to = toMillis(chartTemperature.getHighestVisibleX());
+        if (window.contains(from, to)) {
+            showDetail(window, detailCache.find(window.fromMillis, window.toMillis));
+        }
+    }
+
+    // Splices the window's rows into the overview; the axis range and zoom stay as they are
+    private void showDetail(LevelOfDetail.Window window, List<LogEntry> rows) {
+        if (chartTemperature.getData() != lineData || temperatureOverview == null) return;
+        // Kept within the overview, which spans the selected filter
+        long from = Math.max(window.fromMillis, temperatureOverview.timeMillis[0]);
+        long to = Math.min(window.toMillis, temperatureOverview.timeMillis[temperatureOverview.size() - 1] + 1);
+        TimeZone zone = TimeZone.getDefault();
+        TimeSeries temperature = Downsampler.lttb(HistorySeries.temperature(rows, zone), MAX_CHART_POINTS);
+        temperatureShown = LevelOfDetail.splice(temperatureOverview, temperature, from, to);
+        temperatureDataSet.setValues(toEntries(temperatureShown));
+        if (powerOverview != null) {
+            TimeSeries power = Downsampler.lttb(HistorySeries.power(rows, zone), MAX_CHART_POINTS);
+            powerShown = LevelOfDetail.splice(powerOverview, power, from, to);
+            powerDataSet.setValues(toEntries(powerShown));
+        }
+        refreshTemperatureChart();
+    }
+
+    private ArrayList<Entry> toEntries(TimeSeries series) {
+        ArrayList<Entry> entries = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            entries.add(new Entry(toX(series.timeMillis[i]), series.values[i]));
+        }
+        return entries;
+    }
+    
+    // The rows are filtered and written out on the history thread, recorder reads included
+    private void exportData() {
+        List<LogEntry> rows = new ArrayList<>(logsList);
+        String deviceId = currentDeviceId;
+        long filter = currentTimeFilter;
+        long now = System.currentTimeMillis();
+        historyExecutor.execute(() -> {
+            List<LogEntry> filteredData = filteredData(rows, deviceId, filter, now);
+            String csvData = filteredData.isEmpty() ? null : CsvExporter.toCsv(filteredData);
+            int entries = filteredData.size();
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                if (csvData == null) {
+                    Toast.makeText(this, "No data to export", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                saveExport(csvData, entries, filter);
+            });
+        });
+    }
+
+    private void saveExport(String csvData, int entries, long filter) {
         // Store CSV data for file saving
-        pendingCsvData = csvData.toString();
+        pendingCsvData = csvData;
         
         // Create file picker intent
         String timeFilterText = "";
-        if (currentTimeFilter == FILTER_24H) {
+        if (filter == FILTER_RECENT) {
+            timeFilterText = "recent";
+        } else if (filter == FILTER_24H) {
             timeFilterText = "24h";
-        } else if (currentTimeFilter == FILTER_7DAYS) {
+        } else if (filter == FILTER_7DAYS) {
             timeFilterText = "7days";
-        } else if (currentTimeFilter == FILTER_30DAYS) {
+        } else if (filter == FILTER_30DAYS) {
             timeFilterText = "30days";
         }
         
@@ -772,15 +908,15 @@ public class HistoryActivity extends AppCompatActivity {
             createFileLauncher.launch(intent);
         } catch (Exception e) {
             // Fallback: Share the data instead
-            shareData(csvData.toString(), fileName);
+            shareData(csvData, entries, fileName);
         }
     }
     
-    private void shareData(String csvData, String fileName) {
+    private void shareData(String csvData, int entries, String fileName) {
         Intent shareIntent = new Intent(Intent.ACTION_SEND);
         shareIntent.setType("text/plain");
         shareIntent.putExtra(Intent.EXTRA_SUBJECT, "Smart Fan Data Export");
-        shareIntent.putExtra(Intent.EXTRA_TEXT, "Smart Fan data export (" + getFilteredData().size() + " entries):\n\n" + csvData);
+        shareIntent.putExtra(Intent.EXTRA_TEXT, "Smart Fan data export (" + entries + " entries):\n\n" + csvData);
         
         try {
             startActivity(Intent.createChooser(shareIntent, "Share Smart Fan Data"));
@@ -791,9 +927,9 @@ public class HistoryActivity extends AppCompatActivity {
     
     private void loadGeneralData() {
         // ESP8266 also writes to /smartfan/data path
-        DatabaseReference generalDataRef = dbRef.child("smartfan").child("data");
+        generalDataRef = dbRef.child("smartfan").child("data");
         
-        generalDataRef.addValueEventListener(new ValueEventListener() {
+        generalDataListener = generalDataRef.addValueEventListener(new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot snapshot) {
                 if (snapshot.exists()) {
@@ -813,14 +949,8 @@ public class HistoryActivity extends AppCompatActivity {
                             }
                             
                             if (!isDuplicate) {
-                                logsList.add(0, entry); // Add to beginning as it's likely the most recent
-                                adapter.notifyDataSetChanged();
-                                try {
-                                    updateCharts(); // Update charts when new data is added
-                                } catch (Exception e) {
-                                    System.err.println("Error updating charts after new data: " + e.getMessage());
-                                    e.printStackTrace();
-                                }
+                                // Usually the most recent row, so it goes to the head like today's new rows
+                                addNewestRows(currentDeviceId, Collections.singletonList(entry));
                             }
                         }
                     } catch (Exception e) {
@@ -842,6 +972,7 @@ public class HistoryActivity extends AppCompatActivity {
             .addListenerForSingleValueEvent(new ValueEventListener() {
                 @Override
                 public void onDataChange(DataSnapshot snapshot) {
+                    if (isDestroyed()) return;
                     String deviceId = snapshot.getValue(String.class);
                     if (deviceId != null && !deviceId.isEmpty()) {
                         currentDeviceId = deviceId;
@@ -857,6 +988,7 @@ public class HistoryActivity extends AppCompatActivity {
 
                 @Override
                 public void onCancelled(DatabaseError error) {
+                    if (isDestroyed()) return;
                     // Fall back to default device ID on error
                     currentDeviceId = "SmartFan_ESP8266_000";
                     loadDeviceLogs();
@@ -870,80 +1002,497 @@ public class HistoryActivity extends AppCompatActivity {
             currentDeviceId = "SmartFan_ESP8266_000"; // Fallback
         }
         
-        DatabaseReference logsRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("logs");
-        
-        logsRef.addValueEventListener(new ValueEventListener() {
+        String deviceId = currentDeviceId;
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        long todayStart = LogBlocks.blockStart(nowSeconds, LogBlocks.DAY_SECONDS);
+
+        // Today keeps changing, so it is listened to; the closed days before it are fetched once
+        DatabaseReference deviceRef = dbRef.child("smartfan").child("devices").child(deviceId);
+        DatabaseReference logsRef = deviceRef.child("logs");
+        todayLogsQuery = logsRef.orderByKey().startAt(String.valueOf(todayStart));
+        todayLogsListener = todayLogsQuery.addChildEventListener(new ChildEventListener() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                logsList.clear();
-                
-                if (snapshot.exists()) {
-                    for (DataSnapshot logSnapshot : snapshot.getChildren()) {
-                        try {
-                            LogEntry entry = logSnapshot.getValue(LogEntry.class);
-                            if (entry != null) {
-                                // Validate that we have at least timestamp or datetime
-                                if (entry.timestamp != null || (entry.datetime != null && !entry.datetime.trim().isEmpty())) {
-                                    logsList.add(entry);
-                                }
-                            }
-                        } catch (Exception e) {
-                            // Log parsing error, skip this entry
-                            System.err.println("Error parsing log entry: " + e.getMessage());
-                        }
-                    }
-                    
-                    // Sort by timestamp (newest first) - Handle both timestamp and datetime fields
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                        logsList.sort((a, b) -> {
-                            // Primary sort by timestamp if both have it
-                            if (a.timestamp != null && b.timestamp != null) {
-                                return Long.compare(b.timestamp, a.timestamp);
-                            }
-                            // If one lacks timestamp, sort by datetime string comparison
-                            if (a.datetime != null && b.datetime != null) {
-                                return b.datetime.compareTo(a.datetime);
-                            }
-                            // Handle null cases
-                            if (a.timestamp == null && b.timestamp == null && a.datetime == null && b.datetime == null) return 0;
-                            if ((a.timestamp == null && a.datetime == null)) return 1;
-                            if ((b.timestamp == null && b.datetime == null)) return -1;
-                            return 0;
-                        });
-                    }
+            public void onChildAdded(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                LogEntry entry = parseLogEntry(snapshot);
+                if (entry == null) return;
+                // A row after the newest one extends the list and charts; anything else rebuilds them
+                String key = snapshot.getKey();
+                if (entry.timestamp != null && (todayRows.isEmpty() || key.compareTo(todayRows.lastKey()) > 0)) {
+                    todayAppended.add(entry);
+                } else {
+                    todayChanged = true;
+                }
+                todayRows.put(key, entry);
+                postTodayRows(deviceId);
+            }
 
-                    adapter.notifyDataSetChanged();
-                    recyclerViewLogs.setVisibility(View.VISIBLE);
-                    
-                    // Update charts with loaded data - add safety check
-                    try {
-                        updateCharts();
-                    } catch (Exception e) {
-                        System.err.println("Error updating charts after data load: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                    
-                    if (logsList.isEmpty()) {
-                        Toast.makeText(HistoryActivity.this, "No valid history data available yet.", Toast.LENGTH_LONG).show();
-                    } else {
-                        Toast.makeText(HistoryActivity.this, 
-                            "Loaded " + logsList.size() + " history entries", Toast.LENGTH_SHORT).show();
-                    }
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+                LogEntry entry = parseLogEntry(snapshot);
+                if (entry != null) {
+                    todayRows.put(snapshot.getKey(), entry);
                 } else {
-                    // No logs found
-                    recyclerViewLogs.setVisibility(View.GONE);
-                    Toast.makeText(HistoryActivity.this, "No history data available yet.", Toast.LENGTH_LONG).show();
+                    todayRows.remove(snapshot.getKey());
                 }
+                todayChanged = true;
+                postTodayRows(deviceId);
             }
-            
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                if (todayRows.remove(snapshot.getKey()) != null) {
+                    todayChanged = true;
+                    postTodayRows(deviceId);
+                }
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, @Nullable String previousChildName) {
+            }
+
             @Override
             public void onCancelled(@NonNull DatabaseError error) {
                 Toast.makeText(HistoryActivity.this, "Failed to load history: " + error.getMessage(), Toast.LENGTH_LONG).show();
-                recyclerViewLogs.setVisibility(View.GONE);
             }
         });
+
+        // With hourly packing, today's closed hours are already blocks
+        todayBlocksQuery = deviceRef.child(LogBlocks.PATH).orderByKey().startAt(String.valueOf(todayStart));
+        todayBlocksListener = todayBlocksQuery.addValueEventListener(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                List<String> blocks = new ArrayList<>();
+                for (DataSnapshot blockSnapshot : snapshot.getChildren()) {
+                    Object block = blockSnapshot.getValue();
+                    if (block instanceof String) {
+                        blocks.add((String) block);
+                    }
+                }
+                todayBlocks = blocks;
+                chartCache.invalidate(deviceId);
+                invalidateHeatmap();
+                showLogs();
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                System.err.println("Error loading log blocks: " + error.getMessage());
+            }
+        });
+
+        heatmapFromMillis = (todayStart - FILTER_30DAYS / 1000) * 1000;
+        heatmapToMillis = (todayStart + LogBlocks.DAY_SECONDS) * 1000;
+        loadEarlierDays(deviceId, todayStart - (FILTER_30DAYS / 1000), todayStart);
+    }
+
+    // Null for rows that cannot be shown, without a timestamp or datetime
+    private static LogEntry parseLogEntry(DataSnapshot snapshot) {
+        try {
+            LogEntry entry = snapshot.getValue(LogEntry.class);
+            if (entry != null && (entry.timestamp != null || (entry.datetime != null && !entry.datetime.trim().isEmpty()))) {
+                return entry;
+            }
+        } catch (Exception e) {
+            // Log parsing error, skip this entry
+            System.err.println("Error parsing log entry: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // The initial rows arrive as one child event each, so they are applied once all are in
+    private void postTodayRows(String deviceId) {
+        if (todayRowsPosted) return;
+        todayRowsPosted = true;
+        liveHandler.post(() -> applyTodayRows(deviceId));
+    }
+
+    private void applyTodayRows(String deviceId) {
+        todayRowsPosted = false;
+        if (isFinishing()) return;
+        List<LogEntry> appended = todayAppended;
+        todayAppended = new ArrayList<>();
+        if (todayChanged) {
+            todayChanged = false;
+            todayEntries = new ArrayList<>(todayRows.values());
+            chartCache.invalidate(deviceId);
+            invalidateHeatmap();
+            showLogs();
+            return;
+        }
+        if (appended.isEmpty()) return;
+        todayEntries.addAll(appended);
+        addNewestRows(deviceId, appended);
+    }
+
+    // Rows newer than every listed one go into the list, caches and charts in place; anything
+    // else rebuilds them
+    private void addNewestRows(String deviceId, List<LogEntry> rows) {
+        if (efficiencyTrend != null) {
+            efficiencyTrend.addAll(rows);
+            updateEfficiencyChart();
+        }
+        if (!prependLogs(rows)) {
+            chartCache.invalidate(deviceId);
+            invalidateHeatmap();
+            showLogs();
+            return;
+        }
+        chartCache.append(deviceId, rows);
+        detailCache.append(rows);
+        addToHeatmap(rows);
+        try {
+            updateCharts();
+            updateHeatmap();
+        } catch (Exception e) {
+            System.err.println("Error updating charts after new rows: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Puts rows newer than every listed one at its head; false if one is not
+    private boolean prependLogs(List<LogEntry> rows) {
+        List<LogEntry> newestFirst = new ArrayList<>(rows);
+        Collections.sort(newestFirst, LogEntryComparators.NEWEST_FIRST);
+        LogEntry oldest = newestFirst.get(newestFirst.size() - 1);
+        if (!logsList.isEmpty() && LogEntryComparators.NEWEST_FIRST.compare(oldest, logsList.get(0)) > 0) {
+            return false;
+        }
+        logsList.addAll(0, newestFirst);
+        adapter.notifyItemRangeInserted(0, newestFirst.size());
+        recyclerViewLogs.setVisibility(View.VISIBLE);
+        return true;
+    }
+
+    // Puts a day's rows between the listed rows newer and older than it, as days arrive newest
+    // first and never overlap; false if a listed row falls within the day
+    private boolean insertDay(List<LogEntry> rows) {
+        List<LogEntry> newestFirst = new ArrayList<>(rows);
+        Collections.sort(newestFirst, LogEntryComparators.NEWEST_FIRST);
+        LogEntry newest = newestFirst.get(0);
+        LogEntry oldest = newestFirst.get(newestFirst.size() - 1);
+        // The first listed row older than the day's newest
+        int low = 0;
+        int high = logsList.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (LogEntryComparators.NEWEST_FIRST.compare(logsList.get(mid), newest) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low > 0 && LogEntryComparators.NEWEST_FIRST.compare(logsList.get(low - 1), newest) == 0) {
+            return false;
+        }
+        if (low < logsList.size() && LogEntryComparators.NEWEST_FIRST.compare(oldest, logsList.get(low)) >= 0) {
+            return false;
+        }
+        logsList.addAll(low, newestFirst);
+        adapter.notifyItemRangeInserted(low, newestFirst.size());
+        recyclerViewLogs.setVisibility(View.VISIBLE);
+        return true;
+    }
+
+    // One small read of the day digests first, so days that changed upstream are downloaded again
+    private void loadEarlierDays(String deviceId, long fromSeconds, long toSeconds) {
+        FirebaseDataSource.getInstance().fetchLogDigests(deviceId, fromSeconds * 1000, toSeconds * 1000,
+            new DataCallback<Map<Long, LogDigest>>() {
+                @Override
+                public void onSuccess(Map<Long, LogDigest> digests) {
+                    if (isFinishing()) return;
+                    loadEarlierDays(deviceId, fromSeconds, toSeconds, digests);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    // Without digests the days on the phone are trusted, as they were before
+                    System.err.println("Error loading history digests: " + e.getMessage());
+                    if (isFinishing()) return;
+                    loadEarlierDays(deviceId, fromSeconds, toSeconds, Collections.<Long, LogDigest>emptyMap());
+                }
+            });
+    }
+
+    // One query per day, newest first, a few at a time; days the phone has are not downloaded
+    private void loadEarlierDays(String deviceId, long fromSeconds, long toSeconds, Map<Long, LogDigest> digests) {
+        PartitionedLogFetch fetch = new PartitionedLogFetch(
+            FirebaseDataSource.getInstance(), historyExecutor, MAX_DAYS_IN_FLIGHT);
+        PartitionedLogFetch.Cache stored = new PartitionedLogFetch.Cache() {
+            @Override
+            public List<LogEntry> cachedDay(long dayStartSeconds) {
+                try {
+                    TimeSeriesStore store = ((SmartFanApplication) getApplication()).getHistoryStore();
+                    if (!store.hasDay(deviceId, dayStartSeconds)) return null;
+                    return store.scan(deviceId, dayStartSeconds, dayStartSeconds + LogBlocks.DAY_SECONDS - 1);
+                } catch (IOException e) {
+                    System.err.println("Error reading cached history: " + e.getMessage());
+                    return null;
+                }
+            }
+        };
+        dayFetch = fetch.fetch(deviceId, fromSeconds, toSeconds, LogDigests.verified(digests, stored),
+            new PartitionedLogFetch.Listener() {
+                @Override
+                public void onDay(long dayStartSeconds, List<LogEntry> rows, boolean cached) {
+                    if (!cached) {
+                        cacheDay(deviceId, rows);
+                    }
+                    runOnUiThread(() -> {
+                        if (isFinishing()) return;
+                        List<LogEntry> previous = earlierDays.put(dayStartSeconds, rows);
+                        if (rows.isEmpty() && previous == null) return;
+                        if (previous == null && insertDay(rows)) {
+                            // Only the new day is read; the rest stays as it was
+                            chartCache.append(deviceId, rows);
+                            addToHeatmap(rows);
+                            try {
+                                updateCharts();
+                                updateHeatmap();
+                            } catch (Exception e) {
+                                System.err.println("Error updating charts after a day: " + e.getMessage());
+                                e.printStackTrace();
+                            }
+                            return;
+                        }
+                        invalidateHeatmap();
+                        chartCache.invalidate(deviceId);
+                        showLogs();
+                    });
+                }
+
+                @Override
+                public void onDayFailed(long dayStartSeconds, Exception error) {
+                    System.err.println("Error loading history of " + dayStartSeconds + ": " + error.getMessage());
+                    runOnUiThread(() -> failedDays++);
+                }
+
+                @Override
+                public void onComplete() {
+                    runOnUiThread(() -> {
+                        if (isFinishing()) return;
+                        // After the days just downloaded were queued for the phone's cache
+                        loadEfficiency(deviceId, toSeconds);
+                        if (logsList.isEmpty()) {
+                            Toast.makeText(HistoryActivity.this, "No history data available yet.", Toast.LENGTH_LONG).show();
+                        } else if (failedDays > 0) {
+                            Toast.makeText(HistoryActivity.this,
+                                "Loaded " + logsList.size() + " history entries; " + failedDays + " days failed to load",
+                                Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(HistoryActivity.this,
+                                "Loaded " + logsList.size() + " history entries", Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                }
+            });
+    }
+
+    // A downloaded day is complete, so later visits read it from the phone
+    private void cacheDay(String deviceId, List<LogEntry> rows) {
+        historyExecutor.execute(() -> {
+            try {
+                TimeSeriesStore store = ((SmartFanApplication) getApplication()).getHistoryStore();
+                List<LogEntry> keyed = HistoryFilter.withTimestamp(rows);
+                if (keyed.isEmpty()) return;
+                store.appendAll(deviceId, keyed);
+                store.flush();
+            } catch (IOException e) {
+                System.err.println("Error caching history: " + e.getMessage());
+            }
+        });
+    }
+
+    private void showLogs() {
+        if (isFinishing()) return;
+        // Cached detail may miss rows that just arrived
+        detailCache.clear();
+        logsList.clear();
+        for (List<LogEntry> day : earlierDays.values()) {
+            logsList.addAll(day);
+        }
+        logsList.addAll(LogBlocks.merge(todayEntries, todayBlocks, Long.MIN_VALUE, Long.MAX_VALUE));
+
+        if (!logsList.isEmpty()) {
+            // Sort newest first; entries cache their parsed time for the chart filters
+            Collections.sort(logsList, LogEntryComparators.NEWEST_FIRST);
+
+            adapter.notifyDataSetChanged();
+            recyclerViewLogs.setVisibility(View.VISIBLE);
+            
+            // Update charts with loaded data - add safety check
+            try {
+                updateCharts();
+                updateHeatmap();
+            } catch (Exception e) {
+                System.err.println("Error updating charts after data load: " + e.getMessage());
+                e.printStackTrace();
+            }
+        } else {
+            // No logs found
+            adapter.notifyDataSetChanged();
+            recyclerViewLogs.setVisibility(View.GONE);
+        }
     }
     
+    // The cached closed days in one pass, then today's rows, which keep coming as they arrive
+    private void loadEfficiency(String deviceId, long todayStart) {
+        historyExecutor.execute(() -> {
+            EfficiencyTrend trend = new EfficiencyTrend(new EfficiencyModel(EFFICIENCY_BASELINE_SAMPLES,
+                EFFICIENCY_DRIFT_SAMPLES, EFFICIENCY_DRIFT_THRESHOLD, false));
+            try {
+                TimeSeriesStore store = ((SmartFanApplication) getApplication()).getHistoryStore();
+                trend.addAll(store.scan(deviceId, todayStart - EFFICIENCY_DAYS * LogBlocks.DAY_SECONDS, todayStart - 1));
+            } catch (IOException e) {
+                System.err.println("Error reading cached history: " + e.getMessage());
+            }
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                trend.addAll(LogBlocks.merge(todayEntries, todayBlocks, Long.MIN_VALUE, Long.MAX_VALUE));
+                efficiencyTrend = trend;
+                updateEfficiencyChart();
+            });
+        });
+    }
+
+    private void updateEfficiencyChart() {
+        EfficiencyModel model = efficiencyTrend.model();
+        if (model.isDrifting()) {
+            textEfficiencyStatus.setText(getString(R.string.history_efficiency_drift, model.drift() * 100));
+        } else if (!Double.isNaN(model.drift())) {
+            textEfficiencyStatus.setText(getString(R.string.history_efficiency_normal, model.drift() * 100));
+        } else {
+            textEfficiencyStatus.setText(R.string.history_efficiency_learning);
+        }
+
+        TimeSeries series = efficiencyTrend.series();
+        if (series.isEmpty()) {
+            chartEfficiency.clear();
+            chartEfficiency.invalidate();
+            return;
+        }
+        efficiencyDataSet.setValues(toEntries(series));
+        if (chartEfficiency.getData() == null) {
+            chartEfficiency.setData(new LineData(efficiencyDataSet));
+        }
+        chartEfficiency.getData().notifyDataChanged();
+        chartEfficiency.notifyDataSetChanged();
+        chartEfficiency.invalidate();
+    }
+
+    private void addToHeatmap(List<LogEntry> rows) {
+        if (heatmapBuilding) {
+            heatmapStale = true;
+        } else if (heatmap != null) {
+            heatmap.addAll(rows);
+        }
+    }
+
+    private void invalidateHeatmap() {
+        if (heatmapBuilding) {
+            heatmapStale = true;
+        } else {
+            heatmap = null;
+        }
+    }
+
+    private void updateHeatmap() {
+        if (heatmap != null) {
+            heatmapView.setHeatmap(heatmap, heatmapQuantity);
+        } else if (!heatmapBuilding && heatmapToMillis > 0) {
+            rebuildHeatmap();
+        }
+    }
+
+    // Built off the main thread, in parts on the heatmap threads once there are enough rows
+    private void rebuildHeatmap() {
+        heatmapBuilding = true;
+        heatmapStale = false;
+        List<LogEntry> rows = new ArrayList<>(logsList);
+        long from = heatmapFromMillis;
+        long to = heatmapToMillis;
+        historyExecutor.execute(() -> {
+            UsageHeatmap built = null;
+            try {
+                built = UsageHeatmap.build(rows, from, to, TimeZone.getDefault(), heatmapExecutor, HEATMAP_THREADS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                System.err.println("Error building heatmap: " + e.getMessage());
+            }
+            UsageHeatmap result = built;
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                heatmapBuilding = false;
+                if (heatmapStale) {
+                    rebuildHeatmap();
+                } else if (result != null) {
+                    heatmap = result;
+                    heatmapView.setHeatmap(heatmap, heatmapQuantity);
+                }
+            });
+        });
+    }
+
+    private void onLiveRecorded(String deviceId) {
+        if (currentTimeFilter != FILTER_RECENT || !deviceId.equals(currentDeviceId) || liveRefreshPending) return;
+        liveRefreshPending = true;
+        liveHandler.postDelayed(liveRefresh,
+            Math.max(0, lastLiveRefresh + LIVE_REFRESH_MILLIS - SystemClock.uptimeMillis()));
+    }
+
+    private void refreshLive() {
+        liveRefreshPending = false;
+        lastLiveRefresh = SystemClock.uptimeMillis();
+        if (currentTimeFilter == FILTER_RECENT) {
+            updateCharts();
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        ((SmartFanApplication) getApplication()).getLiveRecorder().addListener(liveListener);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        ((SmartFanApplication) getApplication()).getLiveRecorder().removeListener(liveListener);
+        liveHandler.removeCallbacks(liveRefresh);
+        liveRefreshPending = false;
+        // Waiting rows would be lost with the process; merging late rows can wait until now
+        historyExecutor.execute(() -> {
+            try {
+                TimeSeriesStore store = ((SmartFanApplication) getApplication()).getHistoryStore();
+                store.flush();
+                store.compact();
+            } catch (IOException e) {
+                System.err.println("Error saving cached history: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (dayFetch != null) {
+            dayFetch.remove();
+        }
+        if (todayLogsQuery != null) {
+            todayLogsQuery.removeEventListener(todayLogsListener);
+        }
+        if (todayBlocksQuery != null) {
+            todayBlocksQuery.removeEventListener(todayBlocksListener);
+        }
+        if (generalDataRef != null) {
+            generalDataRef.removeEventListener(generalDataListener);
+        }
+        liveHandler.removeCallbacksAndMessages(null);
+        // Work already queued still runs
+        historyExecutor.shutdown();
+        heatmapExecutor.shutdown();
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         onBackPressed();
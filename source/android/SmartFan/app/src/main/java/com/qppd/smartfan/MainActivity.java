@@ -9,6 +9,7 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.animation.AccelerateDecelerateInterpolator;
+import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -24,15 +25,46 @@ import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.database.*;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.lan.LanDevice;
+import com.qppd.smartfan.core.lan.LanDiscovery;
+import com.qppd.smartfan.core.lan.LocalFirstDataSource;
+import com.qppd.smartfan.core.schedule.Clock;
+import com.qppd.smartfan.data.DeviceReading;
+import com.qppd.smartfan.data.DeviceSubscriptionManager;
+import com.qppd.smartfan.data.FirebaseDataSource;
+import com.qppd.smartfan.data.StartupPrefetcher;
+import com.qppd.smartfan.utils.Constants;
+import com.qppd.smartfan.utils.DeviceMetadataCache;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
     private FirebaseAuth mAuth;
     private DatabaseReference dbRef;
     private String uid;
     private String currentDeviceId; // Store current device ID for control operations
+    private DeviceSubscriptionManager.Subscription deviceCurrentSubscription;
+    private DatabaseReference deviceControlRef;
+    private ValueEventListener deviceControlListener;
+    private boolean fullyDrawnReported = false;
+
+    // Control goes straight to the fan when it is on the same WiFi, Firebase otherwise
+    private static final long LAN_DISCOVERY_TIMEOUT_MS = 3000;
+    private final LocalFirstDataSource controlDataSource =
+        new LocalFirstDataSource(FirebaseDataSource.getInstance(), Clock.SYSTEM);
+    private final ExecutorService lanExecutor = Executors.newSingleThreadExecutor();
+    private Registration lanReadingRegistration;
+    private Registration lanRecordingRegistration;
+    private String lanDeviceId;
 
     // UI Components
     private CoordinatorLayout coordinatorLayout;
@@ -161,8 +193,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void setupDashboard() {
         animateCardsEntry();
-        setupDeviceDataListener();
-        setupDeviceControlListener(); // Add control stream listener
+        setupDeviceDataListener(); // Also attaches the control stream listener once the device is known
         setupControls();
         setupQuickActions();
     }
@@ -202,6 +233,12 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void loadUserDeviceIdAndConnect() {
+        // The splash usually resolved the device already, so connect without waiting for the read below
+        String prefetchedDeviceId = StartupPrefetcher.getInstance(this).getDeviceId();
+        if (prefetchedDeviceId != null) {
+            connectToDevice(prefetchedDeviceId);
+        }
+        
         dbRef.child("smartfan").child("users").child(uid).child("deviceId")
             .addValueEventListener(new ValueEventListener() {
                 @Override
@@ -212,11 +249,9 @@ public class MainActivity extends AppCompatActivity {
                         // No device ID set, redirect to settings
                         hideLoadingState();
                         showDeviceLinkingDialog();
-                    } else {
+                    } else if (!deviceId.equals(currentDeviceId)) {
                         // Device ID found, use it
-                        currentDeviceId = deviceId;
-                        loadDeviceName(deviceId);
-                        setupDeviceCurrentDataListener(deviceId);
+                        connectToDevice(deviceId);
                     }
                 }
 
@@ -225,14 +260,82 @@ public class MainActivity extends AppCompatActivity {
                     hideLoadingState();
                     showSnackbar("Failed to load device configuration: " + error.getMessage(), false);
                     // Fall back to default device ID
-                    String defaultDeviceId = "SmartFan_ESP8266_000";
-                    currentDeviceId = defaultDeviceId;
-                    loadDeviceName(defaultDeviceId);
-                    setupDeviceCurrentDataListener(defaultDeviceId);
+                    if (currentDeviceId == null) {
+                        connectToDevice(Constants.DEFAULT_DEVICE_ID);
+                    }
                 }
             });
     }
     
+    private void connectToDevice(String deviceId) {
+        currentDeviceId = deviceId;
+        StartupPrefetcher prefetcher = StartupPrefetcher.getInstance(this);
+        prefetcher.rememberDeviceId(deviceId);
+        loadDeviceName(deviceId);
+        setupDeviceCurrentDataListener(deviceId);
+        setupDeviceControlListener();
+        // Our own subscription now keeps the warmed /current listener alive
+        prefetcher.releasePrefetch();
+        connectLocalControl(deviceId);
+    }
+
+    // Looks for the fan on the local network; without it everything keeps going through Firebase
+    private void connectLocalControl(String deviceId) {
+        if (lanReadingRegistration != null) {
+            lanReadingRegistration.remove();
+            lanReadingRegistration = null;
+        }
+        if (lanRecordingRegistration != null) {
+            lanRecordingRegistration.remove();
+            lanRecordingRegistration = null;
+        }
+        String previousDeviceId = lanDeviceId;
+        lanDeviceId = deviceId;
+        lanExecutor.execute(() -> {
+            if (previousDeviceId != null) {
+                controlDataSource.disconnectLan(previousDeviceId);
+            }
+            try {
+                LanDevice device = LanDiscovery.find(deviceId, LAN_DISCOVERY_TIMEOUT_MS);
+                if (device == null || !deviceId.equals(currentDeviceId)) return;
+                controlDataSource.connectLan(device);
+                runOnUiThread(() -> observeLocalReadings(deviceId));
+            } catch (IOException e) {
+                android.util.Log.i("MainActivity", "Local control unavailable: " + e.getMessage());
+            }
+        });
+    }
+
+    private void observeLocalReadings(String deviceId) {
+        if (!deviceId.equals(currentDeviceId) || isDestroyed()) return;
+        // Live readings every few seconds between the ESP8266's uploads
+        lanReadingRegistration = controlDataSource.observeCurrent(deviceId, new DataObserver<CurrentReading>() {
+            @Override
+            public void onChanged(CurrentReading value) {
+                if (value == null) return;
+                runOnUiThread(() -> showDeviceReading(DeviceReading.fromCurrentReading(value)));
+            }
+
+            @Override
+            public void onError(Exception error) {
+                // The /current subscription reports cloud errors
+            }
+        });
+        // The recent history chart gets these too, not just the cloud's uploads
+        lanRecordingRegistration = controlDataSource.observeLanCurrent(deviceId, new DataObserver<CurrentReading>() {
+            @Override
+            public void onChanged(CurrentReading value) {
+                if (value == null) return;
+                runOnUiThread(() -> ((SmartFanApplication) getApplication()).getLiveRecorder()
+                    .recordLocal(deviceId, value));
+            }
+
+            @Override
+            public void onError(Exception error) {
+            }
+        });
+    }
+    
     private void showDeviceLinkingDialog() {
         new androidx.appcompat.app.AlertDialog.Builder(this)
             .setTitle(getString(R.string.message_device_setup_required))
@@ -242,70 +345,65 @@ public class MainActivity extends AppCompatActivity {
             })
             .setNegativeButton(getString(R.string.message_use_default), (dialog, which) -> {
                 // Set default device ID and save it
-                String defaultDeviceId = "SmartFan_ESP8266_000";
+                String defaultDeviceId = Constants.DEFAULT_DEVICE_ID;
                 dbRef.child("smartfan").child("users").child(uid).child("deviceId").setValue(defaultDeviceId);
-                currentDeviceId = defaultDeviceId;
-                loadDeviceName(defaultDeviceId);
-                setupDeviceCurrentDataListener(defaultDeviceId);
+                connectToDevice(defaultDeviceId);
             })
             .setCancelable(false)
             .show();
     }
     
-    private void showDeviceSelectionDialog(java.util.List<String> deviceIds) {
-        // Load device names for the dialog
-        String[] deviceNames = new String[deviceIds.size()];
-        java.util.concurrent.atomic.AtomicInteger loadedCount = new java.util.concurrent.atomic.AtomicInteger(0);
-        
-        for (int i = 0; i < deviceIds.size(); i++) {
-            final int index = i;
-            String deviceId = deviceIds.get(i);
-            
-            DatabaseReference deviceRef = dbRef.child("smartfan").child("devices").child(deviceId).child("name");
-            deviceRef.addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    String deviceName = snapshot.getValue(String.class);
-                    if (deviceName != null) {
-                        deviceNames[index] = deviceName;
-                    } else {
-                        deviceNames[index] = "Device " + deviceIds.get(index).substring(0, Math.min(8, deviceIds.get(index).length()));
-                    }
-                    
-                    if (loadedCount.incrementAndGet() == deviceIds.size()) {
-                        // All names loaded, show dialog
-                        showDeviceSelectionDialogWithNames(deviceIds, deviceNames);
-                    }
-                }
-                
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    deviceNames[index] = "Device " + deviceIds.get(index).substring(0, Math.min(8, deviceIds.get(index).length()));
-                    
-                    if (loadedCount.incrementAndGet() == deviceIds.size()) {
-                        // All names loaded, show dialog
-                        showDeviceSelectionDialogWithNames(deviceIds, deviceNames);
-                    }
-                }
-            });
+    private void showDeviceSelectionDialog() {
+        DeviceMetadataCache metadataCache = DeviceMetadataCache.getInstance(this);
+        java.util.List<String> deviceIds = metadataCache.getKnownDeviceIds();
+        if (currentDeviceId != null && !deviceIds.contains(currentDeviceId)) {
+            deviceIds.add(0, currentDeviceId);
         }
-    }
-    
-    private void showDeviceSelectionDialogWithNames(java.util.List<String> deviceIds, String[] deviceNames) {
-        new AlertDialog.Builder(this)
-            .setTitle("Select Device")
-            .setItems(deviceNames, (dialog, which) -> {
-                String selectedDeviceId = deviceIds.get(which);
-                currentDeviceId = selectedDeviceId;
-                loadDeviceName(selectedDeviceId);
-                setupDeviceCurrentDataListener(selectedDeviceId);
+        
+        // Open instantly from the cache, then refresh names in the background
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.select_dialog_item,
+            getDeviceDisplayNames(deviceIds));
+        
+        AlertDialog dialog = new AlertDialog.Builder(this)
+            .setTitle("Switch Active Fan")
+            .setAdapter(adapter, (d, which) -> {
+                connectToDevice(deviceIds.get(which));
             })
-            .setOnCancelListener(dialog -> {
-                // User cancelled, show demo data
-                hideLoadingState();
-                showDemoData();
+            .setOnCancelListener(d -> {
+                // User cancelled without a connected device, show demo data
+                if (currentDeviceId == null) {
+                    hideLoadingState();
+                    showDemoData();
+                }
             })
             .show();
+        
+        metadataCache.refresh(dbRef, uid, refreshedIds -> {
+            if (!dialog.isShowing()) return;
+            // Devices unlinked elsewhere drop out; the connected one stays selectable
+            deviceIds.clear();
+            deviceIds.addAll(refreshedIds);
+            if (currentDeviceId != null && !deviceIds.contains(currentDeviceId)) {
+                deviceIds.add(0, currentDeviceId);
+            }
+            adapter.clear();
+            adapter.addAll(getDeviceDisplayNames(deviceIds));
+            adapter.notifyDataSetChanged();
+        });
+    }
+    
+    private java.util.List<String> getDeviceDisplayNames(java.util.List<String> deviceIds) {
+        DeviceMetadataCache metadataCache = DeviceMetadataCache.getInstance(this);
+        java.util.List<String> deviceNames = new java.util.ArrayList<>();
+        for (String deviceId : deviceIds) {
+            String deviceName = metadataCache.getName(deviceId);
+            if (deviceName != null) {
+                deviceNames.add(deviceName);
+            } else {
+                deviceNames.add("Device " + deviceId.substring(0, Math.min(8, deviceId.length())));
+            }
+        }
+        return deviceNames;
     }
     
     private void showDemoData() {
@@ -324,80 +422,80 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void setupDeviceCurrentDataListener(String deviceId) {
-        DatabaseReference deviceCurrentRef = dbRef.child("smartfan").child("devices").child(deviceId).child("current");
+        // Release the previous device before switching so its updates stop reaching the UI
+        if (deviceCurrentSubscription != null) {
+            deviceCurrentSubscription.cancel();
+        }
         
-        deviceCurrentRef.addValueEventListener(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    // Device is online - data exists
-                    hideLoadingState();
-                    updateDeviceStatus(true);
-                    
-                    // Get temperature
-                    Double temperature = snapshot.child("temperature").getValue(Double.class);
-                    if (temperature != null) {
-                        updateTemperatureDisplay(temperature);
-                    }
-                    
-                    // Get humidity (for future use)
-                    Double humidity = snapshot.child("humidity").getValue(Double.class);
-                    
-                    // Get fan speed
-                    Integer fanSpeed = snapshot.child("fanSpeed").getValue(Integer.class);
-                    if (fanSpeed != null) {
-                        updateFanDisplay(fanSpeed);
-                    }
-                    
-                    // Get mode
-                    String mode = snapshot.child("mode").getValue(String.class);
-                    if (mode != null) {
-                        updateModeDisplay(mode);
-                    }
-                    
-                    // Get voltage and current
-                    Double voltage = snapshot.child("voltage").getValue(Double.class);
-                    Double current = snapshot.child("current").getValue(Double.class);
-                    if (voltage != null && current != null) {
-                        updatePowerDisplay(voltage, current);
-                    }
-                    
-                    // Get watt
-                    Double watt = snapshot.child("watt").getValue(Double.class);
-                    if (watt != null) {
-                        updateWattDisplay(watt);
-                    }
-                    
-                    // Get kWh
-                    Double kwh = snapshot.child("kwh").getValue(Double.class);
-                    if (kwh != null) {
-                        updateEnergyDisplay(kwh);
-                    }
-                    
-                    // Update last seen time from Firebase
-                    Long lastUpdate = snapshot.child("lastUpdate").getValue(Long.class);
-                    if (lastUpdate != null) {
-                        updateLastSeenTimeFromTimestamp(lastUpdate);
-                    } else {
-                        updateLastSeenTime(); // Fallback to current time
-                    }
-                    
-                } else {
-                    // Device is offline - no current data
+        // Keeps every live reading for the high-resolution recent chart in HistoryActivity
+        ((SmartFanApplication) getApplication()).getLiveRecorder().setDevice(deviceId);
+
+        // Shares the device's single /current listener with every other screen
+        deviceCurrentSubscription = DeviceSubscriptionManager.getInstance().subscribe(deviceId, 0,
+            new DeviceSubscriptionManager.Listener() {
+                @Override
+                public void onReading(String readingDeviceId, DeviceReading reading) {
+                    showDeviceReading(reading);
+                }
+                
+                @Override
+                public void onError(String readingDeviceId, DatabaseError error) {
                     hideLoadingState();
+                    showSnackbar("Failed to load device data: " + error.getMessage(), false);
                     updateDeviceStatus(false);
                     showDemoData();
                 }
+            });
+    }
+    
+    private void showDeviceReading(DeviceReading reading) {
+        if (!fullyDrawnReported) {
+            // Marks the end of startup for StartupTimingMetric (timeToFullDisplay)
+            fullyDrawnReported = true;
+            reportFullyDrawn();
+        }
+        
+        if (reading.online) {
+            // Device is online - data exists
+            hideLoadingState();
+            updateDeviceStatus(true);
+            
+            if (reading.temperature != null) {
+                updateTemperatureDisplay(reading.temperature);
             }
             
-            @Override
-            public void onCancelled(DatabaseError error) {
-                hideLoadingState();
-                showSnackbar("Failed to load device data: " + error.getMessage(), false);
-                updateDeviceStatus(false);
-                showDemoData();
+            if (reading.fanSpeed != null) {
+                updateFanDisplay(reading.fanSpeed);
             }
-        });
+            
+            if (reading.mode != null) {
+                updateModeDisplay(reading.mode);
+            }
+            
+            if (reading.voltage != null && reading.current != null) {
+                updatePowerDisplay(reading.voltage, reading.current);
+            }
+            
+            if (reading.watt != null) {
+                updateWattDisplay(reading.watt);
+            }
+            
+            if (reading.kwh != null) {
+                updateEnergyDisplay(reading.kwh);
+            }
+            
+            // Update last seen time from Firebase
+            if (reading.lastUpdate != null) {
+                updateLastSeenTimeFromTimestamp(reading.lastUpdate);
+            } else {
+                updateLastSeenTime(); // Fallback to current time
+            }
+        } else {
+            // Device is offline - no current data
+            hideLoadingState();
+            updateDeviceStatus(false);
+            showDemoData();
+        }
     }
 
     private void updateDeviceStatus(boolean isOnline) {
@@ -523,91 +621,109 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void loadDeviceName(String deviceId) {
-        DatabaseReference deviceRef = dbRef.child("smartfan").child("devices").child(deviceId).child("name");
-        deviceRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                String deviceName = snapshot.getValue(String.class);
-                if (deviceName != null && getSupportActionBar() != null) {
-                    getSupportActionBar().setTitle(deviceName);
-                } else if (getSupportActionBar() != null) {
-                    getSupportActionBar().setTitle("Smart Fan - " + deviceId.substring(0, Math.min(8, deviceId.length())));
-                }
-            }
-            
-            @Override
-            public void onCancelled(DatabaseError error) {
-                if (getSupportActionBar() != null) {
-                    getSupportActionBar().setTitle("Smart Fan");
-                }
+        // Show the cached name right away; only go to the network once it is stale
+        DeviceMetadataCache metadataCache = DeviceMetadataCache.getInstance(this);
+        metadataCache.addDevice(deviceId);
+        showDeviceName(deviceId, metadataCache.getName(deviceId));
+        
+        metadataCache.refreshDevice(dbRef, uid, deviceId, deviceIds -> {
+            if (deviceId.equals(currentDeviceId)) {
+                showDeviceName(deviceId, metadataCache.getName(deviceId));
             }
         });
     }
+    
+    private void showDeviceName(String deviceId, String deviceName) {
+        if (getSupportActionBar() == null) return;
+        if (deviceName != null) {
+            getSupportActionBar().setTitle(deviceName);
+        } else {
+            getSupportActionBar().setTitle("Smart Fan - " + deviceId.substring(0, Math.min(8, deviceId.length())));
+        }
+    }
 
     private void setupDeviceControlListener() {
         if (uid == null || currentDeviceId == null) {
             return;
         }
         
-        // Initialize control stream with default values if it doesn't exist
-        initializeControlStream();
+        // Stop following the previous device's control stream
+        if (deviceControlRef != null && deviceControlListener != null) {
+            deviceControlRef.removeEventListener(deviceControlListener);
+        }
         
-        // Listen to control stream for realtime updates from other sources
-        DatabaseReference deviceControlRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("control");
+        // Render the snapshot fetched during startup while the listener attaches
+        DataSnapshot prefetchedControl = StartupPrefetcher.getInstance(this).takeControlSnapshot(currentDeviceId);
+        if (prefetchedControl != null) {
+            showControlState(prefetchedControl);
+            if (!prefetchedControl.exists()) {
+                initializeControlStream();
+            }
+        } else {
+            // Initialize control stream with default values if it doesn't exist
+            initializeControlStream();
+        }
         
-        deviceControlRef.addValueEventListener(new ValueEventListener() {
+        // Listen to control stream for realtime updates from other sources
+        deviceControlRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("control");
+        deviceControlListener = new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    // Update UI based on control changes (from other sources like ESP8266 or other apps)
-                    
-                    // Get mode
-                    String mode = snapshot.child("mode").getValue(String.class);
-                    if (mode != null) {
-                        boolean isAutoMode = "auto".equals(mode);
-                        if (switchAutoMode.isChecked() != isAutoMode) {
-                            //switchAutoMode.setChecked(isAutoMode);
-                            sliderFanSpeed.setEnabled(!isAutoMode);
-                        }
-                    }
-                    
-                    // Get fan speed
-                    Integer fanSpeed = snapshot.child("fanSpeed").getValue(Integer.class);
-                    if (fanSpeed != null && fanSpeed != (int) sliderFanSpeed.getValue()) {
-                        sliderFanSpeed.setValue(fanSpeed);
-                        textViewFanSpeedLabel.setText("Fan Speed: " + fanSpeed);
-                    }
-                    
-                    // Get target temperature (if you add this control later)
-                    Double targetTemperature = snapshot.child("targetTemperature").getValue(Double.class);
-                    // Handle target temperature if needed in future
-                    
-                    // Get manual control state
-                    Boolean manualControl = snapshot.child("manualControl").getValue(Boolean.class);
-                    if (manualControl != null && manualControl) {
-                        // Manual control is enabled, ensure we're in manual mode
-                        if (switchAutoMode.isChecked()) {
-                            //switchAutoMode.setChecked(false);
-                            sliderFanSpeed.setEnabled(true);
-                        }
-                    }
-                }
+                showControlState(snapshot);
             }
             
             @Override
             public void onCancelled(DatabaseError error) {
                 showSnackbar("Failed to listen for control updates: " + error.getMessage(), false);
             }
-        });
+        };
+        deviceControlRef.addValueEventListener(deviceControlListener);
+    }
+    
+    private void showControlState(DataSnapshot snapshot) {
+        if (snapshot.exists()) {
+            // Update UI based on control changes (from other sources like ESP8266 or other apps)
+            
+            // Get mode
+            String mode = snapshot.child("mode").getValue(String.class);
+            if (mode != null) {
+                boolean isAutoMode = "auto".equals(mode);
+                if (switchAutoMode.isChecked() != isAutoMode) {
+                    //switchAutoMode.setChecked(isAutoMode);
+                    sliderFanSpeed.setEnabled(!isAutoMode);
+                }
+            }
+            
+            // Get fan speed
+            Integer fanSpeed = snapshot.child("fanSpeed").getValue(Integer.class);
+            if (fanSpeed != null && fanSpeed != (int) sliderFanSpeed.getValue()) {
+                sliderFanSpeed.setValue(fanSpeed);
+                textViewFanSpeedLabel.setText("Fan Speed: " + fanSpeed);
+            }
+            
+            // Get target temperature (if you add this control later)
+            Double targetTemperature = snapshot.child("targetTemperature").getValue(Double.class);
+            // Handle target temperature if needed in future
+            
+            // Get manual control state
+            Boolean manualControl = snapshot.child("manualControl").getValue(Boolean.class);
+            if (manualControl != null && manualControl) {
+                // Manual control is enabled, ensure we're in manual mode
+                if (switchAutoMode.isChecked()) {
+                    //switchAutoMode.setChecked(false);
+                    sliderFanSpeed.setEnabled(true);
+                }
+            }
+        }
     }
 
     private void initializeControlStream() {
         if (currentDeviceId == null) return;
         
-        DatabaseReference deviceControlRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("control");
+        DatabaseReference controlRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("control");
         
         // Check if control stream exists, if not initialize with defaults
-        deviceControlRef.addListenerForSingleValueEvent(new ValueEventListener() {
+        controlRef.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot snapshot) {
                 if (!snapshot.exists()) {
@@ -618,7 +734,7 @@ public class MainActivity extends AppCompatActivity {
                     defaultControl.put("targetTemperature", 25.0);
                     defaultControl.put("manualControl", false);
                     
-                    deviceControlRef.setValue(defaultControl)
+                    controlRef.setValue(defaultControl)
                         .addOnSuccessListener(aVoid -> {
                             showSnackbar("Control stream initialized", true);
                         })
@@ -692,15 +808,9 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         
-        // Write to control path for realtime streaming
-        DatabaseReference deviceControlRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("control");
-        deviceControlRef.child("targetTemperature").setValue(targetTemperature)
-            .addOnSuccessListener(aVoid -> {
-                showSnackbar("Target temperature updated to " + targetTemperature + "°C", true);
-            })
-            .addOnFailureListener(e -> {
-                showSnackbar("Failed to update target temperature: " + e.getMessage(), false);
-            });
+        // Goes to the fan over WiFi when it is reachable, and to the control path either way
+        updateControl(new ControlState(null, null, targetTemperature, null),
+            "Target temperature updated to " + targetTemperature + "°C", "Failed to update target temperature: ");
     }
 
     private void updateDeviceMode(String mode) {
@@ -709,22 +819,9 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         
-        // Write to control path for realtime streaming
-        DatabaseReference deviceControlRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("control");
-        deviceControlRef.child("mode").setValue(mode)
-            .addOnSuccessListener(aVoid -> {
-                showSnackbar("Mode updated to " + mode, true);
-                
-                // Also set manualControl flag for ESP8266 streaming
-                if ("manual".equals(mode)) {
-                    deviceControlRef.child("manualControl").setValue(true);
-                } else {
-                    deviceControlRef.child("manualControl").setValue(false);
-                }
-            })
-            .addOnFailureListener(e -> {
-                showSnackbar("Failed to update mode: " + e.getMessage(), false);
-            });
+        // manualControl is written with the mode for ESP8266 streaming
+        updateControl(new ControlState(mode, null, null, "manual".equals(mode)),
+            "Mode updated to " + mode, "Failed to update mode: ");
     }
 
     private void updateDeviceFanSpeed(int fanSpeed) {
@@ -733,15 +830,22 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
         
-        // Write to control path for realtime streaming
-        DatabaseReference deviceControlRef = dbRef.child("smartfan").child("devices").child(currentDeviceId).child("control");
-        deviceControlRef.child("fanSpeed").setValue(fanSpeed)
-            .addOnSuccessListener(aVoid -> {
-                showSnackbar("Fan speed updated to " + fanSpeed, true);
-            })
-            .addOnFailureListener(e -> {
-                showSnackbar("Failed to update fan speed: " + e.getMessage(), false);
-            });
+        updateControl(new ControlState(null, fanSpeed, null, null),
+            "Fan speed updated to " + fanSpeed, "Failed to update fan speed: ");
+    }
+
+    private void updateControl(ControlState changes, String successMessage, String failurePrefix) {
+        controlDataSource.updateControl(currentDeviceId, changes, new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                runOnUiThread(() -> showSnackbar(successMessage, true));
+            }
+
+            @Override
+            public void onError(Exception error) {
+                runOnUiThread(() -> showSnackbar(failurePrefix + error.getMessage(), false));
+            }
+        });
     }
 
     private void setupQuickActions() {
@@ -843,6 +947,8 @@ public class MainActivity extends AppCompatActivity {
             .setMessage(getString(R.string.dialog_logout))
             .setPositiveButton(getString(R.string.dialog_yes), (dialog, which) -> {
                 mAuth.signOut();
+                // The next user should not get this account's device speculatively prefetched
+                StartupPrefetcher.getInstance(MainActivity.this).forgetDeviceId();
                 startActivity(new Intent(MainActivity.this, com.qppd.smartfan.auth.LoginActivity.class));
                 finish();
             })
@@ -862,8 +968,9 @@ public class MainActivity extends AppCompatActivity {
     public boolean onCreateOptionsMenu(Menu menu) {
         menu.add(0, 1, Menu.NONE, "Settings").setIcon(R.drawable.ic_settings);
         menu.add(0, 2, Menu.NONE, "History").setIcon(R.drawable.ic_history);
-        menu.add(0, 3, Menu.NONE, "Devices").setIcon(R.drawable.ic_device_online);
+        menu.add(0, 3, Menu.NONE, "Switch Active Fan").setIcon(R.drawable.ic_device_online);
         menu.add(0, 4, Menu.NONE, "Logout").setIcon(R.drawable.ic_profile);
+        menu.add(0, 5, Menu.NONE, getString(R.string.devices_title)).setIcon(R.drawable.ic_fan);
         return true;
     }
 
@@ -877,17 +984,57 @@ public class MainActivity extends AppCompatActivity {
             startActivity(new Intent(MainActivity.this, HistoryActivity.class));
             return true;
         } else if (itemId == 3) {
+            showDeviceSelectionDialog();
+            return true;
+        } else if (itemId == 4) {
             showLogoutConfirmDialog();
             return true;
+        } else if (itemId == 5) {
+            startActivity(new Intent(MainActivity.this, DevicesActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (deviceCurrentSubscription != null) {
+            deviceCurrentSubscription.resume();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Stop live updates while the dashboard is not visible
+        if (deviceCurrentSubscription != null) {
+            deviceCurrentSubscription.pause();
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (deviceCurrentSubscription != null) {
+            deviceCurrentSubscription.cancel();
+        }
+        if (deviceControlRef != null && deviceControlListener != null) {
+            deviceControlRef.removeEventListener(deviceControlListener);
+        }
         if (fanRotationAnimator != null) {
             fanRotationAnimator.cancel();
         }
+        if (lanReadingRegistration != null) {
+            lanReadingRegistration.remove();
+        }
+        if (lanRecordingRegistration != null) {
+            lanRecordingRegistration.remove();
+        }
+        String lanDevice = lanDeviceId;
+        lanExecutor.execute(() -> {
+            if (lanDevice != null) controlDataSource.disconnectLan(lanDevice);
+        });
+        lanExecutor.shutdown();
     }
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import com.google.firebase.database.ValueEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.messaging.FirebaseMessaging;
+import com.qppd.smartfan.utils.DeviceMetadataCache;
 import java.util.Locale;
 
 public class SettingsActivity extends AppCompatActivity {
@@ -145,6 +146,7 @@ public class SettingsActivity extends AppCompatActivity {
         // Save device ID to user profile
         dbRef.child("smartfan").child("users").child(uid).child("deviceId").setValue(deviceId)
             .addOnSuccessListener(aVoid -> {
+                DeviceMetadataCache.getInstance(this).addDevice(deviceId);
                 showSnackbar(getString(R.string.message_device_id_saved), true);
                 // Optionally restart MainActivity to pick up new device ID
                 showSnackbar("Please restart the app to connect to the new device", true);
@@ -0,0 +1,75 @@
+package com.qppd.smartfan;
+
+import android.app.Application;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.FirebaseDatabase;
+import com.qppd.smartfan.core.recorder.FlightRecorder;
+import com.qppd.smartfan.core.tsdb.FileChunkStorage;
+import com.qppd.smartfan.core.tsdb.TimeSeriesStore;
+import com.qppd.smartfan.data.LiveRecorder;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SmartFanApplication extends Application {
+    // Default ports of the Firebase Local Emulator Suite
+    private static final int DATABASE_EMULATOR_PORT = 9000;
+    private static final int AUTH_EMULATOR_PORT = 9099;
+
+    /** Hours of live readings the flight recorder keeps, at one reading every two seconds. */
+    public static final int RECORDER_HOURS = 6;
+    private static final int RECORDER_CAPACITY = RECORDER_HOURS * 3600 / 2;
+
+    private TimeSeriesStore historyStore;
+    private final Map<String, FlightRecorder> flightRecorders = new HashMap<>();
+    private LiveRecorder liveRecorder;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.USE_FIREBASE_EMULATOR) {
+            // Benchmark builds run against a local emulator seeded with a fixed dataset.
+            // This must happen before any screen touches Firebase.
+            FirebaseDatabase.getInstance().useEmulator(BuildConfig.FIREBASE_EMULATOR_HOST, DATABASE_EMULATOR_PORT);
+            FirebaseAuth.getInstance().useEmulator(BuildConfig.FIREBASE_EMULATOR_HOST, AUTH_EMULATOR_PORT);
+        }
+        liveRecorder = new LiveRecorder(this);
+        registerActivityLifecycleCallbacks(liveRecorder);
+    }
+
+    /** Records the active device's live readings while any screen is started. */
+    public LiveRecorder getLiveRecorder() {
+        return liveRecorder;
+    }
+
+    /**
+     * History cached on the phone, shared by every screen. Opened on first use, which reads
+     * a directory listing, so call this off the main thread.
+     */
+    public synchronized TimeSeriesStore getHistoryStore() throws IOException {
+        if (historyStore == null) {
+            historyStore = new TimeSeriesStore(new FileChunkStorage(new File(getFilesDir(), "history")));
+        }
+        return historyStore;
+    }
+
+    /**
+     * Ring file of a device's recent live readings, opened on first use. Readings are
+     * recorded by {@link LiveRecorder} only, on its own thread.
+     */
+    public synchronized FlightRecorder getFlightRecorder(String deviceId) throws IOException {
+        FlightRecorder recorder = flightRecorders.get(deviceId);
+        if (recorder == null) {
+            File directory = new File(getFilesDir(), "recorder");
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            recorder = FlightRecorder.open(
+                new File(directory, URLEncoder.encode(deviceId, "UTF-8") + ".ring"), RECORDER_CAPACITY);
+            flightRecorders.put(deviceId, recorder);
+        }
+        return recorder;
+    }
+}
@@ -0,0 +1,66 @@
+package com.qppd.smartfan.data;
+
+import com.google.firebase.database.DataSnapshot;
+import com.qppd.smartfan.core.data.CurrentReading;
+
+/**
+ * Immutable view of a devices/{id}/current node. Missing fields stay null, matching how the
+ * dashboard treats partially written snapshots.
+ */
+public class DeviceReading {
+    public final boolean online;
+    public final Double temperature;
+    public final Double humidity;
+    public final Integer fanSpeed;
+    public final String mode;
+    public final Double voltage;
+    public final Double current;
+    public final Double watt;
+    public final Double kwh;
+    public final Long lastUpdate;    // Unix seconds written by the ESP8266
+
+    public DeviceReading(boolean online, Double temperature, Double humidity, Integer fanSpeed, String mode,
+                         Double voltage, Double current, Double watt, Double kwh, Long lastUpdate) {
+        this.online = online;
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.fanSpeed = fanSpeed;
+        this.mode = mode;
+        this.voltage = voltage;
+        this.current = current;
+        this.watt = watt;
+        this.kwh = kwh;
+        this.lastUpdate = lastUpdate;
+    }
+
+    public static DeviceReading fromSnapshot(DataSnapshot snapshot) {
+        if (!snapshot.exists()) {
+            return offline();
+        }
+        return new DeviceReading(
+            true,
+            snapshot.child("temperature").getValue(Double.class),
+            snapshot.child("humidity").getValue(Double.class),
+            snapshot.child("fanSpeed").getValue(Integer.class),
+            snapshot.child("mode").getValue(String.class),
+            snapshot.child("voltage").getValue(Double.class),
+            snapshot.child("current").getValue(Double.class),
+            snapshot.child("watt").getValue(Double.class),
+            snapshot.child("kwh").getValue(Double.class),
+            snapshot.child("lastUpdate").getValue(Long.class));
+    }
+
+    /** A reading that arrived over the LAN or through the core data source. */
+    public static DeviceReading fromCurrentReading(CurrentReading reading) {
+        return new DeviceReading(true, reading.temperature, reading.humidity, reading.fanSpeed, reading.mode,
+            reading.voltage, reading.current, reading.watt, reading.kwh, reading.lastUpdate);
+    }
+
+    public CurrentReading toCurrentReading() {
+        return new CurrentReading(temperature, humidity, fanSpeed, mode, voltage, current, watt, kwh, lastUpdate);
+    }
+
+    public static DeviceReading offline() {
+        return new DeviceReading(false, null, null, null, null, null, null, null, null, null);
+    }
+}
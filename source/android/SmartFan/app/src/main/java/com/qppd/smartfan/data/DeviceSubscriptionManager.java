@@ -0,0 +1,252 @@
+package com.qppd.smartfan.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+import com.qppd.smartfan.utils.Constants;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multiplexes devices/{id}/current listeners across every screen in the process.
+ *
+ * Each device gets exactly one Firebase listener no matter how many subscribers it has.
+ * Subscribers choose a minimum delivery interval; updates arriving faster than that are
+ * coalesced so only the newest snapshot is parsed and delivered. Paused subscriptions (for
+ * example off-screen dashboard tiles) stop receiving updates, and a device whose
+ * subscribers are all paused is detached from Firebase after a short linger period. A
+ * listener Firebase cancels is attached again, with growing delays, while any subscriber
+ * is active.
+ *
+ * All methods must be called on the main thread, which is also where Firebase delivers.
+ */
+public class DeviceSubscriptionManager {
+    // Keeps the listener alive across quick scrolls and activity transitions
+    private static final long DETACH_DELAY_MS = 5000;
+    // Retries of a cancelled listener start here and double up to the maximum
+    private static final long RETRY_INITIAL_DELAY_MS = 1000;
+    private static final long RETRY_MAX_DELAY_MS = 60000;
+
+    private static DeviceSubscriptionManager instance;
+
+    private final DatabaseReference devicesRef;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, DeviceChannel> channels = new HashMap<>();
+
+    public interface Listener {
+        void onReading(String deviceId, DeviceReading reading);
+        void onError(String deviceId, DatabaseError error);
+    }
+
+    public static synchronized DeviceSubscriptionManager getInstance() {
+        if (instance == null) {
+            instance = new DeviceSubscriptionManager(FirebaseDatabase.getInstance().getReference()
+                .child(Constants.FIREBASE_SMARTFAN_PATH).child(Constants.FIREBASE_DEVICES_PATH));
+        }
+        return instance;
+    }
+
+    private DeviceSubscriptionManager(DatabaseReference devicesRef) {
+        this.devicesRef = devicesRef;
+    }
+
+    /**
+     * Subscribes to a device's live readings. If a reading is already cached it is delivered
+     * right away, so screens opened after another subscriber render without waiting.
+     */
+    public Subscription subscribe(String deviceId, long minIntervalMs, Listener listener) {
+        DeviceChannel channel = channels.get(deviceId);
+        if (channel == null) {
+            channel = new DeviceChannel(deviceId);
+            channels.put(deviceId, channel);
+        }
+        Subscription subscription = new Subscription(channel, minIntervalMs, listener);
+        channel.subscriptions.add(subscription);
+        subscription.resume();
+        return subscription;
+    }
+
+    /**
+     * Returns the newest cached reading for a device without subscribing, or null.
+     */
+    public DeviceReading peek(String deviceId) {
+        DeviceChannel channel = channels.get(deviceId);
+        return channel != null ? channel.getReading() : null;
+    }
+
+    public class Subscription {
+        private final DeviceChannel channel;
+        private final long minIntervalMs;
+        private final Listener listener;
+        private final Runnable dispatchRunnable = this::deliver;
+        private boolean active;
+        private boolean cancelled;
+        private boolean dispatchPending;
+        private long lastDeliveredAt = -1;
+        private long deliveredVersion;
+
+        private Subscription(DeviceChannel channel, long minIntervalMs, Listener listener) {
+            this.channel = channel;
+            this.minIntervalMs = minIntervalMs;
+            this.listener = listener;
+        }
+
+        public String getDeviceId() {
+            return channel.deviceId;
+        }
+
+        public void pause() {
+            if (!active) return;
+            active = false;
+            handler.removeCallbacks(dispatchRunnable);
+            dispatchPending = false;
+            channel.deactivate();
+        }
+
+        public void resume() {
+            if (active || cancelled) return;
+            active = true;
+            channel.activate();
+            if (channel.version > deliveredVersion) {
+                onChannelUpdated();
+            }
+        }
+
+        public void cancel() {
+            if (cancelled) return;
+            pause();
+            cancelled = true;
+            channel.subscriptions.remove(this);
+            channel.releaseIfUnused();
+        }
+
+        private void onChannelUpdated() {
+            if (!active || dispatchPending) return;
+
+            long wait = lastDeliveredAt < 0 ? 0 : lastDeliveredAt + minIntervalMs - SystemClock.uptimeMillis();
+            if (wait <= 0) {
+                deliver();
+            } else {
+                // Coalesce: the delayed dispatch picks up whatever snapshot is newest by then
+                dispatchPending = true;
+                handler.postDelayed(dispatchRunnable, wait);
+            }
+        }
+
+        private void deliver() {
+            dispatchPending = false;
+            if (!active || channel.version == deliveredVersion) return;
+
+            DeviceReading reading = channel.getReading();
+            lastDeliveredAt = SystemClock.uptimeMillis();
+            deliveredVersion = channel.version;
+            listener.onReading(channel.deviceId, reading);
+        }
+    }
+
+    private class DeviceChannel implements ValueEventListener {
+        private final String deviceId;
+        private final DatabaseReference currentRef;
+        private final List<Subscription> subscriptions = new ArrayList<>();
+        private final Runnable detachRunnable = this::detachIfIdle;
+        private final Runnable retryRunnable = this::retryAttach;
+        private int activeCount;
+        private boolean attached;
+        private boolean retryPending;
+        private long retryDelayMs = RETRY_INITIAL_DELAY_MS;
+        private long version;
+        private DataSnapshot latestSnapshot;
+        private DeviceReading latestReading;
+
+        private DeviceChannel(String deviceId) {
+            this.deviceId = deviceId;
+            this.currentRef = devicesRef.child(deviceId).child(Constants.FIREBASE_CURRENT_PATH);
+        }
+
+        private void activate() {
+            activeCount++;
+            handler.removeCallbacks(detachRunnable);
+            // A pending retry attaches it when due
+            if (!attached && !retryPending) {
+                currentRef.addValueEventListener(this);
+                attached = true;
+            }
+        }
+
+        private void deactivate() {
+            activeCount--;
+            if (activeCount == 0) {
+                handler.postDelayed(detachRunnable, DETACH_DELAY_MS);
+            }
+        }
+
+        private void detachIfIdle() {
+            if (activeCount > 0) return;
+            if (attached) {
+                currentRef.removeEventListener(this);
+                attached = false;
+            }
+            handler.removeCallbacks(retryRunnable);
+            retryPending = false;
+            retryDelayMs = RETRY_INITIAL_DELAY_MS;
+            releaseIfUnused();
+        }
+
+        private void retryAttach() {
+            retryPending = false;
+            if (activeCount == 0 || attached) return;
+            currentRef.addValueEventListener(this);
+            attached = true;
+        }
+
+        private void releaseIfUnused() {
+            if (subscriptions.isEmpty() && !attached) {
+                channels.remove(deviceId);
+            }
+        }
+
+        private DeviceReading getReading() {
+            // Parsed lazily so throttled-away snapshots never cost any main-thread work
+            if (latestReading == null && latestSnapshot != null) {
+                latestReading = DeviceReading.fromSnapshot(latestSnapshot);
+            }
+            return latestReading;
+        }
+
+        @Override
+        public void onDataChange(@NonNull DataSnapshot snapshot) {
+            retryDelayMs = RETRY_INITIAL_DELAY_MS;
+            latestSnapshot = snapshot;
+            latestReading = null;
+            version++;
+            // Copy since a listener may cancel its subscription while being notified
+            for (Subscription subscription : new ArrayList<>(subscriptions)) {
+                subscription.onChannelUpdated();
+            }
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            attached = false;
+            for (Subscription subscription : new ArrayList<>(subscriptions)) {
+                if (subscription.active) {
+                    subscription.listener.onError(deviceId, error);
+                }
+            }
+            // Firebase drops a cancelled listener, so it is attached again for whoever still wants it
+            if (activeCount > 0 && !retryPending) {
+                retryPending = true;
+                handler.postDelayed(retryRunnable, retryDelayMs);
+                retryDelayMs = Math.min(retryDelayMs * 2, RETRY_MAX_DELAY_MS);
+            }
+        }
+    }
+}
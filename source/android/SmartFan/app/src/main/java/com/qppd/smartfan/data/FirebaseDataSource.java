@@ -0,0 +1,402 @@
+package com.qppd.smartfan.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseException;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogDigests;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.utils.Constants;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link SmartFanDataSource} over the Firebase Realtime Database SDK. Callbacks arrive on
+ * the main thread.
+ */
+public class FirebaseDataSource implements SmartFanDataSource {
+    private static FirebaseDataSource instance;
+    // History downloads are decoded off the main thread; a day of rows takes tens of ms
+    private static final int DECODE_THREADS = 2;
+
+    private final DatabaseReference smartfanRef;
+    private final ExecutorService decoder = Executors.newFixedThreadPool(DECODE_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized FirebaseDataSource getInstance() {
+        if (instance == null) {
+            instance = new FirebaseDataSource(FirebaseDatabase.getInstance().getReference()
+                .child(Constants.FIREBASE_SMARTFAN_PATH));
+        }
+        return instance;
+    }
+
+    private FirebaseDataSource(DatabaseReference smartfanRef) {
+        this.smartfanRef = smartfanRef;
+    }
+
+    private DatabaseReference deviceRef(String deviceId) {
+        return smartfanRef.child(Constants.FIREBASE_DEVICES_PATH).child(deviceId);
+    }
+
+    @Override
+    public void fetchUserDeviceId(String uid, DataCallback<String> callback) {
+        smartfanRef.child(Constants.FIREBASE_USERS_PATH).child(uid).child(Constants.FIREBASE_DEVICE_ID_PATH)
+            .addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    String deviceId = snapshot.getValue(String.class);
+                    callback.onSuccess(deviceId != null && !deviceId.isEmpty() ? deviceId : null);
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    callback.onError(error.toException());
+                }
+            });
+    }
+
+    @Override
+    public Registration observeCurrent(String deviceId, DataObserver<CurrentReading> observer) {
+        return observe(deviceRef(deviceId).child(Constants.FIREBASE_CURRENT_PATH), new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                observer.onChanged(snapshot.exists() ? toCurrentReading(snapshot) : null);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                observer.onError(error.toException());
+            }
+        });
+    }
+
+    @Override
+    public Registration observeControl(String deviceId, DataObserver<ControlState> observer) {
+        return observe(deviceRef(deviceId).child(Constants.FIREBASE_CONTROL_PATH), new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                observer.onChanged(snapshot.exists() ? toControlState(snapshot) : null);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                observer.onError(error.toException());
+            }
+        });
+    }
+
+    @Override
+    public void fetchLogs(String deviceId, long fromMillis, long toMillis, DataCallback<List<LogEntry>> callback) {
+        // Log keys are Unix seconds, which the database orders numerically
+        long fromSeconds = (fromMillis + 999) / 1000;
+        long lastSeconds = (toMillis - 1) / 1000;
+        LogsFetch fetch = new LogsFetch(fromSeconds, lastSeconds, callback, decoder, mainHandler);
+        deviceRef(deviceId).child(Constants.FIREBASE_LOGS_PATH).orderByKey()
+            .startAt(String.valueOf(fromSeconds)).endAt(String.valueOf(lastSeconds))
+            .addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    decoder.execute(() -> {
+                        List<LogEntry> entries = new ArrayList<>((int) snapshot.getChildrenCount());
+                        for (DataSnapshot logSnapshot : snapshot.getChildren()) {
+                            LogEntry entry = logSnapshot.getValue(LogEntry.class);
+                            if (entry != null) {
+                                entries.add(entry);
+                            }
+                        }
+                        mainHandler.post(() -> fetch.onRows(entries));
+                    });
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    fetch.onError(error.toException());
+                }
+            });
+        // Packed history, in blocks that may start up to a day before the range
+        deviceRef(deviceId).child(LogBlocks.PATH).orderByKey()
+            .startAt(String.valueOf(LogBlocks.firstBlockKey(fromSeconds))).endAt(String.valueOf(lastSeconds))
+            .addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    List<String> blocks = new ArrayList<>((int) snapshot.getChildrenCount());
+                    for (DataSnapshot blockSnapshot : snapshot.getChildren()) {
+                        Object block = blockSnapshot.getValue();
+                        if (block instanceof String) {
+                            blocks.add((String) block);
+                        }
+                    }
+                    fetch.onBlocks(blocks);
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    fetch.onError(error.toException());
+                }
+            });
+    }
+
+    @Override
+    public void fetchLogDigests(String deviceId, long fromMillis, long toMillis,
+                                DataCallback<Map<Long, LogDigest>> callback) {
+        long fromSeconds = (fromMillis + 999) / 1000;
+        long lastSeconds = (toMillis - 1) / 1000;
+        deviceRef(deviceId).child(LogDigests.PATH).orderByKey()
+            .startAt(String.valueOf(fromSeconds)).endAt(String.valueOf(lastSeconds))
+            .addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    Map<Long, LogDigest> digests = new TreeMap<>();
+                    for (DataSnapshot daySnapshot : snapshot.getChildren()) {
+                        LogDigest digest = toLogDigest(daySnapshot);
+                        if (digest == null) continue;
+                        try {
+                            digests.put(Long.parseLong(daySnapshot.getKey()), digest);
+                        } catch (NumberFormatException e) {
+                            // Not a day key
+                        }
+                    }
+                    callback.onSuccess(digests);
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    callback.onError(error.toException());
+                }
+            });
+    }
+
+    @Override
+    public void writeCurrent(String deviceId, CurrentReading reading, DataCallback<Void> callback) {
+        Map<String, Object> values = new HashMap<>();
+        putIfSet(values, "temperature", reading.temperature);
+        putIfSet(values, "humidity", reading.humidity);
+        putIfSet(values, "fanSpeed", reading.fanSpeed);
+        putIfSet(values, "mode", reading.mode);
+        putIfSet(values, "voltage", reading.voltage);
+        putIfSet(values, "current", reading.current);
+        putIfSet(values, "watt", reading.watt);
+        putIfSet(values, "kwh", reading.kwh);
+        putIfSet(values, "lastUpdate", reading.lastUpdate);
+        complete(deviceRef(deviceId).child(Constants.FIREBASE_CURRENT_PATH).setValue(values), callback);
+    }
+
+    @Override
+    public void appendLog(String deviceId, LogEntry entry, DataCallback<Void> callback) {
+        if (entry.timestamp == null) {
+            callback.onError(new IllegalArgumentException("Log entries are keyed by timestamp"));
+            return;
+        }
+        complete(deviceRef(deviceId).child(Constants.FIREBASE_LOGS_PATH).child(String.valueOf(entry.timestamp))
+            .setValue(entry), callback);
+    }
+
+    @Override
+    public void updateControl(String deviceId, ControlState changes, DataCallback<Void> callback) {
+        Map<String, Object> values = new HashMap<>();
+        putControl(values, "", changes);
+        complete(deviceRef(deviceId).child(Constants.FIREBASE_CONTROL_PATH).updateChildren(values), callback);
+    }
+
+    @Override
+    public void updateControls(Map<String, ControlState> changesByDevice, DataCallback<Void> callback) {
+        // One multi-path update with field-level paths, so omitted fields keep their values
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, ControlState> device : changesByDevice.entrySet()) {
+            putControl(values, Constants.FIREBASE_DEVICES_PATH + "/" + device.getKey() + "/"
+                + Constants.FIREBASE_CONTROL_PATH + "/", device.getValue());
+        }
+        if (values.isEmpty()) {
+            if (callback != null) callback.onSuccess(null);
+            return;
+        }
+        complete(smartfanRef.updateChildren(values), callback);
+    }
+
+    @Override
+    public void fetchGroups(String uid, DataCallback<List<DeviceGroup>> callback) {
+        groupsRef(uid).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                List<DeviceGroup> groups = new ArrayList<>((int) snapshot.getChildrenCount());
+                for (DataSnapshot groupSnapshot : snapshot.getChildren()) {
+                    groups.add(toDeviceGroup(groupSnapshot));
+                }
+                callback.onSuccess(groups);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                callback.onError(error.toException());
+            }
+        });
+    }
+
+    @Override
+    public void saveGroup(String uid, DeviceGroup group, DataCallback<Void> callback) {
+        Map<String, Object> devices = new HashMap<>();
+        for (String deviceId : group.deviceIds) {
+            devices.put(deviceId, true);
+        }
+        Map<String, Object> values = new HashMap<>();
+        putIfSet(values, Constants.FIREBASE_NAME_PATH, group.name);
+        values.put(Constants.FIREBASE_DEVICES_PATH, devices);
+        complete(groupsRef(uid).child(group.id).setValue(values), callback);
+    }
+
+    @Override
+    public void deleteGroup(String uid, String groupId, DataCallback<Void> callback) {
+        complete(groupsRef(uid).child(groupId).removeValue(), callback);
+    }
+
+    /**
+     * A key for a new group, unique and ordered by creation time.
+     */
+    public String newGroupId(String uid) {
+        return groupsRef(uid).push().getKey();
+    }
+
+    private DatabaseReference groupsRef(String uid) {
+        return smartfanRef.child(Constants.FIREBASE_USERS_PATH).child(uid).child(Constants.FIREBASE_GROUPS_PATH);
+    }
+
+    private Registration observe(DatabaseReference ref, ValueEventListener listener) {
+        ref.addValueEventListener(listener);
+        return () -> ref.removeEventListener(listener);
+    }
+
+    private void complete(Task<Void> task, DataCallback<Void> callback) {
+        if (callback == null) return;
+        task.addOnSuccessListener(aVoid -> callback.onSuccess(null))
+            .addOnFailureListener(callback::onError);
+    }
+
+    private static void putControl(Map<String, Object> values, String prefix, ControlState changes) {
+        putIfSet(values, prefix + "mode", changes.mode);
+        putIfSet(values, prefix + "fanSpeed", changes.fanSpeed);
+        putIfSet(values, prefix + "targetTemperature", changes.targetTemperature);
+        putIfSet(values, prefix + "manualControl", changes.manualControl);
+        putIfSet(values, prefix + "updatedAt", changes.updatedAt);
+    }
+
+    private static void putIfSet(Map<String, Object> values, String key, Object value) {
+        if (value != null) {
+            values.put(key, value);
+        }
+    }
+
+    static CurrentReading toCurrentReading(DataSnapshot snapshot) {
+        return new CurrentReading(
+            snapshot.child("temperature").getValue(Double.class),
+            snapshot.child("humidity").getValue(Double.class),
+            snapshot.child("fanSpeed").getValue(Integer.class),
+            snapshot.child("mode").getValue(String.class),
+            snapshot.child("voltage").getValue(Double.class),
+            snapshot.child("current").getValue(Double.class),
+            snapshot.child("watt").getValue(Double.class),
+            snapshot.child("kwh").getValue(Double.class),
+            snapshot.child("lastUpdate").getValue(Long.class));
+    }
+
+    static ControlState toControlState(DataSnapshot snapshot) {
+        return new ControlState(
+            snapshot.child("mode").getValue(String.class),
+            snapshot.child("fanSpeed").getValue(Integer.class),
+            snapshot.child("targetTemperature").getValue(Double.class),
+            snapshot.child("manualControl").getValue(Boolean.class),
+            snapshot.child("updatedAt").getValue(Long.class));
+    }
+
+    // Null unless both fields are present and well formed
+    static LogDigest toLogDigest(DataSnapshot snapshot) {
+        try {
+            Long rows = snapshot.child(LogDigests.ROWS).getValue(Long.class);
+            String hash = snapshot.child(LogDigests.HASH).getValue(String.class);
+            if (rows == null || hash == null) return null;
+            return new LogDigest(rows.intValue(), LogDigest.parseHash(hash));
+        } catch (DatabaseException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static DeviceGroup toDeviceGroup(DataSnapshot snapshot) {
+        DataSnapshot members = snapshot.child(Constants.FIREBASE_DEVICES_PATH);
+        List<String> deviceIds = new ArrayList<>((int) members.getChildrenCount());
+        for (DataSnapshot member : members.getChildren()) {
+            deviceIds.add(member.getKey());
+        }
+        return new DeviceGroup(snapshot.getKey(), snapshot.child(Constants.FIREBASE_NAME_PATH).getValue(String.class),
+            deviceIds);
+    }
+
+    // Joins the row and block queries of one fetchLogs call. Both answer on the main thread;
+    // the blocks are unpacked on the decoder and the result posted back.
+    private static class LogsFetch {
+        private final long fromSeconds;
+        private final long lastSeconds;
+        private final DataCallback<List<LogEntry>> callback;
+        private final ExecutorService decoder;
+        private final Handler mainHandler;
+        private List<LogEntry> rows;
+        private List<String> blocks;
+        private boolean failed;
+
+        LogsFetch(long fromSeconds, long lastSeconds, DataCallback<List<LogEntry>> callback,
+                  ExecutorService decoder, Handler mainHandler) {
+            this.fromSeconds = fromSeconds;
+            this.lastSeconds = lastSeconds;
+            this.callback = callback;
+            this.decoder = decoder;
+            this.mainHandler = mainHandler;
+        }
+
+        void onRows(List<LogEntry> rows) {
+            this.rows = rows;
+            completeIfReady();
+        }
+
+        void onBlocks(List<String> blocks) {
+            this.blocks = blocks;
+            completeIfReady();
+        }
+
+        void onError(Exception error) {
+            if (failed) return;
+            failed = true;
+            callback.onError(error);
+        }
+
+        private void completeIfReady() {
+            if (failed || rows == null || blocks == null) return;
+            List<LogEntry> rows = this.rows;
+            List<String> blocks = this.blocks;
+            decoder.execute(() -> {
+                List<LogEntry> merged = LogBlocks.merge(rows, blocks, fromSeconds, lastSeconds);
+                mainHandler.post(() -> {
+                    if (!failed) callback.onSuccess(merged);
+                });
+            });
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.qppd.smartfan.data;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.database.DatabaseError;
+import com.qppd.smartfan.SmartFanApplication;
+import com.qppd.smartfan.core.data.CurrentReading;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records the live readings of the active device into its flight recorder while any screen
+ * of the app is started, not just the dashboard, so the recent chart of HistoryActivity
+ * keeps filling while it is the screen in front.
+ *
+ * Holds its own {@link DeviceSubscriptionManager} subscription, which shares the device's
+ * one Firebase listener with the screens'; readings the fan sends over the LAN come in
+ * through {@link #recordLocal}. The ring file is opened and written on a single
+ * background thread; listeners hear of each recorded reading on the main thread afterwards.
+ *
+ * All methods must be called on the main thread.
+ */
+public class LiveRecorder implements Application.ActivityLifecycleCallbacks {
+    private static final String TAG = "LiveRecorder";
+
+    public interface Listener {
+        void onRecorded(String deviceId);
+    }
+
+    private final SmartFanApplication application;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService recorderExecutor = Executors.newSingleThreadExecutor();
+    private final List<Listener> listeners = new ArrayList<>();
+    private DeviceSubscriptionManager.Subscription subscription;
+    private int startedActivities;
+
+    public LiveRecorder(SmartFanApplication application) {
+        this.application = application;
+    }
+
+    /**
+     * Records the readings of {@code deviceId} from now on, instead of the device before.
+     */
+    public void setDevice(String deviceId) {
+        if (subscription != null) {
+            if (subscription.getDeviceId().equals(deviceId)) return;
+            subscription.cancel();
+        }
+        // Opens the ring file ahead of the first reading
+        recorderExecutor.execute(() -> {
+            try {
+                application.getFlightRecorder(deviceId);
+            } catch (IOException e) {
+                android.util.Log.w(TAG, "Flight recorder unavailable: " + e.getMessage());
+            }
+        });
+        subscription = DeviceSubscriptionManager.getInstance().subscribe(deviceId, 0,
+            new DeviceSubscriptionManager.Listener() {
+                @Override
+                public void onReading(String readingDeviceId, DeviceReading reading) {
+                    if (reading.online) {
+                        record(readingDeviceId, System.currentTimeMillis(), reading.toCurrentReading());
+                    }
+                }
+
+                @Override
+                public void onError(String readingDeviceId, DatabaseError error) {
+                    android.util.Log.w(TAG, "Live readings of " + readingDeviceId + " failed: " + error.getMessage());
+                }
+            });
+        if (startedActivities == 0) {
+            subscription.pause();
+        }
+    }
+
+    /**
+     * Records a reading the fan sent over its LAN connection, which Firebase never sees, if it
+     * is of the device being recorded.
+     */
+    public void recordLocal(String deviceId, CurrentReading reading) {
+        if (subscription == null || !subscription.getDeviceId().equals(deviceId) || startedActivities == 0) {
+            return;
+        }
+        record(deviceId, System.currentTimeMillis(), reading);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void record(String deviceId, long receivedMillis, CurrentReading reading) {
+        recorderExecutor.execute(() -> {
+            try {
+                application.getFlightRecorder(deviceId).record(receivedMillis, reading);
+            } catch (IOException e) {
+                android.util.Log.w(TAG, "Flight recorder unavailable: " + e.getMessage());
+                return;
+            }
+            handler.post(() -> {
+                // Copy since a listener may remove itself while being notified
+                for (Listener listener : new ArrayList<>(listeners)) {
+                    listener.onRecorded(deviceId);
+                }
+            });
+        });
+    }
+
+    @Override
+    public void onActivityStarted(@NonNull Activity activity) {
+        if (startedActivities++ == 0 && subscription != null) {
+            subscription.resume();
+        }
+    }
+
+    @Override
+    public void onActivityStopped(@NonNull Activity activity) {
+        if (--startedActivities == 0 && subscription != null) {
+            subscription.pause();
+        }
+    }
+
+    @Override
+    public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(@NonNull Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(@NonNull Activity activity) {
+    }
+}
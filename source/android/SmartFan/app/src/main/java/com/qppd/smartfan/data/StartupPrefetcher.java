@@ -0,0 +1,266 @@
+package com.qppd.smartfan.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+import com.qppd.smartfan.utils.Constants;
+import com.qppd.smartfan.utils.DeviceMetadataCache;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads everything the dashboard needs while the splash screen is showing.
+ *
+ * The cached auth user is read synchronously. The user's deviceId read then runs in
+ * parallel with the device name, the first /current snapshot and the /control snapshot of
+ * the device used last time, so in the common case the whole graph costs one round trip.
+ * If the deviceId turns out to be different, the device reads are restarted for it.
+ *
+ * The /current data is warmed through {@link DeviceSubscriptionManager}, so the dashboard's
+ * own subscription receives the cached reading immediately. The warm-up subscription is
+ * released once the dashboard connects, or after a grace period if it never does.
+ *
+ * All methods must be called on the main thread, which is also where Firebase delivers.
+ */
+public class StartupPrefetcher {
+    private static final String PREFS_NAME = "startup";
+    private static final String KEY_LAST_DEVICE_ID = "last_device_id";
+    // Warm listeners are dropped if no screen claims them within this window
+    private static final long RELEASE_DELAY_MS = 15000;
+
+    private static StartupPrefetcher instance;
+
+    private final Context appContext;
+    private final SharedPreferences prefs;
+    private final DatabaseReference dbRef;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable releaseRunnable = this::releasePrefetch;
+    private final List<ReadyListener> readyListeners = new ArrayList<>();
+
+    private String uid;
+    private boolean ready;
+    private boolean deviceIdResolved;
+    private String deviceId;
+    private String prefetchedDeviceId;
+    private DeviceSubscriptionManager.Subscription currentSubscription;
+    private boolean currentLoaded;
+    private boolean controlLoaded;
+    private DataSnapshot controlSnapshot;
+
+    public interface ReadyListener {
+        void onReady();
+    }
+
+    public static synchronized StartupPrefetcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new StartupPrefetcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private StartupPrefetcher(Context context) {
+        appContext = context;
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        dbRef = FirebaseDatabase.getInstance().getReference();
+    }
+
+    /**
+     * Starts a new prefetch run, discarding the results of any previous one.
+     */
+    public void start() {
+        releasePrefetch();
+        readyListeners.clear();
+        ready = false;
+        deviceIdResolved = false;
+        deviceId = null;
+
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            // Nothing to load before the login screen
+            uid = null;
+            markReady();
+            return;
+        }
+        uid = user.getUid();
+
+        // Speculate on the last used device while its id is being confirmed
+        String lastDeviceId = prefs.getString(KEY_LAST_DEVICE_ID, null);
+        if (lastDeviceId != null) {
+            prefetchDevice(lastDeviceId);
+        }
+
+        String requestUid = uid;
+        dbRef.child(Constants.FIREBASE_SMARTFAN_PATH).child(Constants.FIREBASE_USERS_PATH).child(uid)
+            .child(Constants.FIREBASE_DEVICE_ID_PATH)
+            .addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    if (requestUid.equals(uid)) {
+                        onDeviceIdResolved(snapshot.getValue(String.class));
+                    }
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    // The dashboard reports the error and falls back on its own
+                    if (requestUid.equals(uid)) {
+                        onDeviceIdResolved(null);
+                    }
+                }
+            });
+
+        handler.postDelayed(releaseRunnable, RELEASE_DELAY_MS);
+    }
+
+    /**
+     * Runs the listener once the dashboard has what it needs to render populated.
+     * Runs it immediately if that already happened.
+     */
+    public void whenReady(ReadyListener listener) {
+        if (ready) {
+            listener.onReady();
+        } else {
+            readyListeners.add(listener);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isSignedIn() {
+        return uid != null;
+    }
+
+    /**
+     * Returns the confirmed device id of the signed in user, or null if not resolved (yet).
+     */
+    public String getDeviceId() {
+        return deviceIdResolved ? deviceId : null;
+    }
+
+    /**
+     * Hands over the prefetched /control snapshot for a device. Each snapshot is handed out once.
+     */
+    public DataSnapshot takeControlSnapshot(String forDeviceId) {
+        if (controlSnapshot == null || !forDeviceId.equals(prefetchedDeviceId)) return null;
+        DataSnapshot snapshot = controlSnapshot;
+        controlSnapshot = null;
+        return snapshot;
+    }
+
+    /**
+     * Records the device to speculate on during the next startup.
+     */
+    public void rememberDeviceId(String rememberedDeviceId) {
+        prefs.edit().putString(KEY_LAST_DEVICE_ID, rememberedDeviceId).apply();
+    }
+
+    public void forgetDeviceId() {
+        prefs.edit().remove(KEY_LAST_DEVICE_ID).apply();
+    }
+
+    /**
+     * Drops the warm-up /current subscription. Call after the dashboard subscribed itself.
+     */
+    public void releasePrefetch() {
+        handler.removeCallbacks(releaseRunnable);
+        if (currentSubscription != null) {
+            currentSubscription.cancel();
+            currentSubscription = null;
+        }
+    }
+
+    private void onDeviceIdResolved(String resolvedDeviceId) {
+        deviceIdResolved = true;
+        if (resolvedDeviceId == null || resolvedDeviceId.isEmpty()) {
+            // The dashboard asks the user to link a device, there is nothing more to load
+            deviceId = null;
+            markReady();
+            return;
+        }
+
+        deviceId = resolvedDeviceId;
+        rememberDeviceId(resolvedDeviceId);
+        if (!resolvedDeviceId.equals(prefetchedDeviceId)) {
+            // Speculation missed, fetch the right device now
+            prefetchDevice(resolvedDeviceId);
+        }
+        checkReady();
+    }
+
+    private void prefetchDevice(String targetDeviceId) {
+        if (currentSubscription != null) {
+            currentSubscription.cancel();
+        }
+        prefetchedDeviceId = targetDeviceId;
+        currentLoaded = false;
+        controlLoaded = false;
+        controlSnapshot = null;
+
+        DeviceMetadataCache.getInstance(appContext).refreshDevice(dbRef, uid, targetDeviceId, null);
+
+        currentSubscription = DeviceSubscriptionManager.getInstance().subscribe(targetDeviceId, 0,
+            new DeviceSubscriptionManager.Listener() {
+                @Override
+                public void onReading(String readingDeviceId, DeviceReading reading) {
+                    onCurrentLoaded(readingDeviceId);
+                }
+
+                @Override
+                public void onError(String readingDeviceId, DatabaseError error) {
+                    onCurrentLoaded(readingDeviceId);
+                }
+            });
+
+        dbRef.child(Constants.FIREBASE_SMARTFAN_PATH).child(Constants.FIREBASE_DEVICES_PATH).child(targetDeviceId)
+            .child(Constants.FIREBASE_CONTROL_PATH)
+            .addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    if (!targetDeviceId.equals(prefetchedDeviceId)) return;
+                    controlSnapshot = snapshot;
+                    controlLoaded = true;
+                    checkReady();
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    if (!targetDeviceId.equals(prefetchedDeviceId)) return;
+                    controlLoaded = true;
+                    checkReady();
+                }
+            });
+    }
+
+    private void onCurrentLoaded(String readingDeviceId) {
+        if (!readingDeviceId.equals(prefetchedDeviceId)) return;
+        currentLoaded = true;
+        checkReady();
+    }
+
+    private void checkReady() {
+        if (ready || !deviceIdResolved) return;
+        if (deviceId.equals(prefetchedDeviceId) && currentLoaded && controlLoaded) {
+            markReady();
+        }
+    }
+
+    private void markReady() {
+        ready = true;
+        List<ReadyListener> listeners = new ArrayList<>(readyListeners);
+        readyListeners.clear();
+        for (ReadyListener listener : listeners) {
+            listener.onReady();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.qppd.smartfan.ui;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+import com.qppd.smartfan.core.history.UsageHeatmap;
+
+/**
+ * Draws a {@link UsageHeatmap}: a row per day, oldest at the top, a column per hour, each
+ * cell shaded from light (lowest average shown) to the quantity's color (highest). Cells
+ * without readings stay grey. Reads the heatmap's cells directly when drawing.
+ */
+public class HeatmapView extends View {
+    private static final int LOW_COLOR = Color.parseColor("#FFF8E1");
+    private static final int EMPTY_COLOR = Color.parseColor("#EEEEEE");
+    private static final int TEMPERATURE_COLOR = Color.parseColor("#FF5722");
+    private static final int POWER_COLOR = Color.parseColor("#4CAF50");
+    private static final int FAN_ON_COLOR = Color.parseColor("#2196F3");
+    private static final int LABEL_EVERY_HOURS = 6;
+
+    private final Paint cellPaint = new Paint();
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private UsageHeatmap heatmap;
+    private UsageHeatmap.Quantity quantity = UsageHeatmap.Quantity.TEMPERATURE;
+    private float min;
+    private float max;
+
+    public HeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public HeatmapView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        labelPaint.setColor(Color.parseColor("#757575"));
+        labelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 10,
+            getResources().getDisplayMetrics()));
+    }
+
+    /**
+     * Shows the quantity of the heatmap, or nothing if it is null. Call again after rows
+     * were added to it.
+     */
+    public void setHeatmap(UsageHeatmap heatmap, UsageHeatmap.Quantity quantity) {
+        this.heatmap = heatmap;
+        this.quantity = quantity;
+        min = Float.POSITIVE_INFINITY;
+        max = Float.NEGATIVE_INFINITY;
+        if (heatmap != null) {
+            for (int day = 0; day < heatmap.days(); day++) {
+                for (int hour = 0; hour < UsageHeatmap.HOURS; hour++) {
+                    float value = heatmap.value(quantity, day, hour);
+                    if (!Float.isNaN(value)) {
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                    }
+                }
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (heatmap == null || heatmap.days() == 0) return;
+
+        float labelHeight = labelPaint.getTextSize() * 1.5f;
+        float cellWidth = getWidth() / (float) UsageHeatmap.HOURS;
+        float cellHeight = (getHeight() - labelHeight) / heatmap.days();
+        int color = quantity == UsageHeatmap.Quantity.TEMPERATURE ? TEMPERATURE_COLOR
+            : quantity == UsageHeatmap.Quantity.POWER ? POWER_COLOR : FAN_ON_COLOR;
+
+        for (int day = 0; day < heatmap.days(); day++) {
+            for (int hour = 0; hour < UsageHeatmap.HOURS; hour++) {
+                float value = heatmap.value(quantity, day, hour);
+                if (Float.isNaN(value)) {
+                    cellPaint.setColor(EMPTY_COLOR);
+                } else {
+                    float fraction = max > min ? (value - min) / (max - min) : 1f;
+                    cellPaint.setColor(blend(LOW_COLOR, color, fraction));
+                }
+                canvas.drawRect(hour * cellWidth, day * cellHeight,
+                    (hour + 1) * cellWidth, (day + 1) * cellHeight, cellPaint);
+            }
+        }
+        for (int hour = 0; hour < UsageHeatmap.HOURS; hour += LABEL_EVERY_HOURS) {
+            canvas.drawText(String.valueOf(hour), hour * cellWidth, getHeight() - labelHeight / 4, labelPaint);
+        }
+    }
+
+    // Channel by channel, without the boxing of ArgbEvaluator
+    private static int blend(int from, int to, float fraction) {
+        return Color.rgb(
+            Math.round(Color.red(from) + (Color.red(to) - Color.red(from)) * fraction),
+            Math.round(Color.green(from) + (Color.green(to) - Color.green(from)) * fraction),
+            Math.round(Color.blue(from) + (Color.blue(to) - Color.blue(from)) * fraction));
+    }
+}
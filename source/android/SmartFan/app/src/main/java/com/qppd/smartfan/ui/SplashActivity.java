@@ -9,12 +9,18 @@ import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.ImageView;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.splashscreen.SplashScreen;
+import com.qppd.smartfan.MainActivity;
 import com.qppd.smartfan.R;
 import com.qppd.smartfan.auth.LoginActivity;
+import com.qppd.smartfan.data.StartupPrefetcher;
 
 public class SplashActivity extends AppCompatActivity {
     
-    private static final int SPLASH_DELAY = 2000; // 2 seconds
+    // Upper bound on the splash; the dashboard loads the rest itself if the prefetch is slower
+    private static final int SPLASH_TIMEOUT = 3000; // 3 seconds
+    
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean navigated = false;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -24,17 +30,37 @@ public class SplashActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
         
+        // Load auth, device and first readings in parallel while the splash is up
+        StartupPrefetcher prefetcher = StartupPrefetcher.getInstance(this);
+        prefetcher.start();
+        splashScreen.setKeepOnScreenCondition(() -> !navigated && !prefetcher.isReady());
+        
         // Animate the logo
         ImageView logoImage = findViewById(R.id.imageViewLogo);
         animateLogo(logoImage);
         
-        // Navigate to login after delay
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            Intent intent = new Intent(SplashActivity.this, LoginActivity.class);
-            startActivity(intent);
-            finish();
-            overridePendingTransition(android.R.anim.fade_in, android.R.anim.fade_out);
-        }, SPLASH_DELAY);
+        // Leave as soon as the dashboard can render populated, or when the timeout hits
+        prefetcher.whenReady(this::navigateNext);
+        handler.postDelayed(this::navigateNext, SPLASH_TIMEOUT);
+    }
+    
+    private void navigateNext() {
+        if (navigated || isFinishing()) return;
+        navigated = true;
+        handler.removeCallbacksAndMessages(null);
+        
+        // Signed in users skip the login screen, it would only forward to the dashboard
+        Class<?> target = StartupPrefetcher.getInstance(this).isSignedIn() ? MainActivity.class : LoginActivity.class;
+        Intent intent = new Intent(SplashActivity.this, target);
+        startActivity(intent);
+        finish();
+        overridePendingTransition(android.R.anim.fade_in, android.R.anim.fade_out);
+    }
+    
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacksAndMessages(null);
     }
     
     private void animateLogo(ImageView logoImage) {
@@ -18,4 +18,9 @@ public class Constants {
     public static final String FIREBASE_CURRENT_PATH = "current";
     public static final String FIREBASE_CONTROL_PATH = "control";
     public static final String FIREBASE_DATA_PATH = "data";
+    public static final String FIREBASE_NAME_PATH = "name";
+    public static final String FIREBASE_GROUPS_PATH = "groups";
+    
+    // Cached device names are refreshed in the background after this age
+    public static final long DEVICE_METADATA_TTL_MS = 12 * 60 * 60 * 1000L;
 }
\ No newline at end of file
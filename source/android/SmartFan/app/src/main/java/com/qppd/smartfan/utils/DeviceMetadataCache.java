@@ -0,0 +1,280 @@
+package com.qppd.smartfan.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of device display names with a TTL.
+ *
+ * Names are served from SharedPreferences so the device picker and toolbar can render
+ * immediately. Refreshes read the denormalized users/{uid}/devices summary in a single
+ * request, which decides the devices linked to the user: cached ones it no longer lists are
+ * dropped. Names missing from the summary, or older than the TTL, are read again from
+ * devices/{id}/name, and changed ones written back to the devices the summary already lists.
+ */
+public class DeviceMetadataCache {
+    private static final String PREFS_NAME = "device_metadata";
+    private static final String KEY_DEVICE_IDS = "device_ids";
+    private static final String KEY_NAME_PREFIX = "name_";
+    private static final String KEY_FETCHED_PREFIX = "fetched_";
+
+    private static DeviceMetadataCache instance;
+
+    private final SharedPreferences prefs;
+    private final Map<String, String> names = new HashMap<>();
+    // When each name was last read from devices/{id}/name
+    private final Map<String, Long> fetchedAt = new HashMap<>();
+    private final Set<String> deviceIds = new LinkedHashSet<>();
+
+    public interface Callback {
+        void onDevicesUpdated(List<String> deviceIds);
+    }
+
+    public static synchronized DeviceMetadataCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeviceMetadataCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DeviceMetadataCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Set<String> storedIds = prefs.getStringSet(KEY_DEVICE_IDS, null);
+        if (storedIds != null) {
+            deviceIds.addAll(storedIds);
+            for (String deviceId : storedIds) {
+                String name = prefs.getString(KEY_NAME_PREFIX + deviceId, null);
+                if (name != null) {
+                    names.put(deviceId, name);
+                }
+                fetchedAt.put(deviceId, prefs.getLong(KEY_FETCHED_PREFIX + deviceId, 0L));
+            }
+        }
+    }
+
+    public synchronized String getName(String deviceId) {
+        return names.get(deviceId);
+    }
+
+    public synchronized boolean isFresh(String deviceId) {
+        Long fetched = fetchedAt.get(deviceId);
+        return fetched != null && System.currentTimeMillis() - fetched < Constants.DEVICE_METADATA_TTL_MS;
+    }
+
+    public synchronized List<String> getKnownDeviceIds() {
+        return new ArrayList<>(deviceIds);
+    }
+
+    public synchronized void addDevice(String deviceId) {
+        if (deviceIds.add(deviceId)) {
+            persist();
+        }
+    }
+
+    public synchronized void putName(String deviceId, String name) {
+        deviceIds.add(deviceId);
+        names.put(deviceId, name);
+        fetchedAt.put(deviceId, System.currentTimeMillis());
+        persist();
+    }
+
+    /**
+     * Replaces the known devices with those linked to the user and refreshes their names.
+     * The callback runs on the main thread once all names are resolved.
+     */
+    public void refresh(DatabaseReference dbRef, String uid, Callback callback) {
+        DatabaseReference summaryRef = summaryRef(dbRef, uid);
+
+        summaryRef.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Set<String> linkedIds = new LinkedHashSet<>();
+                List<String> staleIds = new ArrayList<>();
+                Map<String, String> summaryNames = new HashMap<>();
+
+                for (DataSnapshot deviceSnapshot : snapshot.getChildren()) {
+                    String deviceId = deviceSnapshot.getKey();
+                    if (deviceId == null) continue;
+                    linkedIds.add(deviceId);
+
+                    // Older summaries store "true" instead of the device name
+                    Object value = deviceSnapshot.getValue();
+                    if (value instanceof String && !((String) value).isEmpty()) {
+                        summaryNames.put(deviceId, (String) value);
+                    }
+                    if (!summaryNames.containsKey(deviceId) || !isFresh(deviceId)) {
+                        staleIds.add(deviceId);
+                    }
+                }
+
+                applySummary(linkedIds, summaryNames);
+
+                if (staleIds.isEmpty()) {
+                    notifyUpdated(callback);
+                } else {
+                    resolveNames(dbRef, summaryRef, staleIds, summaryNames, callback);
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                // Keep serving whatever is cached
+                notifyUpdated(callback);
+            }
+        });
+    }
+
+    /**
+     * Refreshes the name of a single device, skipping the request while the cached entry is fresh.
+     * The name is written back to the summary only if the summary lists the device.
+     */
+    public void refreshDevice(DatabaseReference dbRef, String uid, String deviceId, Callback callback) {
+        if (isFresh(deviceId)) {
+            notifyUpdated(callback);
+            return;
+        }
+        List<String> deviceIdList = new ArrayList<>();
+        deviceIdList.add(deviceId);
+        DatabaseReference summaryRef = summaryRef(dbRef, uid);
+        summaryRef.child(deviceId).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                if (!snapshot.exists()) {
+                    resolveNames(dbRef, null, deviceIdList, null, callback);
+                    return;
+                }
+                Map<String, String> summaryNames = new HashMap<>();
+                Object value = snapshot.getValue();
+                if (value instanceof String) {
+                    summaryNames.put(deviceId, (String) value);
+                }
+                resolveNames(dbRef, summaryRef, deviceIdList, summaryNames, callback);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                resolveNames(dbRef, null, deviceIdList, null, callback);
+            }
+        });
+    }
+
+    private static DatabaseReference summaryRef(DatabaseReference dbRef, String uid) {
+        return dbRef.child(Constants.FIREBASE_SMARTFAN_PATH)
+                .child(Constants.FIREBASE_USERS_PATH).child(uid).child(Constants.FIREBASE_DEVICES_PATH);
+    }
+
+    // summaryRef is null when the devices are not all in the summary, which is then left alone
+    private void resolveNames(DatabaseReference dbRef, DatabaseReference summaryRef, List<String> staleIds,
+                              Map<String, String> summaryNames, Callback callback) {
+        // The reads are pipelined on the same connection, so this costs one round trip
+        Map<String, Object> resolvedNames = new HashMap<>();
+        AtomicInteger pending = new AtomicInteger(staleIds.size());
+
+        for (String deviceId : staleIds) {
+            dbRef.child(Constants.FIREBASE_SMARTFAN_PATH).child(Constants.FIREBASE_DEVICES_PATH)
+                    .child(deviceId).child(Constants.FIREBASE_NAME_PATH)
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override
+                        public void onDataChange(@NonNull DataSnapshot snapshot) {
+                            String name = snapshot.getValue(String.class);
+                            if (name != null && !name.isEmpty()) {
+                                resolvedNames.put(deviceId, name);
+                            }
+                            onResolved();
+                        }
+
+                        @Override
+                        public void onCancelled(@NonNull DatabaseError error) {
+                            onResolved();
+                        }
+
+                        private void onResolved() {
+                            if (pending.decrementAndGet() > 0) return;
+
+                            markFetched(staleIds, resolvedNames);
+                            if (summaryRef != null) {
+                                // Denormalize so the next refresh needs a single read
+                                Map<String, Object> changed = new HashMap<>();
+                                for (Map.Entry<String, Object> entry : resolvedNames.entrySet()) {
+                                    if (!entry.getValue().equals(summaryNames.get(entry.getKey()))) {
+                                        changed.put(entry.getKey(), entry.getValue());
+                                    }
+                                }
+                                if (!changed.isEmpty()) {
+                                    summaryRef.updateChildren(changed);
+                                }
+                            }
+                            notifyUpdated(callback);
+                        }
+                    });
+        }
+    }
+
+    private synchronized void applySummary(Set<String> linkedIds, Map<String, String> summaryNames) {
+        List<String> unlinked = new ArrayList<>(deviceIds);
+        unlinked.removeAll(linkedIds);
+        for (String deviceId : unlinked) {
+            names.remove(deviceId);
+            fetchedAt.remove(deviceId);
+        }
+        deviceIds.clear();
+        deviceIds.addAll(linkedIds);
+        names.putAll(summaryNames);
+        persist(unlinked);
+    }
+
+    private synchronized void markFetched(List<String> fetchedIds, Map<String, Object> resolvedNames) {
+        long now = System.currentTimeMillis();
+        for (String deviceId : fetchedIds) {
+            Object name = resolvedNames.get(deviceId);
+            if (name != null) {
+                names.put(deviceId, (String) name);
+            }
+            fetchedAt.put(deviceId, now);
+        }
+        persist();
+    }
+
+    private void notifyUpdated(Callback callback) {
+        if (callback != null) {
+            callback.onDevicesUpdated(getKnownDeviceIds());
+        }
+    }
+
+    private void persist() {
+        persist(new ArrayList<String>());
+    }
+
+    private void persist(List<String> removedIds) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String deviceId : removedIds) {
+            editor.remove(KEY_NAME_PREFIX + deviceId);
+            editor.remove(KEY_FETCHED_PREFIX + deviceId);
+        }
+        editor.putStringSet(KEY_DEVICE_IDS, new HashSet<>(deviceIds));
+        for (String deviceId : deviceIds) {
+            String name = names.get(deviceId);
+            if (name != null) {
+                editor.putString(KEY_NAME_PREFIX + deviceId, name);
+            }
+            Long fetched = fetchedAt.get(deviceId);
+            if (fetched != null) {
+                editor.putLong(KEY_FETCHED_PREFIX + deviceId, fetched);
+            }
+        }
+        editor.apply();
+    }
+}
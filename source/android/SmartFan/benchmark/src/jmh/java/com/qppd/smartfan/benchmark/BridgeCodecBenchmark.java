@@ -0,0 +1,94 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.bridge.FrameDecoder;
+import com.qppd.smartfan.bridge.FrameEncoder;
+import com.qppd.smartfan.bridge.Protocol;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Frames per second through the ESP32 serial protocol codec in {@code :bridge}.
+ *
+ * The stream mixes frames in the proportions the ESP32 sends them (a BUZZ every loop, an ALL
+ * and a STATUS every ten loops), each followed by println's CR LF. At 9600 baud a link
+ * carries under 1,000 bytes per second, so these numbers say how many links one core can
+ * serve rather than whether one link keeps up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BridgeCodecBenchmark {
+    private static final int FRAMES = 10000;
+
+    private byte[] stream;
+    private FrameDecoder decoder;
+    private long checksum;
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final ByteBuffer output = ByteBuffer.allocate(64);
+    private final ByteBuffer chunk = ByteBuffer.allocate(16);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ByteBuffer buffer = ByteBuffer.allocate(FRAMES * 48);
+        Random random = new Random(42);
+        for (int i = 0; i < FRAMES; i++) {
+            if (i % 12 == 10) {
+                encoder.allSensors(buffer, 24 + random.nextFloat() * 8, 40 + random.nextFloat() * 30, 240f,
+                    0.05f + random.nextFloat() * 0.25f, random.nextInt(101));
+            } else if (i % 12 == 11) {
+                encoder.status(buffer, Protocol.STATUS_RUNNING);
+            } else {
+                encoder.buzzer(buffer, false);
+            }
+        }
+        stream = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(stream);
+        decoder = new FrameDecoder(frame -> checksum += frame.getDataLength());
+    }
+
+    /** The whole stream in one call, the best case of a large read. */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long decodeStream() {
+        decoder.decode(stream, 0, stream.length);
+        return checksum;
+    }
+
+    /** Sixteen bytes per read through a ByteBuffer, like draining a UART FIFO. */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long decodeChunked() {
+        for (int offset = 0; offset < stream.length; offset += chunk.capacity()) {
+            chunk.clear();
+            chunk.put(stream, offset, Math.min(chunk.capacity(), stream.length - offset));
+            chunk.flip();
+            decoder.decode(chunk);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public int encodeAllSensors() {
+        output.clear();
+        encoder.allSensors(output, 27.35f, 61.2f, 240f, 0.183f, 70);
+        return output.position();
+    }
+
+    @Benchmark
+    public int encodeSetTemperature() {
+        output.clear();
+        encoder.setTargetTemperature(output, 28.5f);
+        return output.position();
+    }
+}
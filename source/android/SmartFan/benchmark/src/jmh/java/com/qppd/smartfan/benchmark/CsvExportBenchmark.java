@@ -0,0 +1,21 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.CsvExporter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Building the CSV export of the 30-day window.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvExportBenchmark {
+
+    @Benchmark
+    public String toCsv(HistoryState state) {
+        return CsvExporter.toCsv(state.window);
+    }
+}
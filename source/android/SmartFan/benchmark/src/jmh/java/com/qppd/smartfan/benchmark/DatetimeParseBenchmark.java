@@ -0,0 +1,40 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.LogTime;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Parsing every log datetime: the core parser against the SimpleDateFormat-per-entry
+ * approach HistoryActivity used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DatetimeParseBenchmark {
+
+    @Benchmark
+    public long logTime(HistoryState state) {
+        long sum = 0;
+        for (String datetime : state.datetimes) {
+            sum += LogTime.parseDatetime(datetime, HistoryState.ZONE);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long simpleDateFormatPerEntry(HistoryState state) throws ParseException {
+        long sum = 0;
+        for (String datetime : state.datetimes) {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+            sdf.setTimeZone(HistoryState.ZONE);
+            sum += sdf.parse(datetime).getTime();
+        }
+        return sum;
+    }
+}
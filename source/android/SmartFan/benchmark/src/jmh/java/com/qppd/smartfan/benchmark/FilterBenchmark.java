@@ -0,0 +1,40 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.HistoryFilter;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Selecting the 30-day window, as every filter chip change does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FilterBenchmark {
+
+    /** Times already resolved, the case after the first chart draw. */
+    @Benchmark
+    public List<LogEntry> filterWarm(HistoryState state) {
+        return HistoryFilter.filterByWindow(state.entries, HistoryState.NOW_MILLIS,
+            HistoryState.WINDOW_30_DAYS, HistoryState.ZONE);
+    }
+
+    /** Every datetime parsed again, the case right after the logs load. */
+    @Benchmark
+    public List<LogEntry> filterCold(HistoryState state) {
+        for (LogEntry entry : state.entries) {
+            entry.clearResolvedTime();
+        }
+        return HistoryFilter.filterByWindow(state.entries, HistoryState.NOW_MILLIS,
+            HistoryState.WINDOW_30_DAYS, HistoryState.ZONE);
+    }
+
+    @Benchmark
+    public List<LogEntry> withTimestamp(HistoryState state) {
+        return HistoryFilter.withTimestamp(state.window);
+    }
+}
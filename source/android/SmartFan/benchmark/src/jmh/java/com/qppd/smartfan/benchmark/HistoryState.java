@@ -0,0 +1,64 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.HistoryFilter;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.sim.TelemetryGenerator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Seeded device log shared by the history benchmarks, from {@link TelemetryGenerator}.
+ *
+ * Rows are one minute apart like the ESP8266 logs: 1,000 rows is under a day, 43,200 is the
+ * 30-day view and 500,000 is about a year. Entries are newest first, as HistoryActivity holds
+ * them, and end at a fixed instant so every run filters the same rows.
+ */
+@State(Scope.Benchmark)
+public class HistoryState {
+    static final TimeZone ZONE = TimeZone.getTimeZone("Asia/Manila");  // The ESP8266 logs in GMT+8
+    static final long NOW_MILLIS = 1735689600000L;                        // 2025-01-01 00:00 UTC
+    static final long WINDOW_30_DAYS = 30 * 24 * 60 * 60 * 1000L;
+    private static final int LOG_INTERVAL_SECONDS = 60;
+
+    @Param({"1000", "43200", "500000"})
+    public int rows;
+
+    /** Newest first, with each entry's time already resolved. */
+    public List<LogEntry> entries;
+    /** The same rows in random order. */
+    public List<LogEntry> shuffled;
+    /** The 30-day window, oldest first, as the charts receive it. */
+    public List<LogEntry> window;
+    public String[] datetimes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        entries = generate(rows, 42);
+        datetimes = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            datetimes[i] = entries.get(i).datetime;
+        }
+        shuffled = new ArrayList<>(entries);
+        Collections.shuffle(shuffled, new Random(7));
+        window = HistoryFilter.filterByWindow(entries, NOW_MILLIS, WINDOW_30_DAYS, ZONE);
+    }
+
+    static List<LogEntry> generate(int rows, long seed) {
+        // Without reboots the generator leaves no gaps, so this yields exactly `rows` entries
+        TelemetryGenerator generator = new TelemetryGenerator(seed)
+            .withInterval(LOG_INTERVAL_SECONDS)
+            .withRebootsPerDay(0);
+        List<LogEntry> generated = generator.generate(
+            NOW_MILLIS - (rows - 1) * LOG_INTERVAL_SECONDS * 1000L, NOW_MILLIS + 1);
+        Collections.reverse(generated);
+        return generated;
+    }
+}
@@ -0,0 +1,68 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.LogBlockCodec;
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Packing the history into daily log blocks and reading it back, as the app does for a
+ * history download. {@code decode} is the whole download's worth of blocks merged into
+ * rows; setup prints the packed size next to the size of the same rows as JSON.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogBlockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Blocks {
+        List<List<LogEntry>> days;
+        List<String> encoded;
+
+        @Setup(Level.Trial)
+        public void setUp(HistoryState state) {
+            Map<Long, List<LogEntry>> byDay = new TreeMap<>();
+            for (LogEntry entry : state.entries) {
+                byDay.computeIfAbsent(LogBlocks.blockStart(entry.timestamp, LogBlocks.DAY_SECONDS),
+                    start -> new ArrayList<>()).add(entry);
+            }
+            days = new ArrayList<>(byDay.values());
+            encoded = new ArrayList<>();
+            long chars = 0;
+            for (List<LogEntry> day : days) {
+                String block = LogBlockCodec.encodeBase64(day);
+                encoded.add(block);
+                chars += block.length();
+            }
+            System.out.printf("%n%d rows in %d daily blocks: %d chars, %.2f per row%n",
+                state.rows, days.size(), chars, (double) chars / state.rows);
+        }
+    }
+
+    @Benchmark
+    public List<String> encode(Blocks blocks) {
+        List<String> encoded = new ArrayList<>(blocks.days.size());
+        for (List<LogEntry> day : blocks.days) {
+            encoded.add(LogBlockCodec.encodeBase64(day));
+        }
+        return encoded;
+    }
+
+    @Benchmark
+    public List<LogEntry> decode(Blocks blocks) {
+        return LogBlocks.merge(Collections.<LogEntry>emptyList(), blocks.encoded, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,95 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.rules.Rule;
+import com.qppd.smartfan.core.rules.RuleEngine;
+import com.qppd.smartfan.core.rules.RuleSet;
+import com.qppd.smartfan.sim.FanFleet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Readings per second through {@code :core}'s compiled rules. Multiply by {@code rules} for
+ * rule evaluations per second on one core.
+ *
+ * {@code singleDevice} is the in-app case, one fan's state; {@code engine} spreads readings
+ * over 10,000 devices like a gateway would. A tenth of the rules use the power baseline and
+ * most are sustained, so the state updates are part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RuleEngineBenchmark {
+    private static final int DEVICES = 10000;
+    private static final int READINGS = 1 << 16;
+    private static final long NOW = 1717207200000L;
+    private static final String[] FIELDS = {"temperature", "humidity", "fanSpeed", "watt"};
+    private static final String[] OPERATORS = {">", ">=", "<", "<="};
+
+    @Param({"10", "50", "500"})
+    public int rules;
+
+    private RuleSet.State state;
+    private RuleEngine engine;
+    private String[] deviceIds;
+    private CurrentReading[] readings;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Rule> ruleList = new ArrayList<>();
+        for (int r = 0; r < rules; r++) {
+            StringBuilder text = new StringBuilder();
+            if (r % 10 == 0) {
+                text.append("watt > baseline * 1.").append(1 + random.nextInt(5));
+            } else {
+                for (int c = 0, conditions = 1 + random.nextInt(3); c < conditions; c++) {
+                    if (c > 0) text.append(" and ");
+                    text.append(FIELDS[random.nextInt(FIELDS.length)]).append(' ')
+                        .append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ').append(random.nextInt(100));
+                }
+            }
+            text.append(r % 4 == 0 ? ": " : " for 5m: ").append(r % 3 == 0 ? "alert check" : "speed 80");
+            ruleList.add(Rule.parse("rule" + r, text.toString()));
+        }
+        RuleSet ruleSet = RuleSet.compile(ruleList);
+        state = ruleSet.newState();
+        engine = new RuleEngine(ruleSet, null);
+
+        deviceIds = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            deviceIds[i] = FanFleet.deviceId("SmartFan_SIM_", i);
+        }
+        readings = new CurrentReading[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            double watt = 10 + random.nextDouble() * 60;
+            readings[i] = new CurrentReading(random.nextDouble() * 100, random.nextDouble() * 100,
+                random.nextInt(101), "auto", 240.0, watt / 240, watt, i * 0.0001, NOW / 1000);
+        }
+    }
+
+    @Benchmark
+    public int singleDevice() {
+        int i = next;
+        next = (i + 1) & (READINGS - 1);
+        return state.evaluate("fan", readings[i], NOW + i * 1000L, null);
+    }
+
+    @Benchmark
+    public int engine() {
+        int i = next;
+        next = (i + 1) & (READINGS - 1);
+        return engine.evaluate(deviceIds[i % DEVICES], readings[i], NOW + i * 1000L);
+    }
+}
@@ -0,0 +1,53 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.Downsampler;
+import com.qppd.smartfan.core.history.HistorySeries;
+import com.qppd.smartfan.core.history.LabeledSeries;
+import com.qppd.smartfan.core.history.TimeSeries;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building and downsampling the chart series for the 30-day window.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SeriesBenchmark {
+    // Same point budget as HistoryActivity's line charts
+    private static final int MAX_CHART_POINTS = 500;
+
+    private TimeSeries temperatureSeries;
+
+    @Setup(Level.Trial)
+    public void setUp(HistoryState state) {
+        temperatureSeries = HistorySeries.temperature(state.window, HistoryState.ZONE);
+    }
+
+    @Benchmark
+    public TimeSeries temperature(HistoryState state) {
+        return HistorySeries.temperature(state.window, HistoryState.ZONE);
+    }
+
+    @Benchmark
+    public TimeSeries power(HistoryState state) {
+        return HistorySeries.power(state.window, HistoryState.ZONE);
+    }
+
+    @Benchmark
+    public LabeledSeries fanSpeed(HistoryState state) {
+        return HistorySeries.fanSpeed(state.window, HistoryState.ZONE);
+    }
+
+    @Benchmark
+    public TimeSeries downsampleLttb() {
+        return Downsampler.lttb(temperatureSeries, MAX_CHART_POINTS);
+    }
+}
@@ -0,0 +1,35 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.history.LogEntryComparators;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Sorting the log list. Includes copying the list, which the sort needs to start unsorted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SortBenchmark {
+
+    @Benchmark
+    public List<LogEntry> newestFirstFromShuffled(HistoryState state) {
+        List<LogEntry> copy = new ArrayList<>(state.shuffled);
+        Collections.sort(copy, LogEntryComparators.NEWEST_FIRST);
+        return copy;
+    }
+
+    /** The chart order from the newest-first list HistoryActivity keeps. */
+    @Benchmark
+    public List<LogEntry> chronologicalFromNewestFirst(HistoryState state) {
+        List<LogEntry> copy = new ArrayList<>(state.entries);
+        Collections.sort(copy, LogEntryComparators.CHRONOLOGICAL);
+        return copy;
+    }
+}
@@ -0,0 +1,71 @@
+package com.qppd.smartfan.benchmark;
+
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.tsdb.MemoryChunkStorage;
+import com.qppd.smartfan.core.tsdb.TimeSeriesStore;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The on-device history store: appending the whole history, scanning all of it, which
+ * decodes every chunk, and scanning the last day, which decodes one. Setup prints the
+ * stored bytes per row. Storage is in memory, so this measures the encoding and not the
+ * flash.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TimeSeriesStoreBenchmark {
+    private static final String DEVICE = "SmartFan_ESP8266_000";
+
+    @State(Scope.Benchmark)
+    public static class Store {
+        List<LogEntry> oldestFirst;
+        TimeSeriesStore store;
+        long lastDayFrom;
+        long last;
+
+        @Setup(Level.Trial)
+        public void setUp(HistoryState state) throws IOException {
+            oldestFirst = new ArrayList<>(state.entries);
+            Collections.reverse(oldestFirst);
+            MemoryChunkStorage storage = new MemoryChunkStorage();
+            store = new TimeSeriesStore(storage);
+            store.appendAll(DEVICE, oldestFirst);
+            store.flush();
+            last = oldestFirst.get(oldestFirst.size() - 1).timestamp;
+            lastDayFrom = last - 86400 + 1;
+            System.out.printf("%n%d rows in %d chunks: %d bytes, %.2f per row%n",
+                state.rows, storage.list().size(), storage.sizeInBytes(),
+                (double) storage.sizeInBytes() / state.rows);
+        }
+    }
+
+    @Benchmark
+    public TimeSeriesStore append(Store state) throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore(new MemoryChunkStorage());
+        store.appendAll(DEVICE, state.oldestFirst);
+        store.flush();
+        return store;
+    }
+
+    @Benchmark
+    public List<LogEntry> scanAll(Store state) throws IOException {
+        return state.store.scan(DEVICE, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<LogEntry> scanLastDay(Store state) throws IOException {
+        return state.store.scan(DEVICE, state.lastDayFrom, state.last);
+    }
+}
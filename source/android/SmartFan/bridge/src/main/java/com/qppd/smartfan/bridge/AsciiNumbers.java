@@ -0,0 +1,181 @@
+package com.qppd.smartfan.bridge;
+
+/**
+ * Number parsing and formatting on ASCII bytes with the firmware's semantics and without
+ * allocating.
+ *
+ * Parsing follows Arduino's String.toInt() and String.toFloat() (atol and atof): leading
+ * whitespace is skipped, parsing stops at the first character that does not fit, and input
+ * without any digits yields 0.
+ */
+final class AsciiNumbers {
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    static {
+        double power = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = power;
+            power *= 10;
+        }
+    }
+
+    private AsciiNumbers() {
+    }
+
+    static int parseInt(byte[] bytes, int start, int end) {
+        int i = skipWhitespace(bytes, start, end);
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        int value = 0;
+        while (i < end && isDigit(bytes[i])) {
+            value = value * 10 + (bytes[i] - '0');
+            i++;
+        }
+        return negative ? -value : value;
+    }
+
+    static float parseFloat(byte[] bytes, int start, int end) {
+        int i = skipWhitespace(bytes, start, end);
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        if (matchesIgnoreCase(bytes, i, end, "nan")) return Float.NaN;
+        if (matchesIgnoreCase(bytes, i, end, "inf")) {
+            return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        }
+
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        while (i < end && isDigit(bytes[i])) {
+            anyDigits = true;
+            if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+                if (mantissa != 0) mantissaDigits++;
+            } else {
+                exponent++;
+            }
+            i++;
+        }
+        if (i < end && bytes[i] == '.') {
+            i++;
+            while (i < end && isDigit(bytes[i])) {
+                anyDigits = true;
+                if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                    if (mantissa != 0) mantissaDigits++;
+                    exponent--;
+                }
+                i++;
+            }
+        }
+        if (!anyDigits) return 0;
+
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            // Only an exponent with digits counts, "1e" is read as 1 like strtod does
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < end && (bytes[j] == '-' || bytes[j] == '+')) {
+                negativeExponent = bytes[j] == '-';
+                j++;
+            }
+            if (j < end && isDigit(bytes[j])) {
+                int explicitExponent = 0;
+                while (j < end && isDigit(bytes[j])) {
+                    if (explicitExponent < 10000) {
+                        explicitExponent = explicitExponent * 10 + (bytes[j] - '0');
+                    }
+                    j++;
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+        }
+
+        double value = mantissa;
+        if (mantissa != 0 && exponent != 0) {
+            if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+                value *= POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                value /= POWERS_OF_TEN[-exponent];
+            } else {
+                value *= Math.pow(10, exponent);
+            }
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    /**
+     * Writes {@code value} with a fixed number of decimals, like Arduino's String(value, decimals).
+     * Returns the position after the last byte written.
+     */
+    static int writeFixed(byte[] bytes, int position, double value, int decimals) {
+        if (Double.isNaN(value)) return writeAscii(bytes, position, "nan");
+        if (Double.isInfinite(value)) return writeAscii(bytes, position, value > 0 ? "inf" : "-inf");
+
+        long scale = (long) POWERS_OF_TEN[decimals];
+        if (Math.abs(value) * scale >= Long.MAX_VALUE) return writeAscii(bytes, position, "ovf");
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            bytes[position++] = '-';
+        }
+        position = writeLong(bytes, position, scaled / scale);
+        if (decimals > 0) {
+            bytes[position++] = '.';
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                bytes[position++] = (byte) ('0' + fraction / digit % 10);
+            }
+        }
+        return position;
+    }
+
+    static int writeLong(byte[] bytes, int position, long value) {
+        if (value < 0) {
+            bytes[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    static int writeAscii(byte[] bytes, int position, CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            bytes[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
+
+    private static boolean matchesIgnoreCase(byte[] bytes, int start, int end, String word) {
+        if (end - start < word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if ((bytes[start + i] | 0x20) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int i, int end) {
+        while (i < end && (bytes[i] == ' ' || (bytes[i] >= '\t' && bytes[i] <= '\r'))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
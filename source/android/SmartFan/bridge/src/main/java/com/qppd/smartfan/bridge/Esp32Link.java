@@ -0,0 +1,265 @@
+package com.qppd.smartfan.bridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host side of the link to an ESP32, doing what the ESP8266's ESPCommunication does: it
+ * sends control commands and keeps the last sensor readings.
+ *
+ * A reader thread decodes incoming frames and reports them to the {@link Listener}; the
+ * command methods may be called from any thread. Receiving allocates nothing except one
+ * {@link SensorData} per sensor frame.
+ */
+public class Esp32Link implements Closeable {
+    public interface Listener {
+        /**
+         * Every received frame, on the reader thread. The frame is only valid during the call.
+         */
+        default void onFrame(Frame frame) {
+        }
+
+        /**
+         * The readings after a sensor frame changed them, on the reader thread.
+         */
+        default void onSensorData(SensorData data) {
+        }
+
+        /**
+         * The transport failed or reached end of stream, or the link was closed. Called once.
+         */
+        default void onDisconnected(IOException cause) {
+        }
+    }
+
+    private static final int READ_BUFFER_SIZE = 1024;
+    private static final int WRITE_BUFFER_SIZE = 256;
+
+    private final Transport transport;
+    private final Listener listener;
+    private final FrameDecoder decoder;
+    private final SensorState sensorState = new SensorState();
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private final Object pongLock = new Object();
+
+    private volatile SensorData lastSensorData = SensorData.EMPTY;
+    private volatile boolean closed;
+    private volatile long bytesReceived;
+    private volatile long framesSent;
+    private long pongCount;
+    private Thread reader;
+
+    public Esp32Link(Transport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener != null ? listener : new Listener() {
+        };
+        this.decoder = new FrameDecoder(this::onFrame);
+    }
+
+    /**
+     * Starts the reader thread.
+     */
+    public synchronized void start() {
+        if (reader != null) {
+            throw new IllegalStateException("Already started");
+        }
+        reader = new Thread(this::readLoop, "Esp32Link " + transport.describe());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Commands, named after ESPCommunication on the ESP8266
+
+    public void sendInit() throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.init(writeBuffer);
+            flush();
+        }
+    }
+
+    public void sendCommand(String command) throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.command(writeBuffer, command);
+            flush();
+        }
+    }
+
+    public void sendFirebaseStatus(String status) throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.firebaseStatus(writeBuffer, status);
+            flush();
+        }
+    }
+
+    public void sendWiFiStatus(String status) throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.wifiStatus(writeBuffer, status);
+            flush();
+        }
+    }
+
+    public void setFanSpeed(int speed) throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.setFanSpeed(writeBuffer, speed);
+            flush();
+        }
+    }
+
+    public void setTargetTemperature(float temperature) throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.setTargetTemperature(writeBuffer, temperature);
+            flush();
+        }
+    }
+
+    public void setMode(String mode) throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.setMode(writeBuffer, mode);
+            flush();
+        }
+    }
+
+    public void requestAllSensors() throws IOException {
+        sendCommand(Protocol.GET_SENSORS);
+    }
+
+    public void requestStatus() throws IOException {
+        sendCommand(Protocol.GET_STATUS);
+    }
+
+    public void triggerBuzzerAlert() throws IOException {
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.buzzerAlert(writeBuffer);
+            flush();
+        }
+    }
+
+    /**
+     * Sends a ping and waits up to {@code timeoutMillis} for the ESP32's pong. The firmware
+     * waits three seconds.
+     */
+    public boolean testCommunication(long timeoutMillis) throws IOException, InterruptedException {
+        long expected;
+        synchronized (pongLock) {
+            expected = pongCount + 1;
+        }
+        synchronized (writeBuffer) {
+            writeBuffer.clear();
+            encoder.ping(writeBuffer);
+            flush();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (pongLock) {
+            while (pongCount < expected) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed) return false;
+                TimeUnit.NANOSECONDS.timedWait(pongLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    public SensorData getLastSensorData() {
+        return lastSensorData;
+    }
+
+    /**
+     * Whether a sensor frame arrived within {@code maxAgeMillis}. The firmware uses 10 seconds.
+     */
+    public boolean isDataFresh(long maxAgeMillis) {
+        long lastUpdate = lastSensorData.lastUpdateMillis;
+        return lastUpdate > 0 && System.currentTimeMillis() - lastUpdate < maxAgeMillis;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * The decoder's counters. Read from another thread they may lag slightly behind.
+     */
+    public FrameDecoder getDecoder() {
+        return decoder;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        synchronized (pongLock) {
+            pongLock.notifyAll();
+        }
+        transport.close();
+    }
+
+    private void flush() throws IOException {
+        if (closed) {
+            throw new IOException("Link closed");
+        }
+        writeBuffer.flip();
+        transport.write(writeBuffer);
+        framesSent++;
+    }
+
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        IOException cause = null;
+        try {
+            while (!closed) {
+                buffer.clear();
+                int count = transport.read(buffer);
+                if (count < 0) break;
+                bytesReceived += count;
+                buffer.flip();
+                decoder.decode(buffer);
+            }
+        } catch (IOException e) {
+            // Closing the transport is how the reader is stopped
+            if (!closed) cause = e;
+        } finally {
+            closed = true;
+            try {
+                transport.close();
+            } catch (IOException ignored) {
+            }
+            synchronized (pongLock) {
+                pongLock.notifyAll();
+            }
+            listener.onDisconnected(cause);
+        }
+    }
+
+    private void onFrame(Frame frame) {
+        if (frame.getType() == MessageType.TEST && frame.dataEquals(Protocol.ESP32_PONG)) {
+            synchronized (pongLock) {
+                pongCount++;
+                pongLock.notifyAll();
+            }
+        }
+        listener.onFrame(frame);
+        if (sensorState.apply(frame, System.currentTimeMillis())) {
+            SensorData data = sensorState.snapshot();
+            lastSensorData = data;
+            listener.onSensorData(data);
+        }
+    }
+}
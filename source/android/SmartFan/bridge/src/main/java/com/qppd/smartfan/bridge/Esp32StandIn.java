@@ -0,0 +1,256 @@
+package com.qppd.smartfan.bridge;
+
+import com.qppd.smartfan.core.control.AutoModeRules;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Software ESP32 that speaks the serial protocol like SmartFan.ino does, so the ESP8266
+ * firmware or an {@link Esp32Link} can be exercised without the hardware.
+ *
+ * It announces itself with INIT:ESP32_READY, answers TEST:ESP8266_PING and CMD:GET_STATUS,
+ * applies SET_FAN, SET_TEMP and SET_MODE, runs the auto mode speed rules on a temperature
+ * that can be set from outside, reports BUZZ every loop and sends ALL followed by
+ * STATUS:RUNNING (or STATUS:SENSOR_ERROR) every send interval. Voltage is the firmware's
+ * fixed 240 V and current follows fan speed.
+ */
+public class Esp32StandIn implements Closeable {
+    /** Main loop delay of the firmware. */
+    public static final long LOOP_INTERVAL_MS = 500;
+    /** COMM_SEND_INTERVAL of the firmware. */
+    public static final long SEND_INTERVAL_MS = 5000;
+
+    private static final float VOLTAGE = 240.0f;
+    private static final float BUZZER_TEMPERATURE = 37.5f;
+
+    private final Transport transport;
+    private final long sendIntervalMillis;
+    private final long loopIntervalMillis;
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(256);
+    private final FrameDecoder decoder;
+    private final ScheduledExecutorService loop;
+
+    // Defaults of FanControl, ControlSettings and SensorReadings in the firmware
+    private float temperature = 25.0f;
+    private float humidity = 50.0f;
+    private boolean sensorError;
+    private int targetFanSpeed = 50;
+    private float targetTemperature = 28.0f;
+    private boolean autoMode = true;
+    private int fanSpeed;
+    private String firebaseStatus = "DISCONNECTED";
+    private String wifiStatus = "DISCONNECTED";
+    private long lastSendMillis;
+    private long framesReceived;
+
+    private volatile boolean closed;
+    private Thread reader;
+
+    public Esp32StandIn(Transport transport) {
+        this(transport, SEND_INTERVAL_MS);
+    }
+
+    /**
+     * @param sendIntervalMillis interval of the ALL and STATUS frames. Shorter than the
+     *                           firmware's five seconds speeds up tests; the loop runs at
+     *                           least as often.
+     */
+    public Esp32StandIn(Transport transport, long sendIntervalMillis) {
+        if (sendIntervalMillis <= 0) {
+            throw new IllegalArgumentException("sendIntervalMillis must be positive");
+        }
+        this.transport = transport;
+        this.sendIntervalMillis = sendIntervalMillis;
+        this.loopIntervalMillis = Math.min(LOOP_INTERVAL_MS, sendIntervalMillis);
+        this.decoder = new FrameDecoder(this::onFrame);
+        this.loop = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Esp32StandIn loop");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends INIT:ESP32_READY and starts the loop and the reader thread.
+     */
+    public synchronized void start() throws IOException {
+        if (reader != null) {
+            throw new IllegalStateException("Already started");
+        }
+        send(() -> encoder.ready(writeBuffer));
+        lastSendMillis = System.currentTimeMillis();
+        reader = new Thread(this::readLoop, "Esp32StandIn " + transport.describe());
+        reader.setDaemon(true);
+        reader.start();
+        loop.scheduleWithFixedDelay(this::runLoop, loopIntervalMillis, loopIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void setTemperature(float celsius) {
+        temperature = celsius;
+    }
+
+    public synchronized void setHumidity(float percent) {
+        humidity = percent;
+    }
+
+    /**
+     * Simulates a failed DHT read: auto mode stops and STATUS:SENSOR_ERROR replaces the readings.
+     */
+    public synchronized void setSensorError(boolean error) {
+        sensorError = error;
+    }
+
+    public synchronized int getFanSpeed() {
+        return fanSpeed;
+    }
+
+    public synchronized int getTargetFanSpeed() {
+        return targetFanSpeed;
+    }
+
+    public synchronized float getTargetTemperature() {
+        return targetTemperature;
+    }
+
+    public synchronized boolean isAutoMode() {
+        return autoMode;
+    }
+
+    public synchronized String getFirebaseStatus() {
+        return firebaseStatus;
+    }
+
+    public synchronized String getWifiStatus() {
+        return wifiStatus;
+    }
+
+    public synchronized long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        loop.shutdownNow();
+        transport.close();
+    }
+
+    // One pass of loop(): control, buzzer, and periodic data
+    private synchronized void runLoop() {
+        if (closed) return;
+        try {
+            int speed = AutoModeRules.effectiveSpeed(autoMode && !sensorError, temperature, targetFanSpeed);
+            if (speed != fanSpeed) {
+                fanSpeed = speed;
+                // The firmware beeps on every speed change
+                send(() -> encoder.buzzer(writeBuffer, true));
+            }
+            boolean alert = !sensorError && temperature > BUZZER_TEMPERATURE;
+            send(() -> encoder.buzzer(writeBuffer, alert));
+
+            long now = System.currentTimeMillis();
+            if (now - lastSendMillis >= sendIntervalMillis) {
+                lastSendMillis = now;
+                if (sensorError) {
+                    send(() -> encoder.status(writeBuffer, Protocol.STATUS_SENSOR_ERROR));
+                } else {
+                    send(() -> encoder.allSensors(writeBuffer, temperature, humidity, VOLTAGE, current(fanSpeed),
+                        fanSpeed));
+                    send(() -> encoder.status(writeBuffer, Protocol.STATUS_RUNNING));
+                }
+            }
+        } catch (IOException e) {
+            closeQuietly();
+        }
+    }
+
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        try {
+            while (!closed) {
+                buffer.clear();
+                if (transport.read(buffer) < 0) break;
+                buffer.flip();
+                synchronized (this) {
+                    decoder.decode(buffer);
+                }
+            }
+        } catch (IOException e) {
+            // Closed or the other side went away
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    // Called with the lock held, from decode()
+    private void onFrame(Frame frame) {
+        framesReceived++;
+        try {
+            switch (frame.getType()) {
+                case CMD:
+                    if (frame.dataEquals(Protocol.GET_STATUS)) {
+                        send(() -> encoder.status(writeBuffer, Protocol.STATUS_RUNNING));
+                    }
+                    // GET_SENSORS is only logged by the firmware, data goes out on the next interval
+                    break;
+                case SET_FAN:
+                    targetFanSpeed = Math.max(0, Math.min(100, frame.dataAsInt()));
+                    break;
+                case SET_TEMP:
+                    targetTemperature = frame.dataAsFloat();
+                    break;
+                case SET_MODE:
+                    autoMode = frame.dataEqualsIgnoreCase(Protocol.MODE_AUTO);
+                    break;
+                case FIREBASE:
+                    firebaseStatus = frame.dataAsString();
+                    break;
+                case WIFI:
+                    wifiStatus = frame.dataAsString();
+                    break;
+                case TEST:
+                    if (frame.dataEquals(Protocol.ESP8266_PING)) {
+                        send(() -> encoder.pong(writeBuffer));
+                    }
+                    break;
+                default:
+                    // INIT, BUZZ:ALERT and unknown types are only logged by the firmware
+                    break;
+            }
+        } catch (IOException e) {
+            closeQuietly();
+        }
+    }
+
+    private interface Encoding {
+        void encode();
+    }
+
+    private synchronized void send(Encoding encoding) throws IOException {
+        writeBuffer.clear();
+        encoding.encode();
+        writeBuffer.flip();
+        transport.write(writeBuffer);
+    }
+
+    private static float current(int speed) {
+        return speed == 0 ? 0.01f : 0.05f + 0.25f * speed / 100;
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ignored) {
+        }
+    }
+}
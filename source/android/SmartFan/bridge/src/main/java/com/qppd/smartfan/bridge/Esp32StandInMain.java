@@ -0,0 +1,83 @@
+package com.qppd.smartfan.bridge;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs an {@link Esp32StandIn} on a pseudo terminal, a serial port or a TCP port.
+ *
+ * <pre>
+ * socat -d -d pty,raw,echo=0 pty,raw,echo=0      # prints two /dev/pts/N paths
+ * ./gradlew :bridge:run --args="--device /dev/pts/3"
+ * ./gradlew :bridge:run --args="--port 7000 --temperature 29.5"
+ * </pre>
+ *
+ * On TCP, connections are served one after another, each by a fresh stand-in.
+ */
+public final class Esp32StandInMain {
+    private static final long REPORT_INTERVAL_MS = 10000;
+
+    private Esp32StandInMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        float temperature = Float.parseFloat(options.getOrDefault("temperature", "25"));
+        long sendInterval = Long.parseLong(options.getOrDefault("send-interval",
+            String.valueOf(Esp32StandIn.SEND_INTERVAL_MS)));
+
+        if (options.containsKey("device")) {
+            String device = options.get("device");
+            Transport transport = options.containsKey("baud")
+                ? SerialTransport.open(device, Integer.parseInt(options.get("baud")))
+                : SerialTransport.open(device);
+            serve(transport, temperature, sendInterval);
+        } else if (options.containsKey("port")) {
+            try (ServerSocketChannel server = ServerSocketChannel.open()) {
+                server.bind(new InetSocketAddress(Integer.parseInt(options.get("port"))));
+                System.out.println("Listening on " + server.getLocalAddress());
+                while (true) {
+                    serve(TcpTransport.accept(server), temperature, sendInterval);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Either --device or --port is required");
+        }
+    }
+
+    private static void serve(Transport transport, float temperature, long sendInterval) throws Exception {
+        System.out.println("Serving " + transport.describe());
+        try (Esp32StandIn standIn = new Esp32StandIn(transport, sendInterval)) {
+            standIn.setTemperature(temperature);
+            standIn.start();
+            while (!standIn.isClosed()) {
+                Thread.sleep(REPORT_INTERVAL_MS);
+                System.out.println(String.format(Locale.US,
+                    "fan %d%% (target %d%%, %s, %.1f°C), wifi %s, firebase %s, %d frames received",
+                    standIn.getFanSpeed(), standIn.getTargetFanSpeed(), standIn.isAutoMode() ? "auto" : "manual",
+                    standIn.getTargetTemperature(), standIn.getWifiStatus(), standIn.getFirebaseStatus(),
+                    standIn.getFramesReceived()));
+            }
+        }
+        System.out.println("Disconnected " + transport.describe());
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "");
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,164 @@
+package com.qppd.smartfan.bridge;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One decoded {@code <TYPE:data>} frame.
+ *
+ * The instance is owned by the {@link FrameDecoder} and reused for every frame, so it is
+ * only valid during {@link FrameDecoder.Listener#onFrame(Frame)}. The accessors read the
+ * decoder's buffer directly and do not allocate, except the ones returning a String.
+ */
+public final class Frame {
+    private final byte[] bytes;
+    private MessageType type;
+    private int typeLength;
+    private int dataStart;
+    private int dataEnd;
+
+    Frame(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    void set(MessageType type, int typeLength, int dataStart, int dataEnd) {
+        this.type = type;
+        this.typeLength = typeLength;
+        this.dataStart = dataStart;
+        this.dataEnd = dataEnd;
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public int getDataLength() {
+        return dataEnd - dataStart;
+    }
+
+    /**
+     * Compares the data with an ASCII string, case-sensitive like the firmware.
+     */
+    public boolean dataEquals(String text) {
+        return regionEquals(dataStart, dataEnd, text, false);
+    }
+
+    public boolean dataEqualsIgnoreCase(String text) {
+        return regionEquals(dataStart, dataEnd, text, true);
+    }
+
+    /**
+     * The data as an integer, parsed like Arduino's String.toInt().
+     */
+    public int dataAsInt() {
+        return AsciiNumbers.parseInt(bytes, dataStart, dataEnd);
+    }
+
+    /**
+     * The data as a number, parsed like Arduino's String.toFloat().
+     */
+    public float dataAsFloat() {
+        return AsciiNumbers.parseFloat(bytes, dataStart, dataEnd);
+    }
+
+    /**
+     * Number of comma separated fields in the data. Empty data has one empty field.
+     */
+    public int getFieldCount() {
+        int count = 1;
+        for (int i = dataStart; i < dataEnd; i++) {
+            if (bytes[i] == Protocol.FIELD_SEPARATOR) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Length of a field, or -1 if there are fewer fields.
+     */
+    public int getFieldLength(int index) {
+        int start = fieldStart(index);
+        return start < 0 ? -1 : fieldEnd(start) - start;
+    }
+
+    /**
+     * A field parsed like String.toInt(), or 0 if there are fewer fields.
+     */
+    public int fieldAsInt(int index) {
+        int start = fieldStart(index);
+        return start < 0 ? 0 : AsciiNumbers.parseInt(bytes, start, fieldEnd(start));
+    }
+
+    /**
+     * A field parsed like String.toFloat(), or 0 if there are fewer fields.
+     */
+    public float fieldAsFloat(int index) {
+        int start = fieldStart(index);
+        return start < 0 ? 0 : AsciiNumbers.parseFloat(bytes, start, fieldEnd(start));
+    }
+
+    /**
+     * The type as sent, which also covers {@link MessageType#UNKNOWN} frames. Allocates.
+     */
+    public String typeAsString() {
+        return new String(bytes, 0, typeLength, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The data as a String. Allocates.
+     */
+    public String dataAsString() {
+        return new String(bytes, dataStart, dataEnd - dataStart, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return "<" + typeAsString() + ":" + dataAsString() + ">";
+    }
+
+    // Cursor style access for parsers that mirror the firmware's indexOf/substring code.
+    // Offsets are relative to the start of the data.
+
+    int indexOfSeparator(int from) {
+        for (int i = dataStart + from; i < dataEnd; i++) {
+            if (bytes[i] == Protocol.FIELD_SEPARATOR) return i - dataStart;
+        }
+        return -1;
+    }
+
+    float floatAt(int from, int to) {
+        return AsciiNumbers.parseFloat(bytes, dataStart + from, dataStart + to);
+    }
+
+    int intAt(int from, int to) {
+        return AsciiNumbers.parseInt(bytes, dataStart + from, dataStart + to);
+    }
+
+    private int fieldStart(int index) {
+        int position = dataStart;
+        for (int field = 0; field < index; field++) {
+            while (position < dataEnd && bytes[position] != Protocol.FIELD_SEPARATOR) {
+                position++;
+            }
+            if (position == dataEnd) return -1;
+            position++;
+        }
+        return position;
+    }
+
+    private int fieldEnd(int start) {
+        int position = start;
+        while (position < dataEnd && bytes[position] != Protocol.FIELD_SEPARATOR) {
+            position++;
+        }
+        return position;
+    }
+
+    private boolean regionEquals(int start, int end, String text, boolean ignoreCase) {
+        if (end - start != text.length()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            int a = bytes[start + i] & 0xFF;
+            int b = text.charAt(i);
+            if (a != b && !(ignoreCase && Character.toLowerCase(a) == Character.toLowerCase(b))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+package com.qppd.smartfan.bridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder of {@code <TYPE:data>} frames.
+ *
+ * Bytes can be fed in chunks of any size, and a frame can span any number of chunks. The
+ * decoder copies frame bytes into one fixed buffer and reports each frame through a reused
+ * {@link Frame}, so steady-state decoding allocates nothing.
+ *
+ * It is stricter than the firmware's String based parser about framing but recovers
+ * better: bytes between frames (the CR LF of println, line noise) are skipped, a '<' inside
+ * a frame abandons the partial frame and starts a new one, and frames longer than the
+ * buffer are dropped up to their end. Frames without a ':' are dropped, as the firmware
+ * does. Not thread-safe.
+ */
+public final class FrameDecoder {
+    /** Longest frame payload (between '<' and '>'). The longest firmware frame is an ALL of ~35 bytes. */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 128;
+
+    public interface Listener {
+        /**
+         * Called for every complete frame. The frame is only valid during the call.
+         */
+        void onFrame(Frame frame);
+    }
+
+    private final byte[] buffer;
+    private final Frame frame;
+    private final Listener listener;
+
+    private boolean inFrame;
+    private boolean skippingOversized;
+    private int length;
+    private int separator = -1;
+
+    private long frameCount;
+    private long malformedCount;
+    private long oversizedCount;
+    private long skippedBytes;
+
+    public FrameDecoder(Listener listener) {
+        this(listener, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(Listener listener, int maxFrameLength) {
+        this.buffer = new byte[maxFrameLength];
+        this.frame = new Frame(buffer);
+        this.listener = listener;
+    }
+
+    /**
+     * Decodes all remaining bytes of {@code in}, which is left with no bytes remaining.
+     */
+    public void decode(ByteBuffer in) {
+        if (in.hasArray()) {
+            int position = in.position();
+            decode(in.array(), in.arrayOffset() + position, in.remaining());
+            in.position(in.limit());
+        } else {
+            while (in.hasRemaining()) {
+                accept(in.get());
+            }
+        }
+    }
+
+    public void decode(byte[] bytes, int offset, int count) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            accept(bytes[i]);
+        }
+    }
+
+    /**
+     * Forgets a partially received frame, e.g. after the link was re-established.
+     */
+    public void reset() {
+        inFrame = false;
+        skippingOversized = false;
+        length = 0;
+        separator = -1;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** Frames without a type separator, or cut short by the start of another frame. */
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    public long getOversizedCount() {
+        return oversizedCount;
+    }
+
+    /** Bytes outside of any frame, not counting CR and LF. */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    private void accept(byte b) {
+        if (b == Protocol.FRAME_START) {
+            if (inFrame) {
+                malformedCount++;
+            }
+            inFrame = true;
+            skippingOversized = false;
+            length = 0;
+            separator = -1;
+            return;
+        }
+
+        if (!inFrame) {
+            if (skippingOversized) {
+                if (b == Protocol.FRAME_END) skippingOversized = false;
+            } else if (b != '\r' && b != '\n') {
+                skippedBytes++;
+            }
+            return;
+        }
+
+        if (b == Protocol.FRAME_END) {
+            inFrame = false;
+            if (separator < 0) {
+                malformedCount++;
+                return;
+            }
+            frame.set(MessageType.match(buffer, 0, separator), separator, separator + 1, length);
+            frameCount++;
+            listener.onFrame(frame);
+            return;
+        }
+
+        if (length == buffer.length) {
+            oversizedCount++;
+            inFrame = false;
+            skippingOversized = true;
+            return;
+        }
+        if (b == Protocol.TYPE_SEPARATOR && separator < 0) {
+            separator = length;
+        }
+        buffer[length++] = b;
+    }
+}
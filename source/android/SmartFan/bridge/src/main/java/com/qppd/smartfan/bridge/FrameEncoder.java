@@ -0,0 +1,167 @@
+package com.qppd.smartfan.bridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes {@code <TYPE:data>} frames, formatted exactly like ESPCommunication.cpp sends them
+ * (including the CR LF of println), for both directions of the link.
+ *
+ * Frames are assembled in a reused scratch array and copied into the target buffer, so
+ * encoding allocates nothing. Each method throws {@link java.nio.BufferOverflowException}
+ * if the frame does not fit, leaving the buffer unchanged. Not thread-safe.
+ */
+public final class FrameEncoder {
+    private static final int MAX_FRAME_BYTES = FrameDecoder.DEFAULT_MAX_FRAME_LENGTH + 4;
+
+    private final byte[] scratch = new byte[MAX_FRAME_BYTES];
+
+    // ESP8266 to ESP32
+
+    public void init(ByteBuffer out) {
+        encode(out, MessageType.INIT, Protocol.ESP8266_READY);
+    }
+
+    public void command(ByteBuffer out, String command) {
+        encode(out, MessageType.CMD, command);
+    }
+
+    public void requestAllSensors(ByteBuffer out) {
+        command(out, Protocol.GET_SENSORS);
+    }
+
+    public void requestStatus(ByteBuffer out) {
+        command(out, Protocol.GET_STATUS);
+    }
+
+    /**
+     * Constrained to 0..100 like the ESP8266 does before sending.
+     */
+    public void setFanSpeed(ByteBuffer out, int speed) {
+        int position = begin(MessageType.SET_FAN);
+        position = AsciiNumbers.writeLong(scratch, position, Math.max(0, Math.min(100, speed)));
+        finish(out, position);
+    }
+
+    /**
+     * One decimal, like String(temp, 1).
+     */
+    public void setTargetTemperature(ByteBuffer out, float temperature) {
+        int position = begin(MessageType.SET_TEMP);
+        position = AsciiNumbers.writeFixed(scratch, position, temperature, 1);
+        finish(out, position);
+    }
+
+    public void setMode(ByteBuffer out, String mode) {
+        encode(out, MessageType.SET_MODE, mode);
+    }
+
+    public void firebaseStatus(ByteBuffer out, String status) {
+        encode(out, MessageType.FIREBASE, status);
+    }
+
+    public void wifiStatus(ByteBuffer out, String status) {
+        encode(out, MessageType.WIFI, status);
+    }
+
+    public void buzzerAlert(ByteBuffer out) {
+        encode(out, MessageType.BUZZ, Protocol.BUZZ_ALERT);
+    }
+
+    public void ping(ByteBuffer out) {
+        encode(out, MessageType.TEST, Protocol.ESP8266_PING);
+    }
+
+    // ESP32 to ESP8266
+
+    public void ready(ByteBuffer out) {
+        encode(out, MessageType.INIT, Protocol.ESP32_READY);
+    }
+
+    public void pong(ByteBuffer out) {
+        encode(out, MessageType.TEST, Protocol.ESP32_PONG);
+    }
+
+    public void temperature(ByteBuffer out, float temperature) {
+        encodeFixed(out, MessageType.TEMP, temperature, 2);
+    }
+
+    public void humidity(ByteBuffer out, float humidity) {
+        encodeFixed(out, MessageType.HUMID, humidity, 2);
+    }
+
+    public void voltage(ByteBuffer out, float voltage) {
+        encodeFixed(out, MessageType.VOLT, voltage, 2);
+    }
+
+    public void current(ByteBuffer out, float current) {
+        encodeFixed(out, MessageType.CURR, current, 3);
+    }
+
+    public void fanSpeed(ByteBuffer out, int speed) {
+        int position = begin(MessageType.FAN);
+        position = AsciiNumbers.writeLong(scratch, position, speed);
+        finish(out, position);
+    }
+
+    public void buzzer(ByteBuffer out, boolean active) {
+        encode(out, MessageType.BUZZ, active ? Protocol.BUZZ_ON : Protocol.BUZZ_OFF);
+    }
+
+    public void status(ByteBuffer out, String status) {
+        encode(out, MessageType.STATUS, status);
+    }
+
+    /**
+     * The combined reading the ESP32 sends every five seconds: temp,humid,volt,curr,fan.
+     */
+    public void allSensors(ByteBuffer out, float temperature, float humidity, float voltage, float current,
+                           int fanSpeed) {
+        int position = begin(MessageType.ALL);
+        position = AsciiNumbers.writeFixed(scratch, position, temperature, 2);
+        scratch[position++] = Protocol.FIELD_SEPARATOR;
+        position = AsciiNumbers.writeFixed(scratch, position, humidity, 2);
+        scratch[position++] = Protocol.FIELD_SEPARATOR;
+        position = AsciiNumbers.writeFixed(scratch, position, voltage, 2);
+        scratch[position++] = Protocol.FIELD_SEPARATOR;
+        position = AsciiNumbers.writeFixed(scratch, position, current, 3);
+        scratch[position++] = Protocol.FIELD_SEPARATOR;
+        position = AsciiNumbers.writeLong(scratch, position, fanSpeed);
+        finish(out, position);
+    }
+
+    /**
+     * Any frame. The data must not contain '<' or '>'.
+     */
+    public void encode(ByteBuffer out, MessageType type, CharSequence data) {
+        if (type == MessageType.UNKNOWN) {
+            throw new IllegalArgumentException("UNKNOWN is not a wire type");
+        }
+        int position = begin(type);
+        if (position + data.length() + 3 > scratch.length) {
+            throw new IllegalArgumentException("Frame data too long: " + data.length());
+        }
+        position = AsciiNumbers.writeAscii(scratch, position, data);
+        finish(out, position);
+    }
+
+    private void encodeFixed(ByteBuffer out, MessageType type, float value, int decimals) {
+        int position = begin(type);
+        position = AsciiNumbers.writeFixed(scratch, position, value, decimals);
+        finish(out, position);
+    }
+
+    private int begin(MessageType type) {
+        scratch[0] = Protocol.FRAME_START;
+        byte[] name = type.ascii();
+        System.arraycopy(name, 0, scratch, 1, name.length);
+        scratch[name.length + 1] = Protocol.TYPE_SEPARATOR;
+        return name.length + 2;
+    }
+
+    private void finish(ByteBuffer out, int position) {
+        scratch[position++] = Protocol.FRAME_END;
+        scratch[position++] = '\r';
+        scratch[position++] = '\n';
+        out.put(scratch, 0, position);
+    }
+}
@@ -0,0 +1,258 @@
+package com.qppd.smartfan.bridge;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.lan.LanProtocol;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Software ESP8266 LAN side, doing what LocalControl.cpp does on the board: it answers
+ * discovery, serves the {@link LanProtocol} control port, and relays between the phones and
+ * the ESP32 through an {@link Esp32Link}. Changes from the cloud path come in through
+ * {@link #applyCloudControl}, standing in for the Firebase control stream, and are
+ * reconciled with LAN changes by their updatedAt like the firmware does.
+ *
+ * Lets the app's LAN client be tested on Linux against an {@link Esp32StandIn} or a real
+ * ESP32 behind a serial adapter.
+ */
+public class LanStandIn implements Closeable {
+    private final String deviceId;
+    private final Esp32Link link;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private DatagramSocket discoverySocket;
+    private ServerSocket controlSocket;
+
+    // Guarded by this
+    private ControlState control = new ControlState(ControlState.MODE_AUTO, null, null, false, null);
+    private long appliedUpdatedAt;
+    private double kwh;
+    private long lastKwhMillis;
+
+    private volatile boolean closed;
+
+    /**
+     * @param esp32 the serial link to the ESP32; the stand-in owns and closes it
+     */
+    public LanStandIn(String deviceId, Transport esp32) {
+        this.deviceId = deviceId;
+        this.link = new Esp32Link(esp32, new Esp32Link.Listener() {
+            @Override
+            public void onSensorData(SensorData data) {
+                publishReading(data);
+            }
+        });
+    }
+
+    /**
+     * Binds both ports on {@code address}, 0 for any free port, and starts serving.
+     */
+    public synchronized void start(InetAddress address, int discoveryPort, int controlPort) throws IOException {
+        if (discoverySocket != null) {
+            throw new IllegalStateException("Already started");
+        }
+        discoverySocket = new DatagramSocket(new InetSocketAddress(address, discoveryPort));
+        controlSocket = new ServerSocket();
+        controlSocket.bind(new InetSocketAddress(address, controlPort));
+        link.start();
+        startDaemon("LanStandIn discovery", this::discoveryLoop);
+        startDaemon("LanStandIn accept", this::acceptLoop);
+    }
+
+    public int getDiscoveryPort() {
+        return discoverySocket.getLocalPort();
+    }
+
+    public int getControlPort() {
+        return controlSocket.getLocalPort();
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public synchronized ControlState getControl() {
+        return control;
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public Esp32Link getLink() {
+        return link;
+    }
+
+    /**
+     * A change from the Firebase control stream. Returns false if a newer change was already
+     * applied and this one was ignored.
+     */
+    public boolean applyCloudControl(ControlState changes) throws IOException {
+        return apply(changes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (discoverySocket != null) discoverySocket.close();
+        if (controlSocket != null) controlSocket.close();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        link.close();
+    }
+
+    // Applies a change if it is not older than the last one, then tells every phone
+    private boolean apply(ControlState changes) throws IOException {
+        String state;
+        synchronized (this) {
+            if (!LanProtocol.supersedes(changes.updatedAt, appliedUpdatedAt)) return false;
+            if (changes.updatedAt != null) appliedUpdatedAt = changes.updatedAt;
+            // Same order and commands as the ESP8266's control stream callback
+            if (changes.mode != null) link.setMode(changes.mode);
+            if (changes.fanSpeed != null) link.setFanSpeed(changes.fanSpeed);
+            if (changes.targetTemperature != null) link.setTargetTemperature(changes.targetTemperature.floatValue());
+            if (changes.manualControl != null) {
+                link.setMode(changes.manualControl ? ControlState.MODE_MANUAL : ControlState.MODE_AUTO);
+            }
+            ControlState merged = control.merge(changes);
+            control = new ControlState(merged.mode, merged.fanSpeed, merged.targetTemperature, merged.manualControl,
+                appliedUpdatedAt);
+            state = LanProtocol.formatControl(LanProtocol.STATE, control);
+        }
+        broadcast(state);
+        return true;
+    }
+
+    private void publishReading(SensorData data) {
+        String line;
+        synchronized (this) {
+            // kWh integrates V * I between readings like updateDataFromESP32()
+            long now = System.currentTimeMillis();
+            if (lastKwhMillis > 0) {
+                kwh += data.getWatt() * ((now - lastKwhMillis) / 3600000.0) / 1000.0;
+            }
+            lastKwhMillis = now;
+            line = LanProtocol.formatReading(new CurrentReading((double) data.temperature, (double) data.humidity,
+                data.fanSpeed, control.mode, (double) data.voltage, (double) data.current, data.getWatt(), kwh, null));
+        }
+        broadcast(line);
+    }
+
+    private void broadcast(String line) {
+        for (Connection connection : connections) {
+            connection.send(line);
+        }
+    }
+
+    private void discoveryLoop() {
+        byte[] buffer = new byte[LanProtocol.MAX_LINE_LENGTH];
+        while (!closed) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                discoverySocket.receive(packet);
+                String request = new String(packet.getData(), packet.getOffset(), packet.getLength(),
+                    StandardCharsets.US_ASCII).trim();
+                if (!LanProtocol.DISCOVER.equals(request)) continue;
+                byte[] answer = LanProtocol.announce(deviceId, getControlPort()).getBytes(StandardCharsets.US_ASCII);
+                discoverySocket.send(new DatagramPacket(answer, answer.length, packet.getSocketAddress()));
+            } catch (IOException e) {
+                if (closed) return;
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Connection connection = new Connection(controlSocket.accept());
+                connections.add(connection);
+                if (closed) {
+                    // close() may have run between accept and add
+                    connection.close();
+                    return;
+                }
+                String state;
+                synchronized (this) {
+                    state = LanProtocol.formatControl(LanProtocol.STATE, control);
+                }
+                connection.send(state);
+                startDaemon("LanStandIn " + connection.socket.getRemoteSocketAddress(), connection::readLoop);
+            } catch (IOException e) {
+                if (closed) return;
+            }
+        }
+    }
+
+    private static void startDaemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private final class Connection {
+        final Socket socket;
+        final OutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.out = socket.getOutputStream();
+        }
+
+        void readLoop() {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] words = LanProtocol.split(line);
+                    if (words.length == 0 || !LanProtocol.SET.equals(words[0])) continue;
+                    ControlState changes;
+                    try {
+                        changes = LanProtocol.parseControl(words);
+                    } catch (IllegalArgumentException e) {
+                        // The firmware drops malformed lines too
+                        continue;
+                    }
+                    send((apply(changes) ? LanProtocol.ACK : LanProtocol.STALE) + " " + words[1]);
+                }
+            } catch (IOException e) {
+                // Phone left or the stand-in closed
+            } finally {
+                close();
+            }
+        }
+
+        void send(String line) {
+            try {
+                synchronized (out) {
+                    out.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.qppd.smartfan.bridge;
+
+import com.qppd.smartfan.core.lan.LanProtocol;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs a {@link LanStandIn} so the app's LAN control can be tried without a fan.
+ *
+ * <pre>
+ * ./gradlew :bridge:runLan                                   # with a built-in ESP32 stand-in
+ * ./gradlew :bridge:runLan --args="--esp32 /dev/ttyUSB0 --baud 9600"
+ * </pre>
+ *
+ * By default the ESP32 is an {@link Esp32StandIn} connected over loopback TCP, so phones
+ * on the same network see a complete fan.
+ */
+public final class LanStandInMain {
+    private static final long REPORT_INTERVAL_MS = 10000;
+
+    private LanStandInMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String deviceId = options.getOrDefault("device-id", "SmartFan_ESP8266_001");
+        int discoveryPort = Integer.parseInt(options.getOrDefault("discovery-port",
+            String.valueOf(LanProtocol.DISCOVERY_PORT)));
+        int controlPort = Integer.parseInt(options.getOrDefault("control-port",
+            String.valueOf(LanProtocol.CONTROL_PORT)));
+
+        Esp32StandIn esp32 = null;
+        Transport transport;
+        if (options.containsKey("esp32")) {
+            String device = options.get("esp32");
+            transport = options.containsKey("baud")
+                ? SerialTransport.open(device, Integer.parseInt(options.get("baud")))
+                : SerialTransport.open(device);
+        } else {
+            try (ServerSocketChannel server = ServerSocketChannel.open()) {
+                server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+                transport = TcpTransport.connect(address.getHostString(), address.getPort());
+                esp32 = new Esp32StandIn(TcpTransport.accept(server));
+            }
+            esp32.setTemperature(Float.parseFloat(options.getOrDefault("temperature", "25")));
+            esp32.start();
+        }
+
+        try (LanStandIn standIn = new LanStandIn(deviceId, transport)) {
+            standIn.start(null, discoveryPort, controlPort);
+            System.out.println(deviceId + " answering discovery on UDP " + standIn.getDiscoveryPort()
+                + ", control on TCP " + standIn.getControlPort());
+            while (!standIn.getLink().isClosed()) {
+                Thread.sleep(REPORT_INTERVAL_MS);
+                SensorData data = standIn.getLink().getLastSensorData();
+                System.out.println(String.format(Locale.US, "%d phones, fan %d%%, %s, control %s",
+                    standIn.getConnectionCount(), data.fanSpeed, data.status,
+                    LanProtocol.formatControl(LanProtocol.STATE, standIn.getControl())));
+            }
+        } finally {
+            if (esp32 != null) esp32.close();
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "");
+            }
+        }
+        return options;
+    }
+}
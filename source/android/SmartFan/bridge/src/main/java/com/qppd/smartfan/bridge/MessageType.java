@@ -0,0 +1,61 @@
+package com.qppd.smartfan.bridge;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Message types of the ESP32 / ESP8266 serial protocol, the TYPE part of {@code <TYPE:data>}.
+ */
+public enum MessageType {
+    // Both directions
+    INIT,
+    TEST,
+    BUZZ,
+    // ESP8266 to ESP32
+    CMD,
+    SET_FAN,
+    SET_TEMP,
+    SET_MODE,
+    FIREBASE,
+    WIFI,
+    // ESP32 to ESP8266
+    TEMP,
+    HUMID,
+    VOLT,
+    CURR,
+    FAN,
+    STATUS,
+    ALL,
+    /** Any type this bridge does not know. The firmware logs and ignores these. */
+    UNKNOWN;
+
+    private static final MessageType[] KNOWN;
+
+    static {
+        MessageType[] values = values();
+        KNOWN = new MessageType[values.length - 1];
+        System.arraycopy(values, 0, KNOWN, 0, KNOWN.length);
+    }
+
+    private final byte[] ascii = name().getBytes(StandardCharsets.US_ASCII);
+
+    byte[] ascii() {
+        return ascii;
+    }
+
+    /**
+     * Looks up the type named by {@code length} bytes at {@code offset}. Case-sensitive like
+     * the firmware's String comparison.
+     */
+    static MessageType match(byte[] bytes, int offset, int length) {
+        for (MessageType type : KNOWN) {
+            byte[] name = type.ascii;
+            if (name.length != length) continue;
+            int i = 0;
+            while (i < length && bytes[offset + i] == name[i]) {
+                i++;
+            }
+            if (i == length) return type;
+        }
+        return UNKNOWN;
+    }
+}
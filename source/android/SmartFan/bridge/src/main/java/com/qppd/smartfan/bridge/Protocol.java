@@ -0,0 +1,41 @@
+package com.qppd.smartfan.bridge;
+
+/**
+ * Constants of the {@code <TYPE:data>} serial protocol between the ESP32 and the ESP8266
+ * (ESPCommunication.cpp on both boards).
+ */
+public final class Protocol {
+    public static final int BAUD_RATE = 9600;
+
+    public static final byte FRAME_START = '<';
+    public static final byte FRAME_END = '>';
+    public static final byte TYPE_SEPARATOR = ':';
+    public static final byte FIELD_SEPARATOR = ',';
+
+    // CMD payloads
+    public static final String GET_SENSORS = "GET_SENSORS";
+    public static final String GET_STATUS = "GET_STATUS";
+
+    // Fixed payloads
+    public static final String ESP8266_READY = "ESP8266_READY";
+    public static final String ESP32_READY = "ESP32_READY";
+    public static final String ESP8266_PING = "ESP8266_PING";
+    public static final String ESP32_PONG = "ESP32_PONG";
+    public static final String BUZZ_ALERT = "ALERT";
+    public static final String BUZZ_ON = "ON";
+    public static final String BUZZ_OFF = "OFF";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_SENSOR_ERROR = "SENSOR_ERROR";
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_MANUAL = "manual";
+
+    // Field order of an ALL frame: temp,humid,volt,curr,fan
+    public static final int ALL_TEMPERATURE = 0;
+    public static final int ALL_HUMIDITY = 1;
+    public static final int ALL_VOLTAGE = 2;
+    public static final int ALL_CURRENT = 3;
+    public static final int ALL_FAN_SPEED = 4;
+
+    private Protocol() {
+    }
+}
@@ -0,0 +1,52 @@
+package com.qppd.smartfan.bridge;
+
+import java.util.Locale;
+
+/**
+ * The last readings reported by the ESP32, like the ESP8266's SensorData struct. Immutable.
+ */
+public final class SensorData {
+    public static final String STATUS_UNKNOWN = "UNKNOWN";
+
+    /** Before anything was received, matching the struct's initial values. */
+    public static final SensorData EMPTY = new SensorData(0, 0, 0, 0, 0, false, STATUS_UNKNOWN, 0);
+
+    public final float temperature;
+    public final float humidity;
+    public final float voltage;
+    public final float current;
+    public final int fanSpeed;
+    public final boolean buzzerActive;
+    public final String status;
+    /** Wall clock time of the frame that last changed any value, 0 if none yet. */
+    public final long lastUpdateMillis;
+
+    public SensorData(float temperature, float humidity, float voltage, float current, int fanSpeed,
+                      boolean buzzerActive, String status, long lastUpdateMillis) {
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.voltage = voltage;
+        this.current = current;
+        this.fanSpeed = fanSpeed;
+        this.buzzerActive = buzzerActive;
+        this.status = status;
+        this.lastUpdateMillis = lastUpdateMillis;
+    }
+
+    /**
+     * Power as the ESP8266 uploads it, V * I.
+     */
+    public double getWatt() {
+        return (double) voltage * current;
+    }
+
+    public boolean isSensorError() {
+        return Protocol.STATUS_SENSOR_ERROR.equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "SensorData{%.2f°C, %.2f%%, %.2fV, %.3fA, fan %d%%, buzzer %s, %s, at %d}",
+            temperature, humidity, voltage, current, fanSpeed, buzzerActive ? "on" : "off", status, lastUpdateMillis);
+    }
+}
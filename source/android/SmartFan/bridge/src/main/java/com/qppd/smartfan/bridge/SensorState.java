@@ -0,0 +1,90 @@
+package com.qppd.smartfan.bridge;
+
+/**
+ * Applies ESP32 frames to the readings the same way the ESP8266's processIncomingData does.
+ *
+ * That includes its quirks: an empty field in an ALL frame is skipped without advancing, so
+ * the following fields shift, and the fan speed is whatever remains after the fourth comma.
+ * Not thread-safe.
+ */
+final class SensorState {
+    private float temperature;
+    private float humidity;
+    private float voltage;
+    private float current;
+    private int fanSpeed;
+    private boolean buzzerActive;
+    private String status = SensorData.STATUS_UNKNOWN;
+    private long lastUpdateMillis;
+
+    /**
+     * Returns whether the frame is a sensor frame, in which case the readings were updated.
+     */
+    boolean apply(Frame frame, long nowMillis) {
+        switch (frame.getType()) {
+            case TEMP:
+                temperature = frame.dataAsFloat();
+                break;
+            case HUMID:
+                humidity = frame.dataAsFloat();
+                break;
+            case VOLT:
+                voltage = frame.dataAsFloat();
+                break;
+            case CURR:
+                current = frame.dataAsFloat();
+                break;
+            case FAN:
+                fanSpeed = frame.dataAsInt();
+                break;
+            case BUZZ:
+                buzzerActive = frame.dataEquals(Protocol.BUZZ_ON);
+                break;
+            case STATUS:
+                if (!frame.dataEquals(status)) {
+                    status = frame.dataAsString();
+                }
+                break;
+            case ALL:
+                applyAll(frame);
+                break;
+            default:
+                return false;
+        }
+        lastUpdateMillis = nowMillis;
+        return true;
+    }
+
+    SensorData snapshot() {
+        return new SensorData(temperature, humidity, voltage, current, fanSpeed, buzzerActive, status,
+            lastUpdateMillis);
+    }
+
+    // temp,humid,volt,curr,fan
+    private void applyAll(Frame frame) {
+        int position = 0;
+        int next = frame.indexOfSeparator(position);
+        if (next > position) {
+            temperature = frame.floatAt(position, next);
+            position = next + 1;
+        }
+        next = frame.indexOfSeparator(position);
+        if (next > position) {
+            humidity = frame.floatAt(position, next);
+            position = next + 1;
+        }
+        next = frame.indexOfSeparator(position);
+        if (next > position) {
+            voltage = frame.floatAt(position, next);
+            position = next + 1;
+        }
+        next = frame.indexOfSeparator(position);
+        if (next > position) {
+            current = frame.floatAt(position, next);
+            position = next + 1;
+        }
+        if (position < frame.getDataLength()) {
+            fanSpeed = frame.intAt(position, frame.getDataLength());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.qppd.smartfan.bridge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A serial port (/dev/ttyUSB0, /dev/ttyS1) or a pseudo terminal (/dev/pts/N) opened as a file.
+ *
+ * Java has no serial port API, so line settings are applied with {@code stty} before opening.
+ * That is needed for a real port, which must run raw at {@link Protocol#BAUD_RATE}; a pty
+ * created with {@code socat pty,raw,echo=0 pty,raw,echo=0} is already raw and can skip it.
+ * Linux only.
+ */
+public final class SerialTransport implements Transport {
+    private final String device;
+    // Separate descriptors, because a FileChannel holds one lock across read and write and a
+    // blocked read would stall every write
+    private final RandomAccessFile input;
+    private final RandomAccessFile output;
+    private final FileChannel readChannel;
+    private final FileChannel writeChannel;
+
+    private SerialTransport(String device) throws IOException {
+        this.device = device;
+        this.input = new RandomAccessFile(device, "r");
+        try {
+            this.output = new RandomAccessFile(device, "rw");
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        this.readChannel = input.getChannel();
+        this.writeChannel = output.getChannel();
+    }
+
+    /**
+     * Opens a device that is already configured, typically a pty.
+     */
+    public static SerialTransport open(String device) throws IOException {
+        return new SerialTransport(device);
+    }
+
+    /**
+     * Configures {@code device} as a raw 8N1 line at {@code baudRate} and opens it.
+     */
+    public static SerialTransport open(String device, int baudRate) throws IOException {
+        configure(device, baudRate);
+        return new SerialTransport(device);
+    }
+
+    /**
+     * Runs {@code stty} on the device: raw mode, no echo, 8 data bits, no parity, one stop bit,
+     * no flow control and reads that return as soon as one byte is available.
+     */
+    public static void configure(String device, int baudRate) throws IOException {
+        Process process = new ProcessBuilder("stty", "-F", device, String.valueOf(baudRate),
+            "raw", "-echo", "cs8", "-parenb", "-cstopb", "-crtscts", "-ixon", "-ixoff", "clocal",
+            "min", "1", "time", "0")
+            .redirectErrorStream(true)
+            .start();
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("stty timed out on " + device);
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException("stty failed on " + device + ": " + readAll(process.getInputStream()).trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while configuring " + device, e);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        return readChannel.read(buffer);
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            writeChannel.write(buffer);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return device;
+    }
+
+    /**
+     * Closing a tty does not wake a thread blocked in {@link #read(ByteBuffer)}; it returns
+     * when the next byte arrives or the other end goes away.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            output.close();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package com.qppd.smartfan.bridge;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The serial link tunnelled over TCP, e.g. through a serial-to-WiFi adapter or to a stand-in
+ * running on another machine.
+ */
+public final class TcpTransport implements Transport {
+    private final SocketChannel channel;
+    private final String description;
+
+    private TcpTransport(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        // Frames are tiny and latency matters more than packet count
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.description = "tcp://" + channel.getRemoteAddress();
+    }
+
+    public static TcpTransport connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.connect(new InetSocketAddress(host, port));
+            return new TcpTransport(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the next connection on {@code server}.
+     */
+    public static TcpTransport accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        try {
+            return new TcpTransport(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        return channel.read(buffer);
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return description;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,28 @@
+package com.qppd.smartfan.bridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A byte stream to the other board: a serial port, a pseudo terminal or a TCP socket.
+ *
+ * Reads block until at least one byte is available. One thread may read while another
+ * writes.
+ */
+public interface Transport extends Closeable {
+    /**
+     * Reads into {@code buffer} and returns the number of bytes read, or -1 at end of stream.
+     */
+    int read(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Writes all remaining bytes of {@code buffer}.
+     */
+    void write(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Human readable endpoint, for logs.
+     */
+    String describe();
+}
@@ -0,0 +1,107 @@
+package com.qppd.smartfan.bridge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+/**
+ * An {@link Esp32Link} talking to an {@link Esp32StandIn} over loopback TCP.
+ */
+public class Esp32LinkTest {
+    private final BlockingQueue<SensorData> sensorData = new ArrayBlockingQueue<>(1000);
+    private final CountDownLatch disconnected = new CountDownLatch(1);
+    private ServerSocketChannel server;
+    private Esp32StandIn standIn;
+    private Esp32Link link;
+
+    @Before
+    public void setUp() throws Exception {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+
+        link = new Esp32Link(TcpTransport.connect(address.getHostString(), address.getPort()), new Esp32Link.Listener() {
+            @Override
+            public void onSensorData(SensorData data) {
+                sensorData.offer(data);
+            }
+
+            @Override
+            public void onDisconnected(IOException cause) {
+                disconnected.countDown();
+            }
+        });
+        standIn = new Esp32StandIn(TcpTransport.accept(server), 50);
+        link.start();
+        standIn.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        link.close();
+        standIn.close();
+        server.close();
+    }
+
+    @Test
+    public void ping_isAnswered() throws Exception {
+        assertTrue(link.testCommunication(3000));
+        assertTrue(link.testCommunication(3000));
+    }
+
+    @Test
+    public void readings_followCommands() throws Exception {
+        standIn.setTemperature(29.0f);
+        // Auto mode at 29 °C with the default target of 50%
+        SensorData data = await(d -> d.fanSpeed == 80 && Protocol.STATUS_RUNNING.equals(d.status));
+        assertEquals(240f, data.voltage, 0f);
+        assertTrue(link.isDataFresh(10000));
+
+        link.setMode("MANUAL");
+        link.setFanSpeed(30);
+        await(d -> d.fanSpeed == 30);
+        assertFalse(standIn.isAutoMode());
+
+        link.setTargetTemperature(26.25f);
+        link.sendWiFiStatus("CONNECTED");
+        assertTrue(link.testCommunication(3000));
+        assertEquals(26.3f, standIn.getTargetTemperature(), 0.001f);
+        assertEquals("CONNECTED", standIn.getWifiStatus());
+        assertEquals(0, link.getDecoder().getMalformedCount());
+    }
+
+    @Test
+    public void sensorError_isReported() throws Exception {
+        standIn.setSensorError(true);
+        await(SensorData::isSensorError);
+    }
+
+    @Test
+    public void closingTheStandIn_disconnectsTheLink() throws Exception {
+        standIn.close();
+        assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+        assertTrue(link.isClosed());
+    }
+
+    private SensorData await(Predicate<SensorData> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            SensorData data = sensorData.poll(100, TimeUnit.MILLISECONDS);
+            if (data != null && condition.test(data)) return data;
+        }
+        fail("Expected readings never arrived, last " + link.getLastSensorData());
+        return null;
+    }
+}
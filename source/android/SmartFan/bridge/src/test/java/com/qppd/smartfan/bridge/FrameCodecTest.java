@@ -0,0 +1,148 @@
+package com.qppd.smartfan.bridge;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameCodecTest {
+    private final FrameEncoder encoder = new FrameEncoder();
+    private final ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    @Test
+    public void encoder_matchesFirmwareOutput() {
+        assertEquals("<INIT:ESP8266_READY>\r\n", encode(() -> encoder.init(buffer)));
+        assertEquals("<CMD:GET_SENSORS>\r\n", encode(() -> encoder.requestAllSensors(buffer)));
+        assertEquals("<SET_FAN:100>\r\n", encode(() -> encoder.setFanSpeed(buffer, 150)));
+        assertEquals("<SET_FAN:0>\r\n", encode(() -> encoder.setFanSpeed(buffer, -3)));
+        assertEquals("<SET_TEMP:28.5>\r\n", encode(() -> encoder.setTargetTemperature(buffer, 28.46f)));
+        assertEquals("<SET_MODE:manual>\r\n", encode(() -> encoder.setMode(buffer, Protocol.MODE_MANUAL)));
+        assertEquals("<TEST:ESP8266_PING>\r\n", encode(() -> encoder.ping(buffer)));
+        assertEquals("<BUZZ:ALERT>\r\n", encode(() -> encoder.buzzerAlert(buffer)));
+
+        assertEquals("<TEMP:-0.50>\r\n", encode(() -> encoder.temperature(buffer, -0.5f)));
+        assertEquals("<CURR:0.175>\r\n", encode(() -> encoder.current(buffer, 0.175f)));
+        assertEquals("<BUZZ:OFF>\r\n", encode(() -> encoder.buzzer(buffer, false)));
+        assertEquals("<ALL:25.50,50.00,240.00,0.175,50>\r\n",
+            encode(() -> encoder.allSensors(buffer, 25.5f, 50f, 240f, 0.175f, 50)));
+        assertEquals("<HUMID:nan>\r\n", encode(() -> encoder.humidity(buffer, Float.NaN)));
+    }
+
+    @Test
+    public void encoder_leavesBufferUnchangedWhenFull() {
+        ByteBuffer small = ByteBuffer.allocate(8);
+        try {
+            encoder.status(small, Protocol.STATUS_SENSOR_ERROR);
+            fail();
+        } catch (java.nio.BufferOverflowException expected) {
+            assertEquals(0, small.position());
+        }
+    }
+
+    @Test
+    public void roundTrip_preservesReadings() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            float temperature = Math.round((random.nextFloat() * 60 - 10) * 100) / 100f;
+            float current = Math.round(random.nextFloat() * 2000) / 1000f;
+            int fan = random.nextInt(101);
+            buffer.clear();
+            encoder.allSensors(buffer, temperature, 55.25f, 240f, current, fan);
+            buffer.flip();
+
+            List<float[]> decoded = new ArrayList<>();
+            new FrameDecoder(frame -> {
+                assertEquals(MessageType.ALL, frame.getType());
+                assertEquals(5, frame.getFieldCount());
+                decoded.add(new float[]{frame.fieldAsFloat(Protocol.ALL_TEMPERATURE),
+                    frame.fieldAsFloat(Protocol.ALL_CURRENT), frame.fieldAsInt(Protocol.ALL_FAN_SPEED)});
+            }).decode(buffer);
+
+            assertEquals(1, decoded.size());
+            assertEquals(temperature, decoded.get(0)[0], 0.0051f);
+            assertEquals(current, decoded.get(0)[1], 0.00051f);
+            assertEquals(fan, decoded.get(0)[2], 0);
+        }
+    }
+
+    @Test
+    public void numbers_parseLikeArduino() {
+        assertEquals(42, parseInt("42"));
+        assertEquals(-7, parseInt("  -7abc"));
+        assertEquals(0, parseInt("abc"));
+        assertEquals(0, parseInt(""));
+        assertEquals(12, parseInt("12.9"));
+
+        assertEquals(28.5f, parseFloat("28.5"), 0f);
+        assertEquals(-0.125f, parseFloat(" -0.125x"), 0f);
+        assertEquals(1500f, parseFloat("1.5e3"), 0f);
+        assertEquals(1f, parseFloat("1e"), 0f);
+        assertEquals(0.5f, parseFloat(".5"), 0f);
+        assertEquals(0f, parseFloat("-"), 0f);
+        assertTrue(Float.isNaN(parseFloat("nan")));
+        assertEquals(Float.NEGATIVE_INFINITY, parseFloat("-INF"), 0f);
+        assertEquals(Float.parseFloat("123456789.123456789"), parseFloat("123456789.123456789"), 0f);
+    }
+
+    @Test
+    public void numbers_parseFloatAgreesWithJavaForPlainDecimals() {
+        Random random = new Random(11);
+        for (int i = 0; i < 100000; i++) {
+            String text = String.format(java.util.Locale.US, "%." + random.nextInt(5) + "f",
+                (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8)));
+            assertEquals(text, Float.parseFloat(text), parseFloat(text), Math.ulp(Float.parseFloat(text)));
+        }
+    }
+
+    @Test
+    public void sensorState_followsFirmwareQuirks() {
+        SensorState state = new SensorState();
+        apply(state, "<ALL:25.50,50.00,240.00,0.175,50>");
+        SensorData data = state.snapshot();
+        assertEquals(25.5f, data.temperature, 0f);
+        assertEquals(0.175f, data.current, 0f);
+        assertEquals(50, data.fanSpeed);
+
+        // An empty humidity field does not advance the cursor, so nothing after it is read
+        apply(state, "<ALL:30.00,,240.00,0.2,80>");
+        data = state.snapshot();
+        assertEquals(30f, data.temperature, 0f);
+        assertEquals(50f, data.humidity, 0f);
+        assertEquals(0.175f, data.current, 0f);
+        assertEquals(0, data.fanSpeed);
+
+        apply(state, "<BUZZ:ON>");
+        assertTrue(state.snapshot().buzzerActive);
+        apply(state, "<BUZZ:ALERT>");
+        assertFalse(state.snapshot().buzzerActive);
+        apply(state, "<STATUS:SENSOR_ERROR>");
+        assertTrue(state.snapshot().isSensorError());
+        assertEquals(1000, state.snapshot().lastUpdateMillis);
+    }
+
+    private static void apply(SensorState state, String frame) {
+        new FrameDecoder(f -> assertTrue(state.apply(f, 1000)))
+            .decode(ByteBuffer.wrap(frame.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private String encode(Runnable encoding) {
+        buffer.clear();
+        encoding.run();
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+    }
+
+    private static int parseInt(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return AsciiNumbers.parseInt(bytes, 0, bytes.length);
+    }
+
+    private static float parseFloat(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return AsciiNumbers.parseFloat(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,173 @@
+package com.qppd.smartfan.bridge;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the decoder random byte streams with frames mixed in, split into random chunks, and
+ * compares what it reports with a straightforward String based decoder.
+ */
+public class FrameDecoderFuzzTest {
+    private static final int MAX_FRAME_LENGTH = 48;
+    private static final byte[] ALPHABET = "<>:,\r\n ALTEMPFSBUZ0123456789.-_".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void decode_matchesReferenceForRandomStreams() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            byte[] stream = randomStream(random, 1 + random.nextInt(600));
+            List<String> expected = referenceDecode(stream);
+
+            List<String> actual = new ArrayList<>();
+            FrameDecoder decoder = new FrameDecoder(frame -> {
+                actual.add(frame.typeAsString() + ":" + frame.dataAsString());
+                assertEquals(frame.typeAsString(), expectedType(frame.typeAsString()), frame.getType());
+            }, MAX_FRAME_LENGTH);
+            feedInChunks(decoder, stream, random);
+
+            assertEquals("round " + round, expected, actual);
+            assertEquals(expected.size(), decoder.getFrameCount());
+        }
+    }
+
+    @Test
+    public void decode_survivesPureNoise() {
+        Random random = new Random(7);
+        byte[] noise = new byte[1 << 16];
+        random.nextBytes(noise);
+        FrameDecoder decoder = new FrameDecoder(frame -> {
+            assertTrue(frame.getDataLength() >= 0);
+            frame.getFieldCount();
+            frame.fieldAsFloat(random.nextInt(6));
+            frame.dataAsInt();
+        });
+        feedInChunks(decoder, noise, random);
+        assertEquals(referenceDecode(noise, FrameDecoder.DEFAULT_MAX_FRAME_LENGTH).size(), decoder.getFrameCount());
+    }
+
+    @Test
+    public void decode_recoversAfterOversizedFrame() {
+        List<String> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(frame -> frames.add(frame.toString()), 8);
+        byte[] bytes = "<TEMP:123456789012>\r\n<FAN:50>\r\n".getBytes(StandardCharsets.US_ASCII);
+        decoder.decode(ByteBuffer.wrap(bytes));
+
+        assertEquals(1, frames.size());
+        assertEquals("<FAN:50>", frames.get(0));
+        assertEquals(1, decoder.getOversizedCount());
+        assertEquals(0, decoder.getSkippedBytes());
+    }
+
+    @Test
+    public void decode_restartsOnFrameStart() {
+        List<String> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(frame -> frames.add(frame.toString()));
+        decoder.decode(ByteBuffer.wrap("<TEMP:2<FAN:0>no colon<NOCOLON>".getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(1, frames.size());
+        assertEquals("<FAN:0>", frames.get(0));
+        assertEquals(2, decoder.getMalformedCount());
+        assertEquals("no colon".length(), decoder.getSkippedBytes());
+    }
+
+    @Test
+    public void decode_directBufferMatchesHeapBuffer() {
+        byte[] bytes = "<ALL:25.50,50.00,240.00,0.175,50>\r\n<STATUS:RUNNING>\r\n".getBytes(StandardCharsets.US_ASCII);
+        List<String> frames = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(frame -> frames.add(frame.toString()));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        decoder.decode(direct);
+
+        assertFalse(direct.hasRemaining());
+        assertEquals(2, frames.size());
+        assertEquals("<ALL:25.50,50.00,240.00,0.175,50>", frames.get(0));
+    }
+
+    private static void feedInChunks(FrameDecoder decoder, byte[] stream, Random random) {
+        int position = 0;
+        while (position < stream.length) {
+            int count = Math.min(stream.length - position, 1 + random.nextInt(random.nextBoolean() ? 4 : 64));
+            if (random.nextBoolean()) {
+                decoder.decode(stream, position, count);
+            } else {
+                // Offset slice, so that the array fast path has to honour arrayOffset
+                ByteBuffer slice = ByteBuffer.wrap(stream, position, count).slice();
+                decoder.decode(slice);
+                assertFalse(slice.hasRemaining());
+            }
+            position += count;
+        }
+    }
+
+    private static byte[] randomStream(Random random, int parts) {
+        StringBuilder stream = new StringBuilder();
+        for (int i = 0; i < parts; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    stream.append((char) ALPHABET[random.nextInt(ALPHABET.length)]);
+                    break;
+                case 1:
+                    stream.append((char) random.nextInt(256));
+                    break;
+                default:
+                    stream.append(randomFrame(random)).append("\r\n");
+                    break;
+            }
+        }
+        return stream.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String randomFrame(Random random) {
+        MessageType[] types = MessageType.values();
+        String type = random.nextInt(8) == 0 ? "XYZ" : types[random.nextInt(types.length - 1)].name();
+        StringBuilder data = new StringBuilder();
+        int length = random.nextInt(random.nextInt(10) == 0 ? 80 : 20);
+        for (int i = 0; i < length; i++) {
+            byte b = ALPHABET[random.nextInt(ALPHABET.length)];
+            if (b != '<' && b != '>') data.append((char) b);
+        }
+        return "<" + type + ":" + data + ">";
+    }
+
+    private static MessageType expectedType(String type) {
+        for (MessageType value : MessageType.values()) {
+            if (value != MessageType.UNKNOWN && value.name().equals(type)) return value;
+        }
+        return MessageType.UNKNOWN;
+    }
+
+    private static List<String> referenceDecode(byte[] stream) {
+        return referenceDecode(stream, MAX_FRAME_LENGTH);
+    }
+
+    // '<' always starts a frame, '>' ends it, frames without ':' or longer than the limit are dropped
+    private static List<String> referenceDecode(byte[] stream, int maxFrameLength) {
+        List<String> frames = new ArrayList<>();
+        String text = new String(stream, StandardCharsets.ISO_8859_1);
+        StringBuilder current = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                current = new StringBuilder();
+            } else if (current == null) {
+                continue;
+            } else if (c == '>') {
+                if (current.indexOf(":") >= 0) frames.add(current.toString());
+                current = null;
+            } else if (current.length() == maxFrameLength) {
+                current = null;
+            } else {
+                current.append(c);
+            }
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,216 @@
+package com.qppd.smartfan.bridge;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.lan.LanDevice;
+import com.qppd.smartfan.core.lan.LanDiscovery;
+import com.qppd.smartfan.core.lan.LocalFirstDataSource;
+import com.qppd.smartfan.core.schedule.Clock;
+import com.qppd.smartfan.sim.InMemoryDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * The app's LAN client against a {@link LanStandIn} relaying to an {@link Esp32StandIn}, with
+ * an {@link InMemoryDataSource} as a slow cloud that the stand-in also follows.
+ */
+public class LanStandInTest {
+    private static final String DEVICE_ID = "SmartFan_LAN_TEST";
+    private static final long CLOUD_LATENCY_MS = 400;
+
+    private final BlockingQueue<CurrentReading> readings = new ArrayBlockingQueue<>(1000);
+    private Esp32StandIn esp32;
+    private LanStandIn standIn;
+    private InMemoryDataSource cloud;
+    private LocalFirstDataSource dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        Transport link;
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            link = TcpTransport.connect(address.getHostString(), address.getPort());
+            esp32 = new Esp32StandIn(TcpTransport.accept(server), 50);
+        }
+        esp32.start();
+        standIn = new LanStandIn(DEVICE_ID, link);
+        standIn.start(InetAddress.getLoopbackAddress(), 0, 0);
+
+        cloud = new InMemoryDataSource(CLOUD_LATENCY_MS, 0, 1);
+        // The ESP8266's Firebase control stream
+        cloud.observeControl(DEVICE_ID, new DataObserver<ControlState>() {
+            @Override
+            public void onChanged(ControlState value) {
+                if (value == null) return;
+                try {
+                    standIn.applyCloudControl(value);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void onError(Exception error) {
+            }
+        });
+        dataSource = new LocalFirstDataSource(cloud, Clock.SYSTEM);
+        dataSource.observeCurrent(DEVICE_ID, new DataObserver<CurrentReading>() {
+            @Override
+            public void onChanged(CurrentReading value) {
+                if (value != null) readings.offer(value);
+            }
+
+            @Override
+            public void onError(Exception error) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dataSource.disconnectLan(DEVICE_ID);
+        standIn.close();
+        esp32.close();
+        cloud.close();
+    }
+
+    @Test
+    public void discovery_findsTheFan() throws Exception {
+        List<LanDevice> found = LanDiscovery.discover(InetAddress.getLoopbackAddress(), standIn.getDiscoveryPort(),
+            3000, DEVICE_ID);
+        assertEquals(1, found.size());
+        assertEquals(DEVICE_ID, found.get(0).deviceId);
+        assertEquals(standIn.getControlPort(), found.get(0).port);
+    }
+
+    @Test
+    public void lanControl_reachesTheFanBeforeTheCloud() throws Exception {
+        connect();
+        long start = System.nanoTime();
+        CompletableFuture<Void> result = update(ControlState.manualSpeed(35));
+        result.get(3, TimeUnit.SECONDS);
+        long acknowledgedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("acknowledged after " + acknowledgedMillis + " ms", acknowledgedMillis < CLOUD_LATENCY_MS);
+
+        awaitTrue(() -> esp32.getTargetFanSpeed() == 35 && !esp32.isAutoMode());
+        CurrentReading reading = awaitReading(readings, 35);
+        assertEquals("manual", reading.mode);
+        assertNotNull(reading.watt);
+    }
+
+    @Test
+    public void lanReadings_canBeObservedWithoutTheCloud() throws Exception {
+        BlockingQueue<CurrentReading> lanReadings = new ArrayBlockingQueue<>(1000);
+        dataSource.observeLanCurrent(DEVICE_ID, new DataObserver<CurrentReading>() {
+            @Override
+            public void onChanged(CurrentReading value) {
+                lanReadings.offer(value);
+            }
+
+            @Override
+            public void onError(Exception error) {
+            }
+        });
+        connect();
+        update(ControlState.manualSpeed(65)).get(3, TimeUnit.SECONDS);
+        assertEquals("manual", awaitReading(lanReadings, 65).mode);
+    }
+
+    @Test
+    public void staleCloudChange_isIgnored() throws Exception {
+        connect();
+        update(ControlState.manualSpeed(70)).get(3, TimeUnit.SECONDS);
+        awaitTrue(() -> esp32.getTargetFanSpeed() == 70);
+
+        // A write that was made earlier but reaches the fan later, e.g. from a phone that was offline
+        long earlier = standIn.getControl().updatedAt - 60000;
+        cloud.updateControl(DEVICE_ID, ControlState.manualSpeed(20).withUpdatedAt(earlier), null);
+        Thread.sleep(2 * CLOUD_LATENCY_MS);
+        assertEquals(70, esp32.getTargetFanSpeed());
+        assertEquals(Integer.valueOf(70), standIn.getControl().fanSpeed);
+
+        // A newer one from elsewhere wins and the LAN client hears about it
+        cloud.updateControl(DEVICE_ID, ControlState.manualSpeed(55).withUpdatedAt(System.currentTimeMillis()), null);
+        awaitTrue(() -> esp32.getTargetFanSpeed() == 55);
+    }
+
+    @Test
+    public void lostConnection_fallsBackToTheCloud() throws Exception {
+        connect();
+        standIn.close();
+        awaitTrue(() -> !dataSource.isLanConnected(DEVICE_ID));
+
+        update(ControlState.manualSpeed(45)).get(3, TimeUnit.SECONDS);
+        CompletableFuture<ControlState> stored = new CompletableFuture<>();
+        cloud.observeControl(DEVICE_ID, new DataObserver<ControlState>() {
+            @Override
+            public void onChanged(ControlState value) {
+                stored.complete(value);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                stored.completeExceptionally(error);
+            }
+        });
+        assertEquals(Integer.valueOf(45), stored.get(3, TimeUnit.SECONDS).fanSpeed);
+        assertNotNull(stored.get().updatedAt);
+    }
+
+    private void connect() throws Exception {
+        dataSource.connectLan(new LanDevice(DEVICE_ID, "127.0.0.1", standIn.getControlPort()));
+        assertTrue(dataSource.isLanConnected(DEVICE_ID));
+    }
+
+    private CompletableFuture<Void> update(ControlState changes) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        dataSource.updateControl(DEVICE_ID, changes, new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                result.complete(null);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    private static CurrentReading awaitReading(BlockingQueue<CurrentReading> readings, int fanSpeed)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            CurrentReading reading = readings.poll(100, TimeUnit.MILLISECONDS);
+            if (reading != null && reading.fanSpeed != null && reading.fanSpeed == fanSpeed) return reading;
+        }
+        fail("No reading at " + fanSpeed + "%");
+        return null;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Condition not met in time");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.qppd.smartfan.core.codec;
+
+import java.util.Arrays;
+
+/**
+ * Standard base64 with padding (RFC 4648), for binary values stored as database strings.
+ * java.util.Base64 needs API 26 and android.util.Base64 is not available to :core.
+ */
+public final class Base64Codec {
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    public static String encode(byte[] bytes) {
+        char[] chars = new char[(bytes.length + 2) / 3 * 4];
+        int out = 0;
+        int i = 0;
+        for (; i + 2 < bytes.length; i += 3) {
+            int group = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            chars[out++] = ALPHABET[group >>> 18];
+            chars[out++] = ALPHABET[(group >>> 12) & 0x3F];
+            chars[out++] = ALPHABET[(group >>> 6) & 0x3F];
+            chars[out++] = ALPHABET[group & 0x3F];
+        }
+        int left = bytes.length - i;
+        if (left > 0) {
+            int group = (bytes[i] & 0xFF) << 16 | (left == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+            chars[out++] = ALPHABET[group >>> 18];
+            chars[out++] = ALPHABET[(group >>> 12) & 0x3F];
+            chars[out++] = left == 2 ? ALPHABET[(group >>> 6) & 0x3F] : '=';
+            chars[out] = '=';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes padded base64. Throws {@link IllegalArgumentException} for anything else.
+     */
+    public static byte[] decode(String text) {
+        int length = text.length();
+        if (length % 4 != 0) {
+            throw new IllegalArgumentException("Base64 length must be a multiple of 4");
+        }
+        int padding = length == 0 ? 0 : text.charAt(length - 1) != '=' ? 0 : text.charAt(length - 2) != '=' ? 1 : 2;
+        byte[] bytes = new byte[length / 4 * 3 - padding];
+        int out = 0;
+        for (int i = 0; i < length; i += 4) {
+            int group = value(text, i) << 18 | value(text, i + 1) << 12;
+            boolean last = i + 4 == length;
+            if (last && padding == 2) {
+                bytes[out] = (byte) (group >>> 16);
+                break;
+            }
+            group |= value(text, i + 2) << 6;
+            if (last && padding == 1) {
+                bytes[out++] = (byte) (group >>> 16);
+                bytes[out] = (byte) (group >>> 8);
+                break;
+            }
+            group |= value(text, i + 3);
+            bytes[out++] = (byte) (group >>> 16);
+            bytes[out++] = (byte) (group >>> 8);
+            bytes[out++] = (byte) group;
+        }
+        return bytes;
+    }
+
+    private static int value(String text, int index) {
+        char c = text.charAt(index);
+        int value = c < 128 ? VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid base64 character at " + index);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package com.qppd.smartfan.core.codec;
+
+/**
+ * Reads bit fields written by {@link BitWriter}. Reading past the end throws
+ * {@link IllegalArgumentException}, so truncated input cannot decode as garbage.
+ */
+public final class BitReader {
+    private final byte[] bytes;
+    private final int limit;
+    private int position;
+    // The low bufferedBits bits are the next ones to read
+    private long buffered;
+    private int bufferedBits;
+
+    public BitReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public BitReader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean readBit() {
+        if (bufferedBits == 0) {
+            refill();
+        }
+        bufferedBits--;
+        return ((buffered >>> bufferedBits) & 1) != 0;
+    }
+
+    /**
+     * Reads {@code count} bits, from 0 to 64, as an unsigned value.
+     */
+    public long readBits(int count) {
+        if (count > 56) {
+            long high = readBits(count - 32);
+            return (high << 32) | readBits(32);
+        }
+        if (count == 0) return 0;
+        while (bufferedBits < count) {
+            refill();
+        }
+        bufferedBits -= count;
+        return (buffered >>> bufferedBits) & (-1L >>> (64 - count));
+    }
+
+    /**
+     * Reads a value written with {@link BitWriter#writeSigned(long)}.
+     */
+    public long readSigned() {
+        if (!readBit()) return 0;
+        if (!readBit()) return signExtend(readBits(7), 7);
+        if (!readBit()) return signExtend(readBits(12), 12);
+        if (!readBit()) return signExtend(readBits(20), 20);
+        return readBits(64);
+    }
+
+    /**
+     * Reads a value written with {@link BitWriter#writeRice(long, int)}.
+     */
+    public long readRice(int k) {
+        int quotient = 0;
+        while (readBit()) {
+            if (++quotient == BitWriter.RICE_ESCAPE) return readBits(64);
+        }
+        long zigzag = ((long) quotient << k) | readBits(k);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /** Bits left, counting the padding of the last byte. */
+    public long remainingBits() {
+        return (limit - position) * 8L + bufferedBits;
+    }
+
+    private void refill() {
+        if (position >= limit) {
+            throw new IllegalArgumentException("Unexpected end of data");
+        }
+        buffered = (buffered << 8) | (bytes[position++] & 0xFF);
+        bufferedBits += 8;
+    }
+
+    private static long signExtend(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+}
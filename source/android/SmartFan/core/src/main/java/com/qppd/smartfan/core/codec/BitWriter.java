@@ -0,0 +1,109 @@
+package com.qppd.smartfan.core.codec;
+
+import java.util.Arrays;
+
+/**
+ * Appends bit fields, most significant bit first, to a growable byte array.
+ */
+public final class BitWriter {
+    /** Unary length at which a Rice code is escaped. */
+    static final int RICE_ESCAPE = 24;
+
+    private byte[] buffer;
+    private int size;
+    // The low pendingBits bits have not been stored yet; pendingBits is always below 8
+    private long pending;
+    private int pendingBits;
+
+    public BitWriter(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    public void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the low {@code count} bits of {@code value}, for {@code count} from 0 to 64.
+     */
+    public void writeBits(long value, int count) {
+        if (count > 56) {
+            writeBits(value >>> 32, count - 32);
+            count = 32;
+        }
+        if (count == 0) return;
+        pending = (pending << count) | (value & (-1L >>> (64 - count)));
+        pendingBits += count;
+        while (pendingBits >= 8) {
+            pendingBits -= 8;
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = (byte) (pending >>> pendingBits);
+        }
+    }
+
+    /**
+     * Writes a signed value in as few bits as its magnitude allows: 1 bit for 0, 9 for
+     * [-64, 63], 15 for [-2048, 2047], 24 for [-524288, 524287] and 68 otherwise. Suits
+     * deltas and delta-of-deltas that are mostly zero or small. Read with
+     * {@link BitReader#readSigned()}.
+     */
+    public void writeSigned(long value) {
+        if (value == 0) {
+            writeBits(0, 1);
+        } else if (value >= -64 && value < 64) {
+            writeBits((0b10L << 7) | (value & 0x7F), 9);
+        } else if (value >= -2048 && value < 2048) {
+            writeBits((0b110L << 12) | (value & 0xFFF), 15);
+        } else if (value >= -524288 && value < 524288) {
+            writeBits((0b1110L << 20) | (value & 0xFFFFF), 24);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(value, 64);
+        }
+    }
+
+    /**
+     * Writes a signed value as a Rice code with parameter {@code k}: the zigzag encoded
+     * value's high bits in unary, then its low {@code k} bits. Costs about
+     * {@code |value| >> (k - 1)} + k + 1 bits, so it beats {@link #writeSigned(long)} when
+     * {@code k} fits the spread of the values; {@link #riceLength(long, int)} helps choose
+     * it. Values too far out are escaped and stored in full. Read with
+     * {@link BitReader#readRice(int)}.
+     */
+    public void writeRice(long value, int k) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        long quotient = zigzag >>> k;
+        if (quotient < 0 || quotient >= RICE_ESCAPE) {
+            writeBits(-1L, RICE_ESCAPE);
+            writeBits(value, 64);
+            return;
+        }
+        // quotient ones and a zero
+        writeBits(-2L, (int) quotient + 1);
+        writeBits(zigzag, k);
+    }
+
+    /** Bits {@link #writeRice(long, int)} takes for a value. */
+    public static int riceLength(long value, int k) {
+        long quotient = ((value << 1) ^ (value >> 63)) >>> k;
+        return quotient < 0 || quotient >= RICE_ESCAPE ? RICE_ESCAPE + 64 : (int) quotient + 1 + k;
+    }
+
+    /** Bits written so far. */
+    public long bitLength() {
+        return size * 8L + pendingBits;
+    }
+
+    /**
+     * Returns the bits written so far, with the last byte padded with zero bits.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = Arrays.copyOf(buffer, pendingBits > 0 ? size + 1 : size);
+        if (pendingBits > 0) {
+            bytes[size] = (byte) (pending << (8 - pendingBits));
+        }
+        return bytes;
+    }
+}
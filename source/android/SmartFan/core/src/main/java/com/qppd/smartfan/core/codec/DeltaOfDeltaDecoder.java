@@ -0,0 +1,21 @@
+package com.qppd.smartfan.core.codec;
+
+/**
+ * Decodes a series written by {@link DeltaOfDeltaEncoder}.
+ */
+public final class DeltaOfDeltaDecoder {
+    private long previous;
+    private long previousDelta;
+    private boolean started;
+
+    public long next(BitReader in) {
+        if (!started) {
+            previous = in.readBits(64);
+            started = true;
+            return previous;
+        }
+        previousDelta += in.readSigned();
+        previous += previousDelta;
+        return previous;
+    }
+}
@@ -0,0 +1,24 @@
+package com.qppd.smartfan.core.codec;
+
+/**
+ * Encodes a series of longs, such as timestamps, as the change of their difference. Evenly
+ * spaced values cost 1 bit each. The first value is stored in 64 bits.
+ */
+public final class DeltaOfDeltaEncoder {
+    private long previous;
+    private long previousDelta;
+    private boolean started;
+
+    public void add(BitWriter out, long value) {
+        if (!started) {
+            out.writeBits(value, 64);
+            previous = value;
+            started = true;
+            return;
+        }
+        long delta = value - previous;
+        out.writeSigned(delta - previousDelta);
+        previous = value;
+        previousDelta = delta;
+    }
+}
@@ -0,0 +1,26 @@
+package com.qppd.smartfan.core.codec;
+
+/**
+ * Decodes a series written by {@link XorEncoder}.
+ */
+public final class XorDecoder {
+    private long previous;
+    private int leading;
+    private int trailing;
+    private boolean started;
+
+    public double next(BitReader in) {
+        if (!started) {
+            previous = in.readBits(64);
+            started = true;
+        } else if (in.readBit()) {
+            if (in.readBit()) {
+                leading = (int) in.readBits(5);
+                int length = (int) in.readBits(6) + 1;
+                trailing = 64 - leading - length;
+            }
+            previous ^= in.readBits(64 - leading - trailing) << trailing;
+        }
+        return Double.longBitsToDouble(previous);
+    }
+}
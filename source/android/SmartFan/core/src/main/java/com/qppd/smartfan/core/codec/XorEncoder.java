@@ -0,0 +1,45 @@
+package com.qppd.smartfan.core.codec;
+
+/**
+ * Encodes a series of doubles by XOR with the previous value, as in Facebook's Gorilla: a
+ * repeated value costs 1 bit, and otherwise only the bits that changed are stored. Lossless
+ * for every value, NaN and -0.0 included.
+ */
+public final class XorEncoder {
+    private long previous;
+    private int previousLeading = -1;
+    private int previousTrailing;
+    private boolean started;
+
+    public void add(BitWriter out, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (!started) {
+            out.writeBits(bits, 64);
+            previous = bits;
+            started = true;
+            return;
+        }
+        long xor = bits ^ previous;
+        previous = bits;
+        if (xor == 0) {
+            out.writeBits(0, 1);
+            return;
+        }
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            // The changed bits fit in the previous window
+            int length = 64 - previousLeading - previousTrailing;
+            out.writeBits(0b10, 2);
+            out.writeBits(xor >>> previousTrailing, length);
+            return;
+        }
+        int length = 64 - leading - trailing;
+        out.writeBits(0b11, 2);
+        out.writeBits(leading, 5);
+        out.writeBits(length - 1, 6);
+        out.writeBits(xor >>> trailing, length);
+        previousLeading = leading;
+        previousTrailing = trailing;
+    }
+}
@@ -0,0 +1,33 @@
+package com.qppd.smartfan.core.control;
+
+/**
+ * The ESP32's fan speed decision (SmartFan.ino, controlFanSpeed), for code that has to
+ * predict or reproduce what the fan will do.
+ */
+public final class AutoModeRules {
+
+    private AutoModeRules() {
+    }
+
+    /**
+     * Speed the ESP32 picks from the temperature alone when auto mode is on.
+     */
+    public static int autoSpeed(double temperature) {
+        if (temperature >= 32.0) return 99;
+        if (temperature >= 30.0) return 90;
+        if (temperature >= 28.0) return 80;
+        if (temperature >= 26.0) return 70;
+        if (temperature >= 24.0) return 60;
+        if (temperature >= 22.0) return 50;
+        return 0;
+    }
+
+    /**
+     * Final speed: in auto mode the commanded speed acts as a floor under the automatic one,
+     * in manual mode it is used as is. Always within 0..100.
+     */
+    public static int effectiveSpeed(boolean autoMode, double temperature, int targetFanSpeed) {
+        int speed = autoMode ? Math.max(autoSpeed(temperature), targetFanSpeed) : targetFanSpeed;
+        return Math.max(0, Math.min(100, speed));
+    }
+}
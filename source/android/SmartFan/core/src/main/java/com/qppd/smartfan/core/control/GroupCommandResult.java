@@ -0,0 +1,44 @@
+package com.qppd.smartfan.core.control;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-device outcome of a {@link GroupController} command. Immutable.
+ */
+public final class GroupCommandResult {
+    private final List<String> succeeded;
+    private final Map<String, Exception> failed;
+    private final int writes;
+
+    GroupCommandResult(List<String> succeeded, Map<String, Exception> failed, int writes) {
+        this.succeeded = Collections.unmodifiableList(succeeded);
+        this.failed = Collections.unmodifiableMap(new LinkedHashMap<>(failed));
+        this.writes = writes;
+    }
+
+    /** Devices whose control node was updated, in the order they were given. */
+    public List<String> getSucceeded() {
+        return succeeded;
+    }
+
+    /** Devices that were not updated, with the error of their last attempt. */
+    public Map<String, Exception> getFailed() {
+        return failed;
+    }
+
+    public boolean isSuccess() {
+        return failed.isEmpty();
+    }
+
+    public int getDeviceCount() {
+        return succeeded.size() + failed.size();
+    }
+
+    /** Database writes the command took, retries included. */
+    public int getWrites() {
+        return writes;
+    }
+}
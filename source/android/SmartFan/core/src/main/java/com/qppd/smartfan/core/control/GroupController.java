@@ -0,0 +1,176 @@
+package com.qppd.smartfan.core.control;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends one control change to many devices.
+ *
+ * The devices are split into chunks of up to {@code chunkSize}, and each chunk is a single
+ * multi-path {@link SmartFanDataSource#updateControls} write, so a room of 20 fans costs one
+ * round trip instead of a write per field per fan. Up to {@code maxInFlight} chunks are
+ * written at once. Firebase applies one client's writes in order, so pipelining does not
+ * reorder them.
+ *
+ * A multi-path write is all or nothing, so one device the user may no longer write to would
+ * fail its whole chunk. A failed chunk is therefore retried device by device, which turns
+ * its error into per-device results.
+ */
+public class GroupController {
+    public static final int DEFAULT_CHUNK_SIZE = 200;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final SmartFanDataSource dataSource;
+    private final int chunkSize;
+    private final int maxInFlight;
+
+    public GroupController(SmartFanDataSource dataSource) {
+        this(dataSource, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public GroupController(SmartFanDataSource dataSource, int chunkSize, int maxInFlight) {
+        if (chunkSize <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("chunkSize and maxInFlight must be positive");
+        }
+        this.dataSource = dataSource;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void apply(DeviceGroup group, ControlState changes, DataCallback<GroupCommandResult> callback) {
+        apply(group.deviceIds, changes, callback);
+    }
+
+    /**
+     * Applies the non-null fields of {@code changes} to every device's control node. The
+     * callback's onSuccess is called once with the per-device results, on a data source
+     * callback thread (or right away if there are no devices); onError is not used.
+     */
+    public void apply(Collection<String> deviceIds, ControlState changes, DataCallback<GroupCommandResult> callback) {
+        List<String> devices = new ArrayList<>(new LinkedHashSet<>(deviceIds));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < devices.size(); from += chunkSize) {
+            chunks.add(devices.subList(from, Math.min(devices.size(), from + chunkSize)));
+        }
+        new Command(devices, chunks, changes, callback).start();
+    }
+
+    private class Command {
+        private final List<String> devices;
+        private final List<List<String>> chunks;
+        private final ControlState changes;
+        private final DataCallback<GroupCommandResult> callback;
+        // Guarded by this
+        private final Map<String, Exception> failed = new LinkedHashMap<>();
+        private int nextChunk;
+        private int pending;
+        private int writes;
+
+        Command(List<String> devices, List<List<String>> chunks, ControlState changes,
+                DataCallback<GroupCommandResult> callback) {
+            this.devices = devices;
+            this.chunks = chunks;
+            this.changes = changes;
+            this.callback = callback;
+        }
+
+        void start() {
+            if (chunks.isEmpty()) {
+                finish();
+                return;
+            }
+            for (int i = 0; i < Math.min(maxInFlight, chunks.size()); i++) {
+                writeNextChunk();
+            }
+        }
+
+        private void writeNextChunk() {
+            List<String> chunk;
+            synchronized (this) {
+                if (nextChunk == chunks.size()) return;
+                chunk = chunks.get(nextChunk++);
+                pending++;
+                writes++;
+            }
+            Map<String, ControlState> changesByDevice = new LinkedHashMap<>();
+            for (String deviceId : chunk) {
+                changesByDevice.put(deviceId, changes);
+            }
+            dataSource.updateControls(changesByDevice, new DataCallback<Void>() {
+                @Override
+                public void onSuccess(Void value) {
+                    onWritten();
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    if (chunk.size() == 1) {
+                        onDeviceFailed(chunk.get(0), error);
+                        onWritten();
+                    } else {
+                        retryEach(chunk);
+                        writeNextChunk();
+                    }
+                }
+            });
+        }
+
+        // The retries take over the chunk's pending count, so the command finishes only after them
+        private void retryEach(List<String> chunk) {
+            synchronized (this) {
+                pending += chunk.size() - 1;
+                writes += chunk.size();
+            }
+            for (String deviceId : chunk) {
+                dataSource.updateControl(deviceId, changes, new DataCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void value) {
+                        onRetried();
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        onDeviceFailed(deviceId, error);
+                        onRetried();
+                    }
+                });
+            }
+        }
+
+        private synchronized void onDeviceFailed(String deviceId, Exception error) {
+            failed.put(deviceId, error);
+        }
+
+        private void onWritten() {
+            writeNextChunk();
+            onRetried();
+        }
+
+        private void onRetried() {
+            synchronized (this) {
+                if (--pending > 0 || nextChunk < chunks.size()) return;
+            }
+            finish();
+        }
+
+        private void finish() {
+            GroupCommandResult result;
+            synchronized (this) {
+                List<String> succeeded = new ArrayList<>(devices.size() - failed.size());
+                for (String deviceId : devices) {
+                    if (!failed.containsKey(deviceId)) succeeded.add(deviceId);
+                }
+                result = new GroupCommandResult(succeeded, failed, writes);
+            }
+            callback.onSuccess(result);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.qppd.smartfan.core.data;
+
+/**
+ * Contents of a devices/{id}/control node. When used as an update, null fields are left
+ * unchanged.
+ */
+public final class ControlState {
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_MANUAL = "manual";
+
+    public final String mode;
+    public final Integer fanSpeed;
+    public final Double targetTemperature;
+    public final Boolean manualControl;
+    /**
+     * When the writer made this change, Unix milliseconds. The fan applies a change only if
+     * it is not older than the last one it applied, whichever path (Firebase or LAN) each
+     * came by. Null for writers that do not stamp their changes; those always apply.
+     */
+    public final Long updatedAt;
+
+    public ControlState(String mode, Integer fanSpeed, Double targetTemperature, Boolean manualControl) {
+        this(mode, fanSpeed, targetTemperature, manualControl, null);
+    }
+
+    public ControlState(String mode, Integer fanSpeed, Double targetTemperature, Boolean manualControl,
+                        Long updatedAt) {
+        this.mode = mode;
+        this.fanSpeed = fanSpeed;
+        this.targetTemperature = targetTemperature;
+        this.manualControl = manualControl;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * The values MainActivity writes when a device has no control node yet.
+     */
+    public static ControlState defaults() {
+        return new ControlState(MODE_AUTO, 50, 25.0, false);
+    }
+
+    /**
+     * An update that switches to manual mode at {@code fanSpeed}. In auto mode the ESP32
+     * only uses a commanded speed as a floor.
+     */
+    public static ControlState manualSpeed(int fanSpeed) {
+        return new ControlState(MODE_MANUAL, fanSpeed, null, true);
+    }
+
+    /**
+     * An update that hands the speed back to the ESP32's temperature rules.
+     */
+    public static ControlState autoMode() {
+        return new ControlState(MODE_AUTO, null, null, false);
+    }
+
+    public ControlState withUpdatedAt(long updatedAtMillis) {
+        return new ControlState(mode, fanSpeed, targetTemperature, manualControl, updatedAtMillis);
+    }
+
+    public boolean isAutoMode() {
+        return MODE_AUTO.equals(mode);
+    }
+
+    /**
+     * Returns this state with the non-null fields of {@code changes} applied.
+     */
+    public ControlState merge(ControlState changes) {
+        return new ControlState(
+            changes.mode != null ? changes.mode : mode,
+            changes.fanSpeed != null ? changes.fanSpeed : fanSpeed,
+            changes.targetTemperature != null ? changes.targetTemperature : targetTemperature,
+            changes.manualControl != null ? changes.manualControl : manualControl,
+            changes.updatedAt != null ? changes.updatedAt : updatedAt);
+    }
+}
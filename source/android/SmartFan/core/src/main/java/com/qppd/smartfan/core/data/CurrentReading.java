@@ -0,0 +1,30 @@
+package com.qppd.smartfan.core.data;
+
+/**
+ * Contents of a devices/{id}/current node as written by FirebaseManager::updateDeviceCurrent.
+ * Missing fields are null.
+ */
+public final class CurrentReading {
+    public final Double temperature;
+    public final Double humidity;
+    public final Integer fanSpeed;
+    public final String mode;
+    public final Double voltage;
+    public final Double current;
+    public final Double watt;
+    public final Double kwh;
+    public final Long lastUpdate;    // Unix seconds
+
+    public CurrentReading(Double temperature, Double humidity, Integer fanSpeed, String mode,
+                          Double voltage, Double current, Double watt, Double kwh, Long lastUpdate) {
+        this.temperature = temperature;
+        this.humidity = humidity;
+        this.fanSpeed = fanSpeed;
+        this.mode = mode;
+        this.voltage = voltage;
+        this.current = current;
+        this.watt = watt;
+        this.kwh = kwh;
+        this.lastUpdate = lastUpdate;
+    }
+}
@@ -0,0 +1,9 @@
+package com.qppd.smartfan.core.data;
+
+/**
+ * Result of a one-off {@link SmartFanDataSource} operation.
+ */
+public interface DataCallback<T> {
+    void onSuccess(T value);
+    void onError(Exception error);
+}
@@ -0,0 +1,10 @@
+package com.qppd.smartfan.core.data;
+
+/**
+ * Receives the current value of a node and every later change. The value is null while
+ * the node does not exist.
+ */
+public interface DataObserver<T> {
+    void onChanged(T value);
+    void onError(Exception error);
+}
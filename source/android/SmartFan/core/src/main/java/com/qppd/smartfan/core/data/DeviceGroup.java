@@ -0,0 +1,26 @@
+package com.qppd.smartfan.core.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A named set of devices, stored under users/{uid}/groups/{id}. Immutable.
+ */
+public final class DeviceGroup {
+    public final String id;
+    public final String name;
+    /** Member ids in the order they were given, without duplicates. */
+    public final List<String> deviceIds;
+
+    public DeviceGroup(String id, String name, Collection<String> deviceIds) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("A group needs an id");
+        }
+        this.id = id;
+        this.name = name;
+        this.deviceIds = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(deviceIds)));
+    }
+}
@@ -0,0 +1,8 @@
+package com.qppd.smartfan.core.data;
+
+/**
+ * Handle of an active observation. Removing it twice is harmless.
+ */
+public interface Registration {
+    void remove();
+}
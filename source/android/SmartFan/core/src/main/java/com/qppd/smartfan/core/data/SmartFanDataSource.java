@@ -0,0 +1,80 @@
+package com.qppd.smartfan.core.data;
+
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access to the SmartFan data under /smartfan, independent of where it is stored.
+ *
+ * The app implements this over the Firebase SDK. JVM tools, simulators and tests can use
+ * the REST client or an in-memory fake instead. Implementations choose the thread callbacks
+ * arrive on and document it.
+ */
+public interface SmartFanDataSource {
+
+    /**
+     * Reads users/{uid}/deviceId. Delivers null if the user has not linked a device.
+     */
+    void fetchUserDeviceId(String uid, DataCallback<String> callback);
+
+    /**
+     * Observes devices/{id}/current.
+     */
+    Registration observeCurrent(String deviceId, DataObserver<CurrentReading> observer);
+
+    /**
+     * Observes devices/{id}/control.
+     */
+    Registration observeControl(String deviceId, DataObserver<ControlState> observer);
+
+    /**
+     * Reads the log entries with {@code fromMillis <= timestamp < toMillis}, oldest first.
+     */
+    void fetchLogs(String deviceId, long fromMillis, long toMillis, DataCallback<List<LogEntry>> callback);
+
+    /**
+     * Reads the digests under devices/{id}/logDigests of the UTC days that begin in
+     * {@code [fromMillis, toMillis)}, keyed by day start in Unix seconds. Days that have no
+     * digest are left out.
+     */
+    void fetchLogDigests(String deviceId, long fromMillis, long toMillis,
+                         DataCallback<Map<Long, LogDigest>> callback);
+
+    /**
+     * Replaces devices/{id}/current, like the ESP8266 does on every upload.
+     */
+    void writeCurrent(String deviceId, CurrentReading reading, DataCallback<Void> callback);
+
+    /**
+     * Writes a log entry under devices/{id}/logs/{timestamp}.
+     */
+    void appendLog(String deviceId, LogEntry entry, DataCallback<Void> callback);
+
+    /**
+     * Applies the non-null fields of {@code changes} to devices/{id}/control.
+     */
+    void updateControl(String deviceId, ControlState changes, DataCallback<Void> callback);
+
+    /**
+     * Applies the non-null fields of each device's changes to its devices/{id}/control in one
+     * multi-path update: every device is updated or, if the write fails, none is.
+     */
+    void updateControls(Map<String, ControlState> changesByDevice, DataCallback<Void> callback);
+
+    /**
+     * Reads users/{uid}/groups. Delivers an empty list if the user has none.
+     */
+    void fetchGroups(String uid, DataCallback<List<DeviceGroup>> callback);
+
+    /**
+     * Replaces users/{uid}/groups/{group.id}.
+     */
+    void saveGroup(String uid, DeviceGroup group, DataCallback<Void> callback);
+
+    /**
+     * Removes users/{uid}/groups/{groupId}.
+     */
+    void deleteGroup(String uid, String groupId, DataCallback<Void> callback);
+}
@@ -0,0 +1,182 @@
+package com.qppd.smartfan.core.efficiency;
+
+/**
+ * Learns how many watts a fan draws at each speed and follows how far its draw moves away.
+ *
+ * The expected draw is fitted by least squares as {@code a + b·s + c·s²} of the fan speed
+ * {@code s}, plus {@code d·t} of the temperature when enabled, over the first
+ * {@code baselineSamples} readings with the fan on. The fit is then kept as the fan's
+ * healthy curve. Later readings move an exponential average of their relative deviation
+ * from it; a worn bearing or a failing triac shows as that average staying well away from
+ * zero for many readings in a row, which single readings against fixed limits miss.
+ *
+ * Only the sums of the fit and a few running values are kept, so memory does not grow
+ * with the readings. Not thread safe.
+ */
+public final class EfficiencyModel {
+    // Readings the curve is not meant for: the triac is off, or the meter misread
+    private static final double MAX_WATT = 1000;
+    // Below this a deviation is mostly meter noise
+    private static final double MIN_EXPECTED_WATT = 1;
+    // Keeps the fit solvable when every baseline reading had the same speed
+    private static final double RIDGE = 1e-9;
+
+    private final int baselineSamples;
+    private final int driftSamples;
+    private final double driftThreshold;
+    private final int features;
+
+    // Sums of the normal equations, then the fitted coefficients
+    private final double[][] xtx;
+    private final double[] xty;
+    private final double[] x;
+    private double[] coefficients;
+    private int samples;
+
+    private int driftCount;
+    private double drift;
+
+    /**
+     * @param baselineSamples readings with the fan on that the healthy curve is fitted to
+     * @param driftSamples    readings the deviation is averaged over, and needed before a drift
+     *                        is reported
+     * @param driftThreshold  relative deviation reported as a drift, such as 0.15 for 15%
+     * @param useTemperature  whether the curve also depends on the temperature; readings
+     *                        without one are then left out
+     */
+    public EfficiencyModel(int baselineSamples, int driftSamples, double driftThreshold, boolean useTemperature) {
+        if (baselineSamples <= 0 || driftSamples <= 0) {
+            throw new IllegalArgumentException("Sample counts must be positive");
+        }
+        this.baselineSamples = baselineSamples;
+        this.driftSamples = driftSamples;
+        this.driftThreshold = driftThreshold;
+        this.features = useTemperature ? 4 : 3;
+        xtx = new double[features][features];
+        xty = new double[features];
+        x = new double[features];
+    }
+
+    /**
+     * Takes a reading into the fit or, once it is done, into the deviation. Returns the
+     * reading's draw relative to the healthy curve, 1 meaning as expected, or NaN if the
+     * reading was not compared: the fan was off, a value is missing or out of range, or the
+     * curve is still being fitted.
+     */
+    public double observe(Long fanSpeed, Double watt, Double temperature) {
+        if (fanSpeed == null || fanSpeed <= 0 || fanSpeed > 100
+                || watt == null || !(watt > 0 && watt <= MAX_WATT)) {
+            return Double.NaN;
+        }
+        if (!features(fanSpeed, temperature)) return Double.NaN;
+
+        if (coefficients == null) {
+            for (int i = 0; i < features; i++) {
+                for (int j = 0; j < features; j++) {
+                    xtx[i][j] += x[i] * x[j];
+                }
+                xty[i] += x[i] * watt;
+            }
+            if (++samples == baselineSamples) {
+                coefficients = solve(xtx, xty);
+            }
+            return Double.NaN;
+        }
+
+        double expected = dot(coefficients, x);
+        if (expected < MIN_EXPECTED_WATT) return Double.NaN;
+        double ratio = watt / expected;
+        driftCount++;
+        double alpha = 1.0 / Math.min(driftCount, driftSamples);
+        drift += alpha * (ratio - 1 - drift);
+        return ratio;
+    }
+
+    /**
+     * Watts the healthy curve expects at the speed, or NaN while it is being fitted or
+     * without the temperature it needs.
+     */
+    public double expectedWatt(long fanSpeed, Double temperature) {
+        if (coefficients == null || !features(fanSpeed, temperature)) return Double.NaN;
+        return dot(coefficients, x);
+    }
+
+    /** Whether the healthy curve is fitted. */
+    public boolean isCalibrated() {
+        return coefficients != null;
+    }
+
+    /**
+     * Recent draw relative to the healthy curve, minus one: 0.2 is 20% more than expected.
+     * NaN until a reading was compared.
+     */
+    public double drift() {
+        return driftCount == 0 ? Double.NaN : drift;
+    }
+
+    /** Whether the recent draw has stayed beyond the threshold from the healthy curve. */
+    public boolean isDrifting() {
+        return driftCount >= driftSamples && Math.abs(drift) > driftThreshold;
+    }
+
+    // Fills x, scaled so the sums stay well conditioned; false without a needed temperature
+    private boolean features(long fanSpeed, Double temperature) {
+        double speed = fanSpeed / 100.0;
+        x[0] = 1;
+        x[1] = speed;
+        x[2] = speed * speed;
+        if (features == 4) {
+            if (temperature == null || !(temperature >= -50 && temperature <= 100)) return false;
+            x[3] = (temperature - 30) / 10;
+        }
+        return true;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    // Gaussian elimination with partial pivoting on a ridged copy
+    private static double[] solve(double[][] xtx, double[] xty) {
+        int n = xty.length;
+        double[][] a = new double[n][n + 1];
+        double ridge = 0;
+        for (int i = 0; i < n; i++) {
+            ridge += xtx[i][i];
+        }
+        ridge = Math.max(ridge, 1) * RIDGE;
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(xtx[i], 0, a[i], 0, n);
+            a[i][i] += ridge;
+            a[i][n] = xty[i];
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) pivot = row;
+            }
+            double[] swap = a[col];
+            a[col] = a[pivot];
+            a[pivot] = swap;
+            for (int row = col + 1; row < n; row++) {
+                double factor = a[row][col] / a[col][col];
+                for (int k = col; k <= n; k++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+            }
+        }
+        double[] solution = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = a[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= a[row][k] * solution[k];
+            }
+            solution[row] = sum / a[row][row];
+        }
+        return solution;
+    }
+}
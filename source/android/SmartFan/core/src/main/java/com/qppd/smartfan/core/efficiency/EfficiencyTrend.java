@@ -0,0 +1,87 @@
+package com.qppd.smartfan.core.efficiency;
+
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.history.TimeSeries;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Feeds a device's rows through an {@link EfficiencyModel} and keeps the daily average of
+ * their draw relative to the healthy curve, as a percentage where 100 is as expected.
+ *
+ * Months of cached rows go through in one pass, and rows that arrive later are added the
+ * same way; rows not newer than the last one taken are skipped, so overlapping batches do
+ * not count twice. Days are UTC days, as in {@link LogBlocks}. Not thread safe.
+ */
+public final class EfficiencyTrend {
+    private final EfficiencyModel model;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    // Closed days, then the one being summed
+    private long[] dayTimes = new long[32];
+    private float[] dayPercents = new float[32];
+    private int days;
+    private long currentDay = Long.MIN_VALUE;
+    private double currentSum;
+    private int currentCount;
+
+    public EfficiencyTrend(EfficiencyModel model) {
+        this.model = model;
+    }
+
+    public EfficiencyModel model() {
+        return model;
+    }
+
+    /**
+     * Adds rows, oldest first. Rows without a timestamp are skipped.
+     */
+    public void addAll(List<LogEntry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            add(entries.get(i));
+        }
+    }
+
+    public void add(LogEntry entry) {
+        if (entry == null || entry.timestamp == null || entry.timestamp <= lastTimestamp) return;
+        lastTimestamp = entry.timestamp;
+        double ratio = model.observe(entry.fanSpeed, entry.watt, entry.temperature);
+        if (Double.isNaN(ratio)) return;
+
+        long day = LogBlocks.blockStart(entry.timestamp, LogBlocks.DAY_SECONDS);
+        if (day != currentDay) {
+            closeDay();
+            currentDay = day;
+        }
+        currentSum += ratio;
+        currentCount++;
+    }
+
+    /**
+     * The daily percentages by day start in epoch milliseconds, today's so far included.
+     */
+    public TimeSeries series() {
+        int size = currentCount == 0 ? days : days + 1;
+        long[] times = Arrays.copyOf(dayTimes, size);
+        float[] values = Arrays.copyOf(dayPercents, size);
+        if (size > days) {
+            times[days] = currentDay * 1000;
+            values[days] = (float) (100 * currentSum / currentCount);
+        }
+        return new TimeSeries(times, values);
+    }
+
+    private void closeDay() {
+        if (currentCount == 0) return;
+        if (days == dayTimes.length) {
+            dayTimes = Arrays.copyOf(dayTimes, days * 2);
+            dayPercents = Arrays.copyOf(dayPercents, days * 2);
+        }
+        dayTimes[days] = currentDay * 1000;
+        dayPercents[days] = (float) (100 * currentSum / currentCount);
+        days++;
+        currentSum = 0;
+        currentCount = 0;
+    }
+}
@@ -0,0 +1,225 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * {@link ChartData} of recently viewed time filters, by device and filter, least recently
+ * used dropped first once more than {@code maxPoints} points are held.
+ *
+ * Each device's data has a version. Rows the device did not have, whether newer than all of
+ * its rows or in a range it had none in, are passed to {@link #append}, and cached charts of
+ * the current version take them in when next asked for; any other change goes through
+ * {@link #invalidate}, which starts a new version and drops the device's charts. Not thread
+ * safe; charts use it on the main thread, and bring a chart up to date elsewhere through a
+ * {@link Lookup}.
+ */
+public final class ChartCache {
+    private final int maxPoints;
+    private final LinkedHashMap<Key, Cached> charts = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Version> versions = new HashMap<>();
+    private int points;
+
+    public ChartCache(int maxPoints) {
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * The device's chart for the window ending at {@code nowMillis}, or null if none is cached
+     * for the current version. A cached chart is moved to {@code nowMillis} and given the rows
+     * appended since it was built; without such rows, one less than a downsampling bucket old
+     * is returned as it is, as it would draw the same.
+     */
+    public ChartData get(String deviceId, long windowMillis, long nowMillis, TimeZone zone) {
+        Lookup lookup = lookup(deviceId, windowMillis);
+        if (lookup.cached == null) return null;
+        ChartData data = lookup.extend(nowMillis, zone);
+        put(lookup, data);
+        return data;
+    }
+
+    /**
+     * The device's cached chart of the current version, if any, with the rows appended since
+     * it was built, to be brought up to date off the main thread.
+     */
+    public Lookup lookup(String deviceId, long windowMillis) {
+        Key key = new Key(deviceId, windowMillis);
+        Version version = version(deviceId);
+        Cached cached = charts.get(key);
+        if (cached != null && cached.version != version.number) {
+            remove(key);
+            cached = null;
+        }
+        if (cached == null) {
+            return new Lookup(deviceId, windowMillis, null, new ArrayList<LogEntry>(), version.number,
+                version.appended.size());
+        }
+        List<LogEntry> appended = new ArrayList<>(
+            version.appended.subList(cached.appended, version.appended.size()));
+        return new Lookup(deviceId, windowMillis, cached.data, appended, version.number,
+            version.appended.size());
+    }
+
+    /**
+     * Caches a chart built from the device's rows as they are now.
+     */
+    public void put(String deviceId, ChartData data) {
+        Version version = version(deviceId);
+        put(deviceId, data, version.appended.size());
+    }
+
+    /**
+     * Caches a chart built from the lookup's cached chart, or from the device's rows as they
+     * were when the lookup was taken. Ignored if the device's rows were invalidated since.
+     */
+    public void put(Lookup lookup, ChartData data) {
+        if (version(lookup.deviceId).number != lookup.version) return;
+        put(lookup.deviceId, data, lookup.appendedCount);
+    }
+
+    /**
+     * Records rows the device did not have: newer than all of its rows, or in a range it had
+     * none in, such as an earlier day.
+     */
+    public void append(String deviceId, List<LogEntry> rows) {
+        version(deviceId).appended.addAll(rows);
+    }
+
+    /**
+     * The device's rows changed other than by {@link #append}; its charts are dropped.
+     */
+    public void invalidate(String deviceId) {
+        Version version = version(deviceId);
+        version.number++;
+        version.appended = new ArrayList<>();
+        Iterator<Map.Entry<Key, Cached>> iterator = charts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Cached> entry = iterator.next();
+            if (entry.getKey().deviceId.equals(deviceId)) {
+                points -= entry.getValue().data.points();
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        charts.clear();
+        versions.clear();
+        points = 0;
+    }
+
+    public int size() {
+        return charts.size();
+    }
+
+    private void put(String deviceId, ChartData data, int appended) {
+        Key key = new Key(deviceId, data.windowMillis);
+        remove(key);
+        charts.put(key, new Cached(data, version(deviceId).number, appended));
+        points += data.points();
+        Iterator<Cached> eldest = charts.values().iterator();
+        while (points > maxPoints && charts.size() > 1) {
+            points -= eldest.next().data.points();
+            eldest.remove();
+        }
+    }
+
+    private Version version(String deviceId) {
+        Version version = versions.get(deviceId);
+        if (version == null) {
+            version = new Version();
+            versions.put(deviceId, version);
+        }
+        return version;
+    }
+
+    private void remove(Key key) {
+        Cached removed = charts.remove(key);
+        if (removed != null) {
+            points -= removed.data.points();
+        }
+    }
+
+    /**
+     * A device's cached chart and what it lacks, taken on the main thread by {@link #lookup}.
+     * {@link #extend} may run on any thread; its result goes back through
+     * {@link #put(Lookup, ChartData)}.
+     */
+    public static final class Lookup {
+        public final String deviceId;
+        public final long windowMillis;
+        /** The cached chart, or null if there is none to bring up to date. */
+        public final ChartData cached;
+        private final List<LogEntry> appended;
+        private final long version;
+        private final int appendedCount;
+
+        Lookup(String deviceId, long windowMillis, ChartData cached, List<LogEntry> appended, long version,
+               int appendedCount) {
+            this.deviceId = deviceId;
+            this.windowMillis = windowMillis;
+            this.cached = cached;
+            this.appended = appended;
+            this.version = version;
+            this.appendedCount = appendedCount;
+        }
+
+        /**
+         * The cached chart moved to {@code nowMillis} with the rows appended since it was
+         * built; without such rows, one less than a downsampling bucket old is returned as it
+         * is, as it would draw the same.
+         */
+        public ChartData extend(long nowMillis, TimeZone zone) {
+            if (appended.isEmpty() && nowMillis - cached.nowMillis < cached.bucketMillis()) {
+                return cached;
+            }
+            return cached.extend(appended, nowMillis, zone);
+        }
+    }
+
+    private static final class Version {
+        long number;
+        // Rows appended in this version, oldest first
+        List<LogEntry> appended = new ArrayList<>();
+    }
+
+    private static final class Cached {
+        final ChartData data;
+        final long version;
+        // How many of the version's appended rows data includes
+        final int appended;
+
+        Cached(ChartData data, long version, int appended) {
+            this.data = data;
+            this.version = version;
+            this.appended = appended;
+        }
+    }
+
+    private static final class Key {
+        final String deviceId;
+        final long windowMillis;
+
+        Key(String deviceId, long windowMillis) {
+            this.deviceId = deviceId;
+            this.windowMillis = windowMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return windowMillis == other.windowMillis && deviceId.equals(other.deviceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * deviceId.hashCode() + (int) (windowMillis ^ (windowMillis >>> 32));
+        }
+    }
+}
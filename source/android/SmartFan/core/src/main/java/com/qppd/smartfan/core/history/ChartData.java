@@ -0,0 +1,156 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * The series the history charts draw for one time filter, ready to turn into chart entries.
+ *
+ * The full-resolution series are kept next to the downsampled ones, so rows can be added and
+ * rows that left the window dropped without going back to the log entries. Line
+ * series are downsampled into buckets fixed in time, so the next window's series differ from
+ * this one's only at the ends and charts can update them in place; see {@link SeriesSlide}.
+ * Immutable.
+ */
+public final class ChartData {
+    // Longer silences between readings are the fan being offline; it logs every minute
+    private static final long FAN_SPEED_MAX_GAP_MILLIS = 5 * 60 * 1000L;
+
+    public final long nowMillis;
+    public final long windowMillis;
+    /** Temperature, downsampled for drawing. */
+    public final TimeSeries temperature;
+    /** Whether {@link #temperature} lost points to downsampling. */
+    public final boolean temperatureDownsampled;
+    /** Power, downsampled for drawing. */
+    public final TimeSeries power;
+    /** Time at each fan speed; read only, as extending takes a copy of it. */
+    public final DutyCycle fanSpeed;
+
+    private final TimeSeries fullTemperature;
+    private final TimeSeries fullPower;
+    private final TimeSeries fullFanSpeed;
+    private final int maxPoints;
+
+    private ChartData(long nowMillis, long windowMillis, TimeSeries fullTemperature, TimeSeries fullPower,
+                      TimeSeries fullFanSpeed, DutyCycle fanSpeed, int maxPoints) {
+        this.nowMillis = nowMillis;
+        this.windowMillis = windowMillis;
+        this.fullTemperature = fullTemperature;
+        this.fullPower = fullPower;
+        this.fullFanSpeed = fullFanSpeed;
+        this.fanSpeed = fanSpeed;
+        this.maxPoints = maxPoints;
+        this.temperature = downsample(fullTemperature, nowMillis, windowMillis, maxPoints);
+        this.temperatureDownsampled = temperature.size() < fullTemperature.size();
+        this.power = downsample(fullPower, nowMillis, windowMillis, maxPoints);
+    }
+
+    /**
+     * Builds the series from the entries of the window ending at {@code nowMillis}, oldest
+     * first, as {@link HistoryFilter#filterByWindow} returns them. Line series are
+     * downsampled to at most {@code maxPoints}.
+     */
+    public static ChartData build(List<LogEntry> entries, long nowMillis, long windowMillis, TimeZone zone,
+                                  int maxPoints) {
+        TimeSeries fanSpeeds = HistorySeries.fanSpeedOverTime(entries, zone);
+        DutyCycle fanSpeed = new DutyCycle(FAN_SPEED_MAX_GAP_MILLIS);
+        addFanSpeed(fanSpeed, fanSpeeds, 0);
+        return new ChartData(nowMillis, windowMillis, HistorySeries.temperature(entries, zone),
+            HistorySeries.power(entries, zone), fanSpeeds, fanSpeed, maxPoints);
+    }
+
+    /**
+     * The same window moved to end at {@code nowMillis}, with {@code appended} added: rows that
+     * arrived since, either newer than the rows this was built from or in a range they did not
+     * cover, such as an earlier day. Points that fell out of the window are dropped; only the
+     * new rows are read, unless older ones change the time at each fan speed.
+     */
+    public ChartData extend(List<LogEntry> appended, long nowMillis, TimeZone zone) {
+        long cutoff = nowMillis - windowMillis;
+        List<LogEntry> added = HistoryFilter.filterByWindow(appended, nowMillis, windowMillis, zone);
+        TimeSeries temperature = concat(fullTemperature, cutoff, HistorySeries.temperature(added, zone));
+        TimeSeries power = concat(fullPower, cutoff, HistorySeries.power(added, zone));
+        TimeSeries addedFanSpeeds = HistorySeries.fanSpeedOverTime(added, zone);
+        TimeSeries fanSpeeds = concat(fullFanSpeed, cutoff, addedFanSpeeds);
+        DutyCycle fanSpeed;
+        if (addedFanSpeeds.isEmpty() || fullFanSpeed.isEmpty()
+                || addedFanSpeeds.timeMillis[0] >= fullFanSpeed.timeMillis[fullFanSpeed.size() - 1]) {
+            fanSpeed = this.fanSpeed.copy();
+            fanSpeed.evictBefore(cutoff);
+            addFanSpeed(fanSpeed, addedFanSpeeds, 0);
+        } else {
+            // Older readings split intervals already counted, so the time is counted again
+            fanSpeed = new DutyCycle(FAN_SPEED_MAX_GAP_MILLIS);
+            addFanSpeed(fanSpeed, fanSpeeds, 0);
+        }
+        return new ChartData(nowMillis, windowMillis, temperature, power, fanSpeeds, fanSpeed, maxPoints);
+    }
+
+    /**
+     * Width of the time buckets the line series are downsampled into. Until the window moves
+     * by that much, it drops no whole bucket.
+     */
+    public long bucketMillis() {
+        return bucketMillis(windowMillis, maxPoints);
+    }
+
+    /** Points held, full resolution and downsampled, as a measure of memory. */
+    public int points() {
+        int points = fullTemperature.size() + fullPower.size() + fullFanSpeed.size() + fanSpeed.size();
+        if (temperature != fullTemperature) points += temperature.size();
+        if (power != fullPower) points += power.size();
+        return points;
+    }
+
+    // Two points a bucket, and a window starting within a bucket ends in one more
+    private static TimeSeries downsample(TimeSeries full, long nowMillis, long windowMillis, int maxPoints) {
+        if (full.size() <= maxPoints || maxPoints < 4) return full;
+        return Downsampler.minMax(full, nowMillis - windowMillis, bucketMillis(windowMillis, maxPoints));
+    }
+
+    private static long bucketMillis(long windowMillis, int maxPoints) {
+        return windowMillis / Math.max(maxPoints / 2 - 1, 1) + 1;
+    }
+
+    private static void addFanSpeed(DutyCycle fanSpeed, TimeSeries speeds, int from) {
+        for (int i = from; i < speeds.size(); i++) {
+            fanSpeed.add(speeds.timeMillis[i], (int) speeds.values[i]);
+        }
+    }
+
+    // The points of base from cutoff on, merged with added by time
+    private static TimeSeries concat(TimeSeries base, long cutoff, TimeSeries added) {
+        int from = firstAtOrAfter(base.timeMillis, cutoff);
+        int kept = base.size() - from;
+        long[] times = new long[kept + added.size()];
+        float[] values = new float[times.length];
+        int b = from;
+        int a = 0;
+        // Added rows are nearly always later, which makes this a copy
+        for (int i = 0; i < times.length; i++) {
+            if (a == added.size() || (b < base.size() && base.timeMillis[b] <= added.timeMillis[a])) {
+                times[i] = base.timeMillis[b];
+                values[i] = base.values[b++];
+            } else {
+                times[i] = added.timeMillis[a];
+                values[i] = added.values[a++];
+            }
+        }
+        return new TimeSeries(times, values);
+    }
+
+    private static int firstAtOrAfter(long[] times, long time) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,54 @@
+package com.qppd.smartfan.core.history;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes log entries in the history export's CSV layout.
+ */
+public final class CsvExporter {
+    public static final String HEADER =
+        "Timestamp,DateTime,Temperature(°C),Fan Speed(%),Voltage(V),Current(A),Power(W),Energy(kWh)\n";
+
+    // Typical row length, used to size the buffer up front
+    private static final int ESTIMATED_ROW_LENGTH = 80;
+
+    private CsvExporter() {
+    }
+
+    public static String toCsv(List<LogEntry> entries) {
+        StringBuilder csvData = new StringBuilder(HEADER.length() + entries.size() * ESTIMATED_ROW_LENGTH);
+        try {
+            write(entries, csvData);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return csvData.toString();
+    }
+
+    /**
+     * Streams the CSV to {@code out}, for exports too large to build in memory first.
+     */
+    public static void write(List<LogEntry> entries, Appendable out) throws IOException {
+        out.append(HEADER);
+        for (LogEntry entry : entries) {
+            if (entry.timestamp != null) out.append(String.valueOf(entry.timestamp));
+            out.append(',');
+            if (entry.datetime != null) out.append('"').append(entry.datetime).append('"');
+            out.append(',');
+            if (entry.temperature != null) out.append(String.valueOf(entry.temperature));
+            out.append(',');
+            if (entry.fanSpeed != null) out.append(String.valueOf(entry.fanSpeed));
+            out.append(',');
+            if (entry.voltage != null) out.append(String.valueOf(entry.voltage));
+            out.append(',');
+            if (entry.current != null) out.append(String.valueOf(entry.current));
+            out.append(',');
+            if (entry.watt != null) out.append(String.valueOf(entry.watt));
+            out.append(',');
+            if (entry.kwh != null) out.append(String.valueOf(entry.kwh));
+            out.append('\n');
+        }
+    }
+}
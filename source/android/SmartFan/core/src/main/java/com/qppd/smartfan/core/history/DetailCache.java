@@ -0,0 +1,94 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Raw rows of recently viewed {@link LevelOfDetail.Window}s, least recently used dropped
+ * first once more than {@code maxRows} rows are held. Zooming further into a cached window,
+ * or back to one, needs no fetch. Not thread safe; charts use it on the main thread.
+ */
+public final class DetailCache {
+    private final int maxRows;
+    private final LinkedHashMap<LevelOfDetail.Window, List<LogEntry>> windows =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private int rows;
+
+    public DetailCache(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Rows with times in {@code [fromMillis, toMillis)} from a cached window that covers that
+     * range, oldest first, or null if none does.
+     */
+    public List<LogEntry> find(long fromMillis, long toMillis) {
+        LevelOfDetail.Window best = null;
+        for (LevelOfDetail.Window window : windows.keySet()) {
+            if (window.contains(fromMillis, toMillis)
+                    && (best == null || window.toMillis - window.fromMillis < best.toMillis - best.fromMillis)) {
+                best = window;
+            }
+        }
+        if (best == null) return null;
+        List<LogEntry> cached = windows.get(best);
+        List<LogEntry> inRange = new ArrayList<>();
+        for (LogEntry entry : cached) {
+            long time = entry.resolveTimeMillis();
+            if (time >= fromMillis && time < toMillis) {
+                inRange.add(entry);
+            }
+        }
+        return inRange;
+    }
+
+    /**
+     * Caches the rows of a window, which should all lie inside it.
+     */
+    public void put(LevelOfDetail.Window window, List<LogEntry> entries) {
+        List<LogEntry> previous = windows.put(window, entries);
+        rows += entries.size() - (previous != null ? previous.size() : 0);
+        Iterator<Map.Entry<LevelOfDetail.Window, List<LogEntry>>> eldest = windows.entrySet().iterator();
+        while (rows > maxRows && windows.size() > 1) {
+            rows -= eldest.next().getValue().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Adds rows that arrived since, newer than every cached one and oldest first, to the
+     * windows they fall in, so those stay complete without a fetch.
+     */
+    public void append(List<LogEntry> entries) {
+        for (Map.Entry<LevelOfDetail.Window, List<LogEntry>> cached : windows.entrySet()) {
+            LevelOfDetail.Window window = cached.getKey();
+            List<LogEntry> extended = null;
+            for (LogEntry entry : entries) {
+                long time = entry.resolveTimeMillis();
+                if (time >= window.fromMillis && time < window.toMillis) {
+                    if (extended == null) {
+                        extended = new ArrayList<>(cached.getValue());
+                    }
+                    extended.add(entry);
+                }
+            }
+            if (extended != null) {
+                rows += extended.size() - cached.getValue().size();
+                cached.setValue(extended);
+            }
+        }
+    }
+
+    /** Drops everything, for example when the history itself changed. */
+    public void clear() {
+        windows.clear();
+        rows = 0;
+    }
+
+    public int size() {
+        return windows.size();
+    }
+}
@@ -0,0 +1,128 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a time series to a fixed number of points for drawing.
+ *
+ * {@link #lttb} uses Largest-Triangle-Three-Buckets (Steinarsson, 2013): the first and last
+ * points are kept, the rest is split into equal buckets, and each bucket contributes the
+ * point forming the largest triangle with the previously chosen point and the next bucket's
+ * average. Peaks and dips survive, which plain averaging or striding would flatten. Its
+ * buckets follow the points, so every point may change when one is added.
+ *
+ * {@link #minMax} keeps the lowest and highest point of buckets fixed in time instead, for
+ * series drawn as a sliding window: only the buckets at its two ends change as it moves.
+ */
+public final class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /**
+     * Returns at most {@code threshold} points of {@code series}. The series is returned as
+     * is when it is already small enough or the threshold is below 3.
+     */
+    public static TimeSeries lttb(TimeSeries series, int threshold) {
+        int size = series.size();
+        if (threshold >= size || threshold < 3) {
+            return series;
+        }
+
+        long[] times = series.timeMillis;
+        float[] values = series.values;
+        long[] sampledTimes = new long[threshold];
+        float[] sampledValues = new float[threshold];
+
+        // Times are shifted to the first point so the triangle areas keep double precision
+        long origin = times[0];
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int selected = 0;
+        sampledTimes[0] = times[0];
+        sampledValues[0] = values[0];
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, the third corner of the triangle
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+            double averageTime = 0;
+            double averageValue = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageTime += times[i] - origin;
+                averageValue += values[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            averageTime /= nextCount;
+            averageValue /= nextCount;
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double selectedTime = times[selected] - origin;
+            double selectedValue = values[selected];
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((selectedTime - averageTime) * (values[i] - selectedValue)
+                    - (selectedTime - (times[i] - origin)) * (averageValue - selectedValue));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+
+            sampledTimes[bucket + 1] = times[maxIndex];
+            sampledValues[bucket + 1] = values[maxIndex];
+            selected = maxIndex;
+        }
+
+        sampledTimes[threshold - 1] = times[size - 1];
+        sampledValues[threshold - 1] = values[size - 1];
+        return new TimeSeries(sampledTimes, sampledValues);
+    }
+
+    /**
+     * Returns the lowest and the highest point of each bucket of {@code bucketMillis}, in time
+     * order, or one point where they are the same. Buckets start at multiples of
+     * {@code bucketMillis} since the epoch, and points before the first bucket starting at or
+     * after {@code fromMillis} are left out, so only the last bucket can be partial. As a
+     * window slides, its buckets leave and join it whole and the points of the others stay
+     * as they were. Times must not be negative.
+     */
+    public static TimeSeries minMax(TimeSeries series, long fromMillis, long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucketMillis must be positive, got " + bucketMillis);
+        }
+        long[] times = series.timeMillis;
+        float[] values = series.values;
+        long firstBucket = (Math.max(fromMillis, 0) + bucketMillis - 1) / bucketMillis;
+        int start = 0;
+        while (start < times.length && times[start] / bucketMillis < firstBucket) {
+            start++;
+        }
+
+        long[] sampledTimes = new long[times.length - start];
+        float[] sampledValues = new float[sampledTimes.length];
+        int sampled = 0;
+        int low = start;
+        int high = start;
+        for (int i = start + 1; i <= times.length; i++) {
+            if (i < times.length && times[i] / bucketMillis == times[low] / bucketMillis) {
+                if (values[i] < values[low]) low = i;
+                if (values[i] > values[high]) high = i;
+                continue;
+            }
+            // The bucket ended: its extremes, oldest first
+            int first = Math.min(low, high);
+            int last = Math.max(low, high);
+            sampledTimes[sampled] = times[first];
+            sampledValues[sampled++] = values[first];
+            if (last != first) {
+                sampledTimes[sampled] = times[last];
+                sampledValues[sampled++] = values[last];
+            }
+            low = i;
+            high = i;
+        }
+        return new TimeSeries(Arrays.copyOf(sampledTimes, sampled), Arrays.copyOf(sampledValues, sampled));
+    }
+}
@@ -0,0 +1,190 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.Arrays;
+
+/**
+ * Time the fan spent in each speed band over a sliding window of fan speed readings, with
+ * its on/off cycles and longest continuous run.
+ *
+ * A reading's speed holds until the next reading, so each reading but the last adds the
+ * interval to its successor. Intervals are capped at {@code maxGapMillis}: a longer silence
+ * means the fan was offline, and counting it in full would credit hours to the last speed
+ * seen. Such a gap also ends a run. A run is a stretch of intervals with the fan on; each
+ * one started is a cycle.
+ *
+ * Readings are added oldest first and dropped from the front as the window moves, each
+ * updating the totals on its own, so nothing is recounted while the window slides. Keeps
+ * the readings it holds as primitive arrays. Not thread safe.
+ */
+public final class DutyCycle {
+    private static final String[] BAND_LABELS = {"Off", "1-25%", "26-50%", "51-75%", "76-100%"};
+    public static final int BANDS = BAND_LABELS.length;
+
+    private final long maxGapMillis;
+    private final long[] bandMillis = new long[BANDS];
+
+    // Readings held, oldest at head
+    private long[] times;
+    private int[] speeds;
+    private int head;
+    private int size;
+
+    // Runs with an interval still held, oldest at runHead; the last one may still grow
+    private long[] runMillis;
+    private int[] runIntervals;
+    private int runHead;
+    private int runCount;
+    private boolean runOpen;
+
+    public DutyCycle(long maxGapMillis) {
+        if (maxGapMillis <= 0) {
+            throw new IllegalArgumentException("maxGapMillis must be positive, got " + maxGapMillis);
+        }
+        this.maxGapMillis = maxGapMillis;
+        times = new long[16];
+        speeds = new int[16];
+        runMillis = new long[4];
+        runIntervals = new int[4];
+    }
+
+    private DutyCycle(DutyCycle other) {
+        maxGapMillis = other.maxGapMillis;
+        System.arraycopy(other.bandMillis, 0, bandMillis, 0, BANDS);
+        times = Arrays.copyOfRange(other.times, other.head, other.head + Math.max(other.size, 1));
+        speeds = Arrays.copyOfRange(other.speeds, other.head, other.head + Math.max(other.size, 1));
+        size = other.size;
+        runMillis = Arrays.copyOfRange(other.runMillis, other.runHead, other.runHead + Math.max(other.runCount, 1));
+        runIntervals = Arrays.copyOfRange(other.runIntervals, other.runHead,
+            other.runHead + Math.max(other.runCount, 1));
+        runCount = other.runCount;
+        runOpen = other.runOpen;
+    }
+
+    /** An independent copy, to extend while this one stays as it is. */
+    public DutyCycle copy() {
+        return new DutyCycle(this);
+    }
+
+    /**
+     * Adds a reading of {@code speed} percent. Readings older than the newest one held are
+     * ignored, as the interval they would split is already counted.
+     */
+    public void add(long timeMillis, int speed) {
+        if (size > 0) {
+            int last = head + size - 1;
+            if (timeMillis < times[last]) return;
+            long gap = timeMillis - times[last];
+            long interval = Math.min(gap, maxGapMillis);
+            bandMillis[band(speeds[last])] += interval;
+            if (speeds[last] > 0) {
+                if (!runOpen) {
+                    appendRun();
+                }
+                runMillis[runHead + runCount - 1] += interval;
+                runIntervals[runHead + runCount - 1]++;
+                runOpen = gap <= maxGapMillis;
+            } else {
+                runOpen = false;
+            }
+        }
+        if (head + size == times.length) {
+            grow();
+        }
+        times[head + size] = timeMillis;
+        speeds[head + size] = speed;
+        size++;
+    }
+
+    /**
+     * Drops the readings before {@code cutoffMillis}, and with them the intervals they began.
+     */
+    public void evictBefore(long cutoffMillis) {
+        while (size > 0 && times[head] < cutoffMillis) {
+            if (size > 1) {
+                long interval = Math.min(times[head + 1] - times[head], maxGapMillis);
+                bandMillis[band(speeds[head])] -= interval;
+                // The oldest interval with the fan on is the first of the oldest run
+                if (speeds[head] > 0) {
+                    runMillis[runHead] -= interval;
+                    if (--runIntervals[runHead] == 0) {
+                        runHead++;
+                        runCount--;
+                        if (runCount == 0) runOpen = false;
+                    }
+                }
+            }
+            head++;
+            size--;
+        }
+    }
+
+    /** Readings held. */
+    public int size() {
+        return size;
+    }
+
+    /** The band of a speed in percent: 0 is off, the rest quarters of 1..100. */
+    public static int band(int speed) {
+        if (speed <= 0) return 0;
+        return Math.min((speed + 24) / 25, BANDS - 1);
+    }
+
+    public static String bandLabel(int band) {
+        return BAND_LABELS[band];
+    }
+
+    public long bandMillis(int band) {
+        return bandMillis[band];
+    }
+
+    /** Time covered by the intervals, in every band. */
+    public long totalMillis() {
+        long total = 0;
+        for (long millis : bandMillis) {
+            total += millis;
+        }
+        return total;
+    }
+
+    /** Time with the fan on, at any speed. */
+    public long onMillis() {
+        return totalMillis() - bandMillis[0];
+    }
+
+    /** Runs with the fan on; one cut by the window start counts too. */
+    public int cycles() {
+        return runCount;
+    }
+
+    public long longestRunMillis() {
+        long longest = 0;
+        for (int i = runHead; i < runHead + runCount; i++) {
+            longest = Math.max(longest, runMillis[i]);
+        }
+        return longest;
+    }
+
+    private void appendRun() {
+        if (runHead + runCount == runMillis.length) {
+            int capacity = Math.max(4, runCount * 2);
+            runMillis = Arrays.copyOf(Arrays.copyOfRange(runMillis, runHead, runHead + runCount), capacity);
+            runIntervals = Arrays.copyOf(Arrays.copyOfRange(runIntervals, runHead, runHead + runCount), capacity);
+            runHead = 0;
+        }
+        runMillis[runHead + runCount] = 0;
+        runIntervals[runHead + runCount] = 0;
+        runCount++;
+    }
+
+    // Moves the held readings to the front, doubling the arrays once at least half are in use
+    private void grow() {
+        int capacity = size * 2 > times.length ? times.length * 2 : times.length;
+        long[] movedTimes = new long[capacity];
+        int[] movedSpeeds = new int[capacity];
+        System.arraycopy(times, head, movedTimes, 0, size);
+        System.arraycopy(speeds, head, movedSpeeds, 0, size);
+        times = movedTimes;
+        speeds = movedSpeeds;
+        head = 0;
+    }
+}
@@ -0,0 +1,66 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Time window selection over device logs.
+ */
+public final class HistoryFilter {
+    // Entries this far ahead of "now" are kept, so a device with a skewed clock still shows up
+    private static final long FUTURE_TOLERANCE_MS = 24 * 60 * 60 * 1000L;
+
+    private HistoryFilter() {
+    }
+
+    public static List<LogEntry> filterByWindow(List<LogEntry> entries, long nowMillis, long windowMillis) {
+        return filterByWindow(entries, nowMillis, windowMillis, TimeZone.getDefault());
+    }
+
+    /**
+     * Returns the entries of the last {@code windowMillis} before {@code nowMillis}, oldest
+     * first. Entries without a usable time are dropped.
+     */
+    public static List<LogEntry> filterByWindow(List<LogEntry> entries, long nowMillis, long windowMillis,
+                                                TimeZone zone) {
+        List<LogEntry> filteredList = new ArrayList<>();
+        if (entries == null || entries.isEmpty()) {
+            return filteredList;
+        }
+
+        long cutoffTime = nowMillis - windowMillis;
+        for (LogEntry entry : entries) {
+            if (entry == null) continue;
+
+            long entryTime = entry.resolveTimeMillis(zone);
+            if (entryTime <= 0) continue;
+
+            if (entryTime > nowMillis + FUTURE_TOLERANCE_MS
+                    || (entryTime >= cutoffTime && entryTime <= nowMillis)) {
+                filteredList.add(entry);
+            }
+        }
+
+        // Logs usually arrive newest first; TimSort turns that single descending run around in O(n)
+        Collections.sort(filteredList, LogEntryComparators.CHRONOLOGICAL);
+        return filteredList;
+    }
+
+    /**
+     * Keeps the entries that carry a Unix timestamp, which every chart point needs.
+     */
+    public static List<LogEntry> withTimestamp(List<LogEntry> entries) {
+        List<LogEntry> validData = new ArrayList<>();
+        if (entries == null) {
+            return validData;
+        }
+        for (LogEntry entry : entries) {
+            if (entry != null && entry.timestamp != null && entry.timestamp > 0) {
+                validData.add(entry);
+            }
+        }
+        return validData;
+    }
+}
@@ -0,0 +1,137 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Builds the history chart series from log entries.
+ *
+ * Each builder drops readings outside the range a fan can plausibly report, and the time
+ * series come back sorted by time.
+ */
+public final class HistorySeries {
+    private static final String NO_TIME_LABEL = "--:--";
+
+    private HistorySeries() {
+    }
+
+    /**
+     * Temperature in °C over time, limited to -50..100.
+     */
+    public static TimeSeries temperature(List<LogEntry> entries, TimeZone zone) {
+        long[] times = new long[entries.size()];
+        float[] values = new float[entries.size()];
+        int count = 0;
+
+        for (LogEntry entry : entries) {
+            if (entry == null || entry.temperature == null
+                    || entry.temperature.isNaN() || entry.temperature.isInfinite()) {
+                continue;
+            }
+            long time = entry.resolveTimeMillis(zone);
+            float temperature = entry.temperature.floatValue();
+            if (time > 0 && temperature >= -50 && temperature <= 100) {
+                times[count] = time;
+                values[count] = temperature;
+                count++;
+            }
+        }
+        return sortedSeries(times, values, count);
+    }
+
+    /**
+     * Power draw in watts over time. Zero readings are left out, as are values above 1000 W.
+     */
+    public static TimeSeries power(List<LogEntry> entries, TimeZone zone) {
+        long[] times = new long[entries.size()];
+        float[] values = new float[entries.size()];
+        int count = 0;
+
+        for (LogEntry entry : entries) {
+            if (entry == null || entry.watt == null || entry.watt.isNaN()
+                    || entry.watt.isInfinite() || entry.watt <= 0) {
+                continue;
+            }
+            long time = entry.resolveTimeMillis(zone);
+            float watt = entry.watt.floatValue();
+            if (time > 0 && watt <= 1000) {
+                times[count] = time;
+                values[count] = watt;
+                count++;
+            }
+        }
+        return sortedSeries(times, values, count);
+    }
+
+    /**
+     * Fan speed in percent over time, limited to 0..100.
+     */
+    public static TimeSeries fanSpeedOverTime(List<LogEntry> entries, TimeZone zone) {
+        long[] times = new long[entries.size()];
+        float[] values = new float[entries.size()];
+        int count = 0;
+
+        for (LogEntry entry : entries) {
+            if (!hasFanSpeed(entry)) {
+                continue;
+            }
+            long time = entry.resolveTimeMillis(zone);
+            if (time > 0) {
+                times[count] = time;
+                values[count] = entry.fanSpeed;
+                count++;
+            }
+        }
+        return sortedSeries(times, values, count);
+    }
+
+    /**
+     * Fan speed per entry in input order, labelled "HH:mm". Limited to 0..100.
+     */
+    public static LabeledSeries fanSpeed(List<LogEntry> entries, TimeZone zone) {
+        float[] values = new float[entries.size()];
+        String[] labels = new String[entries.size()];
+        int count = 0;
+
+        for (LogEntry entry : entries) {
+            if (!hasFanSpeed(entry)) {
+                continue;
+            }
+            long time = entry.resolveTimeMillis(zone);
+            values[count] = entry.fanSpeed.floatValue();
+            labels[count] = time > 0 ? LogTime.formatHourMinute(time, zone) : NO_TIME_LABEL;
+            count++;
+        }
+        return new LabeledSeries(Arrays.copyOf(values, count), Arrays.copyOf(labels, count));
+    }
+
+    // The entries fanSpeed keeps
+    static boolean hasFanSpeed(LogEntry entry) {
+        return entry != null && entry.fanSpeed != null && entry.fanSpeed >= 0 && entry.fanSpeed <= 100;
+    }
+
+    private static TimeSeries sortedSeries(long[] times, float[] values, int count) {
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (sorted) {
+            return new TimeSeries(Arrays.copyOf(times, count), Arrays.copyOf(values, count));
+        }
+
+        // Rare: callers normally pass chronologically filtered entries
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        long[] sortedTimes = new long[count];
+        float[] sortedValues = new float[count];
+        for (int i = 0; i < count; i++) {
+            sortedTimes[i] = times[order[i]];
+            sortedValues[i] = values[order[i]];
+        }
+        return new TimeSeries(sortedTimes, sortedValues);
+    }
+}
@@ -0,0 +1,25 @@
+package com.qppd.smartfan.core.history;
+
+/**
+ * An index-based chart series where every point carries its own axis label.
+ */
+public final class LabeledSeries {
+    public final float[] values;
+    public final String[] labels;
+
+    public LabeledSeries(float[] values, String[] labels) {
+        if (values.length != labels.length) {
+            throw new IllegalArgumentException("values and labels differ in length");
+        }
+        this.values = values;
+        this.labels = labels;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+}
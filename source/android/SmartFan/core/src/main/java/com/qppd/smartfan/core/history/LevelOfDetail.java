@@ -0,0 +1,115 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.Arrays;
+
+/**
+ * Level-of-detail helpers for zoomable history charts.
+ *
+ * Zoomed out, a chart draws a downsampled overview. Once the user zooms in so far that few
+ * overview points are left on screen, the raw rows of a {@link Window} around the visible
+ * range are fetched and spliced into the overview in place of its points there. The rest
+ * of the overview stays, so the axis range and the zoom are unchanged.
+ */
+public final class LevelOfDetail {
+    /** Narrowest window fetched; a few rows of minute logs. */
+    public static final long MIN_WINDOW_MILLIS = 15 * 60 * 1000L;
+
+    private LevelOfDetail() {
+    }
+
+    /**
+     * Points of {@code series} with times in {@code [fromMillis, toMillis]}.
+     */
+    public static int visiblePoints(TimeSeries series, long fromMillis, long toMillis) {
+        return Math.max(0, upperBound(series.timeMillis, toMillis) - lowerBound(series.timeMillis, fromMillis));
+    }
+
+    /**
+     * Replaces the points of {@code overview} in {@code [fromMillis, toMillis)} by those of
+     * {@code detail} in the same range.
+     */
+    public static TimeSeries splice(TimeSeries overview, TimeSeries detail, long fromMillis, long toMillis) {
+        int cutFrom = lowerBound(overview.timeMillis, fromMillis);
+        int cutTo = lowerBound(overview.timeMillis, toMillis);
+        int detailFrom = lowerBound(detail.timeMillis, fromMillis);
+        int detailTo = lowerBound(detail.timeMillis, toMillis);
+        int detailSize = detailTo - detailFrom;
+
+        int size = cutFrom + detailSize + overview.size() - cutTo;
+        long[] times = new long[size];
+        float[] values = new float[size];
+        System.arraycopy(overview.timeMillis, 0, times, 0, cutFrom);
+        System.arraycopy(overview.values, 0, values, 0, cutFrom);
+        System.arraycopy(detail.timeMillis, detailFrom, times, cutFrom, detailSize);
+        System.arraycopy(detail.values, detailFrom, values, cutFrom, detailSize);
+        System.arraycopy(overview.timeMillis, cutTo, times, cutFrom + detailSize, overview.size() - cutTo);
+        System.arraycopy(overview.values, cutTo, values, cutFrom + detailSize, overview.size() - cutTo);
+        return new TimeSeries(times, values);
+    }
+
+    // First index with a time at or after the given one
+    private static int lowerBound(long[] times, long time) {
+        int index = Arrays.binarySearch(times, time);
+        if (index < 0) return -index - 1;
+        while (index > 0 && times[index - 1] == time) index--;
+        return index;
+    }
+
+    // First index with a time after the given one
+    private static int upperBound(long[] times, long time) {
+        int index = Arrays.binarySearch(times, time);
+        if (index < 0) return -index - 1;
+        while (index < times.length - 1 && times[index + 1] == time) index++;
+        return index + 1;
+    }
+
+    /**
+     * A time range fetched at full resolution, {@code [fromMillis, toMillis)}.
+     *
+     * Windows are snapped to a grid so that nearby viewports share one: the span is a power
+     * of two times {@link #MIN_WINDOW_MILLIS}, at least twice the visible span, and the
+     * start is a multiple of half the span. Small pans stay inside the fetched window.
+     */
+    public static final class Window {
+        public final long fromMillis;
+        public final long toMillis;
+
+        public Window(long fromMillis, long toMillis) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+
+        public static Window covering(long visibleFromMillis, long visibleToMillis) {
+            long visible = Math.max(visibleToMillis - visibleFromMillis, 1);
+            long span = MIN_WINDOW_MILLIS;
+            while (span < 2 * visible) {
+                span *= 2;
+            }
+            // Starts less than half a span before the visible range, so it covers all of it
+            long step = span / 2;
+            long from = visibleFromMillis - ((visibleFromMillis % step) + step) % step;
+            return new Window(from, from + span);
+        }
+
+        public boolean contains(long fromMillis, long toMillis) {
+            return fromMillis >= this.fromMillis && toMillis <= this.toMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Window)) return false;
+            Window other = (Window) o;
+            return fromMillis == other.fromMillis && toMillis == other.toMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (fromMillis ^ (fromMillis >>> 32)) * 31 + (int) (toMillis ^ (toMillis >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return "[" + fromMillis + ", " + toMillis + ")";
+        }
+    }
+}
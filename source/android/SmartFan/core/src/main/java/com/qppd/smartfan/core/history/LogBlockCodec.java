@@ -0,0 +1,454 @@
+package com.qppd.smartfan.core.history;
+
+import com.qppd.smartfan.core.codec.Base64Codec;
+import com.qppd.smartfan.core.codec.BitReader;
+import com.qppd.smartfan.core.codec.BitWriter;
+import com.qppd.smartfan.core.codec.DeltaOfDeltaDecoder;
+import com.qppd.smartfan.core.codec.DeltaOfDeltaEncoder;
+import com.qppd.smartfan.core.codec.XorDecoder;
+import com.qppd.smartfan.core.codec.XorEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Lossless packed encoding of many log rows, stored base64 encoded as one value under
+ * devices/{id}/logBlocks/{start} (see {@link LogBlocks}).
+ *
+ * A block is a bit stream: an 8-bit version, a 32-bit row count, the timestamps in
+ * ascending order as delta-of-deltas, then one column per field. Each column starts with a
+ * 3-bit kind and, unless absent, a flag for a presence bitmap that is only written when
+ * some rows lack the field. Numbers that are exact decimals with up to 9 digits are stored
+ * as scaled integers, Rice coded deltas or delta-of-deltas, other numbers as XOR with the
+ * previous value. Datetimes that the firmware formatted from the timestamp are stored as
+ * their UTC offset, anything else verbatim. Every row decodes to exactly the values that were encoded.
+ */
+public final class LogBlockCodec {
+    public static final int VERSION = 1;
+
+    private static final int ABSENT = 0;
+    private static final int SCALED = 1;
+    private static final int XOR = 2;
+    private static final int DATETIME_OFFSET = 3;
+    private static final int TEXT = 4;
+
+    private static final int TEMPERATURE = 0;
+    private static final int VOLTAGE = 1;
+    private static final int CURRENT = 2;
+    private static final int WATT = 3;
+    private static final int KWH = 4;
+    private static final int DOUBLE_COLUMNS = 5;
+
+    private static final int MAX_SCALE = 9;
+    private static final int MAX_RICE_PARAMETER = 31;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    private static final double MAX_SCALED = 1L << 53;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Comparator<LogEntry> BY_TIMESTAMP = new Comparator<LogEntry>() {
+        @Override
+        public int compare(LogEntry a, LogEntry b) {
+            return a.timestamp < b.timestamp ? -1 : a.timestamp > b.timestamp ? 1 : 0;
+        }
+    };
+
+    private LogBlockCodec() {
+    }
+
+    /**
+     * Encodes rows in any order. Every row needs a timestamp and timestamps must be unique,
+     * as they are for rows keyed by timestamp.
+     */
+    public static byte[] encode(List<LogEntry> entries) {
+        LogEntry[] rows = entries.toArray(new LogEntry[0]);
+        for (LogEntry row : rows) {
+            if (row.timestamp == null) {
+                throw new IllegalArgumentException("Log entries are keyed by timestamp");
+            }
+        }
+        Arrays.sort(rows, BY_TIMESTAMP);
+        int count = rows.length;
+        for (int i = 1; i < count; i++) {
+            if (rows[i].timestamp.longValue() == rows[i - 1].timestamp.longValue()) {
+                throw new IllegalArgumentException("Duplicate timestamp " + rows[i].timestamp);
+            }
+        }
+
+        BitWriter out = new BitWriter(count * 8 + 16);
+        out.writeBits(VERSION, 8);
+        out.writeBits(count, 32);
+        DeltaOfDeltaEncoder timestamps = new DeltaOfDeltaEncoder();
+        for (LogEntry row : rows) {
+            timestamps.add(out, row.timestamp);
+        }
+
+        boolean[] present = new boolean[count];
+        double[] values = new double[count];
+        for (int column = 0; column < DOUBLE_COLUMNS; column++) {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                Double value = doubleField(rows[i], column);
+                present[i] = value != null;
+                if (value != null) values[n++] = value;
+            }
+            writeDoubles(out, present, values, n);
+        }
+        writeFanSpeeds(out, rows, present);
+        writeDatetimes(out, rows, present);
+        return out.toByteArray();
+    }
+
+    public static String encodeBase64(List<LogEntry> entries) {
+        return Base64Codec.encode(encode(entries));
+    }
+
+    /**
+     * Decodes every row of a block, oldest first.
+     */
+    public static List<LogEntry> decode(byte[] block) {
+        List<LogEntry> entries = new ArrayList<>();
+        decode(block, Long.MIN_VALUE, Long.MAX_VALUE, entries);
+        return entries;
+    }
+
+    /**
+     * Appends the rows with timestamps in {@code [fromSeconds, lastSeconds]} to {@code out},
+     * oldest first. Only those rows are allocated. Throws {@link IllegalArgumentException}
+     * for a block that is damaged or of an unknown version.
+     */
+    public static void decode(byte[] block, long fromSeconds, long lastSeconds, List<LogEntry> out) {
+        BitReader in = new BitReader(block);
+        int version = (int) in.readBits(8);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported log block version " + version);
+        }
+        long rowCount = in.readBits(32);
+        // Every row takes at least one bit of timestamp
+        if (rowCount > in.remainingBits()) {
+            throw new IllegalArgumentException("Log block is truncated");
+        }
+        int count = (int) rowCount;
+
+        long[] timestamps = new long[count];
+        DeltaOfDeltaDecoder timestampDecoder = new DeltaOfDeltaDecoder();
+        int first = count;
+        int end = 0;
+        for (int i = 0; i < count; i++) {
+            long timestamp = timestampDecoder.next(in);
+            timestamps[i] = timestamp;
+            if (timestamp >= fromSeconds && timestamp <= lastSeconds) {
+                if (first == count) first = i;
+                end = i + 1;
+            }
+        }
+        if (first > end) first = end;
+        LogEntry[] rows = new LogEntry[end - first];
+        for (int i = first; i < end; i++) {
+            LogEntry row = new LogEntry();
+            row.timestamp = timestamps[i];
+            rows[i - first] = row;
+        }
+
+        boolean[] present = new boolean[count];
+        double[] values = new double[count];
+        for (int column = 0; column < DOUBLE_COLUMNS; column++) {
+            if (readDoubles(in, present, values)) {
+                setDoubles(column, rows, first, present, values);
+            }
+        }
+        readFanSpeeds(in, rows, first, present);
+        readDatetimes(in, rows, first, timestamps, present);
+        out.addAll(Arrays.asList(rows));
+    }
+
+    public static void decodeBase64(String block, long fromSeconds, long lastSeconds, List<LogEntry> out) {
+        decode(Base64Codec.decode(block), fromSeconds, lastSeconds, out);
+    }
+
+    private static Double doubleField(LogEntry row, int column) {
+        switch (column) {
+            case TEMPERATURE: return row.temperature;
+            case VOLTAGE: return row.voltage;
+            case CURRENT: return row.current;
+            case WATT: return row.watt;
+            default: return row.kwh;
+        }
+    }
+
+    private static void setDoubles(int column, LogEntry[] rows, int first, boolean[] present, double[] values) {
+        int end = first + rows.length;
+        for (int i = first; i < end; i++) {
+            if (!present[i]) continue;
+            LogEntry row = rows[i - first];
+            Double value = values[i];
+            switch (column) {
+                case TEMPERATURE: row.temperature = value; break;
+                case VOLTAGE: row.voltage = value; break;
+                case CURRENT: row.current = value; break;
+                case WATT: row.watt = value; break;
+                default: row.kwh = value; break;
+            }
+        }
+    }
+
+    // values holds the n present values in row order
+    private static void writeDoubles(BitWriter out, boolean[] present, double[] values, int n) {
+        if (n == 0) {
+            out.writeBits(ABSENT, 3);
+            return;
+        }
+        int scale = scaleOf(values, n);
+        out.writeBits(scale >= 0 ? SCALED : XOR, 3);
+        writePresence(out, present, n);
+        if (scale >= 0) {
+            out.writeBits(scale, 4);
+            double power = POWERS_OF_TEN[scale];
+            long[] scaled = new long[n];
+            for (int i = 0; i < n; i++) {
+                scaled[i] = (long) Math.rint(values[i] * power);
+            }
+            writeIntegers(out, scaled, n);
+        } else {
+            XorEncoder encoder = new XorEncoder();
+            for (int i = 0; i < n; i++) {
+                encoder.add(out, values[i]);
+            }
+        }
+    }
+
+    // Returns false if the column is absent; otherwise fills values at the present rows
+    private static boolean readDoubles(BitReader in, boolean[] present, double[] values) {
+        int kind = (int) in.readBits(3);
+        if (kind == ABSENT) return false;
+        readPresence(in, present);
+        int count = present.length;
+        if (kind == SCALED) {
+            int scale = (int) in.readBits(4);
+            if (scale > MAX_SCALE) {
+                throw new IllegalArgumentException("Bad scale " + scale);
+            }
+            double power = POWERS_OF_TEN[scale];
+            long[] scaled = readIntegers(in, present);
+            for (int i = 0; i < count; i++) {
+                if (present[i]) values[i] = scaled[i] / power;
+            }
+        } else if (kind == XOR) {
+            XorDecoder decoder = new XorDecoder();
+            for (int i = 0; i < count; i++) {
+                if (present[i]) values[i] = decoder.next(in);
+            }
+        } else {
+            throw new IllegalArgumentException("Bad column kind " + kind);
+        }
+        return true;
+    }
+
+    // Smallest number of decimals that represents every value exactly, or -1
+    private static int scaleOf(double[] values, int n) {
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            double power = POWERS_OF_TEN[scale];
+            boolean exact = true;
+            for (int i = 0; i < n && exact; i++) {
+                double scaled = Math.rint(values[i] * power);
+                // Compared as bits, which also rules out NaN and -0.0
+                exact = Math.abs(scaled) < MAX_SCALED
+                    && Double.doubleToRawLongBits((long) scaled / power) == Double.doubleToRawLongBits(values[i]);
+            }
+            if (exact) return scale;
+        }
+        return -1;
+    }
+
+    private static void writeFanSpeeds(BitWriter out, LogEntry[] rows, boolean[] present) {
+        int n = 0;
+        for (int i = 0; i < rows.length; i++) {
+            present[i] = rows[i].fanSpeed != null;
+            if (present[i]) n++;
+        }
+        if (n == 0) {
+            out.writeBits(ABSENT, 3);
+            return;
+        }
+        out.writeBits(SCALED, 3);
+        writePresence(out, present, n);
+        out.writeBits(0, 4);
+        long[] speeds = new long[n];
+        n = 0;
+        for (LogEntry row : rows) {
+            if (row.fanSpeed != null) speeds[n++] = row.fanSpeed;
+        }
+        writeIntegers(out, speeds, n);
+    }
+
+    private static void readFanSpeeds(BitReader in, LogEntry[] rows, int first, boolean[] present) {
+        int kind = (int) in.readBits(3);
+        if (kind == ABSENT) return;
+        if (kind != SCALED) {
+            throw new IllegalArgumentException("Bad fan speed kind " + kind);
+        }
+        readPresence(in, present);
+        in.readBits(4);
+        long[] speeds = readIntegers(in, present);
+        int end = first + rows.length;
+        for (int i = first; i < end; i++) {
+            if (present[i]) rows[i - first].fanSpeed = speeds[i];
+        }
+    }
+
+    // Rice codes the deltas or, when smaller, the delta-of-deltas, with the best parameter
+    private static void writeIntegers(BitWriter out, long[] values, int n) {
+        long[] deltas = new long[n];
+        long[] deltasOfDeltas = new long[n];
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < n; i++) {
+            long delta = values[i] - previous;
+            deltas[i] = delta;
+            deltasOfDeltas[i] = delta - previousDelta;
+            previous = values[i];
+            previousDelta = delta;
+        }
+        long[] firstOrder = bestRice(deltas, n);
+        long[] secondOrder = bestRice(deltasOfDeltas, n);
+        boolean second = secondOrder[1] < firstOrder[1];
+        int k = (int) (second ? secondOrder[0] : firstOrder[0]);
+        long[] coded = second ? deltasOfDeltas : deltas;
+        out.writeBit(second);
+        out.writeBits(k, 5);
+        for (int i = 0; i < n; i++) {
+            out.writeRice(coded[i], k);
+        }
+    }
+
+    // {parameter, total bits}
+    private static long[] bestRice(long[] values, int n) {
+        long[] best = {0, Long.MAX_VALUE};
+        for (int k = 0; k <= MAX_RICE_PARAMETER; k++) {
+            long bits = 0;
+            for (int i = 0; i < n; i++) {
+                bits += BitWriter.riceLength(values[i], k);
+            }
+            if (bits < best[1]) {
+                best[0] = k;
+                best[1] = bits;
+            }
+        }
+        return best;
+    }
+
+    // Fills the present rows, leaving the others 0
+    private static long[] readIntegers(BitReader in, boolean[] present) {
+        boolean second = in.readBit();
+        int k = (int) in.readBits(5);
+        long[] values = new long[present.length];
+        long previous = 0;
+        long delta = 0;
+        for (int i = 0; i < present.length; i++) {
+            if (!present[i]) continue;
+            long coded = in.readRice(k);
+            delta = second ? delta + coded : coded;
+            previous += delta;
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static void writeDatetimes(BitWriter out, LogEntry[] rows, boolean[] present) {
+        int n = 0;
+        boolean derived = true;
+        long[] offsets = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            String datetime = rows[i].datetime;
+            present[i] = datetime != null;
+            if (datetime == null) continue;
+            if (derived) {
+                // Same string as formatting the timestamp at a whole-second offset
+                long localMillis = LogTime.parseDatetime(datetime, UTC);
+                derived = localMillis != 0 && LogTime.formatDatetime(localMillis, UTC).equals(datetime);
+                offsets[n] = localMillis / 1000 - rows[i].timestamp;
+            }
+            n++;
+        }
+        if (n == 0) {
+            out.writeBits(ABSENT, 3);
+            return;
+        }
+        out.writeBits(derived ? DATETIME_OFFSET : TEXT, 3);
+        writePresence(out, present, n);
+        if (derived) {
+            long previous = 0;
+            for (int i = 0; i < n; i++) {
+                out.writeSigned(offsets[i] - previous);
+                previous = offsets[i];
+            }
+            return;
+        }
+        for (LogEntry row : rows) {
+            if (row.datetime == null) continue;
+            byte[] bytes = row.datetime.getBytes(UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Datetime too long at " + row.timestamp);
+            }
+            out.writeBits(bytes.length, 16);
+            for (byte b : bytes) {
+                out.writeBits(b, 8);
+            }
+        }
+    }
+
+    private static void readDatetimes(BitReader in, LogEntry[] rows, int first, long[] timestamps,
+                                      boolean[] present) {
+        int kind = (int) in.readBits(3);
+        if (kind == ABSENT) return;
+        readPresence(in, present);
+        int end = first + rows.length;
+        if (kind == DATETIME_OFFSET) {
+            long offset = 0;
+            for (int i = 0; i < present.length; i++) {
+                if (!present[i]) continue;
+                offset += in.readSigned();
+                if (i >= first && i < end) {
+                    rows[i - first].datetime = LogTime.formatDatetime((timestamps[i] + offset) * 1000, UTC);
+                }
+            }
+        } else if (kind == TEXT) {
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < present.length; i++) {
+                if (!present[i]) continue;
+                int length = (int) in.readBits(16);
+                if (length > bytes.length) bytes = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    bytes[j] = (byte) in.readBits(8);
+                }
+                if (i >= first && i < end) {
+                    rows[i - first].datetime = new String(bytes, 0, length, UTF_8);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Bad datetime kind " + kind);
+        }
+    }
+
+    private static void writePresence(BitWriter out, boolean[] present, int n) {
+        boolean sparse = n < present.length;
+        out.writeBit(sparse);
+        if (!sparse) return;
+        for (boolean bit : present) {
+            out.writeBit(bit);
+        }
+    }
+
+    private static void readPresence(BitReader in, boolean[] present) {
+        if (in.readBit()) {
+            for (int i = 0; i < present.length; i++) {
+                present[i] = in.readBit();
+            }
+        } else {
+            Arrays.fill(present, true);
+        }
+    }
+}
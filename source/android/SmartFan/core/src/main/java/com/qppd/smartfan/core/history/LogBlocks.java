@@ -0,0 +1,100 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Layout of packed history next to the per-row logs.
+ *
+ * devices/{id}/logBlocks/{start} holds a {@link LogBlockCodec} block, base64 encoded, with
+ * the rows whose timestamps fall in the hour or day that begins at {@code start} (Unix
+ * seconds, aligned in UTC). Readers do not need to know which size a block has: they
+ * query block keys from {@link #firstBlockKey(long)} and drop rows outside their range.
+ * Rows may exist in both places while a block is written; the row under logs wins.
+ */
+public final class LogBlocks {
+    public static final String PATH = "logBlocks";
+    public static final long HOUR_SECONDS = 3600;
+    public static final long DAY_SECONDS = 24 * HOUR_SECONDS;
+    /** Longest block a writer may produce. */
+    public static final long MAX_BLOCK_SECONDS = DAY_SECONDS;
+
+    private static final Comparator<LogEntry> BY_TIMESTAMP = new Comparator<LogEntry>() {
+        @Override
+        public int compare(LogEntry a, LogEntry b) {
+            return a.timestamp < b.timestamp ? -1 : a.timestamp > b.timestamp ? 1 : 0;
+        }
+    };
+
+    private LogBlocks() {
+    }
+
+    /**
+     * Key of the block of the given size that holds a row with this timestamp.
+     */
+    public static long blockStart(long timestampSeconds, long blockSeconds) {
+        long start = timestampSeconds - timestampSeconds % blockSeconds;
+        return start > timestampSeconds ? start - blockSeconds : start;
+    }
+
+    /**
+     * Smallest block key that can hold rows at or after {@code fromSeconds}.
+     */
+    public static long firstBlockKey(long fromSeconds) {
+        return fromSeconds - MAX_BLOCK_SECONDS + 1;
+    }
+
+    /**
+     * Combines fetched rows with the rows of fetched blocks that lie in
+     * {@code [fromSeconds, lastSeconds]}, oldest first. A row under logs replaces a block row
+     * with the same timestamp. Blocks that cannot be decoded are skipped, so one damaged
+     * block does not hide the rest of the history. Rows without a timestamp come last.
+     */
+    public static List<LogEntry> merge(List<LogEntry> rows, Collection<String> blocks,
+                                       long fromSeconds, long lastSeconds) {
+        if (blocks.isEmpty()) return rows;
+        List<LogEntry> packed = new ArrayList<>();
+        for (String block : blocks) {
+            try {
+                LogBlockCodec.decodeBase64(block, fromSeconds, lastSeconds, packed);
+            } catch (IllegalArgumentException e) {
+                // Damaged, or written by a newer version
+            }
+        }
+        if (packed.isEmpty()) return rows;
+
+        List<LogEntry> keyed = new ArrayList<>(rows.size());
+        List<LogEntry> unkeyed = new ArrayList<>();
+        for (LogEntry row : rows) {
+            (row.timestamp != null ? keyed : unkeyed).add(row);
+        }
+        // Both are nearly always sorted already, which the merge sort handles in one pass
+        Collections.sort(packed, BY_TIMESTAMP);
+        Collections.sort(keyed, BY_TIMESTAMP);
+
+        List<LogEntry> merged = new ArrayList<>(packed.size() + keyed.size());
+        int p = 0;
+        int k = 0;
+        while (p < packed.size() || k < keyed.size()) {
+            if (k == keyed.size()) {
+                merged.add(packed.get(p++));
+            } else if (p == packed.size()) {
+                merged.add(keyed.get(k++));
+            } else {
+                long packedTime = packed.get(p).timestamp;
+                long rowTime = keyed.get(k).timestamp;
+                if (packedTime < rowTime) {
+                    merged.add(packed.get(p++));
+                } else {
+                    if (packedTime == rowTime) p++;
+                    merged.add(keyed.get(k++));
+                }
+            }
+        }
+        merged.addAll(unkeyed);
+        return merged;
+    }
+}
@@ -0,0 +1,112 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.Collection;
+
+/**
+ * Row count and hash of the rows of one UTC day, kept under
+ * devices/{id}/logDigests/{dayStart} (see {@link LogDigests}) so a client can tell whether
+ * its copy of the day still matches without downloading the rows.
+ *
+ * The hash is the 64-bit sum of a hash of each row, so it does not depend on row order and
+ * a writer that adds a row can add that row's hash. A row's hash covers its timestamp and
+ * every field, including whether the field is set; rows without a timestamp are left out.
+ */
+public final class LogDigest {
+    private static final long SEED = 0x5346L;    // "SF"
+    private static final long PRIME = 0x100000001B3L;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+    public final int rows;
+    public final long hash;
+
+    public LogDigest(int rows, long hash) {
+        this.rows = rows;
+        this.hash = hash;
+    }
+
+    /**
+     * Digest of the given rows, which should be the rows of one day with unique timestamps.
+     */
+    public static LogDigest of(Collection<LogEntry> entries) {
+        int rows = 0;
+        long hash = 0;
+        for (LogEntry entry : entries) {
+            if (entry.timestamp == null) continue;
+            rows++;
+            hash += rowHash(entry);
+        }
+        return new LogDigest(rows, hash);
+    }
+
+    /**
+     * Hash of one row, as summed into {@link #hash}.
+     */
+    public static long rowHash(LogEntry entry) {
+        long h = step(SEED, entry.timestamp);
+        h = text(h, entry.datetime);
+        h = number(h, entry.temperature);
+        h = entry.fanSpeed == null ? step(h, 0) : step(step(h, 1), entry.fanSpeed);
+        h = number(h, entry.voltage);
+        h = number(h, entry.current);
+        h = number(h, entry.watt);
+        return number(h, entry.kwh);
+    }
+
+    /** The hash as 16 hex digits, as stored; database numbers cannot hold 64 bits. */
+    public String hashHex() {
+        String high = Integer.toHexString((int) (hash >>> 32));
+        String low = Integer.toHexString((int) hash);
+        return "00000000".substring(high.length()) + high + "00000000".substring(low.length()) + low;
+    }
+
+    /**
+     * Parses a hash written by {@link #hashHex()}.
+     *
+     * @throws NumberFormatException if it is not 16 hex digits
+     */
+    public static long parseHash(String hex) {
+        if (hex.length() != 16) {
+            throw new NumberFormatException("Expected 16 hex digits, got \"" + hex + "\"");
+        }
+        return Long.parseLong(hex.substring(0, 8), 16) << 32 | Long.parseLong(hex.substring(8), 16);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LogDigest)) return false;
+        LogDigest other = (LogDigest) o;
+        return rows == other.rows && hash == other.hash;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * rows + (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return rows + " rows, " + hashHex();
+    }
+
+    private static long number(long h, Double value) {
+        return value == null ? step(h, 0) : step(step(h, 1), Double.doubleToLongBits(value));
+    }
+
+    private static long text(long h, String value) {
+        if (value == null) return step(h, 0);
+        long fnv = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            fnv = (fnv ^ value.charAt(i)) * PRIME;
+        }
+        return step(step(h, 1), fnv);
+    }
+
+    // Folds a value into the hash; the finalizer of SplitMix64 spreads every input bit
+    private static long step(long h, long value) {
+        long z = h * PRIME + value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,90 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Layout of the per-day digests next to the logs, and the check of a local copy against them.
+ *
+ * devices/{id}/logDigests/{dayStart} holds {@code {"rows": n, "hash": "16 hex digits"}},
+ * the {@link LogDigest} of all rows of the UTC day that begins at {@code dayStart}, packed or
+ * not. The log packer keeps them up to date for closed days; a day without one has not been
+ * digested yet. A month of digests is about 30 small values, so verifying a cached month is
+ * one query.
+ */
+public final class LogDigests {
+    public static final String PATH = "logDigests";
+    public static final String ROWS = "rows";
+    public static final String HASH = "hash";
+
+    private LogDigests() {
+    }
+
+    /**
+     * Digests of the given rows by UTC day start. Rows without a timestamp are left out.
+     */
+    public static Map<Long, LogDigest> byDay(List<LogEntry> entries) {
+        TreeMap<Long, List<LogEntry>> days = new TreeMap<>();
+        for (LogEntry entry : entries) {
+            if (entry.timestamp == null) continue;
+            long day = LogBlocks.blockStart(entry.timestamp, LogBlocks.DAY_SECONDS);
+            List<LogEntry> rows = days.get(day);
+            if (rows == null) {
+                rows = new ArrayList<>();
+                days.put(day, rows);
+            }
+            rows.add(entry);
+        }
+        TreeMap<Long, LogDigest> digests = new TreeMap<>();
+        for (Map.Entry<Long, List<LogEntry>> day : days.entrySet()) {
+            digests.put(day.getKey(), LogDigest.of(day.getValue()));
+        }
+        return digests;
+    }
+
+    /**
+     * The rows of {@code after} that are newer than every row of {@code before}, oldest first,
+     * or null if {@code after} also changed, dropped or inserted rows among the older ones.
+     * Rows without a timestamp cannot be placed, so any such row gives null as well.
+     */
+    public static List<LogEntry> appended(List<LogEntry> before, List<LogEntry> after) {
+        long last = Long.MIN_VALUE;
+        for (LogEntry entry : before) {
+            if (entry.timestamp == null) return null;
+            last = Math.max(last, entry.timestamp);
+        }
+        List<LogEntry> older = new ArrayList<>(before.size());
+        TreeMap<Long, LogEntry> newer = new TreeMap<>();
+        for (LogEntry entry : after) {
+            if (entry.timestamp == null) return null;
+            if (entry.timestamp <= last) {
+                older.add(entry);
+            } else {
+                newer.put(entry.timestamp, entry);
+            }
+        }
+        if (!LogDigest.of(older).equals(LogDigest.of(before))) return null;
+        return new ArrayList<>(newer.values());
+    }
+
+    /**
+     * A cache that only answers with local days matching their upstream digest, so days that
+     * were backfilled or overwritten upstream are downloaded again. A local day with no
+     * upstream digest is trusted, as closed days were before digests existed.
+     */
+    public static PartitionedLogFetch.Cache verified(final Map<Long, LogDigest> upstream,
+                                                     final PartitionedLogFetch.Cache local) {
+        return new PartitionedLogFetch.Cache() {
+            @Override
+            public List<LogEntry> cachedDay(long dayStartSeconds) {
+                List<LogEntry> rows = local.cachedDay(dayStartSeconds);
+                if (rows == null) return null;
+                LogDigest expected = upstream.get(dayStartSeconds);
+                if (expected != null && !expected.equals(LogDigest.of(rows))) return null;
+                return rows;
+            }
+        };
+    }
+}
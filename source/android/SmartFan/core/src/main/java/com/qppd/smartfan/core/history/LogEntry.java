@@ -0,0 +1,73 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.TimeZone;
+
+/**
+ * One entry of devices/{id}/logs, matching the ESP8266 Firebase structure.
+ *
+ * Public fields and the no-arg constructor are what the Firebase mapper binds to. The
+ * resolved time is cached in a private field, which the mapper ignores, so each entry's
+ * datetime is parsed at most once however often it is filtered or sorted.
+ */
+public class LogEntry {
+    private static final long UNRESOLVED = Long.MIN_VALUE;
+
+    public Long timestamp;        // Unix timestamp (int64 from ESP8266)
+    public String datetime;       // Human-readable datetime string from ESP8266 (YYYY-MM-DD HH:MM:SS)
+    public Double temperature;    // Temperature reading
+    public Long fanSpeed;         // Fan speed setting
+    public Double voltage;        // Voltage measurement
+    public Double current;        // Current measurement
+    public Double watt;           // Power consumption in watts
+    public Double kwh;            // Energy consumption in kWh
+
+    private long timeMillis = UNRESOLVED;
+
+    public LogEntry() {}
+
+    public LogEntry(Long timestamp, String datetime, Double temperature, Long fanSpeed,
+                    Double voltage, Double current, Double watt, Double kwh) {
+        this.timestamp = timestamp;
+        this.datetime = datetime;
+        this.temperature = temperature;
+        this.fanSpeed = fanSpeed;
+        this.voltage = voltage;
+        this.current = current;
+        this.watt = watt;
+        this.kwh = kwh;
+    }
+
+    /**
+     * Returns the entry time in epoch milliseconds, or 0 if it has none. The datetime string
+     * is preferred and read in the default time zone; the Unix timestamp is the fallback.
+     */
+    public long resolveTimeMillis() {
+        if (timeMillis != UNRESOLVED) return timeMillis;
+        return resolveTimeMillis(TimeZone.getDefault());
+    }
+
+    /**
+     * Same as {@link #resolveTimeMillis()} with an explicit zone, so batch callers look the
+     * default zone up once instead of per entry. The first resolution is cached.
+     */
+    public long resolveTimeMillis(TimeZone zone) {
+        if (timeMillis != UNRESOLVED) return timeMillis;
+
+        long resolved = 0;
+        if (datetime != null && !datetime.trim().isEmpty()) {
+            resolved = LogTime.parseDatetime(datetime, zone);
+        }
+        if (resolved <= 0 && timestamp != null && timestamp > 0) {
+            resolved = timestamp * 1000; // Convert to milliseconds
+        }
+        timeMillis = resolved;
+        return resolved;
+    }
+
+    /**
+     * Drops the cached time. Only needed if timestamp or datetime are changed after reading.
+     */
+    public void clearResolvedTime() {
+        timeMillis = UNRESOLVED;
+    }
+}
@@ -0,0 +1,37 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.Comparator;
+
+/**
+ * Orderings over {@link LogEntry#resolveTimeMillis()}. Entries without a usable time sort last.
+ */
+public final class LogEntryComparators {
+
+    /** Oldest to newest, the order charts are drawn in. */
+    public static final Comparator<LogEntry> CHRONOLOGICAL = new Comparator<LogEntry>() {
+        @Override
+        public int compare(LogEntry a, LogEntry b) {
+            return compareTimes(a.resolveTimeMillis(), b.resolveTimeMillis(), false);
+        }
+    };
+
+    /** Newest to oldest, the order of the log list. */
+    public static final Comparator<LogEntry> NEWEST_FIRST = new Comparator<LogEntry>() {
+        @Override
+        public int compare(LogEntry a, LogEntry b) {
+            return compareTimes(a.resolveTimeMillis(), b.resolveTimeMillis(), true);
+        }
+    };
+
+    private LogEntryComparators() {
+    }
+
+    private static int compareTimes(long a, long b, boolean descending) {
+        if (a <= 0 || b <= 0) {
+            // Missing times go last in either direction
+            if (a <= 0 && b <= 0) return 0;
+            return a <= 0 ? 1 : -1;
+        }
+        return descending ? Long.compare(b, a) : Long.compare(a, b);
+    }
+}
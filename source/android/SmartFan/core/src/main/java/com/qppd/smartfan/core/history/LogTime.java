@@ -0,0 +1,144 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.TimeZone;
+
+/**
+ * Fast parsing and formatting of the log datetime format "yyyy-MM-dd HH:mm:ss".
+ *
+ * Replaces a new SimpleDateFormat per entry, which dominated history processing time.
+ * For datetimes whose fields are in range it gives the same instant as a lenient
+ * SimpleDateFormat in the same zone, including local times skipped or repeated by DST:
+ * fields may have fewer digits and anything after the seconds (such as " (EST)") is
+ * ignored. Unlike SimpleDateFormat it does not roll fields over or skip leading spaces:
+ * "2024-01-01 24:00:00", "2024-13-01 00:00:00" and " 2024-01-01 00:00:00" give 0, as
+ * the firmware never writes them.
+ */
+public final class LogTime {
+    private static final char[] SEPARATORS = {'-', '-', ' ', ':', ':'};
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private LogTime() {
+    }
+
+    /**
+     * Parses a log datetime in the given zone. Returns epoch milliseconds, or 0 if the
+     * string is not a datetime with every field in range.
+     */
+    public static long parseDatetime(String datetime, TimeZone zone) {
+        int[] fields = new int[6];
+        int field = 0;
+        int value = 0;
+        int digits = 0;
+        int length = datetime.length();
+
+        for (int i = 0; i < length && field < 6; i++) {
+            char c = datetime.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 4) return 0;
+                value = value * 10 + (c - '0');
+                continue;
+            }
+            if (digits == 0) return 0;
+            fields[field++] = value;
+            value = 0;
+            digits = 0;
+            if (field < 6 && c != SEPARATORS[field - 1]) return 0;
+        }
+        if (field == 5 && digits > 0) {
+            fields[field++] = value;
+        }
+        if (field < 6) return 0;
+
+        int year = fields[0], month = fields[1], day = fields[2];
+        int hour = fields[3], minute = fields[4], second = fields[5];
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+            return 0;
+        }
+
+        long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+            + hour * 3600000L + minute * 60000L + second * 1000L;
+
+        // Two passes find the offset in effect at that local time, including DST
+        int offset = zone.getOffset(localMillis - zone.getRawOffset());
+        offset = zone.getOffset(localMillis - offset);
+        return localMillis - offset;
+    }
+
+    /**
+     * Formats epoch milliseconds as "HH:mm" in the given zone.
+     */
+    public static String formatHourMinute(long timeMillis, TimeZone zone) {
+        long localMillis = timeMillis + zone.getOffset(timeMillis);
+        long minuteOfDay = (localMillis / 60000L) % (24 * 60);
+        if (minuteOfDay < 0) {
+            minuteOfDay += 24 * 60;
+        }
+        int hour = (int) (minuteOfDay / 60);
+        int minute = (int) (minuteOfDay % 60);
+        return new String(new char[] {
+            (char) ('0' + hour / 10), (char) ('0' + hour % 10), ':',
+            (char) ('0' + minute / 10), (char) ('0' + minute % 10)});
+    }
+
+    /**
+     * Formats epoch milliseconds as "yyyy-MM-dd HH:mm:ss" in the given zone, the way the
+     * ESP8266 writes log datetimes.
+     */
+    public static String formatDatetime(long timeMillis, TimeZone zone) {
+        long localMillis = timeMillis + zone.getOffset(timeMillis);
+        long days = localMillis / MILLIS_PER_DAY;
+        long millisOfDay = localMillis % MILLIS_PER_DAY;
+        if (millisOfDay < 0) {
+            millisOfDay += MILLIS_PER_DAY;
+            days--;
+        }
+        int[] date = civilFromDays(days);
+        int secondOfDay = (int) (millisOfDay / 1000);
+        char[] chars = new char[19];
+        int year = date[0];
+        chars[0] = (char) ('0' + year / 1000 % 10);
+        chars[1] = (char) ('0' + year / 100 % 10);
+        chars[2] = (char) ('0' + year / 10 % 10);
+        chars[3] = (char) ('0' + year % 10);
+        chars[4] = '-';
+        putTwoDigits(chars, 5, date[1]);
+        chars[7] = '-';
+        putTwoDigits(chars, 8, date[2]);
+        chars[10] = ' ';
+        putTwoDigits(chars, 11, secondOfDay / 3600);
+        chars[13] = ':';
+        putTwoDigits(chars, 14, secondOfDay / 60 % 60);
+        chars[16] = ':';
+        putTwoDigits(chars, 17, secondOfDay % 60);
+        return new String(chars);
+    }
+
+    private static void putTwoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian date (H. Hinnant's days_from_civil)
+    static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Inverse of daysFromCivil: {year, month, day} for days since 1970-01-01
+    static int[] civilFromDays(long days) {
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return new int[] {(int) year, month, day};
+    }
+}
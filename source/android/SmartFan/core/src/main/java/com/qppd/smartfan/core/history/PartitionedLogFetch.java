@@ -0,0 +1,164 @@
+package com.qppd.smartfan.core.history;
+
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Downloads a range of history as independent day partitions instead of one query.
+ *
+ * Days are UTC days, as in {@link LogBlocks} and the on-device store, and are requested
+ * newest first with at most {@code maxInFlight} queries outstanding, so the latest day can
+ * render while older ones are still loading. Each day is delivered on its own as soon as
+ * it arrives. A day the {@link Cache} already holds is delivered from there without a query.
+ *
+ * Cache lookups run on the executor; results arrive on the executor for cached days and on
+ * the data source's callback thread otherwise.
+ */
+public final class PartitionedLogFetch {
+    private final SmartFanDataSource source;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    public interface Cache {
+        /**
+         * Rows of a whole day that is known to be complete, oldest first, or null if the day
+         * has to be downloaded.
+         */
+        List<LogEntry> cachedDay(long dayStartSeconds);
+    }
+
+    public interface Listener {
+        void onDay(long dayStartSeconds, List<LogEntry> rows, boolean cached);
+
+        void onDayFailed(long dayStartSeconds, Exception error);
+
+        /** After every day was delivered or failed; not called once removed. */
+        void onComplete();
+    }
+
+    public PartitionedLogFetch(SmartFanDataSource source, Executor executor, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive, got " + maxInFlight);
+        }
+        this.source = source;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Fetches the rows with {@code fromSeconds <= timestamp < toSeconds}. Removing the
+     * returned registration stops further queries and deliveries.
+     */
+    public Registration fetch(String deviceId, long fromSeconds, long toSeconds, Cache cache, Listener listener) {
+        Run run = new Run(deviceId, fromSeconds, toSeconds, cache, listener);
+        run.start();
+        return run;
+    }
+
+    private final class Run implements Registration {
+        private final String deviceId;
+        private final long fromSeconds;
+        private final long toSeconds;
+        private final Cache cache;
+        private final Listener listener;
+        private final ArrayDeque<Long> days = new ArrayDeque<>();
+        private final int total;
+        private int inFlight;
+        private int finished;
+        private boolean removed;
+
+        Run(String deviceId, long fromSeconds, long toSeconds, Cache cache, Listener listener) {
+            this.deviceId = deviceId;
+            this.fromSeconds = fromSeconds;
+            this.toSeconds = toSeconds;
+            this.cache = cache;
+            this.listener = listener;
+            if (fromSeconds < toSeconds) {
+                long first = LogBlocks.blockStart(fromSeconds, LogBlocks.DAY_SECONDS);
+                for (long day = LogBlocks.blockStart(toSeconds - 1, LogBlocks.DAY_SECONDS); day >= first;
+                        day -= LogBlocks.DAY_SECONDS) {
+                    days.add(day);
+                }
+            }
+            total = days.size();
+        }
+
+        @Override
+        public synchronized void remove() {
+            removed = true;
+            days.clear();
+        }
+
+        void start() {
+            if (total == 0) {
+                listener.onComplete();
+            } else {
+                pump();
+            }
+        }
+
+        private void pump() {
+            while (true) {
+                final long day;
+                synchronized (this) {
+                    if (removed || inFlight == maxInFlight || days.isEmpty()) return;
+                    day = days.poll();
+                    inFlight++;
+                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        load(day);
+                    }
+                });
+            }
+        }
+
+        private void load(final long day) {
+            if (isRemoved()) return;
+            List<LogEntry> cached = cache.cachedDay(day);
+            if (cached != null) {
+                if (!isRemoved()) listener.onDay(day, cached, true);
+                done();
+                return;
+            }
+            long from = Math.max(day, fromSeconds);
+            long to = Math.min(day + LogBlocks.DAY_SECONDS, toSeconds);
+            source.fetchLogs(deviceId, from * 1000, to * 1000, new DataCallback<List<LogEntry>>() {
+                @Override
+                public void onSuccess(List<LogEntry> rows) {
+                    if (!isRemoved()) listener.onDay(day, rows, false);
+                    done();
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    if (!isRemoved()) listener.onDayFailed(day, error);
+                    done();
+                }
+            });
+        }
+
+        private synchronized boolean isRemoved() {
+            return removed;
+        }
+
+        private void done() {
+            boolean complete;
+            synchronized (this) {
+                inFlight--;
+                finished++;
+                complete = finished == total && !removed;
+            }
+            if (complete) {
+                listener.onComplete();
+            } else {
+                pump();
+            }
+        }
+    }
+}
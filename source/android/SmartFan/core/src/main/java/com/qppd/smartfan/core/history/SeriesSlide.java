@@ -0,0 +1,50 @@
+package com.qppd.smartfan.core.history;
+
+/**
+ * How a shown series turns into the next one when its window slides: some points drop off the
+ * front, some at the end are replaced and new ones are added after them, the rest staying
+ * exactly as they are. Charts apply it to their existing data sets instead of replacing every
+ * point.
+ */
+public final class SeriesSlide {
+    /** Points to remove from the front of the shown series. */
+    public final int dropped;
+    /** Points to remove from the end of the shown series, once the front ones are gone. */
+    public final int removed;
+    /** Index in the next series of the first point to add. */
+    public final int addedFrom;
+
+    private SeriesSlide(int dropped, int removed, int addedFrom) {
+        this.dropped = dropped;
+        this.removed = removed;
+        this.addedFrom = addedFrom;
+    }
+
+    /**
+     * The slide from the shown points to the next ones, both ordered by time, or null if no
+     * point would be kept: the shown points after those older than the next series must start
+     * it unchanged. Series downsampled by {@link Downsampler#minMax} only change in their
+     * first and last buckets as the window moves; other downsampled series usually change
+     * throughout and keep little.
+     */
+    public static SeriesSlide between(long[] shownTimes, float[] shownValues,
+                                      long[] nextTimes, float[] nextValues) {
+        if (shownTimes.length == 0 || nextTimes.length == 0) return null;
+        int dropped = 0;
+        while (dropped < shownTimes.length && shownTimes[dropped] < nextTimes[0]) {
+            dropped++;
+        }
+        int kept = 0;
+        while (dropped + kept < shownTimes.length && kept < nextTimes.length
+                && shownTimes[dropped + kept] == nextTimes[kept]
+                && Float.floatToIntBits(shownValues[dropped + kept]) == Float.floatToIntBits(nextValues[kept])) {
+            kept++;
+        }
+        if (kept == 0) return null;
+        return new SeriesSlide(dropped, shownTimes.length - dropped - kept, kept);
+    }
+
+    public static SeriesSlide between(TimeSeries shown, TimeSeries next) {
+        return between(shown.timeMillis, shown.values, next.timeMillis, next.values);
+    }
+}
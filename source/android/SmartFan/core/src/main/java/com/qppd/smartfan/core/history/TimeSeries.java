@@ -0,0 +1,25 @@
+package com.qppd.smartfan.core.history;
+
+/**
+ * A chart series as parallel primitive arrays, ordered by time.
+ */
+public final class TimeSeries {
+    public final long[] timeMillis;
+    public final float[] values;
+
+    public TimeSeries(long[] timeMillis, float[] values) {
+        if (timeMillis.length != values.length) {
+            throw new IllegalArgumentException("timeMillis and values differ in length");
+        }
+        this.timeMillis = timeMillis;
+        this.values = values;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+}
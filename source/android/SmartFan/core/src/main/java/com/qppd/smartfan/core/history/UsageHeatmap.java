@@ -0,0 +1,191 @@
+package com.qppd.smartfan.core.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Hour-of-day by day averages of the history: one row per local day of a range, one column
+ * per local hour, each cell averaging the temperature, power and fan-on share of its rows.
+ *
+ * Rows go into float sum and count grids in one pass and are never kept, so rows that
+ * arrive later are added on their own and a redraw does not read the logs again. Rows
+ * outside the range or without a time are skipped. Not thread safe; {@link #build} splits
+ * large histories across threads, each with its own grids.
+ */
+public final class UsageHeatmap {
+    public static final int HOURS = 24;
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    private static final long DAY_MILLIS = HOURS * HOUR_MILLIS;
+    // Below this a part is not worth a thread
+    private static final int MIN_ROWS_PER_PART = 20000;
+
+    public enum Quantity {
+        /** Average temperature in °C. */
+        TEMPERATURE,
+        /** Average power draw in watts, idle readings included. */
+        POWER,
+        /** Share of readings with the fan running, 0..1. */
+        FAN_ON
+    }
+
+    private final long fromMillis;
+    private final long toMillis;
+    private final TimeZone zone;
+    private final long firstDay;
+    private final int days;
+
+    private final float[][] temperatureSum;
+    private final float[][] temperatureCount;
+    private final float[][] powerSum;
+    private final float[][] powerCount;
+    private final float[][] fanOnCount;
+    private final float[][] fanSpeedCount;
+
+    /**
+     * An empty heatmap of the local days that overlap {@code fromMillis..toMillis}, counting
+     * rows with {@code fromMillis <= time < toMillis}.
+     */
+    public UsageHeatmap(long fromMillis, long toMillis, TimeZone zone) {
+        if (fromMillis <= 0 || fromMillis >= toMillis) {
+            throw new IllegalArgumentException("Invalid range " + fromMillis + ".." + toMillis);
+        }
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.zone = zone;
+        this.firstDay = localDay(fromMillis);
+        this.days = (int) (localDay(toMillis - 1) - firstDay + 1);
+        temperatureSum = new float[days][HOURS];
+        temperatureCount = new float[days][HOURS];
+        powerSum = new float[days][HOURS];
+        powerCount = new float[days][HOURS];
+        fanOnCount = new float[days][HOURS];
+        fanSpeedCount = new float[days][HOURS];
+    }
+
+    /**
+     * Builds the heatmap of {@code entries}, split into {@code parts} ranges of rows on the
+     * executor when there are enough of them. Rows of a time-ordered history fall into
+     * contiguous day ranges, so the parts mostly fill different rows of the grid. Waits
+     * for the parts, so it must not run on the executor itself.
+     */
+    public static UsageHeatmap build(final List<LogEntry> entries, final long fromMillis, final long toMillis,
+                                     final TimeZone zone, ExecutorService executor, int parts)
+            throws InterruptedException {
+        UsageHeatmap heatmap = new UsageHeatmap(fromMillis, toMillis, zone);
+        parts = Math.min(parts, entries.size() / MIN_ROWS_PER_PART);
+        if (parts <= 1) {
+            heatmap.addAll(entries);
+            return heatmap;
+        }
+
+        List<Future<UsageHeatmap>> futures = new ArrayList<>(parts);
+        try {
+            for (int part = 0; part < parts; part++) {
+                final List<LogEntry> rows = entries.subList(
+                    (int) ((long) entries.size() * part / parts), (int) ((long) entries.size() * (part + 1) / parts));
+                futures.add(executor.submit(() -> {
+                    UsageHeatmap partial = new UsageHeatmap(fromMillis, toMillis, zone);
+                    partial.addAll(rows);
+                    return partial;
+                }));
+            }
+            for (Future<UsageHeatmap> future : futures) {
+                heatmap.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Heatmap part failed", e.getCause());
+        } finally {
+            for (Future<UsageHeatmap> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return heatmap;
+    }
+
+    public void addAll(List<LogEntry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            add(entries.get(i));
+        }
+    }
+
+    /**
+     * Adds the rows of another heatmap of the same range and zone.
+     */
+    public void addAll(UsageHeatmap other) {
+        if (other.fromMillis != fromMillis || other.toMillis != toMillis || !other.zone.getID().equals(zone.getID())) {
+            throw new IllegalArgumentException("Heatmaps cover different ranges");
+        }
+        for (int day = 0; day < days; day++) {
+            for (int hour = 0; hour < HOURS; hour++) {
+                temperatureSum[day][hour] += other.temperatureSum[day][hour];
+                temperatureCount[day][hour] += other.temperatureCount[day][hour];
+                powerSum[day][hour] += other.powerSum[day][hour];
+                powerCount[day][hour] += other.powerCount[day][hour];
+                fanOnCount[day][hour] += other.fanOnCount[day][hour];
+                fanSpeedCount[day][hour] += other.fanSpeedCount[day][hour];
+            }
+        }
+    }
+
+    /**
+     * Adds one row, with the same limits as {@link HistorySeries} except that idle power
+     * readings count toward the average.
+     */
+    public void add(LogEntry entry) {
+        if (entry == null) return;
+        long time = entry.resolveTimeMillis(zone);
+        if (time < fromMillis || time >= toMillis) return;
+        long local = time + zone.getOffset(time);
+        int day = (int) (local / DAY_MILLIS - firstDay);
+        int hour = (int) (local % DAY_MILLIS / HOUR_MILLIS);
+
+        Double temperature = entry.temperature;
+        if (temperature != null && temperature >= -50 && temperature <= 100) {
+            temperatureSum[day][hour] += temperature.floatValue();
+            temperatureCount[day][hour]++;
+        }
+        Double watt = entry.watt;
+        if (watt != null && watt >= 0 && watt <= 1000) {
+            powerSum[day][hour] += watt.floatValue();
+            powerCount[day][hour]++;
+        }
+        if (HistorySeries.hasFanSpeed(entry)) {
+            fanSpeedCount[day][hour]++;
+            if (entry.fanSpeed > 0) {
+                fanOnCount[day][hour]++;
+            }
+        }
+    }
+
+    /** Number of day rows, the oldest first. */
+    public int days() {
+        return days;
+    }
+
+    /**
+     * The cell's average, or NaN if none of its rows had the quantity.
+     */
+    public float value(Quantity quantity, int day, int hour) {
+        switch (quantity) {
+            case TEMPERATURE:
+                return average(temperatureSum[day][hour], temperatureCount[day][hour]);
+            case POWER:
+                return average(powerSum[day][hour], powerCount[day][hour]);
+            default:
+                return average(fanOnCount[day][hour], fanSpeedCount[day][hour]);
+        }
+    }
+
+    private static float average(float sum, float count) {
+        return count == 0 ? Float.NaN : sum / count;
+    }
+
+    // Days since the epoch in the zone; history is never before 1970
+    private long localDay(long millis) {
+        return (millis + zone.getOffset(millis)) / DAY_MILLIS;
+    }
+}
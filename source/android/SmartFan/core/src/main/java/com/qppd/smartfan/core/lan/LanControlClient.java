@@ -0,0 +1,230 @@
+package com.qppd.smartfan.core.lan;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A TCP connection to one fan's LAN control port, see {@link LanProtocol}.
+ *
+ * {@link #send} returns immediately; lines are written on a background thread, so it may be
+ * called from the main thread. A reader thread delivers the fan's state and readings to the
+ * {@link Listener} and completes send callbacks as the fan answers. If nothing arrives for
+ * {@link LanProtocol#IDLE_TIMEOUT_MILLIS} the connection counts as lost.
+ */
+public class LanControlClient implements Closeable {
+    public interface Listener {
+        /** The fan's control state after a change from any path, on the reader thread. */
+        void onState(ControlState state);
+
+        /** A live reading, on the reader thread. */
+        void onReading(CurrentReading reading);
+
+        /** The connection failed or was closed. Called once; pending sends fail first. */
+        void onDisconnected(IOException cause);
+    }
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final DataCallback<Void> IGNORED = new DataCallback<Void>() {
+        @Override
+        public void onSuccess(Void value) {
+        }
+
+        @Override
+        public void onError(Exception error) {
+        }
+    };
+
+    private final LanDevice device;
+    private final Socket socket;
+    private final Listener listener;
+    private final ExecutorService writer;
+    // Callbacks of sends the fan has not answered yet, in order. Guarded by itself.
+    private final Deque<DataCallback<Void>> pending = new ArrayDeque<>();
+    private volatile ControlState state;
+    private volatile boolean closed;
+
+    private LanControlClient(LanDevice device, Socket socket, Listener listener) {
+        this.device = device;
+        this.socket = socket;
+        this.listener = listener;
+        this.writer = Executors.newSingleThreadExecutor(daemon("LanControlClient writer " + device));
+    }
+
+    /**
+     * Connects to {@code device} and starts reading. Blocking.
+     */
+    public static LanControlClient connect(LanDevice device, Listener listener, int connectTimeoutMillis)
+            throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(device.host, device.port), connectTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout((int) LanProtocol.IDLE_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        LanControlClient client = new LanControlClient(device, socket, listener);
+        daemon("LanControlClient reader " + device).newThread(client::readLoop).start();
+        return client;
+    }
+
+    public LanDevice getDevice() {
+        return device;
+    }
+
+    /** The last state the fan sent, null before the first. */
+    public ControlState getState() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return !closed;
+    }
+
+    /**
+     * Sends a stamped change. The callback succeeds when the fan answers, also when it
+     * dropped the change as stale since a newer one stands, and fails if the connection is
+     * lost first. It runs on the reader thread.
+     *
+     * @throws IllegalArgumentException if {@code changes} has no updatedAt
+     */
+    public void send(ControlState changes, final DataCallback<Void> callback) {
+        if (changes.updatedAt == null) {
+            throw new IllegalArgumentException("LAN changes must carry updatedAt");
+        }
+        final byte[] line = (LanProtocol.formatControl(LanProtocol.SET, changes) + "\n").getBytes(ASCII);
+        synchronized (pending) {
+            if (closed) {
+                fail(callback, new IOException("Not connected to " + device));
+                return;
+            }
+            pending.addLast(callback != null ? callback : IGNORED);
+        }
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        OutputStream out = socket.getOutputStream();
+                        out.write(line);
+                        out.flush();
+                    } catch (IOException e) {
+                        disconnect(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed between the check above and here; disconnect() already failed the callback
+        }
+    }
+
+    @Override
+    public void close() {
+        disconnect(null);
+    }
+
+    private void readLoop() {
+        IOException cause = null;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), ASCII),
+                LanProtocol.MAX_LINE_LENGTH);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                handle(line);
+            }
+            cause = new IOException("Connection closed by " + device);
+        } catch (SocketTimeoutException e) {
+            cause = new IOException("No data from " + device + " for " + LanProtocol.IDLE_TIMEOUT_MILLIS + " ms", e);
+        } catch (IOException e) {
+            cause = e;
+        } catch (IllegalArgumentException e) {
+            cause = new IOException("Protocol error from " + device + ": " + e.getMessage(), e);
+        } finally {
+            disconnect(cause);
+        }
+    }
+
+    private void handle(String line) {
+        if (line.length() > LanProtocol.MAX_LINE_LENGTH) {
+            throw new IllegalArgumentException("Line too long");
+        }
+        String[] words = LanProtocol.split(line);
+        if (words.length == 0) return;
+        switch (words[0]) {
+            case LanProtocol.ACK:
+            case LanProtocol.STALE:
+                DataCallback<Void> callback;
+                synchronized (pending) {
+                    callback = pending.pollFirst();
+                }
+                if (callback != null) callback.onSuccess(null);
+                break;
+            case LanProtocol.STATE:
+                ControlState received = LanProtocol.parseControl(words);
+                state = received;
+                listener.onState(received);
+                break;
+            case LanProtocol.READING:
+                listener.onReading(LanProtocol.parseReading(words, System.currentTimeMillis() / 1000));
+                break;
+            default:
+                // Newer firmware may send more; ignore what we do not know
+                break;
+        }
+    }
+
+    private void disconnect(IOException cause) {
+        List<DataCallback<Void>> failed;
+        synchronized (pending) {
+            if (closed) return;
+            closed = true;
+            failed = new ArrayList<>(pending);
+            pending.clear();
+        }
+        writer.shutdownNow();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already broken
+        }
+        IOException reported = cause != null ? cause : new IOException("Closed");
+        for (DataCallback<Void> callback : failed) {
+            fail(callback, reported);
+        }
+        listener.onDisconnected(reported);
+    }
+
+    private static void fail(DataCallback<Void> callback, IOException e) {
+        if (callback != null) callback.onError(e);
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package com.qppd.smartfan.core.lan;
+
+/**
+ * A fan found on the local network. Immutable.
+ */
+public final class LanDevice {
+    public final String deviceId;
+    public final String host;
+    public final int port;
+
+    public LanDevice(String deviceId, String host, int port) {
+        this.deviceId = deviceId;
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof LanDevice)) return false;
+        LanDevice device = (LanDevice) other;
+        return deviceId.equals(device.deviceId) && host.equals(device.host) && port == device.port;
+    }
+
+    @Override
+    public int hashCode() {
+        return (deviceId.hashCode() * 31 + host.hashCode()) * 31 + port;
+    }
+
+    @Override
+    public String toString() {
+        return deviceId + "@" + host + ":" + port;
+    }
+}
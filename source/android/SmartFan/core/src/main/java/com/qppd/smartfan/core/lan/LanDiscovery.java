@@ -0,0 +1,99 @@
+package com.qppd.smartfan.core.lan;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds fans on the local network by UDP broadcast, see {@link LanProtocol}. Blocking, so
+ * call it off the main thread.
+ */
+public final class LanDiscovery {
+    /** Discovery requests are repeated this often, since UDP may drop them. */
+    public static final long RESEND_INTERVAL_MILLIS = 500;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private LanDiscovery() {
+    }
+
+    /**
+     * Broadcasts on the local network and returns every fan that answered within
+     * {@code timeoutMillis}.
+     */
+    public static List<LanDevice> discover(long timeoutMillis) throws IOException {
+        return discover(InetAddress.getByName("255.255.255.255"), LanProtocol.DISCOVERY_PORT, timeoutMillis, null);
+    }
+
+    /**
+     * Broadcasts on the local network and returns {@code deviceId} as soon as it answers, or
+     * null if it does not answer within {@code timeoutMillis}.
+     */
+    public static LanDevice find(String deviceId, long timeoutMillis) throws IOException {
+        List<LanDevice> found = discover(InetAddress.getByName("255.255.255.255"), LanProtocol.DISCOVERY_PORT,
+            timeoutMillis, deviceId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Sends discovery requests to {@code target}, a broadcast or a single host, and collects
+     * answers for {@code timeoutMillis}, or until {@code deviceId} answers if it is not null.
+     */
+    public static List<LanDevice> discover(InetAddress target, int port, long timeoutMillis, String deviceId)
+            throws IOException {
+        Map<String, LanDevice> found = new LinkedHashMap<>();
+        byte[] request = LanProtocol.DISCOVER.getBytes(ASCII);
+        byte[] buffer = new byte[LanProtocol.MAX_LINE_LENGTH];
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setBroadcast(true);
+            long nextSend = 0;
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (now >= deadline) break;
+                if (now >= nextSend) {
+                    socket.send(new DatagramPacket(request, request.length, target, port));
+                    nextSend = now + RESEND_INTERVAL_MILLIS;
+                }
+                socket.setSoTimeout((int) Math.max(1, Math.min(deadline, nextSend) - now));
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                LanDevice device = parseAnnouncement(
+                    new String(packet.getData(), packet.getOffset(), packet.getLength(), ASCII),
+                    packet.getAddress().getHostAddress());
+                if (device == null) continue;
+                found.put(device.deviceId, device);
+                if (device.deviceId.equals(deviceId)) {
+                    List<LanDevice> match = new ArrayList<>();
+                    match.add(device);
+                    return match;
+                }
+            }
+        }
+        if (deviceId != null) return new ArrayList<>();
+        return new ArrayList<>(found.values());
+    }
+
+    // Null for anything that is not an announcement, e.g. our own broadcast echoed back
+    static LanDevice parseAnnouncement(String text, String host) {
+        String[] words = LanProtocol.split(text);
+        if (words.length < 3 || !LanProtocol.ANNOUNCE.equals(words[0])) return null;
+        try {
+            int port = Integer.parseInt(words[2]);
+            return port > 0 && port < 65536 ? new LanDevice(words[1], host, port) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
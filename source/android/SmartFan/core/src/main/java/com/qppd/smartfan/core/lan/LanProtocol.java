@@ -0,0 +1,221 @@
+package com.qppd.smartfan.core.lan;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import java.util.Locale;
+
+/**
+ * The fan's LAN protocol, served by the ESP8266 (LocalControl.cpp) next to its Firebase
+ * connection so a phone on the same network can skip the cloud round trip.
+ *
+ * Discovery is a UDP broadcast of {@code SMARTFAN_DISCOVER} to {@link #DISCOVERY_PORT}; every
+ * fan answers {@code SMARTFAN <deviceId> <tcpPort>} to the sender.
+ *
+ * Control runs over TCP, one ASCII message per line, fields as {@code name=value}:
+ * <pre>
+ * SET &lt;updatedAt&gt; [mode=auto|manual] [fanSpeed=N] [targetTemperature=T] [manualControl=true|false]
+ * ACK &lt;updatedAt&gt;           the change was applied
+ * STALE &lt;updatedAt&gt;         a newer change was already applied, this one was dropped
+ * STATE &lt;updatedAt&gt; mode=... fanSpeed=... targetTemperature=... manualControl=...
+ * READING temperature=... humidity=... fanSpeed=... mode=... voltage=... current=... watt=... kwh=...
+ * </pre>
+ * The fan answers every SET in order, sends STATE on connect and after any change from
+ * either path, and a READING whenever the ESP32 reports, at least every
+ * {@link #READING_INTERVAL_MILLIS}.
+ *
+ * Both paths carry the writer's {@code updatedAt} (Unix milliseconds, 0 if unknown), and the
+ * fan keeps whichever change is newest: a Firebase write that arrives after a newer LAN
+ * command, or the reverse, is ignored. See {@link #supersedes}.
+ */
+public final class LanProtocol {
+    public static final int DISCOVERY_PORT = 4210;
+    public static final int CONTROL_PORT = 4211;
+
+    public static final String DISCOVER = "SMARTFAN_DISCOVER";
+    public static final String ANNOUNCE = "SMARTFAN";
+    public static final String SET = "SET";
+    public static final String ACK = "ACK";
+    public static final String STALE = "STALE";
+    public static final String STATE = "STATE";
+    public static final String READING = "READING";
+
+    /** The longest line either side sends; longer input is a protocol error. */
+    public static final int MAX_LINE_LENGTH = 256;
+    /** ESP32 COMM_SEND_INTERVAL, how often the fan sends readings. */
+    public static final long READING_INTERVAL_MILLIS = 5000;
+    /** A connection silent for this long is considered lost. */
+    public static final long IDLE_TIMEOUT_MILLIS = 3 * READING_INTERVAL_MILLIS;
+
+    private LanProtocol() {
+    }
+
+    /**
+     * Whether a change stamped {@code updatedAt} may replace one applied at
+     * {@code appliedUpdatedAt}. Unstamped changes always apply, so writers that predate the
+     * stamp keep working; ties apply so the same change arriving by both paths is harmless.
+     */
+    public static boolean supersedes(Long updatedAt, long appliedUpdatedAt) {
+        return updatedAt == null || updatedAt >= appliedUpdatedAt;
+    }
+
+    public static String announce(String deviceId, int port) {
+        return ANNOUNCE + " " + deviceId + " " + port;
+    }
+
+    /** A SET or STATE line for {@code control}, leaving out fields that are null. */
+    public static String formatControl(String verb, ControlState control) {
+        StringBuilder line = new StringBuilder(verb).append(' ')
+            .append(control.updatedAt != null ? control.updatedAt : 0);
+        appendField(line, "mode", control.mode);
+        appendField(line, "fanSpeed", control.fanSpeed);
+        appendField(line, "targetTemperature", control.targetTemperature);
+        appendField(line, "manualControl", control.manualControl);
+        return line.toString();
+    }
+
+    public static String formatReading(CurrentReading reading) {
+        StringBuilder line = new StringBuilder(READING);
+        appendField(line, "temperature", reading.temperature);
+        appendField(line, "humidity", reading.humidity);
+        appendField(line, "fanSpeed", reading.fanSpeed);
+        appendField(line, "mode", reading.mode);
+        appendField(line, "voltage", reading.voltage);
+        appendField(line, "current", reading.current);
+        appendField(line, "watt", reading.watt);
+        appendField(line, "kwh", reading.kwh);
+        return line.toString();
+    }
+
+    /**
+     * The words of a line. Returns an empty array for a blank line.
+     */
+    public static String[] split(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    /**
+     * The stamp in the second word of a SET, ACK, STALE or STATE line, null for 0.
+     *
+     * @throws IllegalArgumentException if it is missing or not a number
+     */
+    public static Long parseUpdatedAt(String[] words) {
+        if (words.length < 2) {
+            throw new IllegalArgumentException(words.length > 0 ? words[0] + " without updatedAt" : "Empty line");
+        }
+        try {
+            long updatedAt = Long.parseLong(words[1]);
+            return updatedAt > 0 ? updatedAt : null;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad updatedAt " + words[1]);
+        }
+    }
+
+    /**
+     * The control fields of a SET or STATE line. Unknown fields are skipped, so either side
+     * can add fields without breaking the other.
+     *
+     * @throws IllegalArgumentException if a known field has a malformed value
+     */
+    public static ControlState parseControl(String[] words) {
+        Long updatedAt = parseUpdatedAt(words);
+        String mode = null;
+        Integer fanSpeed = null;
+        Double targetTemperature = null;
+        Boolean manualControl = null;
+        for (int i = 2; i < words.length; i++) {
+            String word = words[i];
+            int equals = word.indexOf('=');
+            if (equals <= 0) continue;
+            String name = word.substring(0, equals);
+            String value = word.substring(equals + 1);
+            switch (name) {
+                case "mode":
+                    mode = value;
+                    break;
+                case "fanSpeed":
+                    fanSpeed = (int) parseNumber(name, value);
+                    break;
+                case "targetTemperature":
+                    targetTemperature = parseNumber(name, value);
+                    break;
+                case "manualControl":
+                    manualControl = Boolean.valueOf(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new ControlState(mode, fanSpeed, targetTemperature, manualControl, updatedAt);
+    }
+
+    /**
+     * The fields of a READING line, stamped {@code lastUpdateSeconds} since the fan does not
+     * send its clock.
+     */
+    public static CurrentReading parseReading(String[] words, long lastUpdateSeconds) {
+        Double temperature = null;
+        Double humidity = null;
+        Integer fanSpeed = null;
+        String mode = null;
+        Double voltage = null;
+        Double current = null;
+        Double watt = null;
+        Double kwh = null;
+        for (int i = 1; i < words.length; i++) {
+            String word = words[i];
+            int equals = word.indexOf('=');
+            if (equals <= 0) continue;
+            String name = word.substring(0, equals);
+            String value = word.substring(equals + 1);
+            switch (name) {
+                case "temperature":
+                    temperature = parseNumber(name, value);
+                    break;
+                case "humidity":
+                    humidity = parseNumber(name, value);
+                    break;
+                case "fanSpeed":
+                    fanSpeed = (int) parseNumber(name, value);
+                    break;
+                case "mode":
+                    mode = value;
+                    break;
+                case "voltage":
+                    voltage = parseNumber(name, value);
+                    break;
+                case "current":
+                    current = parseNumber(name, value);
+                    break;
+                case "watt":
+                    watt = parseNumber(name, value);
+                    break;
+                case "kwh":
+                    kwh = parseNumber(name, value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new CurrentReading(temperature, humidity, fanSpeed, mode, voltage, current, watt, kwh,
+            lastUpdateSeconds);
+    }
+
+    private static void appendField(StringBuilder line, String name, Object value) {
+        if (value == null) return;
+        line.append(' ').append(name).append('=');
+        if (value instanceof Double) {
+            line.append(String.format(Locale.US, "%.2f", (Double) value));
+        } else {
+            line.append(value);
+        }
+    }
+
+    private static double parseNumber(String name, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + " " + value);
+        }
+    }
+}
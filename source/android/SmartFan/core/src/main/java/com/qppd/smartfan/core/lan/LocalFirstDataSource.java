@@ -0,0 +1,289 @@
+package com.qppd.smartfan.core.lan;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.schedule.Clock;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link SmartFanDataSource} that talks to fans on the local network directly and keeps
+ * the cloud data source for everything else.
+ *
+ * Control changes are stamped with {@link ControlState#updatedAt} and, for a fan with a
+ * {@link #connectLan LAN connection}, sent over it at once. They are written to the cloud as
+ * well, so the control node stays the durable record other phones see; the fan keeps
+ * whichever copy is newest (see {@link LanProtocol#supersedes}). Without a connection, or
+ * after it drops, the cloud write alone carries the change.
+ *
+ * Observers of current and control get both paths merged: the fan's live readings every few
+ * seconds between the cloud's uploads, and never a value older than one already delivered.
+ * History, logs and groups always come from the cloud.
+ */
+public class LocalFirstDataSource implements SmartFanDataSource {
+    public static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    private final SmartFanDataSource cloud;
+    private final Clock clock;
+    private final Map<String, LanControlClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, List<DataObserver<CurrentReading>>> readingObservers = new ConcurrentHashMap<>();
+    private final Map<String, List<DataObserver<ControlState>>> controlObservers = new ConcurrentHashMap<>();
+
+    public LocalFirstDataSource(SmartFanDataSource cloud, Clock clock) {
+        this.cloud = cloud;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens a LAN connection to a discovered fan, replacing any previous one. Blocking, so
+     * call it off the main thread.
+     */
+    public void connectLan(LanDevice device) throws IOException {
+        final String deviceId = device.deviceId;
+        final AtomicReference<LanControlClient> self = new AtomicReference<>();
+        LanControlClient client = LanControlClient.connect(device, new LanControlClient.Listener() {
+            @Override
+            public void onState(ControlState state) {
+                for (DataObserver<ControlState> observer : observers(controlObservers, deviceId)) {
+                    observer.onChanged(state);
+                }
+            }
+
+            @Override
+            public void onReading(CurrentReading reading) {
+                for (DataObserver<CurrentReading> observer : observers(readingObservers, deviceId)) {
+                    observer.onChanged(reading);
+                }
+            }
+
+            @Override
+            public void onDisconnected(IOException cause) {
+                LanControlClient client = self.get();
+                if (client != null) clients.remove(deviceId, client);
+            }
+        }, CONNECT_TIMEOUT_MILLIS);
+        self.set(client);
+        LanControlClient previous = clients.put(deviceId, client);
+        if (previous != null) previous.close();
+        // Lost before self was set, so onDisconnected could not remove it
+        if (!client.isConnected()) clients.remove(deviceId, client);
+    }
+
+    public void disconnectLan(String deviceId) {
+        LanControlClient client = clients.remove(deviceId);
+        if (client != null) client.close();
+    }
+
+    public boolean isLanConnected(String deviceId) {
+        LanControlClient client = clients.get(deviceId);
+        return client != null && client.isConnected();
+    }
+
+    /**
+     * Sends the change over the LAN if connected and writes it to the cloud. The callback
+     * succeeds as soon as either path succeeds and fails only if both do.
+     */
+    @Override
+    public void updateControl(String deviceId, ControlState changes, DataCallback<Void> callback) {
+        ControlState stamped = stamp(changes);
+        LanControlClient client = clients.get(deviceId);
+        if (client == null || !client.isConnected()) {
+            cloud.updateControl(deviceId, stamped, callback);
+            return;
+        }
+        DataCallback<Void> either = firstSuccess(2, callback);
+        client.send(stamped, either);
+        cloud.updateControl(deviceId, stamped, either);
+    }
+
+    @Override
+    public void updateControls(Map<String, ControlState> changesByDevice, DataCallback<Void> callback) {
+        Map<String, ControlState> stamped = new LinkedHashMap<>();
+        for (Map.Entry<String, ControlState> entry : changesByDevice.entrySet()) {
+            ControlState changes = stamp(entry.getValue());
+            stamped.put(entry.getKey(), changes);
+            LanControlClient client = clients.get(entry.getKey());
+            if (client != null && client.isConnected()) client.send(changes, null);
+        }
+        // The batch result is the cloud's, which is what group commands report on
+        cloud.updateControls(stamped, callback);
+    }
+
+    @Override
+    public Registration observeCurrent(String deviceId, DataObserver<CurrentReading> observer) {
+        final NewestReading newest = new NewestReading(observer);
+        return observeBoth(readingObservers, deviceId, newest, cloud.observeCurrent(deviceId, newest));
+    }
+
+    /**
+     * The fan's readings over its LAN connection alone, which the cloud never sees, on the
+     * connection's thread. Nothing arrives while there is no connection.
+     */
+    public Registration observeLanCurrent(final String deviceId, final DataObserver<CurrentReading> observer) {
+        observers(readingObservers, deviceId).add(observer);
+        return new Registration() {
+            @Override
+            public void remove() {
+                observers(readingObservers, deviceId).remove(observer);
+            }
+        };
+    }
+
+    @Override
+    public Registration observeControl(String deviceId, DataObserver<ControlState> observer) {
+        final NewestControl newest = new NewestControl(observer);
+        return observeBoth(controlObservers, deviceId, newest, cloud.observeControl(deviceId, newest));
+    }
+
+    @Override
+    public void fetchUserDeviceId(String uid, DataCallback<String> callback) {
+        cloud.fetchUserDeviceId(uid, callback);
+    }
+
+    @Override
+    public void fetchLogs(String deviceId, long fromMillis, long toMillis, DataCallback<List<LogEntry>> callback) {
+        cloud.fetchLogs(deviceId, fromMillis, toMillis, callback);
+    }
+
+    @Override
+    public void fetchLogDigests(String deviceId, long fromMillis, long toMillis,
+                                DataCallback<Map<Long, LogDigest>> callback) {
+        cloud.fetchLogDigests(deviceId, fromMillis, toMillis, callback);
+    }
+
+    @Override
+    public void writeCurrent(String deviceId, CurrentReading reading, DataCallback<Void> callback) {
+        cloud.writeCurrent(deviceId, reading, callback);
+    }
+
+    @Override
+    public void appendLog(String deviceId, LogEntry entry, DataCallback<Void> callback) {
+        cloud.appendLog(deviceId, entry, callback);
+    }
+
+    @Override
+    public void fetchGroups(String uid, DataCallback<List<DeviceGroup>> callback) {
+        cloud.fetchGroups(uid, callback);
+    }
+
+    @Override
+    public void saveGroup(String uid, DeviceGroup group, DataCallback<Void> callback) {
+        cloud.saveGroup(uid, group, callback);
+    }
+
+    @Override
+    public void deleteGroup(String uid, String groupId, DataCallback<Void> callback) {
+        cloud.deleteGroup(uid, groupId, callback);
+    }
+
+    private ControlState stamp(ControlState changes) {
+        return changes.updatedAt != null ? changes : changes.withUpdatedAt(clock.currentTimeMillis());
+    }
+
+    private static <T> Registration observeBoth(final Map<String, List<DataObserver<T>>> local,
+                                                final String deviceId, final DataObserver<T> observer,
+                                                final Registration cloudRegistration) {
+        observers(local, deviceId).add(observer);
+        return new Registration() {
+            @Override
+            public void remove() {
+                observers(local, deviceId).remove(observer);
+                cloudRegistration.remove();
+            }
+        };
+    }
+
+    private static <T> List<DataObserver<T>> observers(Map<String, List<DataObserver<T>>> byDevice, String deviceId) {
+        List<DataObserver<T>> observers = byDevice.get(deviceId);
+        if (observers == null) {
+            synchronized (byDevice) {
+                observers = byDevice.get(deviceId);
+                if (observers == null) {
+                    observers = new CopyOnWriteArrayList<>();
+                    byDevice.put(deviceId, observers);
+                }
+            }
+        }
+        return observers;
+    }
+
+    // Succeeds on the first success of `paths` attempts, fails with the last error if all fail
+    private static DataCallback<Void> firstSuccess(final int paths, final DataCallback<Void> callback) {
+        final AtomicInteger remaining = new AtomicInteger(paths);
+        return new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                if (remaining.getAndSet(-1) > 0 && callback != null) callback.onSuccess(null);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                if (remaining.decrementAndGet() == 0 && callback != null) callback.onError(error);
+            }
+        };
+    }
+
+    // Readings from the fan and from the cloud interleave; drop whichever is older
+    private static final class NewestReading implements DataObserver<CurrentReading> {
+        private final DataObserver<CurrentReading> observer;
+        private long lastUpdate = Long.MIN_VALUE;
+
+        NewestReading(DataObserver<CurrentReading> observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void onChanged(CurrentReading value) {
+            synchronized (this) {
+                if (value != null && value.lastUpdate != null) {
+                    if (value.lastUpdate < lastUpdate) return;
+                    lastUpdate = value.lastUpdate;
+                }
+            }
+            observer.onChanged(value);
+        }
+
+        @Override
+        public void onError(Exception error) {
+            observer.onError(error);
+        }
+    }
+
+    private static final class NewestControl implements DataObserver<ControlState> {
+        private final DataObserver<ControlState> observer;
+        private long updatedAt = Long.MIN_VALUE;
+
+        NewestControl(DataObserver<ControlState> observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void onChanged(ControlState value) {
+            synchronized (this) {
+                if (value != null) {
+                    if (!LanProtocol.supersedes(value.updatedAt, updatedAt)) return;
+                    if (value.updatedAt != null) updatedAt = value.updatedAt;
+                }
+            }
+            observer.onChanged(value);
+        }
+
+        @Override
+        public void onError(Exception error) {
+            observer.onError(error);
+        }
+    }
+}
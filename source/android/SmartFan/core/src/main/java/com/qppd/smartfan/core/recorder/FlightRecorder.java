@@ -0,0 +1,288 @@
+package com.qppd.smartfan.core.recorder;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the last {@code capacity} live readings of a device in a memory-mapped ring file,
+ * one fixed-size binary record per reading.
+ *
+ * Records go straight into the mapped pages, so they outlive the process without a flush.
+ * A file written with another capacity or layout is started over. One thread records;
+ * any number of threads may read at the same time without locking.
+ *
+ * Each record starts and ends with its sequence number, and the start is written last.
+ * A reader drops records whose numbers do not match, such as one that the system was
+ * writing when it went down, and records that were overwritten while it read them.
+ */
+public final class FlightRecorder implements Closeable {
+    private static final int MAGIC = 0x53464652;    // "SFFR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 96;
+
+    // Header
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_CAPACITY = 12;
+    private static final int HEADER_COUNT = 16;
+
+    // Record
+    private static final int SEQUENCE_START = 0;
+    private static final int RECEIVED = 8;
+    private static final int LAST_UPDATE = 16;
+    private static final int TEMPERATURE = 24;
+    private static final int HUMIDITY = 32;
+    private static final int VOLTAGE = 40;
+    private static final int CURRENT = 48;
+    private static final int WATT = 56;
+    private static final int KWH = 64;
+    private static final int FAN_SPEED = 72;
+    private static final int PRESENT = 76;
+    private static final int MODE_LENGTH = 78;
+    private static final int MODE = 79;
+    private static final int MODE_BYTES = 9;
+    private static final int SEQUENCE_END = 88;
+
+    // Bits of PRESENT, one per field that may be null
+    private static final int HAS_LAST_UPDATE = 1;
+    private static final int HAS_TEMPERATURE = 1 << 1;
+    private static final int HAS_HUMIDITY = 1 << 2;
+    private static final int HAS_VOLTAGE = 1 << 3;
+    private static final int HAS_CURRENT = 1 << 4;
+    private static final int HAS_WATT = 1 << 5;
+    private static final int HAS_KWH = 1 << 6;
+    private static final int HAS_FAN_SPEED = 1 << 7;
+    private static final int HAS_MODE = 1 << 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // Records written so far, over the life of the file; published after each record
+    private final AtomicLong count = new AtomicLong();
+    // Sequence of the record being written, published before its slot is touched
+    private final AtomicLong writing = new AtomicLong(-1);
+
+    private FlightRecorder(RandomAccessFile file, MappedByteBuffer buffer, int capacity, long count) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count.set(count);
+    }
+
+    /**
+     * Opens the ring file, creating it if needed. A file of about {@code capacity} times
+     * 96 bytes is kept; at one reading every two seconds, 10,800 records hold six hours in
+     * about 1 MB.
+     */
+    public static FlightRecorder open(File path, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity too large: " + capacity);
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            boolean compatible = file.length() == size;
+            if (compatible) {
+                file.seek(0);
+                compatible = file.readInt() == MAGIC && file.readInt() == VERSION
+                    && file.readInt() == RECORD_SIZE && file.readInt() == capacity;
+            }
+            if (!compatible) {
+                // New, or written for another layout; clearing it drops the old records
+                file.setLength(0);
+                file.setLength(size);
+            }
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            long count = 0;
+            if (compatible) {
+                count = Math.max(0, buffer.getLong(HEADER_COUNT));
+            } else {
+                buffer.putInt(HEADER_MAGIC, MAGIC);
+                buffer.putInt(HEADER_VERSION, VERSION);
+                buffer.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+                buffer.putInt(HEADER_CAPACITY, capacity);
+                buffer.putLong(HEADER_COUNT, 0);
+            }
+            return new FlightRecorder(file, buffer, capacity, count);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Records written over the life of the file, including those since overwritten. */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Appends a reading, overwriting the oldest once the ring is full. Must always be
+     * called from the same thread.
+     */
+    public void record(long receivedMillis, CurrentReading reading) {
+        long sequence = count.get();
+        int at = offset(sequence);
+        writing.set(sequence);
+        buffer.putLong(at + SEQUENCE_START, -1);
+
+        int present = 0;
+        buffer.putLong(at + RECEIVED, receivedMillis);
+        if (reading.lastUpdate != null) {
+            present |= HAS_LAST_UPDATE;
+            buffer.putLong(at + LAST_UPDATE, reading.lastUpdate);
+        }
+        present |= putDouble(at + TEMPERATURE, reading.temperature, HAS_TEMPERATURE);
+        present |= putDouble(at + HUMIDITY, reading.humidity, HAS_HUMIDITY);
+        present |= putDouble(at + VOLTAGE, reading.voltage, HAS_VOLTAGE);
+        present |= putDouble(at + CURRENT, reading.current, HAS_CURRENT);
+        present |= putDouble(at + WATT, reading.watt, HAS_WATT);
+        present |= putDouble(at + KWH, reading.kwh, HAS_KWH);
+        if (reading.fanSpeed != null) {
+            present |= HAS_FAN_SPEED;
+            buffer.putInt(at + FAN_SPEED, reading.fanSpeed);
+        }
+        if (reading.mode != null) {
+            // Modes are short words such as "auto"; anything longer is cut
+            byte[] mode = reading.mode.getBytes(UTF_8);
+            int length = Math.min(mode.length, MODE_BYTES);
+            present |= HAS_MODE;
+            buffer.put(at + MODE_LENGTH, (byte) length);
+            for (int i = 0; i < length; i++) {
+                buffer.put(at + MODE + i, mode[i]);
+            }
+        }
+        buffer.putShort(at + PRESENT, (short) present);
+
+        buffer.putLong(at + SEQUENCE_END, sequence);
+        buffer.putLong(at + SEQUENCE_START, sequence);
+        buffer.putLong(HEADER_COUNT, sequence + 1);
+        count.lazySet(sequence + 1);
+    }
+
+    /**
+     * Returns the kept readings received at or after {@code fromMillis}, oldest first.
+     */
+    public List<RecordedReading> read(long fromMillis) {
+        long end = count.get();
+        long first = Math.max(0, end - capacity);
+        List<RecordedReading> readings = new ArrayList<>();
+        List<Long> sequences = new ArrayList<>();
+        for (long sequence = first; sequence < end; sequence++) {
+            int at = offset(sequence);
+            if (buffer.getLong(at + SEQUENCE_START) != sequence) continue;
+            long received = buffer.getLong(at + RECEIVED);
+            if (received < fromMillis) continue;
+            RecordedReading reading = new RecordedReading(received, readRecord(at));
+            if (buffer.getLong(at + SEQUENCE_END) != sequence || buffer.getLong(at + SEQUENCE_START) != sequence) {
+                continue;
+            }
+            readings.add(reading);
+            sequences.add(sequence);
+        }
+        // The recorder may have lapped this reader; drop what it began to overwrite meanwhile
+        long overwritten = writing.get() - capacity;
+        int keepFrom = 0;
+        while (keepFrom < sequences.size() && sequences.get(keepFrom) <= overwritten) {
+            keepFrom++;
+        }
+        return keepFrom == 0 ? readings : new ArrayList<>(readings.subList(keepFrom, readings.size()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping stays valid until it is collected; closing releases the file
+        file.close();
+    }
+
+    /**
+     * The readings as log rows, for charts next to the logged history. A row is timestamped
+     * with the reading's lastUpdate, or the time it was received if it has none; of several
+     * readings in one second the last is kept.
+     */
+    public static List<LogEntry> toLogEntries(List<RecordedReading> readings) {
+        TreeMap<Long, LogEntry> rows = new TreeMap<>();
+        for (RecordedReading recorded : readings) {
+            CurrentReading reading = recorded.reading;
+            long timestamp = reading.lastUpdate != null ? reading.lastUpdate : recorded.receivedMillis / 1000;
+            rows.put(timestamp, new LogEntry(timestamp, null, reading.temperature,
+                reading.fanSpeed != null ? Long.valueOf(reading.fanSpeed) : null,
+                reading.voltage, reading.current, reading.watt, reading.kwh));
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    /**
+     * Fills in the recorded rows between the logged ones, oldest first. A logged row wins
+     * over a recorded row with the same timestamp; logged rows without a timestamp are left out.
+     */
+    public static List<LogEntry> mergeWithLogs(List<LogEntry> logs, List<LogEntry> recorded) {
+        TreeMap<Long, LogEntry> rows = new TreeMap<>();
+        for (LogEntry row : recorded) {
+            rows.put(row.timestamp, row);
+        }
+        for (LogEntry row : logs) {
+            if (row.timestamp != null) {
+                rows.put(row.timestamp, row);
+            }
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    private int offset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % capacity) * RECORD_SIZE;
+    }
+
+    private int putDouble(int at, Double value, int bit) {
+        if (value == null) return 0;
+        buffer.putDouble(at, value);
+        return bit;
+    }
+
+    private CurrentReading readRecord(int at) {
+        int present = buffer.getShort(at + PRESENT);
+        String mode = null;
+        if ((present & HAS_MODE) != 0) {
+            byte[] bytes = new byte[Math.min(buffer.get(at + MODE_LENGTH) & 0xFF, MODE_BYTES)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(at + MODE + i);
+            }
+            mode = new String(bytes, UTF_8);
+        }
+        return new CurrentReading(
+            getDouble(at + TEMPERATURE, present, HAS_TEMPERATURE),
+            getDouble(at + HUMIDITY, present, HAS_HUMIDITY),
+            (present & HAS_FAN_SPEED) != 0 ? Integer.valueOf(buffer.getInt(at + FAN_SPEED)) : null,
+            mode,
+            getDouble(at + VOLTAGE, present, HAS_VOLTAGE),
+            getDouble(at + CURRENT, present, HAS_CURRENT),
+            getDouble(at + WATT, present, HAS_WATT),
+            getDouble(at + KWH, present, HAS_KWH),
+            (present & HAS_LAST_UPDATE) != 0 ? Long.valueOf(buffer.getLong(at + LAST_UPDATE)) : null);
+    }
+
+    private Double getDouble(int at, int present, int bit) {
+        return (present & bit) != 0 ? Double.valueOf(buffer.getDouble(at)) : null;
+    }
+}
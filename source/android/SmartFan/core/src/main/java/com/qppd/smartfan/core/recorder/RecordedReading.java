@@ -0,0 +1,16 @@
+package com.qppd.smartfan.core.recorder;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+
+/**
+ * A live reading as kept by {@link FlightRecorder}, with the time the app received it.
+ */
+public final class RecordedReading {
+    public final long receivedMillis;
+    public final CurrentReading reading;
+
+    public RecordedReading(long receivedMillis, CurrentReading reading) {
+        this.receivedMillis = receivedMillis;
+        this.reading = reading;
+    }
+}
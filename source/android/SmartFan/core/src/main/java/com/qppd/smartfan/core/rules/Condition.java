@@ -0,0 +1,81 @@
+package com.qppd.smartfan.core.rules;
+
+/**
+ * One comparison of a reading's metric, against a constant or against a multiple of the
+ * metric's own baseline (its moving average on this device). Immutable.
+ *
+ * A missing value never satisfies a condition.
+ */
+public final class Condition {
+    public enum Operator {
+        GREATER(">"), GREATER_OR_EQUAL(">="), LESS("<"), LESS_OR_EQUAL("<=");
+
+        public final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean test(double value, double threshold) {
+            switch (this) {
+                case GREATER:
+                    return value > threshold;
+                case GREATER_OR_EQUAL:
+                    return value >= threshold;
+                case LESS:
+                    return value < threshold;
+                default:
+                    return value <= threshold;
+            }
+        }
+    }
+
+    public final Metric metric;
+    public final Operator operator;
+    /** The threshold, or the factor applied to the baseline. */
+    public final double value;
+    public final boolean relativeToBaseline;
+
+    private Condition(Metric metric, Operator operator, double value, boolean relativeToBaseline) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Threshold must be finite");
+        }
+        this.metric = metric;
+        this.operator = operator;
+        this.value = value + 0.0;  // no -0.0, so equal thresholds compare equal
+        this.relativeToBaseline = relativeToBaseline;
+    }
+
+    public static Condition threshold(Metric metric, Operator operator, double threshold) {
+        return new Condition(metric, operator, threshold, false);
+    }
+
+    public static Condition baseline(Metric metric, Operator operator, double factor) {
+        return new Condition(metric, operator, factor, true);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Condition)) return false;
+        Condition condition = (Condition) other;
+        return metric == condition.metric && operator == condition.operator
+            && Double.compare(value, condition.value) == 0 && relativeToBaseline == condition.relativeToBaseline;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((metric.hashCode() * 31 + operator.hashCode()) * 31 + Double.valueOf(value).hashCode()) * 31
+            + (relativeToBaseline ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return metric.fieldName + " " + operator.symbol + " "
+            + (relativeToBaseline ? "baseline * " : "") + format(value);
+    }
+
+    static String format(double number) {
+        return number == Math.rint(number) && Math.abs(number) < 1e15
+            ? String.valueOf((long) number) : String.valueOf(number);
+    }
+}
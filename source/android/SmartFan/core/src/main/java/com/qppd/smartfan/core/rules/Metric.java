@@ -0,0 +1,77 @@
+package com.qppd.smartfan.core.rules;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+
+/**
+ * A numeric field of a {@link CurrentReading} that rules can test, named like the field in
+ * the database.
+ */
+public enum Metric {
+    TEMPERATURE("temperature") {
+        @Override
+        double of(CurrentReading reading) {
+            return value(reading.temperature);
+        }
+    },
+    HUMIDITY("humidity") {
+        @Override
+        double of(CurrentReading reading) {
+            return value(reading.humidity);
+        }
+    },
+    FAN_SPEED("fanSpeed") {
+        @Override
+        double of(CurrentReading reading) {
+            return reading.fanSpeed != null ? reading.fanSpeed : Double.NaN;
+        }
+    },
+    VOLTAGE("voltage") {
+        @Override
+        double of(CurrentReading reading) {
+            return value(reading.voltage);
+        }
+    },
+    CURRENT("current") {
+        @Override
+        double of(CurrentReading reading) {
+            return value(reading.current);
+        }
+    },
+    WATT("watt") {
+        @Override
+        double of(CurrentReading reading) {
+            return value(reading.watt);
+        }
+    },
+    KWH("kwh") {
+        @Override
+        double of(CurrentReading reading) {
+            return value(reading.kwh);
+        }
+    };
+
+    private static final Metric[] VALUES = values();
+
+    public final String fieldName;
+
+    Metric(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    /** The value in the reading, NaN if missing. */
+    abstract double of(CurrentReading reading);
+
+    /**
+     * Looks a metric up by its field name, case-insensitively. Returns null if unknown.
+     */
+    public static Metric forFieldName(String name) {
+        for (Metric metric : VALUES) {
+            if (metric.fieldName.equalsIgnoreCase(name)) return metric;
+        }
+        return null;
+    }
+
+    private static double value(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+}
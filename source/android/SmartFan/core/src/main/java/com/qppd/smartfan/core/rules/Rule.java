@@ -0,0 +1,172 @@
+package com.qppd.smartfan.core.rules;
+
+import com.qppd.smartfan.core.data.ControlState;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A user-defined automation: when all conditions have held for at least the sustain time,
+ * run the action. A rule triggers once when it becomes satisfied and again only after its
+ * conditions have been false in between. Immutable.
+ *
+ * Rules can be written as text:
+ * <pre>
+ * temperature &gt; 29 and humidity &gt; 70 for 5m: speed 80
+ * watt &gt; baseline * 1.3: alert Power use above normal
+ * temperature &lt; 24 for 10m: auto
+ * </pre>
+ * Conditions compare a field of devices/{id}/current ({@link Metric}) with a number or with
+ * a multiple of the field's baseline, and are joined with "and". The optional sustain time
+ * takes s, m or h. Actions are {@code speed N} (manual mode at N percent), {@code auto},
+ * {@code target N} (target temperature) and {@code alert text}.
+ */
+public final class Rule {
+    public final String name;
+    public final List<Condition> conditions;
+    public final long sustainMillis;
+    public final RuleAction action;
+
+    public Rule(String name, List<Condition> conditions, long sustainMillis, RuleAction action) {
+        if (conditions.isEmpty()) {
+            throw new IllegalArgumentException("A rule needs at least one condition");
+        }
+        if (sustainMillis < 0) {
+            throw new IllegalArgumentException("sustainMillis must not be negative");
+        }
+        this.name = name;
+        this.conditions = Collections.unmodifiableList(new ArrayList<>(conditions));
+        this.sustainMillis = sustainMillis;
+        this.action = action;
+    }
+
+    /**
+     * Parses the text form described above.
+     *
+     * @throws IllegalArgumentException with the offending part if the text is not a rule
+     */
+    public static Rule parse(String name, String text) {
+        int colon = text.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected \"conditions: action\" in \"" + text + "\"");
+        }
+        String when = text.substring(0, colon).trim();
+        String then = text.substring(colon + 1).trim();
+
+        long sustainMillis = 0;
+        int forIndex = indexOfWord(when, "for");
+        if (forIndex >= 0) {
+            sustainMillis = parseDuration(when.substring(forIndex + 3).trim());
+            when = when.substring(0, forIndex).trim();
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (String part : when.split("(?i)\\s+and\\s+")) {
+            conditions.add(parseCondition(part.trim()));
+        }
+        return new Rule(name, conditions, sustainMillis, parseAction(then));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Condition condition : conditions) {
+            if (text.length() > 0) text.append(" and ");
+            text.append(condition);
+        }
+        if (sustainMillis > 0) {
+            text.append(" for ").append(sustainMillis % 60000 == 0 ? sustainMillis / 60000 + "m" : sustainMillis / 1000 + "s");
+        }
+        text.append(": ");
+        if (action.isAlert()) {
+            text.append("alert ").append(action.alert);
+        } else if (action.control.isAutoMode()) {
+            text.append("auto");
+        } else if (action.control.fanSpeed != null) {
+            text.append("speed ").append(action.control.fanSpeed);
+        } else {
+            text.append("target ").append(Condition.format(action.control.targetTemperature));
+        }
+        return text.toString();
+    }
+
+    private static Condition parseCondition(String text) {
+        int operatorStart = 0;
+        while (operatorStart < text.length() && text.charAt(operatorStart) != '<' && text.charAt(operatorStart) != '>') {
+            operatorStart++;
+        }
+        if (operatorStart == text.length()) {
+            throw new IllegalArgumentException("Expected \"field operator value\" in \"" + text + "\"");
+        }
+        int operatorEnd = operatorStart + 1;
+        if (operatorEnd < text.length() && text.charAt(operatorEnd) == '=') operatorEnd++;
+
+        String field = text.substring(0, operatorStart).trim();
+        Metric metric = Metric.forFieldName(field);
+        if (metric == null) {
+            throw new IllegalArgumentException("Unknown field \"" + field + "\"");
+        }
+        String symbol = text.substring(operatorStart, operatorEnd);
+        Condition.Operator operator = null;
+        for (Condition.Operator candidate : Condition.Operator.values()) {
+            if (candidate.symbol.equals(symbol)) operator = candidate;
+        }
+        String value = text.substring(operatorEnd).trim().toLowerCase(Locale.US);
+        if (value.startsWith("baseline")) {
+            String factor = value.substring("baseline".length()).trim();
+            if (factor.isEmpty()) return Condition.baseline(metric, operator, 1);
+            if (!factor.startsWith("*") && !factor.startsWith("x") && !factor.startsWith("×")) {
+                throw new IllegalArgumentException("Expected \"baseline * factor\" in \"" + text + "\"");
+            }
+            return Condition.baseline(metric, operator, parseNumber(factor.substring(1).trim()));
+        }
+        return Condition.threshold(metric, operator, parseNumber(value));
+    }
+
+    private static RuleAction parseAction(String text) {
+        String[] parts = text.split("\\s+", 2);
+        String verb = parts[0].toLowerCase(Locale.US);
+        String argument = parts.length > 1 ? parts[1].trim() : "";
+        switch (verb) {
+            case "speed":
+                int speed = (int) parseNumber(argument);
+                if (speed < 0 || speed > 100) {
+                    throw new IllegalArgumentException("Speed must be within 0..100, was " + argument);
+                }
+                return RuleAction.control(ControlState.manualSpeed(speed));
+            case "auto":
+                return RuleAction.control(ControlState.autoMode());
+            case "target":
+                return RuleAction.control(new ControlState(null, null, parseNumber(argument), null));
+            case "alert":
+                if (argument.isEmpty()) throw new IllegalArgumentException("An alert needs a message");
+                return RuleAction.alert(argument);
+            default:
+                throw new IllegalArgumentException("Unknown action \"" + text + "\"");
+        }
+    }
+
+    private static long parseDuration(String text) {
+        if (text.isEmpty()) throw new IllegalArgumentException("Expected a duration after \"for\"");
+        char unit = Character.toLowerCase(text.charAt(text.length() - 1));
+        long scale = unit == 's' ? 1000 : unit == 'm' ? 60000 : unit == 'h' ? 3600000 : 0;
+        if (scale == 0) {
+            throw new IllegalArgumentException("Duration \"" + text + "\" needs a unit: s, m or h");
+        }
+        return Math.round(parseNumber(text.substring(0, text.length() - 1).trim()) * scale);
+    }
+
+    private static double parseNumber(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number, got \"" + text + "\"");
+        }
+    }
+
+    private static int indexOfWord(String text, String word) {
+        String lower = text.toLowerCase(Locale.US);
+        int index = lower.lastIndexOf(" " + word + " ");
+        return index >= 0 ? index + 1 : -1;
+    }
+}
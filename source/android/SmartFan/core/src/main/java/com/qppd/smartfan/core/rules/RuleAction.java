@@ -0,0 +1,31 @@
+package com.qppd.smartfan.core.rules;
+
+import com.qppd.smartfan.core.data.ControlState;
+
+/**
+ * What a rule does when it triggers: change the device's control node or raise an alert.
+ * Immutable.
+ */
+public final class RuleAction {
+    /** Changes to apply to devices/{id}/control, or null for an alert. */
+    public final ControlState control;
+    /** Alert text, or null for a control change. */
+    public final String alert;
+
+    private RuleAction(ControlState control, String alert) {
+        this.control = control;
+        this.alert = alert;
+    }
+
+    public static RuleAction control(ControlState changes) {
+        return new RuleAction(changes, null);
+    }
+
+    public static RuleAction alert(String message) {
+        return new RuleAction(null, message);
+    }
+
+    public boolean isAlert() {
+        return alert != null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.qppd.smartfan.core.rules;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Runs a {@link RuleSet} over the readings of many devices, keeping each device's
+ * {@link RuleSet.State}. Feed it from {@link SmartFanDataSource#observeCurrent} in the app,
+ * or from a gateway that sees every fan's telemetry.
+ *
+ * Readings of different devices are evaluated concurrently, readings of one device one at
+ * a time. The listener is called on the evaluating thread while that device is locked.
+ */
+public class RuleEngine {
+    private final RuleSet.Listener listener;
+    private final ConcurrentMap<String, RuleSet.State> states = new ConcurrentHashMap<>();
+    private volatile RuleSet ruleSet;
+
+    public RuleEngine(RuleSet ruleSet, RuleSet.Listener listener) {
+        this.ruleSet = ruleSet;
+        this.listener = listener;
+    }
+
+    /**
+     * A listener that writes control actions to the device's control node and passes
+     * alerts on to {@code alerts}, which may be null.
+     */
+    public static RuleSet.Listener writingControls(final SmartFanDataSource dataSource,
+                                                   final RuleSet.Listener alerts) {
+        return new RuleSet.Listener() {
+            @Override
+            public void onTriggered(String deviceId, Rule rule, CurrentReading reading) {
+                if (rule.action.isAlert()) {
+                    if (alerts != null) alerts.onTriggered(deviceId, rule, reading);
+                    return;
+                }
+                dataSource.updateControl(deviceId, rule.action.control, new DataCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        // The rule triggers again once its conditions clear and hold anew
+                        System.err.println("Rule " + rule.name + " on " + deviceId + ": " + e);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Evaluates a reading of {@code deviceId} taken at {@code nowMillis}. Returns the number of
+     * rules that triggered.
+     */
+    public int evaluate(String deviceId, CurrentReading reading, long nowMillis) {
+        RuleSet current = ruleSet;
+        RuleSet.State state;
+        while (true) {
+            state = states.get(deviceId);
+            if (state != null && state.belongsTo(current)) break;
+            // First reading of the device, or the rules were replaced since its last one
+            RuleSet.State created = current.newState();
+            if (state == null ? states.putIfAbsent(deviceId, created) == null
+                : states.replace(deviceId, state, created)) {
+                state = created;
+                break;
+            }
+        }
+        synchronized (state) {
+            return state.evaluate(deviceId, reading, nowMillis, listener);
+        }
+    }
+
+    /**
+     * Replaces the rules. Every device starts over: sustain times, triggered rules and
+     * baselines are reset on its next reading.
+     */
+    public void setRuleSet(RuleSet ruleSet) {
+        this.ruleSet = ruleSet;
+    }
+
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    /** Drops the state of a device that is no longer watched. */
+    public void forget(String deviceId) {
+        states.remove(deviceId);
+    }
+
+    public int getDeviceCount() {
+        return states.size();
+    }
+}
@@ -0,0 +1,317 @@
+package com.qppd.smartfan.core.rules;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A list of {@link Rule}s compiled for evaluation on every devices/{id}/current reading.
+ * Immutable; the per-device state lives in a {@link State}.
+ *
+ * Compiling numbers every distinct condition and sorts each metric's constant thresholds.
+ * The thresholds split the metric's range into regions (below the first, equal to it,
+ * between the first and second, ...), and for every region the set of conditions that hold
+ * there is precomputed as a bit mask. Evaluating a reading is then one binary search and one
+ * mask OR per metric, however many conditions test it, and one word comparison per
+ * condition of each rule.
+ * Shared conditions are evaluated once for all rules that use them.
+ *
+ * Baseline conditions compare with a per-device exponential moving average of the metric
+ * that is updated incrementally, and sustained conditions keep only the time they became
+ * true, so no reading history is stored.
+ */
+public final class RuleSet {
+    /** Default time constant of the baseline moving average. */
+    public static final long DEFAULT_BASELINE_WINDOW_MILLIS = 3600000;
+
+    private static final long NOT_SATISFIED = Long.MIN_VALUE;
+
+    private final List<Rule> rules;
+    private final int words;
+    private final int conditionCount;
+    private final MetricIndex[] metricIndexes;
+    private final Metric[] baselineMetrics;
+    private final int[] baselineSlot;
+    private final Condition.Operator[] baselineOperator;
+    private final double[] baselineFactor;
+    private final int[] baselineBit;
+    private final long baselineWindowMillis;
+    // Per rule, flattened: the words of the rule's required bits that are not zero are
+    // ruleMasks[ruleStart[rule] ... ruleStart[rule + 1]), at ruleWords[...]
+    private final int[] ruleStart;
+    private final int[] ruleWords;
+    private final long[] ruleMasks;
+    private final long[] sustainMillis;
+
+    private RuleSet(List<Rule> rules, long baselineWindowMillis) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.baselineWindowMillis = baselineWindowMillis;
+
+        Map<Condition, Integer> bits = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            for (Condition condition : rule.conditions) {
+                if (!bits.containsKey(condition)) bits.put(condition, bits.size());
+            }
+        }
+        conditionCount = bits.size();
+        words = Math.max(1, (conditionCount + 63) / 64);
+
+        List<MetricIndex> indexes = new ArrayList<>();
+        for (Metric metric : Metric.values()) {
+            MetricIndex index = MetricIndex.build(metric, bits, words);
+            if (index != null) indexes.add(index);
+        }
+        metricIndexes = indexes.toArray(new MetricIndex[0]);
+
+        List<Condition> baselines = new ArrayList<>();
+        for (Condition condition : bits.keySet()) {
+            if (condition.relativeToBaseline) baselines.add(condition);
+        }
+        List<Metric> slots = new ArrayList<>();
+        baselineSlot = new int[baselines.size()];
+        baselineOperator = new Condition.Operator[baselines.size()];
+        baselineFactor = new double[baselines.size()];
+        baselineBit = new int[baselines.size()];
+        for (int i = 0; i < baselines.size(); i++) {
+            Condition condition = baselines.get(i);
+            if (!slots.contains(condition.metric)) slots.add(condition.metric);
+            baselineSlot[i] = slots.indexOf(condition.metric);
+            baselineOperator[i] = condition.operator;
+            baselineFactor[i] = condition.value;
+            baselineBit[i] = bits.get(condition);
+        }
+        baselineMetrics = slots.toArray(new Metric[0]);
+
+        ruleStart = new int[rules.size() + 1];
+        List<long[]> masks = new ArrayList<>();
+        int nonZero = 0;
+        for (Rule rule : rules) {
+            long[] mask = new long[words];
+            for (Condition condition : rule.conditions) {
+                int bit = bits.get(condition);
+                mask[bit >>> 6] |= 1L << bit;
+            }
+            for (long word : mask) {
+                if (word != 0) nonZero++;
+            }
+            masks.add(mask);
+        }
+        ruleWords = new int[nonZero];
+        ruleMasks = new long[nonZero];
+        sustainMillis = new long[rules.size()];
+        int at = 0;
+        for (int r = 0; r < rules.size(); r++) {
+            ruleStart[r] = at;
+            long[] mask = masks.get(r);
+            for (int w = 0; w < words; w++) {
+                if (mask[w] == 0) continue;
+                ruleWords[at] = w;
+                ruleMasks[at++] = mask[w];
+            }
+            sustainMillis[r] = rules.get(r).sustainMillis;
+        }
+        ruleStart[rules.size()] = at;
+    }
+
+    public static RuleSet compile(List<Rule> rules) {
+        return compile(rules, DEFAULT_BASELINE_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param baselineWindowMillis time constant of the baseline average: a reading's weight
+     *                             falls to 1/e after this long
+     */
+    public static RuleSet compile(List<Rule> rules, long baselineWindowMillis) {
+        if (baselineWindowMillis <= 0) {
+            throw new IllegalArgumentException("baselineWindowMillis must be positive");
+        }
+        return new RuleSet(rules, baselineWindowMillis);
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /** Number of distinct conditions, each evaluated once per reading. */
+    public int getConditionCount() {
+        return conditionCount;
+    }
+
+    public State newState() {
+        return new State();
+    }
+
+    /**
+     * Receives rules as they trigger.
+     */
+    public interface Listener {
+        void onTriggered(String deviceId, Rule rule, CurrentReading reading);
+    }
+
+    /**
+     * Evaluation state of one device: when each rule's conditions became true, whether it
+     * has triggered since, and the baselines. Not thread-safe.
+     */
+    public final class State {
+        private final long[] satisfied = new long[words];
+        private final long[] trueSince = new long[rules.size()];
+        private final boolean[] triggered = new boolean[rules.size()];
+        private final double[] baselines = new double[baselineMetrics.length];
+        private final long[] baselineUpdated = new long[baselineMetrics.length];
+
+        private State() {
+            Arrays.fill(trueSince, NOT_SATISFIED);
+            Arrays.fill(baselines, Double.NaN);
+        }
+
+        /**
+         * Evaluates a reading taken at {@code nowMillis} and calls {@code listener} for every
+         * rule that triggers. Returns the number of rules that triggered.
+         */
+        public int evaluate(String deviceId, CurrentReading reading, long nowMillis, Listener listener) {
+            long[] bits = satisfied;
+            Arrays.fill(bits, 0);
+            for (MetricIndex index : metricIndexes) {
+                index.collect(index.metric.of(reading), bits);
+            }
+            for (int i = 0; i < baselineBit.length; i++) {
+                double baseline = baselines[baselineSlot[i]];
+                if (!Double.isNaN(baseline)) {
+                    double value = baselineMetrics[baselineSlot[i]].of(reading);
+                    if (baselineOperator[i].test(value, baseline * baselineFactor[i])) {
+                        bits[baselineBit[i] >>> 6] |= 1L << baselineBit[i];
+                    }
+                }
+            }
+            // Baselines take the reading only after it was compared, so a spike is measured
+            // against what came before it
+            for (int slot = 0; slot < baselines.length; slot++) {
+                updateBaseline(slot, baselineMetrics[slot].of(reading), nowMillis);
+            }
+
+            int count = 0;
+            for (int r = 0; r < trueSince.length; r++) {
+                if (!matches(r, bits)) {
+                    trueSince[r] = NOT_SATISFIED;
+                    triggered[r] = false;
+                    continue;
+                }
+                if (trueSince[r] == NOT_SATISFIED) trueSince[r] = nowMillis;
+                if (!triggered[r] && nowMillis - trueSince[r] >= sustainMillis[r]) {
+                    triggered[r] = true;
+                    count++;
+                    if (listener != null) listener.onTriggered(deviceId, rules.get(r), reading);
+                }
+            }
+            return count;
+        }
+
+        /** The baseline of {@code metric} on this device, NaN before the first reading. */
+        public double getBaseline(Metric metric) {
+            for (int slot = 0; slot < baselineMetrics.length; slot++) {
+                if (baselineMetrics[slot] == metric) return baselines[slot];
+            }
+            return Double.NaN;
+        }
+
+        boolean belongsTo(RuleSet ruleSet) {
+            return RuleSet.this == ruleSet;
+        }
+
+        private boolean matches(int rule, long[] bits) {
+            for (int i = ruleStart[rule], end = ruleStart[rule + 1]; i < end; i++) {
+                long mask = ruleMasks[i];
+                if ((bits[ruleWords[i]] & mask) != mask) return false;
+            }
+            return true;
+        }
+
+        private void updateBaseline(int slot, double value, long nowMillis) {
+            if (Double.isNaN(value)) return;
+            if (Double.isNaN(baselines[slot])) {
+                baselines[slot] = value;
+            } else {
+                long elapsed = Math.max(0, nowMillis - baselineUpdated[slot]);
+                double alpha = 1 - Math.exp(-(double) elapsed / baselineWindowMillis);
+                baselines[slot] += alpha * (value - baselines[slot]);
+            }
+            baselineUpdated[slot] = nowMillis;
+        }
+    }
+
+    /**
+     * The constant thresholds of one metric and the conditions that hold in each region
+     * they delimit. Region 2i + 1 is the value equal to threshold i, region 2i lies between
+     * thresholds i - 1 and i.
+     */
+    private static final class MetricIndex {
+        final Metric metric;
+        final double[] thresholds;
+        final long[] regionMasks;
+        final int words;
+
+        private MetricIndex(Metric metric, double[] thresholds, long[] regionMasks, int words) {
+            this.metric = metric;
+            this.thresholds = thresholds;
+            this.regionMasks = regionMasks;
+            this.words = words;
+        }
+
+        static MetricIndex build(Metric metric, Map<Condition, Integer> bits, int words) {
+            TreeSet<Double> unique = new TreeSet<>();
+            for (Condition condition : bits.keySet()) {
+                if (condition.metric == metric && !condition.relativeToBaseline) unique.add(condition.value);
+            }
+            if (unique.isEmpty()) return null;
+            double[] thresholds = new double[unique.size()];
+            int t = 0;
+            for (double threshold : unique) {
+                thresholds[t++] = threshold;
+            }
+
+            int regions = 2 * thresholds.length + 1;
+            long[] regionMasks = new long[regions * words];
+            for (Map.Entry<Condition, Integer> entry : bits.entrySet()) {
+                Condition condition = entry.getKey();
+                if (condition.metric != metric || condition.relativeToBaseline) continue;
+                int at = 2 * Arrays.binarySearch(thresholds, condition.value) + 1;
+                int bit = entry.getValue();
+                for (int region = 0; region < regions; region++) {
+                    if (holds(condition.operator, region, at)) {
+                        regionMasks[region * words + (bit >>> 6)] |= 1L << bit;
+                    }
+                }
+            }
+            return new MetricIndex(metric, thresholds, regionMasks, words);
+        }
+
+        private static boolean holds(Condition.Operator operator, int region, int thresholdRegion) {
+            switch (operator) {
+                case GREATER:
+                    return region > thresholdRegion;
+                case GREATER_OR_EQUAL:
+                    return region >= thresholdRegion;
+                case LESS:
+                    return region < thresholdRegion;
+                default:
+                    return region <= thresholdRegion;
+            }
+        }
+
+        void collect(double value, long[] bits) {
+            if (Double.isNaN(value)) return;
+            // binarySearch orders -0.0 before 0.0, comparisons treat them as equal
+            int found = Arrays.binarySearch(thresholds, value + 0.0);
+            int region = found >= 0 ? 2 * found + 1 : 2 * (-found - 1);
+            int offset = region * words;
+            for (int w = 0; w < words; w++) {
+                bits[w] |= regionMasks[offset + w];
+            }
+        }
+    }
+}
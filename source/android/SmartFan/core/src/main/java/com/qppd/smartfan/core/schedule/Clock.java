@@ -0,0 +1,15 @@
+package com.qppd.smartfan.core.schedule;
+
+/**
+ * Source of the current time, so scheduling can be tested without waiting.
+ */
+public interface Clock {
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    long currentTimeMillis();
+}
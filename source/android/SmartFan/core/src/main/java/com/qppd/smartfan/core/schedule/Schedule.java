@@ -0,0 +1,186 @@
+package com.qppd.smartfan.core.schedule;
+
+import com.qppd.smartfan.core.data.ControlState;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * When to apply a control change to one device: at a wall-clock time on chosen weekdays,
+ * or once at an instant. Immutable.
+ *
+ * Weekly times follow the device's time zone across DST changes. A time that a change
+ * skips (02:30 when clocks jump from 02:00 to 03:00) fires as if the clock had not jumped,
+ * at 03:30. A time that happens twice when clocks go back fires once, at the first.
+ */
+public abstract class Schedule {
+    public static final int SUNDAY = 1 << (Calendar.SUNDAY - 1);
+    public static final int MONDAY = 1 << (Calendar.MONDAY - 1);
+    public static final int TUESDAY = 1 << (Calendar.TUESDAY - 1);
+    public static final int WEDNESDAY = 1 << (Calendar.WEDNESDAY - 1);
+    public static final int THURSDAY = 1 << (Calendar.THURSDAY - 1);
+    public static final int FRIDAY = 1 << (Calendar.FRIDAY - 1);
+    public static final int SATURDAY = 1 << (Calendar.SATURDAY - 1);
+    public static final int WEEKDAYS = MONDAY | TUESDAY | WEDNESDAY | THURSDAY | FRIDAY;
+    public static final int WEEKEND = SATURDAY | SUNDAY;
+    public static final int EVERY_DAY = WEEKDAYS | WEEKEND;
+
+    /** What to do with occurrences that passed while the engine was not running. */
+    public enum Misfire {
+        /** Fire the most recent missed occurrence once. Right for profiles, which describe a state. */
+        FIRE_LATEST,
+        /** Drop missed occurrences. */
+        SKIP
+    }
+
+    public final String deviceId;
+    public final ControlState changes;
+    public final Misfire misfire;
+
+    Schedule(String deviceId, ControlState changes, Misfire misfire) {
+        this.deviceId = deviceId;
+        this.changes = changes;
+        this.misfire = misfire;
+    }
+
+    /**
+     * Fires at {@code hour:minute} local time on the days in {@code days} (a mask of
+     * {@link #MONDAY} etc.).
+     */
+    public static Schedule weekly(String deviceId, int days, int hour, int minute, TimeZone zone,
+                                  ControlState changes) {
+        return new Weekly(deviceId, changes, Misfire.FIRE_LATEST, days, hour, minute, zone);
+    }
+
+    /**
+     * Fires once at {@code atMillis}, e.g. the end of a boost or a sleep timer.
+     */
+    public static Schedule once(String deviceId, long atMillis, ControlState changes) {
+        return new Once(deviceId, changes, Misfire.FIRE_LATEST, atMillis);
+    }
+
+    public abstract Schedule withMisfire(Misfire misfire);
+
+    /**
+     * The first occurrence strictly after {@code afterMillis}, or {@link Long#MAX_VALUE} if
+     * there is none.
+     */
+    public abstract long nextAfter(long afterMillis);
+
+    /**
+     * The last occurrence at or before {@code atMillis}, or {@link Long#MIN_VALUE} if there is
+     * none.
+     */
+    public abstract long latestAtOrBefore(long atMillis);
+
+    private static final class Once extends Schedule {
+        private final long atMillis;
+
+        Once(String deviceId, ControlState changes, Misfire misfire, long atMillis) {
+            super(deviceId, changes, misfire);
+            this.atMillis = atMillis;
+        }
+
+        @Override
+        public Schedule withMisfire(Misfire misfire) {
+            return new Once(deviceId, changes, misfire, atMillis);
+        }
+
+        @Override
+        public long nextAfter(long afterMillis) {
+            return atMillis > afterMillis ? atMillis : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long latestAtOrBefore(long atOrBeforeMillis) {
+            return atMillis <= atOrBeforeMillis ? atMillis : Long.MIN_VALUE;
+        }
+    }
+
+    private static final class Weekly extends Schedule {
+        private static final long SIX_HOURS = 6 * 3600000L;
+
+        private final int days;
+        private final int hour;
+        private final int minute;
+        private final TimeZone zone;
+
+        Weekly(String deviceId, ControlState changes, Misfire misfire, int days, int hour, int minute, TimeZone zone) {
+            super(deviceId, changes, misfire);
+            if ((days & EVERY_DAY) == 0) {
+                throw new IllegalArgumentException("A weekly schedule needs at least one day");
+            }
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+                throw new IllegalArgumentException("Invalid time " + hour + ":" + minute);
+            }
+            this.days = days;
+            this.hour = hour;
+            this.minute = minute;
+            this.zone = zone;
+        }
+
+        @Override
+        public Schedule withMisfire(Misfire misfire) {
+            return new Weekly(deviceId, changes, misfire, days, hour, minute, zone);
+        }
+
+        @Override
+        public long nextAfter(long afterMillis) {
+            Calendar day = localDay(afterMillis);
+            // Eight days, since today's time may already have passed
+            for (int i = 0; i <= 7; i++) {
+                if (isScheduledDay(day)) {
+                    long occurrence = resolve(day);
+                    if (occurrence > afterMillis) return occurrence;
+                }
+                day.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            throw new IllegalStateException("No occurrence within a week");
+        }
+
+        @Override
+        public long latestAtOrBefore(long atMillis) {
+            Calendar day = localDay(atMillis);
+            for (int i = 0; i <= 7; i++) {
+                if (isScheduledDay(day)) {
+                    long occurrence = resolve(day);
+                    if (occurrence <= atMillis) return occurrence;
+                }
+                day.add(Calendar.DAY_OF_MONTH, -1);
+            }
+            throw new IllegalStateException("No occurrence within a week");
+        }
+
+        private Calendar localDay(long millis) {
+            Calendar calendar = new GregorianCalendar(zone);
+            calendar.setTimeInMillis(millis);
+            calendar.set(Calendar.HOUR_OF_DAY, 12);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            return calendar;
+        }
+
+        private boolean isScheduledDay(Calendar day) {
+            return (days & (1 << (day.get(Calendar.DAY_OF_WEEK) - 1))) != 0;
+        }
+
+        // The instant of hour:minute on the given local day
+        private long resolve(Calendar day) {
+            Calendar calendar = new GregorianCalendar(zone);
+            calendar.clear();
+            calendar.set(day.get(Calendar.YEAR), day.get(Calendar.MONTH), day.get(Calendar.DAY_OF_MONTH),
+                hour, minute);
+            // Lenient resolution moves a skipped time forward by the size of the gap
+            long instant = calendar.getTimeInMillis();
+            // A repeated time resolves to its second occurrence; prefer the first
+            int offsetBefore = zone.getOffset(instant - SIX_HOURS);
+            int offset = zone.getOffset(instant);
+            if (offsetBefore > offset) {
+                long earlier = instant - (offsetBefore - offset);
+                if (earlier + zone.getOffset(earlier) == instant + offset) return earlier;
+            }
+            return instant;
+        }
+    }
+}
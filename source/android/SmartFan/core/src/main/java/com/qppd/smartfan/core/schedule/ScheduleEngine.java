@@ -0,0 +1,333 @@
+package com.qppd.smartfan.core.schedule;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Fires {@link Schedule}s by writing their changes to the devices' control nodes, the same
+ * writes MainActivity makes.
+ *
+ * Schedules wait in a priority queue ordered by their next occurrence, so checking whether
+ * anything is due costs one peek no matter how many schedules there are. Firing costs
+ * O(log n) per schedule. Everything that fires in one {@link #runDue()} goes out as a
+ * single multi-path {@link SmartFanDataSource#updateControls} write.
+ *
+ * The engine is passive: something has to call {@link #runDue()} at
+ * {@link #nextFireMillis()}, a {@link ScheduleRunner} in real time or a test with a
+ * {@link VirtualClock}. Occurrences that passed between the watermark, the time of the last
+ * run, and now are handled by each schedule's {@link Schedule.Misfire} policy, so an
+ * engine started with the watermark of its previous run catches up after downtime.
+ *
+ * One write is in flight at a time; changes that fire meanwhile are merged and follow it.
+ * A failed write is merged under the newer changes and retried after
+ * {@link #RETRY_DELAY_MILLIS}, so a retry never undoes a later change.
+ */
+public class ScheduleEngine {
+    /** Occurrences later than this count as missed. */
+    public static final long MISFIRE_GRACE_MILLIS = 60000;
+    /** How soon a failed write is retried. */
+    public static final long RETRY_DELAY_MILLIS = 5000;
+
+    private static final Comparator<Entry> BY_FIRE_TIME = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return a.fireAtMillis != b.fireAtMillis ? Long.compare(a.fireAtMillis, b.fireAtMillis)
+                : Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private final SmartFanDataSource dataSource;
+    private final Clock clock;
+    // Guarded by this
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(64, BY_FIRE_TIME);
+    private final Map<String, ControlState> pending = new LinkedHashMap<>();
+    private boolean writing;
+    private long watermarkMillis;
+    private long sequence;
+    private int active;
+    private long fired;
+    private long writeErrors;
+    private Runnable changeListener;
+
+    /**
+     * Creates an engine that fires occurrences from now on.
+     */
+    public ScheduleEngine(SmartFanDataSource dataSource, Clock clock) {
+        this(dataSource, clock, clock.currentTimeMillis());
+    }
+
+    /**
+     * Creates an engine that treats everything after {@code watermarkMillis} as not yet fired,
+     * typically the {@link #getWatermarkMillis()} of the previous run.
+     */
+    public ScheduleEngine(SmartFanDataSource dataSource, Clock clock, long watermarkMillis) {
+        this.dataSource = dataSource;
+        this.clock = clock;
+        this.watermarkMillis = watermarkMillis;
+    }
+
+    /**
+     * A scheduled entry, for cancelling it.
+     */
+    public final class Handle {
+        private final Entry entry;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Schedule getSchedule() {
+            return entry.schedule;
+        }
+
+        /**
+         * Stops future occurrences. Cheap: the entry is dropped when it reaches the head of
+         * the queue.
+         */
+        public void cancel() {
+            synchronized (ScheduleEngine.this) {
+                if (entry.cancelled) return;
+                entry.cancelled = true;
+                if (entry.queued) active--;
+            }
+            notifyChanged();
+        }
+
+        public boolean isActive() {
+            synchronized (ScheduleEngine.this) {
+                return entry.queued && !entry.cancelled;
+            }
+        }
+    }
+
+    /**
+     * Adds a schedule. Its occurrences from the watermark on fire, so one added for "now"
+     * fires with the next run.
+     */
+    public Handle add(Schedule schedule) {
+        Handle handle;
+        synchronized (this) {
+            Entry entry = new Entry(schedule);
+            handle = new Handle(entry);
+            enqueue(entry, schedule.nextAfter(watermarkMillis - 1));
+        }
+        notifyChanged();
+        return handle;
+    }
+
+    /**
+     * Sets {@code fanSpeed} in manual mode with the next run and applies {@code restore} after
+     * {@code durationMillis}. Returns the handle of the restore; cancelling it keeps the boost.
+     */
+    public Handle boost(String deviceId, int fanSpeed, long durationMillis, ControlState restore) {
+        long now = clock.currentTimeMillis();
+        add(Schedule.once(deviceId, now, ControlState.manualSpeed(fanSpeed)));
+        return add(Schedule.once(deviceId, now + durationMillis, restore));
+    }
+
+    /**
+     * Turns the fan off after {@code delayMillis}.
+     */
+    public Handle sleepTimer(String deviceId, long delayMillis) {
+        return add(Schedule.once(deviceId, clock.currentTimeMillis() + delayMillis, ControlState.manualSpeed(0)));
+    }
+
+    /**
+     * When {@link #runDue()} next has something to do, or {@link Long#MAX_VALUE} if nothing is
+     * scheduled.
+     */
+    public synchronized long nextFireMillis() {
+        Entry head = peekActive();
+        long next = head != null ? head.fireAtMillis : Long.MAX_VALUE;
+        return pending.isEmpty() || writing ? next : Math.min(next, watermarkMillis + RETRY_DELAY_MILLIS);
+    }
+
+    /**
+     * Fires everything due and writes the result. Returns the changes that fired per device,
+     * empty if nothing was due.
+     */
+    public Map<String, ControlState> runDue() {
+        long now = clock.currentTimeMillis();
+        Map<String, ControlState> changes = new LinkedHashMap<>();
+        Map<String, ControlState> writes;
+        synchronized (this) {
+            if (now < watermarkMillis) {
+                // The clock went back; firing again what already fired would be wrong
+                now = watermarkMillis;
+            }
+            List<Firing> firings = new ArrayList<>();
+            Entry head;
+            while ((head = peekActive()) != null && head.fireAtMillis <= now) {
+                queue.poll();
+                head.queued = false;
+                active--;
+                Schedule schedule = head.schedule;
+                boolean missed = head.fireAtMillis < now - MISFIRE_GRACE_MILLIS;
+                if (!missed) {
+                    firings.add(new Firing(head.fireAtMillis, head.sequence, schedule));
+                } else if (schedule.misfire == Schedule.Misfire.FIRE_LATEST) {
+                    firings.add(new Firing(schedule.latestAtOrBefore(now), head.sequence, schedule));
+                }
+                enqueue(head, schedule.nextAfter(now));
+            }
+            // Oldest first, so that for each device the latest occurrence wins
+            Collections.sort(firings);
+            for (Firing firing : firings) {
+                mergeInto(changes, firing.schedule.deviceId, firing.schedule.changes);
+            }
+            for (Map.Entry<String, ControlState> change : changes.entrySet()) {
+                mergeInto(pending, change.getKey(), change.getValue());
+            }
+            fired += firings.size();
+            watermarkMillis = now;
+            writes = takePending();
+        }
+        if (writes != null) {
+            write(writes);
+        }
+        return changes;
+    }
+
+    /**
+     * Time up to which occurrences have been handled. Persist it to catch up after a restart.
+     */
+    public synchronized long getWatermarkMillis() {
+        return watermarkMillis;
+    }
+
+    /** Schedules that have occurrences left. */
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    public synchronized long getFiredCount() {
+        return fired;
+    }
+
+    public synchronized long getWriteErrors() {
+        return writeErrors;
+    }
+
+    /**
+     * Called after every add or cancel, e.g. to wake up a runner waiting for the old
+     * {@link #nextFireMillis()}.
+     */
+    public synchronized void setChangeListener(Runnable listener) {
+        changeListener = listener;
+    }
+
+    // Called with the lock held
+    private void enqueue(Entry entry, long fireAtMillis) {
+        if (fireAtMillis == Long.MAX_VALUE || entry.cancelled) return;
+        entry.fireAtMillis = fireAtMillis;
+        entry.sequence = sequence++;
+        entry.queued = true;
+        active++;
+        queue.add(entry);
+    }
+
+    // Called with the lock held. Drops cancelled entries from the head.
+    private Entry peekActive() {
+        Entry head = queue.peek();
+        while (head != null && head.cancelled) {
+            queue.poll();
+            head.queued = false;
+            head = queue.peek();
+        }
+        return head;
+    }
+
+    // Called with the lock held. Returns null if a write is in flight or nothing is pending.
+    private Map<String, ControlState> takePending() {
+        if (writing || pending.isEmpty()) return null;
+        Map<String, ControlState> writes = new LinkedHashMap<>(pending);
+        pending.clear();
+        writing = true;
+        return writes;
+    }
+
+    private void write(Map<String, ControlState> writes) {
+        dataSource.updateControls(writes, new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                Map<String, ControlState> next;
+                synchronized (ScheduleEngine.this) {
+                    writing = false;
+                    next = takePending();
+                }
+                if (next != null) {
+                    write(next);
+                }
+            }
+
+            @Override
+            public void onError(Exception error) {
+                synchronized (ScheduleEngine.this) {
+                    writing = false;
+                    writeErrors++;
+                    // Changes that fired meanwhile are newer and win
+                    Map<String, ControlState> retry = new LinkedHashMap<>(writes);
+                    for (Map.Entry<String, ControlState> newer : pending.entrySet()) {
+                        mergeInto(retry, newer.getKey(), newer.getValue());
+                    }
+                    pending.clear();
+                    pending.putAll(retry);
+                }
+                notifyChanged();
+            }
+        });
+    }
+
+    private static void mergeInto(Map<String, ControlState> changes, String deviceId, ControlState newer) {
+        ControlState older = changes.get(deviceId);
+        changes.put(deviceId, older != null ? older.merge(newer) : newer);
+    }
+
+    private void notifyChanged() {
+        Runnable listener;
+        synchronized (this) {
+            listener = changeListener;
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private static final class Entry {
+        final Schedule schedule;
+        long fireAtMillis;
+        long sequence;
+        boolean queued;
+        boolean cancelled;
+
+        Entry(Schedule schedule) {
+            this.schedule = schedule;
+        }
+    }
+
+    private static final class Firing implements Comparable<Firing> {
+        final long atMillis;
+        final long sequence;
+        final Schedule schedule;
+
+        Firing(long atMillis, long sequence, Schedule schedule) {
+            this.atMillis = atMillis;
+            this.sequence = sequence;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public int compareTo(Firing other) {
+            return atMillis != other.atMillis ? Long.compare(atMillis, other.atMillis)
+                : Long.compare(sequence, other.sequence);
+        }
+    }
+}
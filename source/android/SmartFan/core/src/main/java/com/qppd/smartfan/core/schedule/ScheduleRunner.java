@@ -0,0 +1,72 @@
+package com.qppd.smartfan.core.schedule;
+
+/**
+ * Drives a {@link ScheduleEngine} in real time on a daemon thread that sleeps until the
+ * next occurrence.
+ *
+ * The sleep is capped at {@link #MAX_SLEEP_MILLIS} so that a changed system clock or time
+ * zone is noticed within a minute; the engine itself never looks at schedules that are not
+ * due.
+ */
+public class ScheduleRunner implements AutoCloseable {
+    public static final long MAX_SLEEP_MILLIS = 60000;
+
+    private final ScheduleEngine engine;
+    private final Clock clock;
+    private final Object lock = new Object();
+    private final Thread thread;
+    // Guarded by lock
+    private boolean changed;
+    private boolean closed;
+
+    public ScheduleRunner(ScheduleEngine engine, Clock clock) {
+        this.engine = engine;
+        this.clock = clock;
+        this.thread = new Thread(this::run, "ScheduleRunner");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        engine.setChangeListener(this::wakeUp);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        engine.setChangeListener(null);
+    }
+
+    private void wakeUp() {
+        synchronized (lock) {
+            changed = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (lock) {
+                long sleep = Math.min(engine.nextFireMillis() - clock.currentTimeMillis(), MAX_SLEEP_MILLIS);
+                if (!closed && !changed && sleep > 0) {
+                    try {
+                        lock.wait(sleep);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) return;
+                changed = false;
+            }
+            try {
+                engine.runDue();
+            } catch (RuntimeException e) {
+                // An escaping exception would end the thread and every schedule with it
+                System.err.println("ScheduleRunner: " + e);
+            }
+        }
+    }
+}
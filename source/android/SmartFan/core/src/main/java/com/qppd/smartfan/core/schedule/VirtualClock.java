@@ -0,0 +1,25 @@
+package com.qppd.smartfan.core.schedule;
+
+/**
+ * A {@link Clock} that only moves when told to.
+ */
+public final class VirtualClock implements Clock {
+    private volatile long nowMillis;
+
+    public VirtualClock(long startMillis) {
+        this.nowMillis = startMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return nowMillis;
+    }
+
+    public void set(long millis) {
+        nowMillis = millis;
+    }
+
+    public void advance(long millis) {
+        nowMillis += millis;
+    }
+}
@@ -0,0 +1,25 @@
+package com.qppd.smartfan.core.tsdb;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where a {@link TimeSeriesStore} keeps its chunks: named, immutable byte arrays. Names use
+ * letters, digits and {@code - _ . %} only.
+ */
+public interface ChunkStorage {
+
+    /** Names of every stored chunk, in no particular order. */
+    List<String> list() throws IOException;
+
+    byte[] read(String name) throws IOException;
+
+    /**
+     * Stores a chunk. A chunk is either written completely or not at all, even if the
+     * process dies while writing.
+     */
+    void write(String name, byte[] chunk) throws IOException;
+
+    /** Removes a chunk; removing one that does not exist does nothing. */
+    void delete(String name) throws IOException;
+}
@@ -0,0 +1,95 @@
+package com.qppd.smartfan.core.tsdb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One file per chunk in a directory, such as a folder under the app's files directory.
+ * Chunks are written to a temporary file, synced and renamed into place, so a chunk that
+ * is listed is always complete.
+ */
+public final class FileChunkStorage implements ChunkStorage {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    public FileChunkStorage(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        // Left behind by a write that did not finish
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        String[] names = directory.list();
+        if (names == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        List<String> chunks = new ArrayList<>(names.length);
+        for (String name : names) {
+            if (!name.endsWith(TEMP_SUFFIX)) {
+                chunks.add(name);
+            }
+        }
+        return chunks;
+    }
+
+    @Override
+    public byte[] read(String name) throws IOException {
+        File file = new File(directory, name);
+        byte[] chunk = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < chunk.length) {
+                int n = in.read(chunk, read, chunk.length - read);
+                if (n < 0) {
+                    throw new IOException("Chunk " + name + " changed while reading");
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return chunk;
+    }
+
+    @Override
+    public void write(String name, byte[] chunk) throws IOException {
+        File temp = new File(directory, name + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(chunk);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, name))) {
+            temp.delete();
+            throw new IOException("Cannot store chunk " + name);
+        }
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        File file = new File(directory, name);
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Cannot delete chunk " + name);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.qppd.smartfan.core.tsdb;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chunks held in memory, for tests and benchmarks.
+ */
+public final class MemoryChunkStorage implements ChunkStorage {
+    private final Map<String, byte[]> chunks = new ConcurrentHashMap<>();
+
+    @Override
+    public List<String> list() {
+        return new ArrayList<>(chunks.keySet());
+    }
+
+    @Override
+    public byte[] read(String name) throws FileNotFoundException {
+        byte[] chunk = chunks.get(name);
+        if (chunk == null) {
+            throw new FileNotFoundException(name);
+        }
+        return chunk.clone();
+    }
+
+    @Override
+    public void write(String name, byte[] chunk) {
+        chunks.put(name, chunk.clone());
+    }
+
+    @Override
+    public void delete(String name) {
+        chunks.remove(name);
+    }
+
+    /** Total size of the stored chunks. */
+    public long sizeInBytes() {
+        long size = 0;
+        for (byte[] chunk : chunks.values()) {
+            size += chunk.length;
+        }
+        return size;
+    }
+}
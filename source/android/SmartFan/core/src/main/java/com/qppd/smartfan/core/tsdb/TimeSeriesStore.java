@@ -0,0 +1,478 @@
+package com.qppd.smartfan.core.tsdb;
+
+import com.qppd.smartfan.core.history.LogBlockCodec;
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Device history on the phone, kept as immutable compressed chunks with one chunk per
+ * device per UTC day. Chunks use the {@link LogBlockCodec} format: delta-of-delta
+ * timestamps and scaled integer or XOR columns, a few bytes per row.
+ *
+ * Appended rows wait in memory until their day ends, {@link #flush()} is called or too
+ * many are waiting, and are then written out as a chunk per day. Rows that arrive for a
+ * day that already has a chunk, such as a backfill, go into another chunk for that day;
+ * {@link #compact()} merges them back into one. Where the chunks of a day disagree the
+ * newer one wins, and waiting rows win over both. A scan reads only the chunks of the
+ * days it overlaps.
+ *
+ * Rows that are waiting are lost if the process dies, so callers flush when they stop.
+ * Safe to use from several threads: scans run alongside each other, and compaction only
+ * blocks them while it swaps the merged chunk in.
+ */
+public final class TimeSeriesStore {
+    /** Rows of one device that may wait in memory before they are written regardless of day. */
+    static final int MAX_PENDING_ROWS = 4096;
+
+    private static final long DAY_SECONDS = LogBlocks.DAY_SECONDS;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final Comparator<LogEntry> BY_TIMESTAMP = new Comparator<LogEntry>() {
+        @Override
+        public int compare(LogEntry a, LogEntry b) {
+            return a.timestamp < b.timestamp ? -1 : a.timestamp > b.timestamp ? 1 : 0;
+        }
+    };
+
+    private final ChunkStorage storage;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Held by whatever replaces or removes chunks, so compactions never overlap
+    private final Object chunkRemoval = new Object();
+    private final Map<String, Series> seriesByDevice = new HashMap<>();
+
+    /**
+     * Opens the chunks already in {@code storage}. Only their names are read here.
+     */
+    public TimeSeriesStore(ChunkStorage storage) throws IOException {
+        this.storage = storage;
+        for (String name : storage.list()) {
+            Chunk chunk = Chunk.parse(name);
+            if (chunk != null) {
+                series(chunk.deviceId).add(chunk);
+            }
+        }
+    }
+
+    /**
+     * Adds a row; it replaces any stored row with the same timestamp.
+     */
+    public void append(String deviceId, LogEntry entry) throws IOException {
+        if (entry.timestamp == null) {
+            throw new IllegalArgumentException("Log entries are keyed by timestamp");
+        }
+        lock.writeLock().lock();
+        try {
+            Series series = series(deviceId);
+            long day = LogBlocks.blockStart(entry.timestamp, DAY_SECONDS);
+            List<LogEntry> pending = series.pending;
+            if (!pending.isEmpty()) {
+                if (day > series.pendingDay) {
+                    // A new day has begun; the earlier ones are complete
+                    writePending(series, day);
+                }
+                if (!pending.isEmpty() && entry.timestamp < pending.get(pending.size() - 1).timestamp) {
+                    series.pendingSorted = false;
+                }
+            }
+            if (pending.isEmpty()) {
+                series.pendingDay = day;
+            }
+            pending.add(entry);
+            series.pendingDay = Math.max(series.pendingDay, day);
+            if (pending.size() >= MAX_PENDING_ROWS) {
+                writePending(series, Long.MAX_VALUE);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void appendAll(String deviceId, Collection<LogEntry> entries) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (LogEntry entry : entries) {
+                append(deviceId, entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes out every waiting row.
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Series series : seriesByDevice.values()) {
+                writePending(series, Long.MAX_VALUE);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the rows with timestamps in {@code [fromSeconds, lastSeconds]}, oldest first.
+     * Chunks that cannot be decoded are skipped.
+     */
+    public List<LogEntry> scan(String deviceId, long fromSeconds, long lastSeconds) throws IOException {
+        List<LogEntry> rows = new ArrayList<>();
+        if (fromSeconds > lastSeconds) return rows;
+        boolean overlapping = false;
+        lock.readLock().lock();
+        try {
+            Series series = seriesByDevice.get(deviceId);
+            if (series == null) return rows;
+            // The first day would overflow for ranges that start at Long.MIN_VALUE
+            long firstDay = fromSeconds < Long.MIN_VALUE + DAY_SECONDS
+                ? Long.MIN_VALUE : LogBlocks.blockStart(fromSeconds, DAY_SECONDS);
+            Map<Long, List<Chunk>> days = series.days.subMap(
+                firstDay, true, LogBlocks.blockStart(lastSeconds, DAY_SECONDS), true);
+            for (List<Chunk> chunks : days.values()) {
+                overlapping |= chunks.size() > 1;
+                for (Chunk chunk : chunks) {
+                    read(chunk, fromSeconds, lastSeconds, rows);
+                }
+            }
+            for (LogEntry row : series.pending) {
+                if (row.timestamp >= fromSeconds && row.timestamp <= lastSeconds) {
+                    rows.add(row);
+                    overlapping = true;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // With one chunk per day the rows are already in order and unique
+        return overlapping ? latestWins(rows) : rows;
+    }
+
+    /**
+     * Whether rows of the UTC day starting at {@code dayStartSeconds} have been written to
+     * chunks; rows still waiting for {@link #flush()} do not count.
+     */
+    public boolean hasDay(String deviceId, long dayStartSeconds) {
+        lock.readLock().lock();
+        try {
+            Series series = seriesByDevice.get(deviceId);
+            return series != null && series.days.containsKey(LogBlocks.blockStart(dayStartSeconds, DAY_SECONDS));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Timestamp of the newest row of a device, or null if there is none.
+     */
+    public Long latestTimestamp(String deviceId) throws IOException {
+        lock.readLock().lock();
+        try {
+            Series series = seriesByDevice.get(deviceId);
+            if (series == null) return null;
+            Long latest = null;
+            for (LogEntry row : series.pending) {
+                if (latest == null || row.timestamp > latest) latest = row.timestamp;
+            }
+            Map.Entry<Long, List<Chunk>> lastDay = series.days.lastEntry();
+            if (lastDay != null && (latest == null || lastDay.getKey() + DAY_SECONDS - 1 > latest)) {
+                List<LogEntry> rows = new ArrayList<>();
+                for (Chunk chunk : lastDay.getValue()) {
+                    read(chunk, latest == null ? Long.MIN_VALUE : latest + 1, Long.MAX_VALUE, rows);
+                }
+                for (LogEntry row : rows) {
+                    if (latest == null || row.timestamp > latest) latest = row.timestamp;
+                }
+            }
+            return latest;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the chunks of every day that has more than one into a single chunk. Meant for
+     * a background thread; appends and scans go on meanwhile. Returns the number of days
+     * merged. A day with a chunk that cannot be decoded is left as it is.
+     */
+    public int compact() throws IOException {
+        synchronized (chunkRemoval) {
+            List<Merge> merges = new ArrayList<>();
+            lock.writeLock().lock();
+            try {
+                for (Series series : seriesByDevice.values()) {
+                    for (Map.Entry<Long, List<Chunk>> day : series.days.entrySet()) {
+                        if (day.getValue().size() > 1) {
+                            // Chunks written while this merge runs get later sequence numbers and still win
+                            Chunk merged = new Chunk(series.deviceId, day.getKey(), series.nextSequence++);
+                            merges.add(new Merge(series, new ArrayList<>(day.getValue()), merged));
+                        }
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            int compacted = 0;
+            for (Merge merge : merges) {
+                TreeMap<Long, LogEntry> rows = new TreeMap<>();
+                try {
+                    for (Chunk chunk : merge.chunks) {
+                        for (LogEntry row : LogBlockCodec.decode(storage.read(chunk.name))) {
+                            rows.put(row.timestamp, row);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                storage.write(merge.merged.name, LogBlockCodec.encode(new ArrayList<>(rows.values())));
+
+                lock.writeLock().lock();
+                try {
+                    List<Chunk> chunks = merge.series.days.get(merge.merged.day);
+                    chunks.removeAll(merge.chunks);
+                    // Anything left was written after the merge began
+                    chunks.add(0, merge.merged);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                for (Chunk chunk : merge.chunks) {
+                    storage.delete(chunk.name);
+                }
+                compacted++;
+            }
+            return compacted;
+        }
+    }
+
+    /**
+     * Deletes the days of a device that end before {@code beforeSeconds}, waiting rows
+     * included. Returns the number of days deleted.
+     */
+    public int deleteDaysBefore(String deviceId, long beforeSeconds) throws IOException {
+        long firstKept = LogBlocks.blockStart(beforeSeconds, DAY_SECONDS);
+        List<Chunk> deleted = new ArrayList<>();
+        int days;
+        synchronized (chunkRemoval) {
+            lock.writeLock().lock();
+            try {
+                Series series = seriesByDevice.get(deviceId);
+                if (series == null) return 0;
+                Map<Long, List<Chunk>> old = series.days.headMap(firstKept);
+                days = old.size();
+                for (List<Chunk> chunks : old.values()) {
+                    deleted.addAll(chunks);
+                }
+                old.clear();
+                List<LogEntry> kept = new ArrayList<>(series.pending.size());
+                for (LogEntry row : series.pending) {
+                    if (LogBlocks.blockStart(row.timestamp, DAY_SECONDS) >= firstKept) kept.add(row);
+                }
+                series.pending.clear();
+                series.pending.addAll(kept);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (Chunk chunk : deleted) {
+                storage.delete(chunk.name);
+            }
+        }
+        return days;
+    }
+
+    /** Number of chunks stored for a device. */
+    int chunkCount(String deviceId) {
+        lock.readLock().lock();
+        try {
+            Series series = seriesByDevice.get(deviceId);
+            int count = 0;
+            if (series != null) {
+                for (List<Chunk> chunks : series.days.values()) {
+                    count += chunks.size();
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Series series(String deviceId) {
+        Series series = seriesByDevice.get(deviceId);
+        if (series == null) {
+            series = new Series(deviceId);
+            seriesByDevice.put(deviceId, series);
+        }
+        return series;
+    }
+
+    // Writes the waiting rows of the days before beforeDay, one chunk per day
+    private void writePending(Series series, long beforeDay) throws IOException {
+        List<LogEntry> pending = series.pending;
+        if (!series.pendingSorted) {
+            // Stable, so the later of two rows with one timestamp stays last
+            Collections.sort(pending, BY_TIMESTAMP);
+            series.pendingSorted = true;
+        }
+        int written = 0;
+        try {
+            while (written < pending.size()) {
+                long day = LogBlocks.blockStart(pending.get(written).timestamp, DAY_SECONDS);
+                if (day >= beforeDay) break;
+                List<LogEntry> rows = new ArrayList<>();
+                int end = written;
+                while (end < pending.size() && pending.get(end).timestamp < day + DAY_SECONDS) {
+                    LogEntry row = pending.get(end++);
+                    if (!rows.isEmpty() && rows.get(rows.size() - 1).timestamp.longValue() == row.timestamp) {
+                        rows.set(rows.size() - 1, row);
+                    } else {
+                        rows.add(row);
+                    }
+                }
+                Chunk chunk = new Chunk(series.deviceId, day, series.nextSequence++);
+                storage.write(chunk.name, LogBlockCodec.encode(rows));
+                series.add(chunk);
+                written = end;
+            }
+        } finally {
+            pending.subList(0, written).clear();
+        }
+    }
+
+    private void read(Chunk chunk, long fromSeconds, long lastSeconds, List<LogEntry> out) throws IOException {
+        byte[] bytes = storage.read(chunk.name);
+        int before = out.size();
+        try {
+            LogBlockCodec.decode(bytes, fromSeconds, lastSeconds, out);
+        } catch (IllegalArgumentException e) {
+            // Damaged; drop whatever it added
+            out.subList(before, out.size()).clear();
+        }
+    }
+
+    private static List<LogEntry> latestWins(List<LogEntry> rows) {
+        TreeMap<Long, LogEntry> byTimestamp = new TreeMap<>();
+        for (LogEntry row : rows) {
+            byTimestamp.put(row.timestamp, row);
+        }
+        return new ArrayList<>(byTimestamp.values());
+    }
+
+    private static final class Series {
+        final String deviceId;
+        // Chunks of each day, oldest sequence first
+        final TreeMap<Long, List<Chunk>> days = new TreeMap<>();
+        final List<LogEntry> pending = new ArrayList<>();
+        boolean pendingSorted = true;
+        // Latest day among the pending rows
+        long pendingDay;
+        long nextSequence;
+
+        Series(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        void add(Chunk chunk) {
+            List<Chunk> chunks = days.get(chunk.day);
+            if (chunks == null) {
+                chunks = new ArrayList<>(1);
+                days.put(chunk.day, chunks);
+            }
+            int index = chunks.size();
+            while (index > 0 && chunks.get(index - 1).sequence > chunk.sequence) {
+                index--;
+            }
+            chunks.add(index, chunk);
+            nextSequence = Math.max(nextSequence, chunk.sequence + 1);
+        }
+    }
+
+    private static final class Merge {
+        final Series series;
+        final List<Chunk> chunks;
+        final Chunk merged;
+
+        Merge(Series series, List<Chunk> chunks, Chunk merged) {
+            this.series = series;
+            this.chunks = chunks;
+            this.merged = merged;
+        }
+    }
+
+    /** A stored chunk, named {escaped device id}.{day start}.{sequence}. */
+    static final class Chunk {
+        final String deviceId;
+        final long day;
+        final long sequence;
+        final String name;
+
+        Chunk(String deviceId, long day, long sequence) {
+            this.deviceId = deviceId;
+            this.day = day;
+            this.sequence = sequence;
+            this.name = escape(deviceId) + "." + day + "." + sequence;
+        }
+
+        /** Null for names that are not chunks. */
+        static Chunk parse(String name) {
+            int sequenceDot = name.lastIndexOf('.');
+            int dayDot = sequenceDot > 0 ? name.lastIndexOf('.', sequenceDot - 1) : -1;
+            if (dayDot < 0) return null;
+            try {
+                long day = Long.parseLong(name.substring(dayDot + 1, sequenceDot));
+                long sequence = Long.parseLong(name.substring(sequenceDot + 1));
+                String deviceId = unescape(name.substring(0, dayDot));
+                if (deviceId == null || sequence < 0) return null;
+                return new Chunk(deviceId, day, sequence);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        // Device ids may hold anything; chunk names keep to characters every file system takes
+        static String escape(String deviceId) {
+            StringBuilder escaped = new StringBuilder(deviceId.length());
+            for (byte b : deviceId.getBytes(UTF_8)) {
+                if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '-' || b == '_') {
+                    escaped.append((char) b);
+                } else {
+                    escaped.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+            }
+            return escaped.toString();
+        }
+
+        static String unescape(String escaped) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(escaped.length());
+            for (int i = 0; i < escaped.length(); i++) {
+                char c = escaped.charAt(i);
+                if (c == '%') {
+                    if (i + 2 >= escaped.length()) return null;
+                    int high = Character.digit(escaped.charAt(i + 1), 16);
+                    int low = Character.digit(escaped.charAt(i + 2), 16);
+                    if (high < 0 || low < 0) return null;
+                    bytes.write(high << 4 | low);
+                    i += 2;
+                } else if (c < 0x80) {
+                    bytes.write(c);
+                } else {
+                    return null;
+                }
+            }
+            return new String(bytes.toByteArray(), UTF_8);
+        }
+    }
+}
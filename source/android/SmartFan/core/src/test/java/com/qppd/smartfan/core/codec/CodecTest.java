@@ -0,0 +1,129 @@
+package com.qppd.smartfan.core.codec;
+
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CodecTest {
+
+    @Test
+    public void bits_roundTripAtEveryWidth() {
+        Random random = new Random(1);
+        long[] values = new long[2000];
+        int[] widths = new int[values.length];
+        BitWriter out = new BitWriter(1);
+        for (int i = 0; i < values.length; i++) {
+            widths[i] = random.nextInt(65);
+            values[i] = widths[i] == 0 ? 0 : random.nextLong() & (-1L >>> (64 - widths[i]));
+            out.writeBits(values[i], widths[i]);
+        }
+        BitReader in = new BitReader(out.toByteArray());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("value " + i, values[i], in.readBits(widths[i]));
+        }
+        assertTrue(in.remainingBits() < 8);
+    }
+
+    @Test
+    public void signed_roundTripsAndUsesOneBitForZero() {
+        long[] values = {0, 1, -1, 63, -64, 64, -65, 2047, -2048, 2048, 524287, -524288, 524288,
+            Long.MAX_VALUE, Long.MIN_VALUE};
+        BitWriter out = new BitWriter(16);
+        for (long value : values) {
+            out.writeSigned(value);
+        }
+        BitReader in = new BitReader(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, in.readSigned());
+        }
+
+        BitWriter zeros = new BitWriter(16);
+        for (int i = 0; i < 80; i++) {
+            zeros.writeSigned(0);
+        }
+        assertEquals(80, zeros.bitLength());
+    }
+
+    @Test
+    public void rice_roundTripsWithEveryParameter() {
+        long[] values = {0, 1, -1, 5, -17, 300, -4096, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (int k = 0; k < 32; k++) {
+            BitWriter out = new BitWriter(16);
+            long bits = 0;
+            for (long value : values) {
+                out.writeRice(value, k);
+                bits += BitWriter.riceLength(value, k);
+            }
+            assertEquals(bits, out.bitLength());
+            BitReader in = new BitReader(out.toByteArray());
+            for (long value : values) {
+                assertEquals("k=" + k, value, in.readRice(k));
+            }
+        }
+    }
+
+    @Test
+    public void deltaOfDelta_evenSpacingCostsOneBit() {
+        BitWriter out = new BitWriter(16);
+        DeltaOfDeltaEncoder encoder = new DeltaOfDeltaEncoder();
+        long[] timestamps = new long[1000];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = 1717200000L + i * 60 + (i == 500 ? 3 : 0);
+            encoder.add(out, timestamps[i]);
+        }
+        // 64 for the first, 9 for the first delta, three 9-bit corrections around the jitter
+        assertEquals(64 + 9 + 3 * 9 + 995, out.bitLength());
+
+        BitReader in = new BitReader(out.toByteArray());
+        DeltaOfDeltaDecoder decoder = new DeltaOfDeltaDecoder();
+        for (long timestamp : timestamps) {
+            assertEquals(timestamp, decoder.next(in));
+        }
+    }
+
+    @Test
+    public void xor_isLosslessForAnyDouble() {
+        Random random = new Random(2);
+        double[] values = new double[3000];
+        for (int i = 0; i < values.length; i++) {
+            switch (i % 6) {
+                case 0: values[i] = random.nextDouble() * 100; break;
+                case 1: values[i] = values[i - 1]; break;
+                case 2: values[i] = Double.NaN; break;
+                case 3: values[i] = -0.0; break;
+                case 4: values[i] = Double.longBitsToDouble(random.nextLong()); break;
+                default: values[i] = 230.0 + i % 3; break;
+            }
+        }
+        BitWriter out = new BitWriter(16);
+        XorEncoder encoder = new XorEncoder();
+        for (double value : values) {
+            encoder.add(out, value);
+        }
+        BitReader in = new BitReader(out.toByteArray());
+        XorDecoder decoder = new XorDecoder();
+        for (double value : values) {
+            assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(decoder.next(in)));
+        }
+    }
+
+    @Test
+    public void base64_matchesTheJdk() {
+        Random random = new Random(3);
+        for (int length = 0; length < 40; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String encoded = Base64Codec.encode(bytes);
+            assertEquals(Base64.getEncoder().encodeToString(bytes), encoded);
+            assertArrayEquals(bytes, Base64Codec.decode(encoded));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reader_rejectsTruncatedInput() {
+        new BitReader(new byte[3]).readBits(32);
+    }
+}
@@ -0,0 +1,123 @@
+package com.qppd.smartfan.core.control;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.core.data.RecordingDataSource;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GroupControllerTest {
+    private final RecordingDataSource writer = new RecordingDataSource();
+
+    @Test
+    public void smallGroup_isOneWrite() {
+        List<String> fans = fans(20);
+        GroupCommandResult result = apply(new GroupController(writer), fans, ControlState.manualSpeed(60));
+
+        assertEquals(1, writer.multiWrites.size());
+        assertEquals(20, writer.multiWrites.get(0).size());
+        assertEquals(60, (int) writer.multiWrites.get(0).get("fan7").fanSpeed);
+        assertEquals(ControlState.MODE_MANUAL, writer.multiWrites.get(0).get("fan7").mode);
+        assertTrue(result.isSuccess());
+        assertEquals(fans, result.getSucceeded());
+        assertEquals(1, result.getWrites());
+    }
+
+    @Test
+    public void largeGroup_isChunkedAndPipelined() {
+        writer.holdWrites = true;
+        List<String> fans = fans(1050);
+        GroupCommandResult[] result = new GroupCommandResult[1];
+        new GroupController(writer, 100, 3).apply(fans, ControlState.autoMode(), callback(result));
+
+        // Three chunks go out at once; each completion releases the next
+        assertEquals(3, writer.held.size());
+        int maxInFlight = 0;
+        while (!writer.held.isEmpty()) {
+            maxInFlight = Math.max(maxInFlight, writer.held.size());
+            writer.held.poll().onSuccess(null);
+        }
+        assertEquals(3, maxInFlight);
+        assertEquals(11, writer.multiWrites.size());
+        assertEquals(50, writer.multiWrites.get(10).size());
+        assertNotNull(result[0]);
+        assertEquals(1050, result[0].getSucceeded().size());
+        assertEquals(11, result[0].getWrites());
+    }
+
+    @Test
+    public void failedChunk_isRetriedPerDevice() {
+        writer.failingDevices.add("fan3");
+        writer.failingDevices.add("fan12");
+        GroupCommandResult result = apply(new GroupController(writer, 10, 2), fans(25), ControlState.manualSpeed(0));
+
+        assertFalse(result.isSuccess());
+        assertEquals(new HashSet<>(Arrays.asList("fan3", "fan12")), result.getFailed().keySet());
+        assertEquals(23, result.getSucceeded().size());
+        assertFalse(result.getSucceeded().contains("fan3"));
+        // 3 chunk writes, then 10 + 10 single writes for the two failed chunks
+        assertEquals(23, result.getWrites());
+        assertEquals(20, writer.singleWrites);
+    }
+
+    @Test
+    public void duplicatesAndEmptyGroups_areHandled() {
+        GroupCommandResult result = apply(new GroupController(writer), Arrays.asList("a", "b", "a"),
+            ControlState.autoMode());
+        assertEquals(Arrays.asList("a", "b"), result.getSucceeded());
+
+        GroupCommandResult empty = apply(new GroupController(writer), Collections.<String>emptyList(),
+            ControlState.autoMode());
+        assertTrue(empty.isSuccess());
+        assertEquals(0, empty.getDeviceCount());
+        assertEquals(0, empty.getWrites());
+    }
+
+    @Test
+    public void group_appliesToItsMembers() {
+        DeviceGroup group = new DeviceGroup("g1", "Bedroom", Arrays.asList("fan1", "fan2", "fan1"));
+        GroupCommandResult[] result = new GroupCommandResult[1];
+        new GroupController(writer).apply(group, ControlState.autoMode(), callback(result));
+
+        assertEquals(Arrays.asList("fan1", "fan2"), group.deviceIds);
+        assertEquals(Arrays.asList("fan1", "fan2"), result[0].getSucceeded());
+    }
+
+    private static GroupCommandResult apply(GroupController controller, List<String> fans, ControlState changes) {
+        GroupCommandResult[] result = new GroupCommandResult[1];
+        controller.apply(fans, changes, callback(result));
+        assertNotNull("The command did not complete", result[0]);
+        return result[0];
+    }
+
+    private static DataCallback<GroupCommandResult> callback(GroupCommandResult[] result) {
+        return new DataCallback<GroupCommandResult>() {
+            @Override
+            public void onSuccess(GroupCommandResult value) {
+                assertNull("Completed twice", result[0]);
+                result[0] = value;
+            }
+
+            @Override
+            public void onError(Exception error) {
+                fail(error.toString());
+            }
+        };
+    }
+
+    private static List<String> fans(int count) {
+        List<String> fans = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            fans.add("fan" + i);
+        }
+        return fans;
+    }
+}
@@ -0,0 +1,139 @@
+package com.qppd.smartfan.core.data;
+
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records control writes and completes them synchronously. A write touching a device in
+ * {@link #failingDevices} fails as a whole, like a multi-path update rejected by the
+ * security rules. Observers are kept in {@link #controlObservers} and
+ * {@link #currentObservers} for the test to notify, and log fetches in {@link #fetches} for
+ * it to answer. Other operations are not supported.
+ */
+public class RecordingDataSource implements SmartFanDataSource {
+    public final List<Map<String, ControlState>> multiWrites = new ArrayList<>();
+    public final Set<String> failingDevices = new HashSet<>();
+    /** Callbacks of held multi-path writes, oldest first. */
+    public final ArrayDeque<DataCallback<Void>> held = new ArrayDeque<>();
+    public boolean holdWrites;
+    public int failNextWrites;
+    public int singleWrites;
+    public ControlState lastSingleWrite;
+    public final List<DataObserver<ControlState>> controlObservers = new ArrayList<>();
+    public final List<DataObserver<CurrentReading>> currentObservers = new ArrayList<>();
+    /** Log fetches not answered yet, oldest first. */
+    public final ArrayDeque<LogFetch> fetches = new ArrayDeque<>();
+
+    public static class LogFetch {
+        public final long fromMillis;
+        public final long toMillis;
+        public final DataCallback<List<LogEntry>> callback;
+
+        LogFetch(long fromMillis, long toMillis, DataCallback<List<LogEntry>> callback) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.callback = callback;
+        }
+    }
+
+    @Override
+    public void updateControls(Map<String, ControlState> changesByDevice, DataCallback<Void> callback) {
+        multiWrites.add(changesByDevice);
+        if (failNextWrites > 0) {
+            failNextWrites--;
+            callback.onError(new IllegalStateException("Network error"));
+            return;
+        }
+        for (String deviceId : changesByDevice.keySet()) {
+            if (failingDevices.contains(deviceId)) {
+                callback.onError(new IllegalStateException("Permission denied"));
+                return;
+            }
+        }
+        if (holdWrites) {
+            held.add(callback);
+        } else {
+            callback.onSuccess(null);
+        }
+    }
+
+    @Override
+    public void updateControl(String deviceId, ControlState changes, DataCallback<Void> callback) {
+        singleWrites++;
+        lastSingleWrite = changes;
+        if (failingDevices.contains(deviceId)) {
+            callback.onError(new IllegalStateException("Permission denied"));
+        } else {
+            callback.onSuccess(null);
+        }
+    }
+
+    @Override
+    public void fetchUserDeviceId(String uid, DataCallback<String> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Registration observeCurrent(String deviceId, final DataObserver<CurrentReading> observer) {
+        currentObservers.add(observer);
+        return new Registration() {
+            @Override
+            public void remove() {
+                currentObservers.remove(observer);
+            }
+        };
+    }
+
+    @Override
+    public Registration observeControl(String deviceId, final DataObserver<ControlState> observer) {
+        controlObservers.add(observer);
+        return new Registration() {
+            @Override
+            public void remove() {
+                controlObservers.remove(observer);
+            }
+        };
+    }
+
+    @Override
+    public void fetchLogs(String deviceId, long fromMillis, long toMillis, DataCallback<List<LogEntry>> callback) {
+        fetches.add(new LogFetch(fromMillis, toMillis, callback));
+    }
+
+    @Override
+    public void fetchLogDigests(String deviceId, long fromMillis, long toMillis,
+                                DataCallback<Map<Long, LogDigest>> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void writeCurrent(String deviceId, CurrentReading reading, DataCallback<Void> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void appendLog(String deviceId, LogEntry entry, DataCallback<Void> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void fetchGroups(String uid, DataCallback<List<DeviceGroup>> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void saveGroup(String uid, DeviceGroup group, DataCallback<Void> callback) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteGroup(String uid, String groupId, DataCallback<Void> callback) {
+        throw new UnsupportedOperationException();
+    }
+}
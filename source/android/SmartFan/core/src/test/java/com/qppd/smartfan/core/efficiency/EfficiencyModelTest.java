@@ -0,0 +1,71 @@
+package com.qppd.smartfan.core.efficiency;
+
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.history.TimeSeries;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EfficiencyModelTest {
+    private static final long START = 1709251200L; // 2024-03-01 00:00 UTC
+
+    @Test
+    public void observe_fitsTheCurveAndReportsSustainedDrift() {
+        Random random = new Random(3);
+        EfficiencyModel model = new EfficiencyModel(500, 200, 0.15, false);
+        for (int i = 0; i < 500; i++) {
+            long speed = 10 + random.nextInt(91);
+            assertTrue(Double.isNaN(model.observe(speed, watt(speed, 1, random), null)));
+        }
+        assertTrue(model.isCalibrated());
+        assertEquals(22, model.expectedWatt(50, null), 0.2);
+
+        for (int i = 0; i < 400; i++) {
+            long speed = 10 + random.nextInt(91);
+            model.observe(speed, watt(speed, 1, random), null);
+        }
+        assertEquals(0, model.drift(), 0.02);
+        assertFalse(model.isDrifting());
+        // Off and implausible readings are not compared
+        assertTrue(Double.isNaN(model.observe(0L, 5.0, null)));
+        assertTrue(Double.isNaN(model.observe(50L, null, null)));
+
+        // A worn bearing drawing a quarter more, for five times the averaging span
+        for (int i = 0; i < 1000; i++) {
+            long speed = 10 + random.nextInt(91);
+            model.observe(speed, watt(speed, 1.25, random), null);
+        }
+        assertEquals(0.25, model.drift(), 0.03);
+        assertTrue(model.isDrifting());
+    }
+
+    @Test
+    public void trend_averagesEachDayOnceEvenWithOverlappingBatches() {
+        Random random = new Random(4);
+        List<LogEntry> rows = new ArrayList<>();
+        for (int i = 0; i < 3 * 1440; i++) {
+            long speed = 10 + random.nextInt(91);
+            double factor = i < 2 * 1440 ? 1 : 1.2;
+            rows.add(new LogEntry(START + i * 60L, null, 30.0, speed, 230.0, null, watt(speed, factor, random), null));
+        }
+        EfficiencyTrend trend = new EfficiencyTrend(new EfficiencyModel(1000, 500, 0.15, true));
+        trend.addAll(rows.subList(0, 3000));
+        trend.addAll(rows.subList(2000, rows.size()));
+
+        TimeSeries series = trend.series();
+        // The first day went mostly into the fit
+        assertEquals(3, series.size());
+        assertEquals((START + 1440 * 60L) * 1000, series.timeMillis[1]);
+        assertEquals(100, series.values[1], 2);
+        assertEquals(120, series.values[2], 3);
+        assertTrue(trend.model().isDrifting());
+    }
+
+    private static double watt(long speed, double factor, Random random) {
+        return factor * (2 + 0.3 * speed + 0.002 * speed * speed) + random.nextGaussian() * 0.3;
+    }
+}
@@ -0,0 +1,127 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ChartCacheTest {
+    private static final TimeZone MANILA = TimeZone.getTimeZone("Asia/Manila");
+    private static final String DEVICE = "SmartFan_ESP8266_001";
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void get_extendsTheCachedChartWithAppendedRows() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(3000, 31);
+        long before = rows.get(2499).timestamp * 1000;
+        long after = rows.get(2999).timestamp * 1000;
+        ChartCache cache = new ChartCache(100000);
+        cache.put(DEVICE, chart(rows.subList(0, 2500), before));
+
+        cache.append(DEVICE, rows.subList(2500, 3000));
+        ChartData extended = cache.get(DEVICE, DAY_MILLIS, after, MANILA);
+        // The same as building it from scratch, though the window moved by about eight hours
+        assertSameChart(chart(rows, after), extended);
+        assertSame(extended, cache.get(DEVICE, DAY_MILLIS, after, MANILA));
+        assertNull(cache.get(DEVICE, 7 * DAY_MILLIS, after, MANILA));
+        assertNull(cache.get("other", DAY_MILLIS, after, MANILA));
+    }
+
+    @Test
+    public void get_keepsTheCachedChartUntilItIsABucketOld() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(2000, 34);
+        long now = rows.get(1999).timestamp * 1000;
+        ChartData chart = chart(rows, now);
+        ChartCache cache = new ChartCache(100000);
+        cache.put(DEVICE, chart);
+
+        assertSame(chart, cache.get(DEVICE, DAY_MILLIS, now + chart.bucketMillis() - 1, MANILA));
+        ChartData moved = cache.get(DEVICE, DAY_MILLIS, now + chart.bucketMillis(), MANILA);
+        assertEquals(now + chart.bucketMillis(), moved.nowMillis);
+        assertSameChart(chart(rows, now + chart.bucketMillis()), moved);
+    }
+
+    @Test
+    public void lookup_extendsTheCachedChartWithAnEarlierDay() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(1440, 35);
+        long now = rows.get(1439).timestamp * 1000;
+        ChartCache cache = new ChartCache(100000);
+        cache.put(DEVICE, chart(rows.subList(600, 1440), now));
+
+        cache.append(DEVICE, rows.subList(0, 600));
+        ChartCache.Lookup lookup = cache.lookup(DEVICE, DAY_MILLIS);
+        ChartData extended = lookup.extend(now, MANILA);
+        cache.put(lookup, extended);
+        assertSameChart(chart(rows, now), extended);
+        assertSame(extended, cache.get(DEVICE, DAY_MILLIS, now, MANILA));
+    }
+
+    @Test
+    public void put_ignoresAChartLookedUpBeforeAnInvalidate() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(1000, 36);
+        long now = rows.get(999).timestamp * 1000;
+        ChartCache cache = new ChartCache(100000);
+        ChartCache.Lookup lookup = cache.lookup(DEVICE, DAY_MILLIS);
+        assertNull(lookup.cached);
+
+        cache.invalidate(DEVICE);
+        cache.put(lookup, chart(rows, now));
+        assertNull(cache.get(DEVICE, DAY_MILLIS, now, MANILA));
+    }
+
+    @Test
+    public void invalidate_dropsTheDevicesCharts() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(1000, 32);
+        long now = rows.get(999).timestamp * 1000;
+        ChartCache cache = new ChartCache(100000);
+        cache.put(DEVICE, chart(rows, now));
+        cache.put("other", chart(rows, now));
+
+        cache.invalidate(DEVICE);
+        assertNull(cache.get(DEVICE, DAY_MILLIS, now, MANILA));
+        assertNotNull(cache.get("other", DAY_MILLIS, now, MANILA));
+        // Appends of the new version go to charts built after it began
+        cache.put(DEVICE, chart(rows.subList(0, 900), rows.get(899).timestamp * 1000));
+        cache.append(DEVICE, rows.subList(900, 1000));
+        assertSameChart(chart(rows, now), cache.get(DEVICE, DAY_MILLIS, now, MANILA));
+    }
+
+    @Test
+    public void put_dropsLeastRecentlyUsedChartsBeyondThePointLimit() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(1000, 33);
+        long now = rows.get(999).timestamp * 1000;
+        ChartData chart = chart(rows, now);
+        ChartCache cache = new ChartCache(chart.points() * 2);
+        cache.put("a", chart);
+        cache.put("b", chart);
+        assertNotNull(cache.get("a", DAY_MILLIS, now, MANILA));
+        cache.put("c", chart);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b", DAY_MILLIS, now, MANILA));
+        assertNotNull(cache.get("a", DAY_MILLIS, now, MANILA));
+    }
+
+    private static ChartData chart(List<LogEntry> rows, long now) {
+        return ChartData.build(HistoryFilter.filterByWindow(rows, now, DAY_MILLIS, MANILA), now, DAY_MILLIS, MANILA,
+            500);
+    }
+
+    private static void assertSameChart(ChartData expected, ChartData actual) {
+        assertEquals(expected.nowMillis, actual.nowMillis);
+        assertTrue(expected.temperatureDownsampled);
+        assertEquals(expected.temperatureDownsampled, actual.temperatureDownsampled);
+        assertArrayEquals(expected.temperature.timeMillis, actual.temperature.timeMillis);
+        assertArrayEquals(expected.temperature.values, actual.temperature.values, 0f);
+        assertArrayEquals(expected.power.timeMillis, actual.power.timeMillis);
+        assertArrayEquals(expected.power.values, actual.power.values, 0f);
+        for (int band = 0; band < DutyCycle.BANDS; band++) {
+            assertEquals(expected.fanSpeed.bandMillis(band), actual.fanSpeed.bandMillis(band));
+        }
+        assertEquals(expected.fanSpeed.cycles(), actual.fanSpeed.cycles());
+        assertEquals(expected.fanSpeed.longestRunMillis(), actual.fanSpeed.longestRunMillis());
+        assertEquals(expected.points(), actual.points());
+    }
+}
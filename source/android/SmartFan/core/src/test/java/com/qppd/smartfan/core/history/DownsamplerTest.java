@@ -0,0 +1,93 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DownsamplerTest {
+    @Test
+    public void lttb_keepsEndpointsAndPeaks() {
+        TimeSeries series = series(1000);
+        series.values[437] = 90f;
+        series.values[711] = -10f;
+
+        TimeSeries sampled = Downsampler.lttb(series, 50);
+        assertEquals(50, sampled.size());
+        assertEquals(series.timeMillis[0], sampled.timeMillis[0]);
+        assertEquals(series.values[0], sampled.values[0], 0f);
+        assertEquals(series.timeMillis[999], sampled.timeMillis[49]);
+        assertEquals(series.values[999], sampled.values[49], 0f);
+        boolean peak = false;
+        boolean dip = false;
+        for (int i = 0; i < sampled.size(); i++) {
+            if (i > 0) assertTrue(sampled.timeMillis[i - 1] < sampled.timeMillis[i]);
+            peak |= sampled.values[i] == 90f;
+            dip |= sampled.values[i] == -10f;
+        }
+        assertTrue(peak);
+        assertTrue(dip);
+    }
+
+    @Test
+    public void lttb_returnsSmallSeriesUnchanged() {
+        TimeSeries series = series(100);
+        assertSame(series, Downsampler.lttb(series, 100));
+        assertSame(series, Downsampler.lttb(series, 500));
+        // Below three points there is no triangle to pick by
+        assertSame(series, Downsampler.lttb(series, 2));
+        TimeSeries empty = new TimeSeries(new long[0], new float[0]);
+        assertSame(empty, Downsampler.lttb(empty, 500));
+    }
+
+    @Test
+    public void minMax_keepsEachBucketsExtremesInTimeOrder() {
+        TimeSeries series = new TimeSeries(
+            new long[]{500, 1000, 1300, 1600, 2000, 2300, 2600, 3000, 3500, 6500},
+            new float[]{40f, 31f, 30f, 32f, 29f, 33f, 31f, 35f, 35f, 33f});
+
+        // From 700 on, buckets of 1000: the one at 0 is cut and left out, those at 4000 and
+        // 5000 are empty, and a flat one gives a single point
+        TimeSeries sampled = Downsampler.minMax(series, 700, 1000);
+        assertArrayEquals(new long[]{1300, 1600, 2000, 2300, 3000, 6500}, sampled.timeMillis);
+        assertArrayEquals(new float[]{30f, 32f, 29f, 33f, 35f, 33f}, sampled.values, 0f);
+    }
+
+    @Test
+    public void minMax_changesOnlyTheEdgeBucketsAsTheWindowSlides() {
+        TimeSeries day = series(1440);
+        long bucket = 10 * 60000L;
+        long window = 12 * 60 * 60000L;
+        long now = day.timeMillis[720];
+        TimeSeries shown = Downsampler.minMax(prefix(day, 721), now - window, bucket);
+        TimeSeries next = Downsampler.minMax(prefix(day, 727), now + 6 * 60000L - window, bucket);
+
+        SeriesSlide slide = SeriesSlide.between(shown, next);
+        assertNotNull(slide);
+        assertTrue(slide.dropped <= 2);
+        assertTrue(slide.removed <= 2);
+        assertTrue(next.size() - slide.addedFrom <= 4);
+        assertTrue(slide.addedFrom > shown.size() - 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minMax_rejectsEmptyBuckets() {
+        Downsampler.minMax(series(10), 0, 0);
+    }
+
+    private static TimeSeries prefix(TimeSeries series, int size) {
+        return new TimeSeries(Arrays.copyOf(series.timeMillis, size),
+            Arrays.copyOf(series.values, size));
+    }
+
+    private static TimeSeries series(int size) {
+        long[] times = new long[size];
+        float[] values = new float[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = 1709251200000L + i * 60000L;
+            values[i] = 28f + (float) Math.sin(i / 50.0);
+        }
+        return new TimeSeries(times, values);
+    }
+}
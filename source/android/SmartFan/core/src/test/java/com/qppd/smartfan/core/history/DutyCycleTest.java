@@ -0,0 +1,71 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DutyCycleTest {
+    private static final long MINUTE = 60 * 1000L;
+
+    @Test
+    public void add_weightsEachSpeedByTheIntervalToTheNextReading() {
+        DutyCycle cycle = new DutyCycle(5 * MINUTE);
+        cycle.add(0, 0);
+        cycle.add(2 * MINUTE, 40);
+        cycle.add(3 * MINUTE, 60);
+        cycle.add(6 * MINUTE, 0);
+        // Offline for an hour: only the cap counts, and the run it would extend ends
+        cycle.add(7 * MINUTE, 100);
+        cycle.add(67 * MINUTE, 100);
+        cycle.add(68 * MINUTE, 100);
+
+        assertEquals(3 * MINUTE, cycle.bandMillis(0));
+        assertEquals(MINUTE, cycle.bandMillis(DutyCycle.band(40)));
+        assertEquals(3 * MINUTE, cycle.bandMillis(DutyCycle.band(60)));
+        assertEquals(6 * MINUTE, cycle.bandMillis(DutyCycle.band(100)));
+        assertEquals(13 * MINUTE, cycle.totalMillis());
+        assertEquals(10 * MINUTE, cycle.onMillis());
+        assertEquals(3, cycle.cycles());
+        assertEquals(5 * MINUTE, cycle.longestRunMillis());
+    }
+
+    @Test
+    public void evictBefore_matchesCountingTheWindowFromScratch() {
+        Random random = new Random(7);
+        long[] times = new long[3000];
+        int[] speeds = new int[times.length];
+        long time = 0;
+        for (int i = 0; i < times.length; i++) {
+            time += random.nextInt(20) == 0 ? 20 * MINUTE : MINUTE;
+            times[i] = time;
+            speeds[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(101);
+        }
+
+        DutyCycle sliding = new DutyCycle(5 * MINUTE);
+        for (int end = 0; end < times.length; end += 100) {
+            for (int i = Math.max(0, end - 100); i < end; i++) {
+                sliding.add(times[i], speeds[i]);
+            }
+            long cutoff = end == 0 ? 0 : times[end - 1] - 12 * 60 * MINUTE;
+            sliding.evictBefore(cutoff);
+            DutyCycle fresh = new DutyCycle(5 * MINUTE);
+            for (int i = 0; i < end; i++) {
+                if (times[i] >= cutoff) fresh.add(times[i], speeds[i]);
+            }
+
+            assertEquals(fresh.size(), sliding.size());
+            for (int band = 0; band < DutyCycle.BANDS; band++) {
+                assertEquals(fresh.bandMillis(band), sliding.bandMillis(band));
+            }
+            assertEquals(fresh.cycles(), sliding.cycles());
+            assertEquals(fresh.longestRunMillis(), sliding.longestRunMillis());
+        }
+        // A copy moves on alone
+        DutyCycle copy = sliding.copy();
+        copy.evictBefore(Long.MAX_VALUE);
+        assertEquals(0, copy.totalMillis());
+        assertTrue(sliding.totalMillis() > 0);
+    }
+}
@@ -0,0 +1,41 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class HistoryFilterTest {
+    private static final TimeZone MANILA = TimeZone.getTimeZone("Asia/Manila");
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    public void filterByWindow_keepsTheWindowOldestFirst() {
+        LogEntry newest = row("2024-03-05 12:00:00");
+        LogEntry middle = row("2024-03-05 08:30:00");
+        LogEntry oldest = row("2024-03-05 06:00:00");
+        LogEntry tooOld = row("2024-03-05 05:59:59");
+        LogEntry untimed = new LogEntry(null, "garbled", 30.0, 40L, null, null, null, null);
+        long now = LogTime.parseDatetime("2024-03-05 12:00:00", MANILA);
+
+        List<LogEntry> window = HistoryFilter.filterByWindow(
+            Arrays.asList(newest, untimed, middle, tooOld, oldest, null), now, 6 * HOUR, MANILA);
+        assertEquals(Arrays.asList(oldest, middle, newest), window);
+    }
+
+    @Test
+    public void withTimestamp_dropsRowsWithoutOne() {
+        LogEntry keyed = row("2024-03-05 12:00:00");
+        LogEntry unkeyed = new LogEntry(null, "2024-03-05 12:01:00", 30.0, 40L, null, null, null, null);
+        LogEntry zero = new LogEntry(0L, "2024-03-05 12:02:00", 30.0, 40L, null, null, null, null);
+        assertEquals(Arrays.asList(keyed), HistoryFilter.withTimestamp(Arrays.asList(unkeyed, keyed, zero, null)));
+        assertTrue(HistoryFilter.withTimestamp(null).isEmpty());
+    }
+
+    private static LogEntry row(String datetime) {
+        return new LogEntry(LogTime.parseDatetime(datetime, MANILA) / 1000, datetime, 30.0, 40L, null, null, null, null);
+    }
+}
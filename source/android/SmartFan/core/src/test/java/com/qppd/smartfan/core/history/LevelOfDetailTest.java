@@ -0,0 +1,91 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LevelOfDetailTest {
+    private static final long MINUTE = 60 * 1000L;
+
+    private static TimeSeries minutes(long from, int count, float value) {
+        long[] times = new long[count];
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = from + i * MINUTE;
+            values[i] = value;
+        }
+        return new TimeSeries(times, values);
+    }
+
+    @Test
+    public void splice_replacesTheOverviewInsideTheWindow() {
+        TimeSeries overview = Downsampler.lttb(minutes(0, 1000, 1), 100);
+        TimeSeries detail = minutes(0, 1000, 2);
+
+        TimeSeries spliced = LevelOfDetail.splice(overview, detail, 200 * MINUTE, 300 * MINUTE);
+        int inside = 0;
+        for (int i = 0; i < spliced.size(); i++) {
+            long time = spliced.timeMillis[i];
+            boolean inWindow = time >= 200 * MINUTE && time < 300 * MINUTE;
+            assertEquals(inWindow ? 2 : 1, spliced.values[i], 0);
+            if (i > 0) assertTrue(time > spliced.timeMillis[i - 1]);
+            if (inWindow) inside++;
+        }
+        assertEquals(100, inside);
+        assertEquals(overview.timeMillis[0], spliced.timeMillis[0]);
+        assertEquals(overview.timeMillis[overview.size() - 1], spliced.timeMillis[spliced.size() - 1]);
+        assertEquals(100, LevelOfDetail.visiblePoints(spliced, 200 * MINUTE, 299 * MINUTE));
+    }
+
+    @Test
+    public void window_coversTheVisibleRangeAndIsSharedByNearbyViewports() {
+        long from = 1717200000000L + 7 * MINUTE;
+        LevelOfDetail.Window window = LevelOfDetail.Window.covering(from, from + 40 * MINUTE);
+        assertTrue(window.contains(from, from + 40 * MINUTE));
+        assertEquals(120 * MINUTE, window.toMillis - window.fromMillis);
+        assertEquals(window, LevelOfDetail.Window.covering(from + 5 * MINUTE, from + 45 * MINUTE));
+
+        LevelOfDetail.Window narrow = LevelOfDetail.Window.covering(from, from + MINUTE);
+        assertEquals(LevelOfDetail.MIN_WINDOW_MILLIS, narrow.toMillis - narrow.fromMillis);
+        assertTrue(narrow.contains(from, from + MINUTE));
+    }
+
+    @Test
+    public void detailCache_servesContainedRangesAndEvictsTheLeastRecentlyUsed() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(600, 21);
+        long start = rows.get(0).resolveTimeMillis();
+        LevelOfDetail.Window first = new LevelOfDetail.Window(start, start + 240 * MINUTE);
+        LevelOfDetail.Window second = new LevelOfDetail.Window(start + 240 * MINUTE, start + 480 * MINUTE);
+        LevelOfDetail.Window third = new LevelOfDetail.Window(start + 480 * MINUTE, start + 720 * MINUTE);
+        DetailCache cache = new DetailCache(500);
+        cache.put(first, rows.subList(0, 240));
+        cache.put(second, rows.subList(240, 480));
+
+        List<LogEntry> zoomed = cache.find(start + 10 * MINUTE, start + 20 * MINUTE);
+        assertEquals(10, zoomed.size());
+        assertSame(rows.get(10), zoomed.get(0));
+        assertNull(cache.find(start + 230 * MINUTE, start + 250 * MINUTE));
+
+        // first was used last, so second goes
+        cache.put(third, rows.subList(480, 600));
+        assertEquals(2, cache.size());
+        assertNotNull(cache.find(start, start + MINUTE));
+        assertNull(cache.find(start + 300 * MINUTE, start + 301 * MINUTE));
+    }
+
+    @Test
+    public void detailCache_appendsNewRowsToTheWindowsTheyFallIn() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(300, 21);
+        long start = rows.get(0).resolveTimeMillis();
+        LevelOfDetail.Window window = new LevelOfDetail.Window(start, start + 240 * MINUTE);
+        DetailCache cache = new DetailCache(500);
+        cache.put(window, rows.subList(0, 200));
+
+        cache.append(rows.subList(200, 300));
+        List<LogEntry> cached = cache.find(start, start + 240 * MINUTE);
+        assertEquals(240, cached.size());
+        assertSame(rows.get(239), cached.get(239));
+    }
+}
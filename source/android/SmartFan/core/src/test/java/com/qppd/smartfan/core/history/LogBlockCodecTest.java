@@ -0,0 +1,152 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class LogBlockCodecTest {
+    private static final TimeZone MANILA = TimeZone.getTimeZone("GMT+08:00");
+    private static final long START = 1717200000L;   // 2024-06-01 00:00 UTC
+
+    @Test
+    public void firmwareRows_roundTripExactly() {
+        List<LogEntry> rows = firmwareRows(1440, 42);
+        List<LogEntry> decoded = LogBlockCodec.decode(LogBlockCodec.encode(rows));
+        assertRowsEqual(rows, decoded);
+    }
+
+    @Test
+    public void dayOfRows_isAFewBytesPerRow() {
+        List<LogEntry> rows = firmwareRows(1440, 7);
+        int blockChars = LogBlockCodec.encodeBase64(rows).length();
+        // The same rows as JSON objects are well over 150 bytes each
+        assertTrue("block is " + blockChars + " chars", blockChars < 1440 * 12);
+    }
+
+    @Test
+    public void missingFieldsAndOddValues_roundTrip() {
+        List<LogEntry> rows = firmwareRows(50, 3);
+        rows.get(3).temperature = null;
+        rows.get(4).fanSpeed = null;
+        rows.get(5).datetime = null;
+        rows.get(6).watt = Double.NaN;
+        rows.get(7).current = -0.0;
+        rows.get(8).kwh = 1.0 / 3;
+        for (LogEntry row : rows) {
+            row.voltage = null;
+        }
+        assertRowsEqual(rows, LogBlockCodec.decode(LogBlockCodec.encode(rows)));
+    }
+
+    @Test
+    public void datetimesNotFromTheTimestamp_areKeptVerbatim() {
+        List<LogEntry> rows = firmwareRows(20, 4);
+        rows.get(2).datetime = "2023-08-21 12:00:05 (EST)";
+        rows.get(3).datetime = "2024-6-1 8:03:00";
+        assertRowsEqual(rows, LogBlockCodec.decode(LogBlockCodec.encode(rows)));
+
+        // A change of UTC offset is still derived
+        List<LogEntry> shifted = firmwareRows(20, 5);
+        for (int i = 10; i < shifted.size(); i++) {
+            shifted.get(i).datetime = LogTime.formatDatetime((shifted.get(i).timestamp + 3600) * 1000, MANILA);
+        }
+        assertRowsEqual(shifted, LogBlockCodec.decode(LogBlockCodec.encode(shifted)));
+    }
+
+    @Test
+    public void decode_keepsOnlyTheRequestedRange() {
+        List<LogEntry> rows = firmwareRows(120, 6);
+        byte[] block = LogBlockCodec.encode(rows);
+        List<LogEntry> decoded = new ArrayList<>();
+        LogBlockCodec.decode(block, START + 600, START + 1199, decoded);
+        assertRowsEqual(rows.subList(10, 20), decoded);
+
+        decoded.clear();
+        LogBlockCodec.decode(block, START + 100000, Long.MAX_VALUE, decoded);
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void encode_sortsRowsAndRejectsDuplicates() {
+        List<LogEntry> rows = firmwareRows(30, 8);
+        List<LogEntry> shuffled = new ArrayList<>(rows);
+        Collections.shuffle(shuffled, new Random(1));
+        assertRowsEqual(rows, LogBlockCodec.decode(LogBlockCodec.encode(shuffled)));
+
+        shuffled.add(rows.get(4));
+        try {
+            LogBlockCodec.encode(shuffled);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void damagedBlocks_areRejected() {
+        byte[] block = LogBlockCodec.encode(firmwareRows(100, 9));
+        try {
+            LogBlockCodec.decode(Arrays.copyOf(block, block.length / 2));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        block[0] = 2;
+        try {
+            LogBlockCodec.decode(block);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // Rows one minute apart, the way the ESP8266 writes them
+    public static List<LogEntry> firmwareRows(int count, long seed) {
+        Random random = new Random(seed);
+        List<LogEntry> rows = new ArrayList<>();
+        double temperature = 28;
+        double kwh = 12.3456;
+        long timestamp = START;
+        for (int i = 0; i < count; i++) {
+            temperature += (random.nextInt(3) - 1) * 0.1;
+            long fanSpeed = temperature > 29 ? 80 : 40;
+            double watt = Math.round((fanSpeed * 0.6 + random.nextGaussian()) * 100) / 100.0;
+            kwh = Math.round((kwh + watt / 60000) * 10000) / 10000.0;
+            rows.add(new LogEntry(timestamp, LogTime.formatDatetime(timestamp * 1000, MANILA),
+                Math.round(temperature * 10) / 10.0, fanSpeed, 230.0, Math.round(watt / 230 * 1000) / 1000.0,
+                watt, kwh));
+            timestamp += 60 + (random.nextInt(20) == 0 ? 1 : 0);
+        }
+        return rows;
+    }
+
+    public static void assertRowsEqual(List<LogEntry> expected, List<LogEntry> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            LogEntry e = expected.get(i);
+            LogEntry a = actual.get(i);
+            String row = "row " + i;
+            assertEquals(row, e.timestamp, a.timestamp);
+            assertEquals(row, e.datetime, a.datetime);
+            assertEquals(row, e.fanSpeed, a.fanSpeed);
+            assertSameBits(row, e.temperature, a.temperature);
+            assertSameBits(row, e.voltage, a.voltage);
+            assertSameBits(row, e.current, a.current);
+            assertSameBits(row, e.watt, a.watt);
+            assertSameBits(row, e.kwh, a.kwh);
+        }
+    }
+
+    private static void assertSameBits(String message, Double expected, Double actual) {
+        if (expected == null) {
+            assertNull(message, actual);
+        } else {
+            assertNotNull(message, actual);
+            assertEquals(message, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogBlocksTest {
+    private static final long START = 1717200000L;
+
+    @Test
+    public void blockStart_alignsToTheBlockSize() {
+        assertEquals(START, LogBlocks.blockStart(START + 3599, LogBlocks.HOUR_SECONDS));
+        assertEquals(START + 3600, LogBlocks.blockStart(START + 3600, LogBlocks.HOUR_SECONDS));
+        assertEquals(START, LogBlocks.blockStart(START + 86399, LogBlocks.DAY_SECONDS));
+        assertEquals(-3600, LogBlocks.blockStart(-1, LogBlocks.HOUR_SECONDS));
+        // A day block that starts before the range can still hold rows in it
+        assertTrue(LogBlocks.firstBlockKey(START + 86399) <= START);
+    }
+
+    @Test
+    public void merge_interleavesBlocksAndRowsInRange() {
+        List<LogEntry> all = LogBlockCodecTest.firmwareRows(180, 11);
+        String firstHour = LogBlockCodec.encodeBase64(all.subList(0, 60));
+        String secondHour = LogBlockCodec.encodeBase64(all.subList(60, 120));
+        List<LogEntry> rows = new ArrayList<>(all.subList(120, 180));
+
+        long from = all.get(30).timestamp;
+        long last = all.get(149).timestamp;
+        List<LogEntry> merged = LogBlocks.merge(rows.subList(0, 30), Arrays.asList(secondHour, firstHour), from, last);
+        LogBlockCodecTest.assertRowsEqual(all.subList(30, 150), merged);
+    }
+
+    @Test
+    public void merge_prefersRowsAndSkipsDamagedBlocks() {
+        List<LogEntry> all = LogBlockCodecTest.firmwareRows(60, 12);
+        String block = LogBlockCodec.encodeBase64(all);
+        LogEntry rewritten = new LogEntry(all.get(10).timestamp, null, 31.5, 100L, null, null, null, null);
+
+        List<LogEntry> merged = LogBlocks.merge(Collections.singletonList(rewritten),
+            Arrays.asList(block, "AAAA", "not base64"), Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(60, merged.size());
+        assertSame(rewritten, merged.get(10));
+        assertEquals(all.get(11).timestamp, merged.get(11).timestamp);
+    }
+
+    @Test
+    public void merge_withoutBlocksReturnsTheRows() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(5, 13);
+        assertSame(rows, LogBlocks.merge(rows, Collections.<String>emptyList(), 0, Long.MAX_VALUE));
+    }
+}
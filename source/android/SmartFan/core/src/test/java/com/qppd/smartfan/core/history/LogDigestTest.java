@@ -0,0 +1,98 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LogDigestTest {
+
+    @Test
+    public void of_ignoresRowOrderButNotAnyField() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(1440, 21);
+        LogDigest digest = LogDigest.of(rows);
+        assertEquals(1440, digest.rows);
+
+        List<LogEntry> shuffled = new ArrayList<>(rows);
+        Collections.reverse(shuffled);
+        assertEquals(digest, LogDigest.of(shuffled));
+        // Packed and unpacked, as the packer and the phone's store do
+        assertEquals(digest, LogDigest.of(LogBlockCodec.decode(LogBlockCodec.encode(rows))));
+
+        LogEntry row = rows.get(700);
+        List<LogEntry> changed = new ArrayList<>(rows);
+        changed.set(700, new LogEntry(row.timestamp, row.datetime, row.temperature, row.fanSpeed,
+            row.voltage, row.current, row.watt, null));
+        assertFalse(digest.equals(LogDigest.of(changed)));
+        changed.set(700, new LogEntry(row.timestamp, row.datetime, row.temperature, row.fanSpeed,
+            row.voltage, row.current, row.watt, row.kwh + 0.001));
+        assertFalse(digest.equals(LogDigest.of(changed)));
+        assertTrue(digest.hash != LogDigest.of(rows.subList(0, 1439)).hash);
+    }
+
+    @Test
+    public void hashHex_roundTrips() {
+        for (long hash : new long[] {0, 1, -1, Long.MIN_VALUE, 0x0123456789ABCDEFL}) {
+            String hex = new LogDigest(1, hash).hashHex();
+            assertEquals(16, hex.length());
+            assertEquals(hash, LogDigest.parseHash(hex));
+        }
+        try {
+            LogDigest.parseHash("abc");
+            fail();
+        } catch (NumberFormatException expected) {
+        }
+    }
+
+    @Test
+    public void appended_returnsOnlyRowsAddedAtTheEnd() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(100, 23);
+        List<LogEntry> before = rows.subList(0, 90);
+        LogBlockCodecTest.assertRowsEqual(rows.subList(90, 100), LogDigests.appended(before, rows));
+        assertTrue(LogDigests.appended(before, before).isEmpty());
+        LogBlockCodecTest.assertRowsEqual(before, LogDigests.appended(Collections.<LogEntry>emptyList(), before));
+
+        List<LogEntry> rewritten = new ArrayList<>(rows);
+        LogEntry row = rows.get(5);
+        rewritten.set(5, new LogEntry(row.timestamp, row.datetime, 35.0, row.fanSpeed,
+            row.voltage, row.current, row.watt, row.kwh));
+        assertNull(LogDigests.appended(before, rewritten));
+        assertNull(LogDigests.appended(before, rows.subList(1, 100)));
+    }
+
+    @Test
+    public void verified_answersOnlyWithDaysMatchingUpstream() {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(3000, 22);
+        final Map<Long, List<LogEntry>> local = new HashMap<>();
+        for (LogEntry row : rows) {
+            long day = LogBlocks.blockStart(row.timestamp, LogBlocks.DAY_SECONDS);
+            if (!local.containsKey(day)) local.put(day, new ArrayList<LogEntry>());
+            local.get(day).add(row);
+        }
+        Map<Long, LogDigest> upstream = LogDigests.byDay(rows);
+        assertEquals(local.keySet(), upstream.keySet());
+        List<Long> days = new ArrayList<>(upstream.keySet());
+        Collections.sort(days);
+
+        // Upstream gained a row on the first day and has no digest for the last one yet
+        LogDigest first = upstream.get(days.get(0));
+        upstream.put(days.get(0), new LogDigest(first.rows + 1, first.hash));
+        upstream.remove(days.get(2));
+
+        PartitionedLogFetch.Cache cache = LogDigests.verified(upstream, new PartitionedLogFetch.Cache() {
+            @Override
+            public List<LogEntry> cachedDay(long dayStartSeconds) {
+                return local.get(dayStartSeconds);
+            }
+        });
+        assertNull(cache.cachedDay(days.get(0)));
+        assertSame(local.get(days.get(1)), cache.cachedDay(days.get(1)));
+        assertSame(local.get(days.get(2)), cache.cachedDay(days.get(2)));
+        assertNull(cache.cachedDay(days.get(2) + LogBlocks.DAY_SECONDS));
+    }
+}
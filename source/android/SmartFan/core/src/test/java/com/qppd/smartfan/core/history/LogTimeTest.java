@@ -0,0 +1,92 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class LogTimeTest {
+    private static final String[] ZONES = {
+        "UTC", "Asia/Manila", "America/New_York", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo"};
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    public void parseDatetime_matchesSimpleDateFormatAcrossZones() throws ParseException {
+        Random random = new Random(11);
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            SimpleDateFormat format = format(zone);
+            for (int i = 0; i < 2000; i++) {
+                String datetime = String.format(Locale.US, "%04d-%02d-%02d %02d:%02d:%02d",
+                    2000 + random.nextInt(36), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+                assertEquals(id + " " + datetime, format.parse(datetime).getTime(),
+                    LogTime.parseDatetime(datetime, zone));
+            }
+        }
+    }
+
+    @Test
+    public void parseDatetime_matchesSimpleDateFormatAroundDstChanges() throws ParseException {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            SimpleDateFormat format = format(zone);
+            // Every quarter hour of 2024 and 2025 local time near an offset change,
+            // covering the skipped and the repeated hours
+            for (long utc = 1704067200000L; utc < 1767225600000L; utc += HOUR) {
+                if (zone.getOffset(utc) == zone.getOffset(utc + 3 * HOUR)) continue;
+                for (long t = utc - 2 * HOUR; t <= utc + 5 * HOUR; t += HOUR / 4) {
+                    String datetime = LogTime.formatDatetime(t, TimeZone.getTimeZone("UTC"));
+                    assertEquals(id + " " + datetime, format.parse(datetime).getTime(),
+                        LogTime.parseDatetime(datetime, zone));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parseDatetime_readsShortFieldsAndIgnoresTrailingText() throws ParseException {
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        SimpleDateFormat format = format(zone);
+        for (String datetime : new String[]{"2024-3-5 7:08:09", "2024-03-05 07:08:09 (EST)", "2024-03-05 07:08:09.250"}) {
+            assertEquals(datetime, format.parse(datetime).getTime(), LogTime.parseDatetime(datetime, zone));
+        }
+    }
+
+    @Test
+    public void parseDatetime_rejectsWhatSimpleDateFormatWouldRollOver() {
+        TimeZone zone = TimeZone.getTimeZone("UTC");
+        for (String datetime : new String[]{"2024-01-01 24:00:00", "2024-13-01 00:00:00", "2024-01-32 00:00:00",
+                " 2024-01-01 00:00:00", "2024-01-01T00:00:00", "2024-01-01 00:00", "", "not a date"}) {
+            assertEquals(datetime, 0, LogTime.parseDatetime(datetime, zone));
+        }
+    }
+
+    @Test
+    public void format_matchesSimpleDateFormat() {
+        Random random = new Random(12);
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            SimpleDateFormat datetime = format(zone);
+            SimpleDateFormat hourMinute = new SimpleDateFormat("HH:mm", Locale.US);
+            hourMinute.setTimeZone(zone);
+            for (int i = 0; i < 2000; i++) {
+                long time = 946684800000L + (long) (random.nextDouble() * 36 * 365 * 24 * HOUR);
+                String formatted = LogTime.formatDatetime(time, zone);
+                assertEquals(datetime.format(time), formatted);
+                assertEquals(hourMinute.format(time), LogTime.formatHourMinute(time, zone));
+            }
+        }
+    }
+
+    private static SimpleDateFormat format(TimeZone zone) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        format.setTimeZone(zone);
+        return format;
+    }
+}
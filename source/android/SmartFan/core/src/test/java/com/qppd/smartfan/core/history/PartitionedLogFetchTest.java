@@ -0,0 +1,119 @@
+package com.qppd.smartfan.core.history;
+
+import com.qppd.smartfan.core.data.RecordingDataSource;
+import com.qppd.smartfan.core.data.Registration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class PartitionedLogFetchTest {
+    private static final long START = 1717200000L;   // 2024-06-01 00:00 UTC
+    private static final long DAY = 86400;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final PartitionedLogFetch.Cache NOTHING_CACHED = new PartitionedLogFetch.Cache() {
+        @Override
+        public List<LogEntry> cachedDay(long dayStartSeconds) {
+            return null;
+        }
+    };
+
+    private static class Days implements PartitionedLogFetch.Listener {
+        final List<Long> delivered = new ArrayList<>();
+        final List<Long> cached = new ArrayList<>();
+        final List<Long> failed = new ArrayList<>();
+        int completed;
+
+        @Override
+        public void onDay(long dayStartSeconds, List<LogEntry> rows, boolean fromCache) {
+            (fromCache ? cached : delivered).add(dayStartSeconds);
+        }
+
+        @Override
+        public void onDayFailed(long dayStartSeconds, Exception error) {
+            failed.add(dayStartSeconds);
+        }
+
+        @Override
+        public void onComplete() {
+            completed++;
+        }
+    }
+
+    @Test
+    public void fetch_requestsTheNewestDaysFirstWithinTheCap() {
+        RecordingDataSource source = new RecordingDataSource();
+        Days days = new Days();
+        new PartitionedLogFetch(source, DIRECT, 2)
+            .fetch("fan", START + DAY / 2, START + 3 * DAY + DAY / 4, NOTHING_CACHED, days);
+
+        assertEquals(2, source.fetches.size());
+        RecordingDataSource.LogFetch newest = source.fetches.poll();
+        assertEquals((START + 3 * DAY) * 1000, newest.fromMillis);
+        assertEquals((START + 3 * DAY + DAY / 4) * 1000, newest.toMillis);
+        assertEquals((START + 2 * DAY) * 1000, source.fetches.peek().fromMillis);
+
+        newest.callback.onSuccess(Collections.<LogEntry>emptyList());
+        assertEquals(2, source.fetches.size());
+        source.fetches.poll().callback.onError(new IllegalStateException("offline"));
+        source.fetches.poll().callback.onSuccess(Collections.<LogEntry>emptyList());
+        RecordingDataSource.LogFetch oldest = source.fetches.poll();
+        assertEquals((START + DAY / 2) * 1000, oldest.fromMillis);
+        assertEquals((START + DAY) * 1000, oldest.toMillis);
+        assertEquals(0, days.completed);
+        oldest.callback.onSuccess(Collections.<LogEntry>emptyList());
+
+        assertEquals(1, days.completed);
+        assertEquals(Arrays.asList(START + 3 * DAY, START + DAY, START), days.delivered);
+        assertEquals(Collections.singletonList(START + 2 * DAY), days.failed);
+    }
+
+    @Test
+    public void fetch_takesCachedDaysFromTheCache() {
+        RecordingDataSource source = new RecordingDataSource();
+        Days days = new Days();
+        new PartitionedLogFetch(source, DIRECT, 4).fetch("fan", START, START + 3 * DAY,
+            new PartitionedLogFetch.Cache() {
+                @Override
+                public List<LogEntry> cachedDay(long dayStartSeconds) {
+                    return dayStartSeconds < START + 2 * DAY ? Collections.<LogEntry>emptyList() : null;
+                }
+            }, days);
+
+        assertEquals(Arrays.asList(START + DAY, START), days.cached);
+        assertEquals(1, source.fetches.size());
+        source.fetches.poll().callback.onSuccess(Collections.<LogEntry>emptyList());
+        assertEquals(1, days.completed);
+    }
+
+    @Test
+    public void remove_stopsQueriesAndDeliveries() {
+        RecordingDataSource source = new RecordingDataSource();
+        Days days = new Days();
+        Registration registration = new PartitionedLogFetch(source, DIRECT, 1)
+            .fetch("fan", START, START + 5 * DAY, NOTHING_CACHED, days);
+        registration.remove();
+
+        source.fetches.poll().callback.onSuccess(Collections.<LogEntry>emptyList());
+        assertTrue(source.fetches.isEmpty());
+        assertTrue(days.delivered.isEmpty());
+        assertEquals(0, days.completed);
+    }
+
+    @Test
+    public void fetch_ofAnEmptyRangeCompletesRightAway() {
+        Days days = new Days();
+        new PartitionedLogFetch(new RecordingDataSource(), DIRECT, 1).fetch("fan", START, START, NOTHING_CACHED, days);
+        assertEquals(1, days.completed);
+    }
+}
@@ -0,0 +1,48 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SeriesSlideTest {
+    @Test
+    public void between_dropsOlderPointsAndAddsNewerOnes() {
+        SeriesSlide slide = SeriesSlide.between(
+            new long[]{1000, 2000, 3000, 4000}, new float[]{30f, 30.5f, 31f, 31.5f},
+            new long[]{3000, 4000, 5000, 6000, 7000}, new float[]{31f, 31.5f, 32f, 32f, 31f});
+
+        assertEquals(2, slide.dropped);
+        assertEquals(0, slide.removed);
+        assertEquals(2, slide.addedFrom);
+    }
+
+    @Test
+    public void between_replacesChangedPointsAtTheEnd() {
+        // The last bucket of a downsampled series took a new low
+        SeriesSlide slide = SeriesSlide.between(
+            new long[]{1000, 2000, 3000, 3500}, new float[]{30f, 30.5f, 31f, 31.5f},
+            new long[]{2000, 3000, 3200, 3900}, new float[]{30.5f, 31f, 30f, 31.5f});
+
+        assertEquals(1, slide.dropped);
+        assertEquals(1, slide.removed);
+        assertEquals(2, slide.addedFrom);
+
+        slide = SeriesSlide.between(
+            new long[]{1000, 2000}, new float[]{30f, 30.5f},
+            new long[]{1000}, new float[]{30f});
+        assertEquals(0, slide.dropped);
+        assertEquals(1, slide.removed);
+        assertEquals(1, slide.addedFrom);
+    }
+
+    @Test
+    public void between_isNullWhenNothingIsKept() {
+        assertNull(SeriesSlide.between(
+            new long[]{1000, 2000, 3000}, new float[]{30f, 30.5f, 31f},
+            new long[]{2000, 3500, 4000}, new float[]{30.6f, 31f, 31.5f}));
+        assertNull(SeriesSlide.between(
+            new long[]{1000, 2000}, new float[]{30f, 30.5f},
+            new long[]{5000}, new float[]{32f}));
+        assertNull(SeriesSlide.between(new long[0], new float[0], new long[]{1000}, new float[]{30f}));
+    }
+}
@@ -0,0 +1,66 @@
+package com.qppd.smartfan.core.history;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class UsageHeatmapTest {
+    private static final TimeZone MANILA = TimeZone.getTimeZone("Asia/Manila");
+
+    @Test
+    public void add_averagesRowsByLocalDayAndHour() {
+        UsageHeatmap heatmap = new UsageHeatmap(millis("2024-03-05 00:00:00"), millis("2024-03-07 00:00:00"), MANILA);
+        heatmap.addAll(Arrays.asList(
+            row("2024-03-05 00:10:00", 30.0, 0L, 0.0),
+            row("2024-03-05 00:40:00", 32.0, 50L, 20.0),
+            row("2024-03-06 23:59:00", 27.0, 100L, null),
+            // Outside the range
+            row("2024-03-07 00:00:00", 40.0, 100L, 50.0)));
+
+        assertEquals(2, heatmap.days());
+        assertEquals(31f, heatmap.value(UsageHeatmap.Quantity.TEMPERATURE, 0, 0), 0.001f);
+        assertEquals(10f, heatmap.value(UsageHeatmap.Quantity.POWER, 0, 0), 0.001f);
+        assertEquals(0.5f, heatmap.value(UsageHeatmap.Quantity.FAN_ON, 0, 0), 0.001f);
+        assertEquals(27f, heatmap.value(UsageHeatmap.Quantity.TEMPERATURE, 1, 23), 0.001f);
+        assertTrue(Float.isNaN(heatmap.value(UsageHeatmap.Quantity.POWER, 1, 23)));
+        assertTrue(Float.isNaN(heatmap.value(UsageHeatmap.Quantity.TEMPERATURE, 0, 1)));
+    }
+
+    @Test
+    public void build_inPartsMatchesOnePass() throws Exception {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(60000, 41);
+        long from = rows.get(0).timestamp * 1000;
+        long to = rows.get(rows.size() - 1).timestamp * 1000 + 1;
+        UsageHeatmap expected = new UsageHeatmap(from, to, MANILA);
+        expected.addAll(rows);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            UsageHeatmap actual = UsageHeatmap.build(rows, from, to, MANILA, executor, 3);
+            assertEquals(expected.days(), actual.days());
+            for (UsageHeatmap.Quantity quantity : UsageHeatmap.Quantity.values()) {
+                for (int day = 0; day < expected.days(); day++) {
+                    for (int hour = 0; hour < UsageHeatmap.HOURS; hour++) {
+                        assertEquals(expected.value(quantity, day, hour), actual.value(quantity, day, hour), 0.001f);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long millis(String datetime) {
+        return LogTime.parseDatetime(datetime, MANILA);
+    }
+
+    private static LogEntry row(String datetime, Double temperature, Long fanSpeed, Double watt) {
+        return new LogEntry(millis(datetime) / 1000, datetime, temperature, fanSpeed, 230.0, null, watt, null);
+    }
+}
@@ -0,0 +1,68 @@
+package com.qppd.smartfan.core.lan;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LanProtocolTest {
+    @Test
+    public void control_roundTrips() {
+        ControlState control = ControlState.manualSpeed(80).withUpdatedAt(1717207200123L);
+        String line = LanProtocol.formatControl(LanProtocol.SET, control);
+        assertEquals("SET 1717207200123 mode=manual fanSpeed=80 manualControl=true", line);
+
+        ControlState parsed = LanProtocol.parseControl(LanProtocol.split(line));
+        assertEquals("manual", parsed.mode);
+        assertEquals(Integer.valueOf(80), parsed.fanSpeed);
+        assertNull(parsed.targetTemperature);
+        assertEquals(Boolean.TRUE, parsed.manualControl);
+        assertEquals(Long.valueOf(1717207200123L), parsed.updatedAt);
+    }
+
+    @Test
+    public void control_skipsUnknownFieldsAndTreatsZeroAsUnstamped() {
+        ControlState parsed = LanProtocol.parseControl(
+            LanProtocol.split("STATE 0 mode=auto targetTemperature=26.50 swing=on fanSpeed=40\r"));
+        assertEquals("auto", parsed.mode);
+        assertEquals(Double.valueOf(26.5), parsed.targetTemperature);
+        assertEquals(Integer.valueOf(40), parsed.fanSpeed);
+        assertNull(parsed.updatedAt);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void control_rejectsMalformedNumbers() {
+        LanProtocol.parseControl(LanProtocol.split("SET 12 fanSpeed=fast"));
+    }
+
+    @Test
+    public void reading_roundTrips() {
+        CurrentReading reading = new CurrentReading(29.5, 71.0, 60, "auto", 240.0, 0.125, 30.0, 1.25, null);
+        String line = LanProtocol.formatReading(reading);
+        assertEquals("READING temperature=29.50 humidity=71.00 fanSpeed=60 mode=auto voltage=240.00 current=0.13"
+            + " watt=30.00 kwh=1.25", line);
+
+        CurrentReading parsed = LanProtocol.parseReading(LanProtocol.split(line), 1717207200L);
+        assertEquals(29.5, parsed.temperature, 1e-9);
+        assertEquals(Integer.valueOf(60), parsed.fanSpeed);
+        assertEquals(30.0, parsed.watt, 1e-9);
+        assertEquals(Long.valueOf(1717207200L), parsed.lastUpdate);
+    }
+
+    @Test
+    public void supersedes_keepsTheNewestChange() {
+        assertTrue(LanProtocol.supersedes(2000L, 1000));
+        assertTrue(LanProtocol.supersedes(1000L, 1000));
+        assertFalse(LanProtocol.supersedes(999L, 1000));
+        assertTrue(LanProtocol.supersedes(null, 1000));
+    }
+
+    @Test
+    public void announcement_isParsed() {
+        LanDevice device = LanDiscovery.parseAnnouncement("SMARTFAN SmartFan_ESP8266_001 4211\n", "192.168.1.20");
+        assertEquals(new LanDevice("SmartFan_ESP8266_001", "192.168.1.20", 4211), device);
+        assertNull(LanDiscovery.parseAnnouncement(LanProtocol.DISCOVER, "192.168.1.2"));
+        assertNull(LanDiscovery.parseAnnouncement("SMARTFAN fan 0", "192.168.1.2"));
+    }
+}
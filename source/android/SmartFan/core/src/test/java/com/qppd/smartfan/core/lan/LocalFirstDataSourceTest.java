@@ -0,0 +1,101 @@
+package com.qppd.smartfan.core.lan;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.RecordingDataSource;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.schedule.VirtualClock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The cloud-only path. The LAN path is tested against the stand-in in {@code :bridge}.
+ */
+public class LocalFirstDataSourceTest {
+    private final RecordingDataSource cloud = new RecordingDataSource();
+    private final VirtualClock clock = new VirtualClock(1717207200000L);
+    private final LocalFirstDataSource dataSource = new LocalFirstDataSource(cloud, clock);
+
+    @Test
+    public void withoutLan_writesStampedChangesToTheCloud() {
+        final List<String> results = new ArrayList<>();
+        dataSource.updateControl("fan", ControlState.manualSpeed(70), record(results));
+        assertEquals(1, results.size());
+        assertFalse(dataSource.isLanConnected("fan"));
+        assertEquals(1, cloud.singleWrites);
+        assertEquals(Integer.valueOf(70), cloud.lastSingleWrite.fanSpeed);
+        assertEquals(Long.valueOf(1717207200000L), cloud.lastSingleWrite.updatedAt);
+
+        // A change the caller stamped keeps its stamp
+        dataSource.updateControl("fan", ControlState.autoMode().withUpdatedAt(5), record(results));
+        assertEquals(Long.valueOf(5), cloud.lastSingleWrite.updatedAt);
+    }
+
+    @Test
+    public void controlObserver_dropsOlderChanges() {
+        final List<ControlState> seen = new ArrayList<>();
+        Registration registration = dataSource.observeControl("fan", collect(seen));
+        DataObserver<ControlState> fromCloud = cloud.controlObservers.get(0);
+
+        fromCloud.onChanged(ControlState.manualSpeed(80).withUpdatedAt(2000));
+        fromCloud.onChanged(ControlState.manualSpeed(40).withUpdatedAt(1000));
+        fromCloud.onChanged(ControlState.manualSpeed(60));
+        assertEquals(2, seen.size());
+        assertEquals(Integer.valueOf(80), seen.get(0).fanSpeed);
+        assertEquals(Integer.valueOf(60), seen.get(1).fanSpeed);
+
+        registration.remove();
+        assertTrue(cloud.controlObservers.isEmpty());
+    }
+
+    @Test
+    public void currentObserver_dropsOlderReadings() {
+        final List<CurrentReading> seen = new ArrayList<>();
+        dataSource.observeCurrent("fan", collect(seen));
+        DataObserver<CurrentReading> fromCloud = cloud.currentObservers.get(0);
+
+        fromCloud.onChanged(reading(20, 1717207260L));
+        fromCloud.onChanged(reading(30, 1717207200L));
+        fromCloud.onChanged(reading(40, 1717207320L));
+        assertEquals(2, seen.size());
+        assertEquals(Integer.valueOf(40), seen.get(1).fanSpeed);
+    }
+
+    private static CurrentReading reading(int fanSpeed, long lastUpdate) {
+        return new CurrentReading(28.0, 60.0, fanSpeed, "auto", 240.0, 0.1, 24.0, 1.0, lastUpdate);
+    }
+
+    private static DataCallback<Void> record(final List<String> results) {
+        return new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                results.add("ok");
+            }
+
+            @Override
+            public void onError(Exception error) {
+                results.add(error.toString());
+            }
+        };
+    }
+
+    private static <T> DataObserver<T> collect(final List<T> values) {
+        return new DataObserver<T>() {
+            @Override
+            public void onChanged(T value) {
+                values.add(value);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                fail(error.toString());
+            }
+        };
+    }
+}
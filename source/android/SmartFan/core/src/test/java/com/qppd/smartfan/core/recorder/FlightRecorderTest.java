@@ -0,0 +1,150 @@
+package com.qppd.smartfan.core.recorder;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.history.LogEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderTest {
+    private static final long START_MILLIS = 1717200000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CurrentReading reading(int i) {
+        return new CurrentReading(28.0 + i * 0.1, 60.5, i % 101, i % 2 == 0 ? "auto" : "manual",
+            230.1, 0.25, 57.5 + i, 12.3456, START_MILLIS / 1000 + i * 2);
+    }
+
+    private File tempFile() {
+        return new File(folder.getRoot(), "recorder.ring");
+    }
+
+    @Test
+    public void read_returnsEveryFieldAfterReopening() throws Exception {
+        File file = tempFile();
+        FlightRecorder recorder = FlightRecorder.open(file, 100);
+        for (int i = 0; i < 10; i++) {
+            recorder.record(START_MILLIS + i * 2000, reading(i));
+        }
+        recorder.record(START_MILLIS + 20000, new CurrentReading(null, null, null, null, null, null, null, null, null));
+        recorder.close();
+
+        FlightRecorder reopened = FlightRecorder.open(file, 100);
+        assertEquals(11, reopened.count());
+        List<RecordedReading> readings = reopened.read(START_MILLIS + 4000);
+        assertEquals(9, readings.size());
+        RecordedReading first = readings.get(0);
+        assertEquals(START_MILLIS + 4000, first.receivedMillis);
+        assertEquals(28.2, first.reading.temperature, 0);
+        assertEquals(60.5, first.reading.humidity, 0);
+        assertEquals(Integer.valueOf(2), first.reading.fanSpeed);
+        assertEquals("auto", first.reading.mode);
+        assertEquals(230.1, first.reading.voltage, 0);
+        assertEquals(0.25, first.reading.current, 0);
+        assertEquals(59.5, first.reading.watt, 0);
+        assertEquals(12.3456, first.reading.kwh, 0);
+        assertEquals(Long.valueOf(START_MILLIS / 1000 + 4), first.reading.lastUpdate);
+        assertEquals("manual", readings.get(1).reading.mode);
+
+        CurrentReading empty = readings.get(8).reading;
+        assertNull(empty.temperature);
+        assertNull(empty.fanSpeed);
+        assertNull(empty.mode);
+        assertNull(empty.lastUpdate);
+    }
+
+    @Test
+    public void record_overwritesTheOldestWhenFull() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(tempFile(), 16);
+        for (int i = 0; i < 50; i++) {
+            recorder.record(START_MILLIS + i, reading(i));
+        }
+        List<RecordedReading> readings = recorder.read(0);
+        assertEquals(16, readings.size());
+        assertEquals(START_MILLIS + 34, readings.get(0).receivedMillis);
+        assertEquals(START_MILLIS + 49, readings.get(15).receivedMillis);
+    }
+
+    @Test
+    public void open_startsOverForAnotherCapacity() throws Exception {
+        File file = tempFile();
+        FlightRecorder recorder = FlightRecorder.open(file, 8);
+        recorder.record(START_MILLIS, reading(0));
+        recorder.close();
+
+        FlightRecorder resized = FlightRecorder.open(file, 32);
+        assertEquals(0, resized.count());
+        assertTrue(resized.read(0).isEmpty());
+    }
+
+    @Test
+    public void read_skipsATornRecord() throws Exception {
+        File file = tempFile();
+        FlightRecorder recorder = FlightRecorder.open(file, 8);
+        for (int i = 0; i < 3; i++) {
+            recorder.record(START_MILLIS + i, reading(i));
+        }
+        recorder.close();
+        // The system went down after the count was stored but before the last record's end was
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(64 + 2 * FlightRecorder.RECORD_SIZE + 88);
+            raw.writeLong(-1);
+        }
+
+        List<RecordedReading> readings = FlightRecorder.open(file, 8).read(0);
+        assertEquals(2, readings.size());
+        assertEquals(START_MILLIS + 1, readings.get(1).receivedMillis);
+    }
+
+    @Test
+    public void read_keepsUpWithAConcurrentRecorder() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(tempFile(), 64);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200000; i++) {
+                recorder.record(i, reading(i));
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            List<RecordedReading> readings = recorder.read(0);
+            for (int i = 1; i < readings.size(); i++) {
+                long received = readings.get(i).receivedMillis;
+                assertTrue(received > readings.get(i - 1).receivedMillis);
+                // Every field belongs to the same reading
+                assertEquals(received % 101, (long) readings.get(i).reading.fanSpeed);
+            }
+        }
+        writer.join();
+        assertEquals(64, recorder.read(0).size());
+    }
+
+    @Test
+    public void toLogEntries_fillInBetweenLoggedRows() {
+        List<RecordedReading> readings = Arrays.asList(
+            new RecordedReading(START_MILLIS, reading(0)),
+            new RecordedReading(START_MILLIS + 500, reading(0)),
+            new RecordedReading(START_MILLIS + 2000, reading(1)),
+            new RecordedReading(START_MILLIS + 4000, new CurrentReading(30.0, null, 50, null, null, null, null, null, null)));
+        List<LogEntry> recorded = FlightRecorder.toLogEntries(readings);
+        assertEquals(3, recorded.size());
+        assertEquals(Long.valueOf(START_MILLIS / 1000 + 2), recorded.get(1).timestamp);
+        assertEquals(Long.valueOf(1), recorded.get(1).fanSpeed);
+        assertEquals(Long.valueOf(START_MILLIS / 1000 + 4), recorded.get(2).timestamp);
+
+        LogEntry logged = new LogEntry(START_MILLIS / 1000 + 2, null, 29.0, 40L, null, null, null, null);
+        LogEntry older = new LogEntry(START_MILLIS / 1000 - 60, null, 27.0, 40L, null, null, null, null);
+        List<LogEntry> merged = FlightRecorder.mergeWithLogs(Arrays.asList(logged, older), recorded);
+        assertEquals(4, merged.size());
+        assertSame(older, merged.get(0));
+        assertSame(logged, merged.get(2));
+    }
+}
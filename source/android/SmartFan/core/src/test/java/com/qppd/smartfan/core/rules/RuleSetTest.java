@@ -0,0 +1,134 @@
+package com.qppd.smartfan.core.rules;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RuleSetTest {
+    private static final long MINUTE = 60000;
+
+    @Test
+    public void sustainedRule_triggersOnceAfterTheWindow() {
+        RuleSet.State state = RuleSet.compile(Arrays.asList(
+            Rule.parse("hot", "temperature > 29 and humidity > 70 for 5m: speed 80"))).newState();
+        List<String> triggered = new ArrayList<>();
+        RuleSet.Listener listener = recordingTo(triggered);
+
+        assertEquals(0, state.evaluate("fan", reading(30, 75, 40), 0, listener));
+        assertEquals(0, state.evaluate("fan", reading(30, 75, 40), 4 * MINUTE, listener));
+        assertEquals(1, state.evaluate("fan", reading(30, 75, 40), 5 * MINUTE, listener));
+        assertEquals(0, state.evaluate("fan", reading(31, 80, 40), 6 * MINUTE, listener));
+        assertEquals(Arrays.asList("fan:hot"), triggered);
+    }
+
+    @Test
+    public void interruptedCondition_restartsTheWindow() {
+        RuleSet.State state = RuleSet.compile(Arrays.asList(
+            Rule.parse("hot", "temperature > 29 for 5m: speed 80"))).newState();
+        assertEquals(0, state.evaluate("fan", reading(30, 50, 40), 0, null));
+        assertEquals(0, state.evaluate("fan", reading(29, 50, 40), 3 * MINUTE, null));
+        assertEquals(0, state.evaluate("fan", reading(30, 50, 40), 4 * MINUTE, null));
+        assertEquals(0, state.evaluate("fan", reading(30, 50, 40), 8 * MINUTE, null));
+        assertEquals(1, state.evaluate("fan", reading(30, 50, 40), 9 * MINUTE, null));
+        // Clearing and holding again triggers again
+        assertEquals(0, state.evaluate("fan", reading(20, 50, 40), 10 * MINUTE, null));
+        assertEquals(0, state.evaluate("fan", reading(35, 50, 40), 11 * MINUTE, null));
+        assertEquals(1, state.evaluate("fan", reading(35, 50, 40), 16 * MINUTE, null));
+    }
+
+    @Test
+    public void thresholds_treatEqualityByOperator() {
+        RuleSet rules = RuleSet.compile(Arrays.asList(
+            Rule.parse("gt", "temperature > 25: auto"),
+            Rule.parse("ge", "temperature >= 25: auto"),
+            Rule.parse("lt", "temperature < 25: auto"),
+            Rule.parse("le", "temperature <= 25: auto")));
+        assertEquals(Arrays.asList("ge", "le"), triggeredBy(rules, reading(25, 0, 0)));
+        assertEquals(Arrays.asList("gt", "ge"), triggeredBy(rules, reading(25.01, 0, 0)));
+        assertEquals(Arrays.asList("lt", "le"), triggeredBy(rules, reading(-0.0, 0, 0)));
+        assertEquals(new ArrayList<String>(), triggeredBy(rules, new CurrentReading(
+            null, 50.0, 40, "auto", null, null, null, null, null)));
+    }
+
+    @Test
+    public void baseline_followsTheDeviceAverage() {
+        RuleSet.State state = RuleSet.compile(Arrays.asList(
+            Rule.parse("power", "watt > baseline * 1.3: alert High power")), 10 * MINUTE).newState();
+        // Settle around 40 W, the first reading only seeds the baseline
+        for (int i = 0; i < 60; i++) {
+            assertEquals(0, state.evaluate("fan", reading(28, 60, 40), i * MINUTE, null));
+        }
+        assertEquals(40, state.getBaseline(Metric.WATT), 1e-9);
+        assertEquals(0, state.evaluate("fan", reading(28, 60, 50), 60 * MINUTE, null));
+        assertEquals(1, state.evaluate("fan", reading(28, 60, 60), 61 * MINUTE, null));
+        // A lasting rise becomes the new normal
+        for (int i = 62; i < 200; i++) {
+            state.evaluate("fan", reading(28, 60, 60), i * MINUTE, null);
+        }
+        assertEquals(60, state.getBaseline(Metric.WATT), 0.01);
+        assertEquals(0, state.evaluate("fan", reading(28, 60, 70), 200 * MINUTE, null));
+    }
+
+    @Test
+    public void manyRules_matchDirectEvaluation() {
+        Random random = new Random(7);
+        String[] fields = {"temperature", "humidity", "watt", "fanSpeed"};
+        String[] operators = {">", ">=", "<", "<="};
+        List<Rule> rules = new ArrayList<>();
+        for (int r = 0; r < 150; r++) {
+            StringBuilder text = new StringBuilder();
+            for (int c = 0, conditions = 1 + random.nextInt(3); c < conditions; c++) {
+                if (c > 0) text.append(" and ");
+                text.append(fields[random.nextInt(fields.length)]).append(' ')
+                    .append(operators[random.nextInt(operators.length)]).append(' ').append(random.nextInt(20) * 5);
+            }
+            rules.add(Rule.parse("r" + r, text.append(": auto").toString()));
+        }
+        RuleSet ruleSet = RuleSet.compile(rules);
+        assertTrue(ruleSet.getConditionCount() > 64);
+
+        for (int i = 0; i < 2000; i++) {
+            CurrentReading reading = new CurrentReading((double) random.nextInt(100), (double) random.nextInt(100),
+                random.nextInt(100), "auto", null, null, random.nextBoolean() ? null : (double) random.nextInt(100),
+                null, null);
+            List<String> expected = new ArrayList<>();
+            for (Rule rule : rules) {
+                boolean all = true;
+                for (Condition condition : rule.conditions) {
+                    all &= condition.operator.test(condition.metric.of(reading), condition.value);
+                }
+                if (all) expected.add(rule.name);
+            }
+            assertEquals(expected, triggeredBy(ruleSet, reading));
+        }
+    }
+
+    private static List<String> triggeredBy(RuleSet rules, CurrentReading reading) {
+        List<String> triggered = new ArrayList<>();
+        rules.newState().evaluate("fan", reading, 0, recordingTo(triggered));
+        List<String> names = new ArrayList<>();
+        for (String entry : triggered) {
+            names.add(entry.substring("fan:".length()));
+        }
+        return names;
+    }
+
+    private static RuleSet.Listener recordingTo(final List<String> triggered) {
+        return new RuleSet.Listener() {
+            @Override
+            public void onTriggered(String deviceId, Rule rule, CurrentReading reading) {
+                triggered.add(deviceId + ":" + rule.name);
+            }
+        };
+    }
+
+    private static CurrentReading reading(double temperature, double humidity, double watt) {
+        return new CurrentReading(temperature, humidity, 40, "auto", 220.0, watt / 220, watt, 1.0, null);
+    }
+}
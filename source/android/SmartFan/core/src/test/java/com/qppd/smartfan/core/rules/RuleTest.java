@@ -0,0 +1,53 @@
+package com.qppd.smartfan.core.rules;
+
+import com.qppd.smartfan.core.data.ControlState;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RuleTest {
+    @Test
+    public void parse_readsConditionsSustainAndAction() {
+        Rule rule = Rule.parse("hot", "temperature > 29 and humidity >= 70.5 for 5m: speed 80");
+        assertEquals(2, rule.conditions.size());
+        assertEquals(Condition.threshold(Metric.TEMPERATURE, Condition.Operator.GREATER, 29), rule.conditions.get(0));
+        assertEquals(Condition.threshold(Metric.HUMIDITY, Condition.Operator.GREATER_OR_EQUAL, 70.5),
+            rule.conditions.get(1));
+        assertEquals(300000, rule.sustainMillis);
+        assertFalse(rule.action.isAlert());
+        assertEquals(ControlState.MODE_MANUAL, rule.action.control.mode);
+        assertEquals(Integer.valueOf(80), rule.action.control.fanSpeed);
+        assertEquals("temperature > 29 and humidity >= 70.5 for 5m: speed 80", rule.toString());
+    }
+
+    @Test
+    public void parse_readsBaselineAndAlert() {
+        Rule rule = Rule.parse("power", "watt>baseline*1.3: alert Power use: above normal");
+        assertEquals(Condition.baseline(Metric.WATT, Condition.Operator.GREATER, 1.3), rule.conditions.get(0));
+        assertEquals(0, rule.sustainMillis);
+        assertEquals("Power use: above normal", rule.action.alert);
+        assertEquals(Condition.baseline(Metric.WATT, Condition.Operator.LESS, 0.5),
+            Rule.parse("low", "WATT < baseline × 0.5 for 30s: auto").conditions.get(0));
+    }
+
+    @Test
+    public void parse_readsOtherActions() {
+        assertTrue(Rule.parse("a", "fanSpeed <= 0: auto").action.control.isAutoMode());
+        assertEquals(Double.valueOf(26), Rule.parse("t", "temperature < 22 for 1h: target 26").action.control.targetTemperature);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsUnknownField() {
+        Rule.parse("x", "pressure > 3: auto");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsDurationWithoutUnit() {
+        Rule.parse("x", "temperature > 30 for 5: auto");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsSpeedOutOfRange() {
+        Rule.parse("x", "temperature > 30: speed 120");
+    }
+}
@@ -0,0 +1,173 @@
+package com.qppd.smartfan.core.schedule;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.RecordingDataSource;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TimeZone;
+
+import static com.qppd.smartfan.core.schedule.ScheduleTest.utc;
+import static org.junit.Assert.*;
+
+public class ScheduleEngineTest {
+    private static final TimeZone MANILA = TimeZone.getTimeZone("GMT+08:00");
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final RecordingDataSource dataSource = new RecordingDataSource();
+    // Monday 2024-06-10 06:00 local
+    private final VirtualClock clock = new VirtualClock(utc(2024, 6, 9, 22, 0));
+
+    @Test
+    public void dueSchedules_areWrittenTogether() {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        for (int i = 0; i < 50; i++) {
+            engine.add(Schedule.weekly("fan" + i, Schedule.WEEKDAYS, 7, 0, MANILA, ControlState.manualSpeed(60)));
+        }
+        assertEquals(clock.currentTimeMillis() + HOUR, engine.nextFireMillis());
+        assertTrue(engine.runDue().isEmpty());
+        assertTrue(dataSource.multiWrites.isEmpty());
+
+        clock.advance(HOUR);
+        Map<String, ControlState> fired = engine.runDue();
+        assertEquals(50, fired.size());
+        assertEquals(1, dataSource.multiWrites.size());
+        assertEquals(60, (int) dataSource.multiWrites.get(0).get("fan7").fanSpeed);
+        // Tuesday 07:00
+        assertEquals(clock.currentTimeMillis() + 24 * HOUR, engine.nextFireMillis());
+        assertEquals(50, engine.getActiveCount());
+    }
+
+    @Test
+    public void missedOccurrences_fireTheLatestOnceInOrder() {
+        // The engine was down from Saturday 06:00 until Monday 06:00
+        long watermark = clock.currentTimeMillis() - 48 * HOUR;
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock, watermark);
+        engine.add(Schedule.weekly("fan", Schedule.EVERY_DAY, 22, 0, MANILA, ControlState.autoMode()));
+        engine.add(Schedule.weekly("fan", Schedule.EVERY_DAY, 8, 0, MANILA, ControlState.manualSpeed(70)));
+        engine.add(Schedule.weekly("other", Schedule.EVERY_DAY, 8, 0, MANILA, ControlState.manualSpeed(40))
+            .withMisfire(Schedule.Misfire.SKIP));
+
+        Map<String, ControlState> fired = engine.runDue();
+        // Sunday 22:00 came after Sunday 08:00, so auto mode wins
+        assertEquals(1, fired.size());
+        assertEquals(ControlState.MODE_AUTO, fired.get("fan").mode);
+        assertEquals(Boolean.FALSE, fired.get("fan").manualControl);
+        assertEquals(2, engine.getFiredCount());
+        assertEquals(clock.currentTimeMillis() + 2 * HOUR, engine.nextFireMillis());
+    }
+
+    @Test
+    public void lateTick_withinGraceStillFires() {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        engine.add(Schedule.weekly("fan", Schedule.EVERY_DAY, 7, 0, MANILA, ControlState.manualSpeed(60))
+            .withMisfire(Schedule.Misfire.SKIP));
+        clock.advance(HOUR + 30000);
+        assertEquals(1, engine.runDue().size());
+    }
+
+    @Test
+    public void boostAndSleepTimer() {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        ScheduleEngine.Handle restore = engine.boost("fan", 100, 15 * MINUTE, ControlState.autoMode());
+        engine.sleepTimer("bedroom", 30 * MINUTE);
+
+        assertEquals(100, (int) engine.runDue().get("fan").fanSpeed);
+        clock.advance(15 * MINUTE);
+        assertEquals(ControlState.MODE_AUTO, engine.runDue().get("fan").mode);
+        assertFalse(restore.isActive());
+        clock.advance(15 * MINUTE);
+        assertEquals(0, (int) engine.runDue().get("bedroom").fanSpeed);
+        assertEquals(0, engine.getActiveCount());
+        assertEquals(Long.MAX_VALUE, engine.nextFireMillis());
+    }
+
+    @Test
+    public void cancelledSchedule_doesNotFire() {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        ScheduleEngine.Handle handle = engine.sleepTimer("fan", MINUTE);
+        engine.sleepTimer("other", 2 * MINUTE);
+        handle.cancel();
+        assertEquals(1, engine.getActiveCount());
+        assertEquals(clock.currentTimeMillis() + 2 * MINUTE, engine.nextFireMillis());
+        clock.advance(2 * MINUTE);
+        assertFalse(engine.runDue().containsKey("fan"));
+    }
+
+    @Test
+    public void failedWrite_isRetriedUnderNewerChanges() {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        engine.add(Schedule.once("fan", clock.currentTimeMillis(), new ControlState(null, 30, 27.0, null)));
+        dataSource.failNextWrites = 1;
+        engine.runDue();
+        assertEquals(1, engine.getWriteErrors());
+        assertEquals(clock.currentTimeMillis() + ScheduleEngine.RETRY_DELAY_MILLIS, engine.nextFireMillis());
+
+        engine.add(Schedule.once("fan", clock.currentTimeMillis() + 1000, ControlState.manualSpeed(80)));
+        clock.advance(ScheduleEngine.RETRY_DELAY_MILLIS);
+        engine.runDue();
+        ControlState retried = dataSource.multiWrites.get(1).get("fan");
+        assertEquals(80, (int) retried.fanSpeed);
+        assertEquals(27.0, retried.targetTemperature, 0);
+        assertEquals(Long.MAX_VALUE, engine.nextFireMillis());
+    }
+
+    @Test
+    public void changesFiredDuringAWrite_followIt() {
+        dataSource.holdWrites = true;
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        engine.sleepTimer("fan", 0);
+        engine.runDue();
+        engine.add(Schedule.once("fan", clock.currentTimeMillis() + 1000, ControlState.manualSpeed(40)));
+        clock.advance(1000);
+        engine.runDue();
+        assertEquals(1, dataSource.multiWrites.size());
+
+        dataSource.held.poll().onSuccess(null);
+        assertEquals(2, dataSource.multiWrites.size());
+        assertEquals(40, (int) dataSource.multiWrites.get(1).get("fan").fanSpeed);
+    }
+
+    @Test
+    public void clockGoingBack_doesNotFireTwice() {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        engine.add(Schedule.weekly("fan", Schedule.EVERY_DAY, 7, 0, MANILA, ControlState.manualSpeed(60)));
+        clock.advance(HOUR);
+        assertEquals(1, engine.runDue().size());
+        clock.advance(-10 * MINUTE);
+        assertTrue(engine.runDue().isEmpty());
+        clock.advance(20 * MINUTE);
+        assertTrue(engine.runDue().isEmpty());
+    }
+
+    @Test
+    public void manySchedules_onlyDueOnesAreTouched() {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, clock);
+        for (int i = 0; i < 10000; i++) {
+            engine.add(Schedule.weekly("fan" + i, Schedule.EVERY_DAY, i % 24, i % 60, MANILA,
+                ControlState.manualSpeed(i % 101)));
+        }
+        int firedInADay = 0;
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            clock.advance(MINUTE);
+            firedInADay += engine.runDue().size();
+        }
+        assertEquals(10000, firedInADay);
+        assertEquals(10000, engine.getActiveCount());
+    }
+
+    @Test
+    public void runner_firesInRealTime() throws Exception {
+        ScheduleEngine engine = new ScheduleEngine(dataSource, Clock.SYSTEM);
+        try (ScheduleRunner runner = new ScheduleRunner(engine, Clock.SYSTEM)) {
+            runner.start();
+            engine.sleepTimer("fan", 100);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (engine.getFiredCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(1, engine.getFiredCount());
+    }
+}
@@ -0,0 +1,77 @@
+package com.qppd.smartfan.core.schedule;
+
+import com.qppd.smartfan.core.data.ControlState;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class ScheduleTest {
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    private static final TimeZone MANILA = TimeZone.getTimeZone("GMT+08:00");
+
+    @Test
+    public void weekly_firesAtLocalTimeOnChosenDays() {
+        Schedule schedule = Schedule.weekly("fan", Schedule.WEEKDAYS, 7, 0, MANILA, ControlState.manualSpeed(60));
+        // Friday 2024-06-07 08:00 local, so the next weekday is Monday
+        long friday = utc(2024, 6, 7, 0, 0);
+        assertEquals(utc(2024, 6, 9, 23, 0), schedule.nextAfter(friday));
+        assertEquals(utc(2024, 6, 6, 23, 0), schedule.latestAtOrBefore(friday));
+        // An occurrence is not after itself
+        assertEquals(utc(2024, 6, 9, 23, 0), schedule.nextAfter(utc(2024, 6, 6, 23, 0)));
+        assertEquals(utc(2024, 6, 6, 23, 0), schedule.latestAtOrBefore(utc(2024, 6, 6, 23, 0)));
+    }
+
+    @Test
+    public void weekly_keepsWallTimeAcrossDstChanges() {
+        Schedule schedule = Schedule.weekly("fan", Schedule.EVERY_DAY, 7, 0, NEW_YORK, ControlState.autoMode());
+        long saturday = schedule.nextAfter(utc(2024, 3, 9, 0, 0));
+        long sunday = schedule.nextAfter(saturday);
+        assertEquals(utc(2024, 3, 9, 12, 0), saturday);   // EST
+        assertEquals(utc(2024, 3, 10, 11, 0), sunday);    // EDT
+        assertEquals(23 * 3600000L, sunday - saturday);
+    }
+
+    @Test
+    public void skippedTime_firesAfterTheGap() {
+        Schedule schedule = Schedule.weekly("fan", Schedule.EVERY_DAY, 2, 30, NEW_YORK, ControlState.autoMode());
+        // 02:30 does not exist on 2024-03-10; it fires at 03:30 EDT
+        long skipped = schedule.nextAfter(utc(2024, 3, 10, 0, 0));
+        assertEquals(utc(2024, 3, 10, 7, 30), skipped);
+        assertEquals(utc(2024, 3, 11, 6, 30), schedule.nextAfter(skipped));
+    }
+
+    @Test
+    public void repeatedTime_firesOnce() {
+        Schedule schedule = Schedule.weekly("fan", Schedule.EVERY_DAY, 1, 30, NEW_YORK, ControlState.autoMode());
+        // 01:30 happens twice on 2024-11-03, at 05:30Z (EDT) and 06:30Z (EST)
+        long first = schedule.nextAfter(utc(2024, 11, 3, 0, 0));
+        assertEquals(utc(2024, 11, 3, 5, 30), first);
+        assertEquals(utc(2024, 11, 4, 6, 30), schedule.nextAfter(first));
+        assertEquals(first, schedule.latestAtOrBefore(utc(2024, 11, 3, 6, 45)));
+    }
+
+    @Test
+    public void once_firesOnlyAtItsInstant() {
+        Schedule schedule = Schedule.once("fan", 5000, ControlState.manualSpeed(0));
+        assertEquals(5000, schedule.nextAfter(4999));
+        assertEquals(Long.MAX_VALUE, schedule.nextAfter(5000));
+        assertEquals(Long.MIN_VALUE, schedule.latestAtOrBefore(4999));
+        assertEquals(5000, schedule.latestAtOrBefore(9000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weekly_needsADay() {
+        Schedule.weekly("fan", 0, 7, 0, MANILA, ControlState.autoMode());
+    }
+
+    static long utc(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
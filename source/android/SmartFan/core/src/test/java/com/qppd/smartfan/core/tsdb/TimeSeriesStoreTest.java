@@ -0,0 +1,142 @@
+package com.qppd.smartfan.core.tsdb;
+
+import com.qppd.smartfan.core.history.LogBlockCodecTest;
+import com.qppd.smartfan.core.history.LogEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimeSeriesStoreTest {
+    private static final String DEVICE = "SmartFan_ESP8266_001";
+    private static final long DAY = 86400;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void scan_returnsTheRowsInRangeFromTheOverlappingDays() throws Exception {
+        // Just over two days from midnight UTC
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(3000, 1);
+        TimeSeriesStore store = new TimeSeriesStore(new MemoryChunkStorage());
+        store.appendAll(DEVICE, rows);
+        store.flush();
+
+        assertEquals(3, store.chunkCount(DEVICE));
+        LogBlockCodecTest.assertRowsEqual(rows, store.scan(DEVICE, Long.MIN_VALUE, Long.MAX_VALUE));
+        LogBlockCodecTest.assertRowsEqual(rows.subList(100, 2901),
+            store.scan(DEVICE, rows.get(100).timestamp, rows.get(2900).timestamp));
+        assertTrue(store.scan(DEVICE, 0, rows.get(0).timestamp - 1).isEmpty());
+        assertTrue(store.scan("other", 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void append_writesEachDayWhenTheNextOneBegins() throws Exception {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(3000, 2);
+        TimeSeriesStore store = new TimeSeriesStore(new MemoryChunkStorage());
+        int firstOfDay2 = firstAtOrAfter(rows, rows.get(0).timestamp + DAY);
+
+        store.appendAll(DEVICE, rows.subList(0, firstOfDay2));
+        assertEquals(0, store.chunkCount(DEVICE));
+        assertFalse(store.hasDay(DEVICE, rows.get(0).timestamp));
+        store.append(DEVICE, rows.get(firstOfDay2));
+        assertEquals(1, store.chunkCount(DEVICE));
+        assertTrue(store.hasDay(DEVICE, rows.get(0).timestamp));
+        assertFalse(store.hasDay(DEVICE, rows.get(firstOfDay2).timestamp));
+        // Rows that are still waiting are scanned too
+        LogBlockCodecTest.assertRowsEqual(rows.subList(0, firstOfDay2 + 1), store.scan(DEVICE, 0, Long.MAX_VALUE));
+        assertEquals(rows.get(firstOfDay2).timestamp, store.latestTimestamp(DEVICE));
+    }
+
+    @Test
+    public void compact_mergesLateRowsIntoOneChunkPerDay() throws Exception {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(3000, 3);
+        TimeSeriesStore store = new TimeSeriesStore(new MemoryChunkStorage());
+        store.appendAll(DEVICE, rows);
+        store.flush();
+
+        LogEntry rewritten = new LogEntry(rows.get(10).timestamp, null, 31.5, 100L, null, null, null, null);
+        LogEntry backfilled = new LogEntry(rows.get(10).timestamp + 7, null, 30.0, 50L, null, null, null, null);
+        store.append(DEVICE, backfilled);
+        store.append(DEVICE, rewritten);
+        store.flush();
+        assertEquals(4, store.chunkCount(DEVICE));
+
+        List<LogEntry> expected = new ArrayList<>(rows);
+        expected.set(10, rewritten);
+        expected.add(11, backfilled);
+        LogBlockCodecTest.assertRowsEqual(expected, store.scan(DEVICE, 0, Long.MAX_VALUE));
+
+        assertEquals(1, store.compact());
+        assertEquals(3, store.chunkCount(DEVICE));
+        assertEquals(0, store.compact());
+        LogBlockCodecTest.assertRowsEqual(expected, store.scan(DEVICE, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void reopen_findsTheChunksOnDisk() throws Exception {
+        File directory = folder.newFolder("tsdb");
+        String deviceId = "Fan #1/é.";
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(2000, 4);
+        TimeSeriesStore store = new TimeSeriesStore(new FileChunkStorage(directory));
+        store.appendAll(deviceId, rows);
+        store.flush();
+
+        TimeSeriesStore reopened = new TimeSeriesStore(new FileChunkStorage(directory));
+        LogBlockCodecTest.assertRowsEqual(rows, reopened.scan(deviceId, 0, Long.MAX_VALUE));
+        assertEquals(rows.get(1999).timestamp, reopened.latestTimestamp(deviceId));
+        assertNull(reopened.latestTimestamp(DEVICE));
+    }
+
+    @Test
+    public void scan_skipsDamagedChunks() throws Exception {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(3000, 5);
+        MemoryChunkStorage storage = new MemoryChunkStorage();
+        TimeSeriesStore store = new TimeSeriesStore(storage);
+        store.appendAll(DEVICE, rows);
+        store.flush();
+        long firstDay = rows.get(0).timestamp;
+        storage.write(new TimeSeriesStore.Chunk(DEVICE, firstDay, 0).name, new byte[] {1, 2, 3});
+
+        List<LogEntry> scanned = new TimeSeriesStore(storage).scan(DEVICE, 0, Long.MAX_VALUE);
+        assertEquals(rows.get(firstAtOrAfter(rows, firstDay + DAY)).timestamp, scanned.get(0).timestamp);
+        assertEquals(rows.get(2999).timestamp, scanned.get(scanned.size() - 1).timestamp);
+    }
+
+    @Test
+    public void deleteDaysBefore_dropsWholeDays() throws Exception {
+        List<LogEntry> rows = LogBlockCodecTest.firmwareRows(3000, 6);
+        MemoryChunkStorage storage = new MemoryChunkStorage();
+        TimeSeriesStore store = new TimeSeriesStore(storage);
+        store.appendAll(DEVICE, rows);
+        store.flush();
+
+        long secondDay = rows.get(0).timestamp + DAY;
+        assertEquals(1, store.deleteDaysBefore(DEVICE, secondDay + 100));
+        assertEquals(2, storage.list().size());
+        assertEquals(rows.get(firstAtOrAfter(rows, secondDay)).timestamp,
+            store.scan(DEVICE, 0, Long.MAX_VALUE).get(0).timestamp);
+    }
+
+    @Test
+    public void chunkNames_roundTripAnyDeviceId() {
+        TimeSeriesStore.Chunk chunk = TimeSeriesStore.Chunk.parse(new TimeSeriesStore.Chunk("a.b %/ü", -DAY, 7).name);
+        assertEquals("a.b %/ü", chunk.deviceId);
+        assertEquals(-DAY, chunk.day);
+        assertEquals(7, chunk.sequence);
+        assertNull(TimeSeriesStore.Chunk.parse("notes.txt"));
+    }
+
+    private static int firstAtOrAfter(List<LogEntry> rows, long timestamp) {
+        int index = 0;
+        while (rows.get(index).timestamp < timestamp) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,217 @@
+package com.qppd.smartfan.fleet;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.history.LogTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rolling fleet aggregates maintained incrementally from devices' current updates.
+ *
+ * Every device has a slot holding what it contributes to the totals. An update locks only
+ * its own slot, replaces the slot's contribution and adds the difference to shared
+ * {@link LongAdder}s, so updates of different devices never contend and reading the totals
+ * is lock-free. Sums are kept in fixed point (milliwatts, micro-kWh) so that millions of
+ * add-and-subtract cycles do not drift.
+ *
+ * A device counts as online while its last update, by its own lastUpdate timestamp, is
+ * younger than the staleness limit. Going offline needs no update, so
+ * {@link #expireStale(long)} has to be called periodically; it visits every slot.
+ *
+ * kWh today is built from increases of each device's kwh counter, which the firmware keeps
+ * in RAM and resets on reboot: a drop is read as a restart from zero. The first update seen
+ * from a device only sets its baseline.
+ */
+public class FleetAggregator {
+    private static final long DAY_MILLIS = 86400000L;
+
+    private final Settings settings;
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final LongAdder online = new LongAdder();
+    private final LongAdder overThreshold = new LongAdder();
+    private final LongAdder milliwatts = new LongAdder();
+    // Micro-kWh per local day; only today and yesterday are kept
+    private final ConcurrentHashMap<Long, LongAdder> microKwhByDay = new ConcurrentHashMap<>();
+    private final LongAdder updates = new LongAdder();
+
+    /**
+     * Thresholds of the aggregates. Immutable.
+     */
+    public static final class Settings {
+        final double temperatureThreshold;
+        final long staleAfterMillis;
+        final TimeZone zone;
+
+        public Settings() {
+            // Three missed DATA_SEND_INTERVALs; days in the devices' GMT+8
+            this(30.0, 180000, TimeZone.getTimeZone("GMT+08:00"));
+        }
+
+        private Settings(double temperatureThreshold, long staleAfterMillis, TimeZone zone) {
+            if (staleAfterMillis <= 0) {
+                throw new IllegalArgumentException("staleAfterMillis must be positive");
+            }
+            this.temperatureThreshold = temperatureThreshold;
+            this.staleAfterMillis = staleAfterMillis;
+            this.zone = zone;
+        }
+
+        /**
+         * Devices reading strictly above this count as over threshold.
+         */
+        public Settings withTemperatureThreshold(double celsius) {
+            return new Settings(celsius, staleAfterMillis, zone);
+        }
+
+        public Settings withStaleAfter(long millis) {
+            return new Settings(temperatureThreshold, millis, zone);
+        }
+
+        /**
+         * Zone whose midnight resets kWh today.
+         */
+        public Settings withZone(TimeZone dayZone) {
+            return new Settings(temperatureThreshold, staleAfterMillis, dayZone);
+        }
+    }
+
+    // Guarded by its own monitor
+    private static final class Slot {
+        long lastSeenMillis;
+        boolean online;
+        boolean overThreshold;
+        long milliwatts;
+        long lastMicroKwh = -1;
+        boolean removed;
+    }
+
+    public FleetAggregator(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Applies a device's new current node. A null reading (the node was deleted) removes the
+     * device.
+     */
+    public void ingest(String deviceId, CurrentReading reading, long nowMillis) {
+        if (reading == null) {
+            remove(deviceId);
+            return;
+        }
+        updates.increment();
+        long seenMillis = reading.lastUpdate != null ? Math.min(nowMillis, reading.lastUpdate * 1000) : nowMillis;
+        while (!ingest(slot(deviceId), reading, seenMillis, nowMillis)) {
+            // The slot was removed concurrently, apply to a fresh one
+        }
+    }
+
+    // Returns false if the slot was removed before its lock was taken
+    private boolean ingest(Slot slot, CurrentReading reading, long seenMillis, long nowMillis) {
+        synchronized (slot) {
+            if (slot.removed) return false;
+            if (seenMillis < slot.lastSeenMillis) return true;  // Older than what was applied
+            slot.lastSeenMillis = seenMillis;
+            boolean isOnline = nowMillis - seenMillis < settings.staleAfterMillis;
+            long newMilliwatts = isOnline && reading.watt != null ? Math.round(reading.watt * 1000) : 0;
+            boolean isOver = isOnline && reading.temperature != null
+                && reading.temperature > settings.temperatureThreshold;
+            apply(slot, isOnline, isOver, newMilliwatts);
+
+            if (reading.kwh != null) {
+                long microKwh = Math.round(reading.kwh * 1e6);
+                if (slot.lastMicroKwh >= 0) {
+                    long used = microKwh >= slot.lastMicroKwh ? microKwh - slot.lastMicroKwh : microKwh;
+                    if (used > 0) dayTotal(day(seenMillis)).add(used);
+                }
+                slot.lastMicroKwh = microKwh;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Forgets a device and its contribution; energy it already used today stays counted.
+     */
+    public void remove(String deviceId) {
+        Slot slot = slots.remove(deviceId);
+        if (slot == null) return;
+        synchronized (slot) {
+            apply(slot, false, false, 0);
+            slot.removed = true;
+        }
+    }
+
+    /**
+     * Moves devices whose last update became too old to offline. Returns how many went offline.
+     */
+    public int expireStale(long nowMillis) {
+        int expired = 0;
+        for (Slot slot : slots.values()) {
+            synchronized (slot) {
+                if (slot.online && nowMillis - slot.lastSeenMillis >= settings.staleAfterMillis) {
+                    apply(slot, false, false, 0);
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * The current totals. Reads are lock-free, so under concurrent updates the figures may
+     * mix values from just before and just after an update.
+     */
+    public FleetSummary snapshot(long nowMillis) {
+        long today = day(nowMillis);
+        Iterator<Map.Entry<Long, LongAdder>> days = microKwhByDay.entrySet().iterator();
+        while (days.hasNext()) {
+            if (days.next().getKey() < today - 1) days.remove();
+        }
+        LongAdder todayTotal = microKwhByDay.get(today);
+        return new FleetSummary(slots.size(), (int) online.sum(), milliwatts.sum() / 1000.0,
+            todayTotal != null ? todayTotal.sum() / 1e6 : 0, (int) overThreshold.sum(),
+            settings.temperatureThreshold, LogTime.formatDatetime(nowMillis, settings.zone).substring(0, 10),
+            nowMillis);
+    }
+
+    public int getDeviceCount() {
+        return slots.size();
+    }
+
+    public long getUpdateCount() {
+        return updates.sum();
+    }
+
+    // Called with the slot's lock held
+    private void apply(Slot slot, boolean isOnline, boolean isOver, long newMilliwatts) {
+        if (isOnline != slot.online) {
+            if (isOnline) online.increment(); else online.decrement();
+            slot.online = isOnline;
+        }
+        if (isOver != slot.overThreshold) {
+            if (isOver) overThreshold.increment(); else overThreshold.decrement();
+            slot.overThreshold = isOver;
+        }
+        if (newMilliwatts != slot.milliwatts) {
+            milliwatts.add(newMilliwatts - slot.milliwatts);
+            slot.milliwatts = newMilliwatts;
+        }
+    }
+
+    private Slot slot(String deviceId) {
+        Slot slot = slots.get(deviceId);
+        return slot != null ? slot : slots.computeIfAbsent(deviceId, id -> new Slot());
+    }
+
+    private LongAdder dayTotal(long day) {
+        LongAdder total = microKwhByDay.get(day);
+        return total != null ? total : microKwhByDay.computeIfAbsent(day, d -> new LongAdder());
+    }
+
+    private long day(long epochMillis) {
+        return Math.floorDiv(epochMillis + settings.zone.getOffset(epochMillis), DAY_MILLIS);
+    }
+}
@@ -0,0 +1,154 @@
+package com.qppd.smartfan.fleet;
+
+import com.google.gson.JsonElement;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import com.qppd.smartfan.rtdb.RtdbClient;
+import com.qppd.smartfan.rtdb.RtdbDataSource;
+import com.qppd.smartfan.sim.FanFleet;
+import com.qppd.smartfan.sim.FanTwin;
+import com.qppd.smartfan.sim.InMemoryDataSource;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line entry point for the fleet aggregation service.
+ *
+ * <pre>
+ * ./gradlew :fleet:run --args="--emulator 127.0.0.1:9000"
+ * ./gradlew :fleet:run --args="--simulate 10000 --current-interval 3"
+ * </pre>
+ *
+ * With --simulate the devices are simulated fans on an {@link InMemoryDataSource} and the
+ * summary is only printed, which shows how many devices one service instance keeps up with.
+ */
+public final class FleetMain {
+    private static final String DEFAULT_NAMESPACE = "demo-smartfan-default-rtdb";
+    private static final long DISCOVERY_INTERVAL_MS = 60000;
+
+    private static long lastUpdates;
+    private static long lastReportMillis;
+
+    private FleetMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        long publishInterval = seconds(options, "publish-interval", 5);
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "0"));
+        FleetAggregator.Settings settings = new FleetAggregator.Settings()
+            .withTemperatureThreshold(Double.parseDouble(options.getOrDefault("threshold", "30")))
+            .withStaleAfter(seconds(options, "stale-after", 180));
+        if (options.containsKey("zone")) {
+            settings = settings.withZone(TimeZone.getTimeZone(options.get("zone")));
+        }
+        FleetAggregator aggregator = new FleetAggregator(settings);
+
+        RtdbClient client = null;
+        if (options.containsKey("emulator")) {
+            String[] hostPort = options.get("emulator").split(":");
+            client = RtdbClient.forEmulator(hostPort[0], Integer.parseInt(hostPort[1]),
+                options.getOrDefault("namespace", DEFAULT_NAMESPACE));
+        } else if (options.containsKey("database-url")) {
+            client = new RtdbClient(URI.create(options.get("database-url")), options.get("namespace"),
+                options.get("access-token"));
+        }
+
+        long deadline = durationSeconds > 0
+            ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(durationSeconds) : Long.MAX_VALUE;
+        if (client != null) {
+            runAgainst(client, aggregator, publishInterval, deadline);
+        } else {
+            simulate(options, aggregator, publishInterval, deadline);
+        }
+    }
+
+    private static void runAgainst(RtdbClient client, FleetAggregator aggregator, long publishInterval,
+                                   long deadline) throws InterruptedException {
+        try (FleetService service = new FleetService(new RtdbDataSource(client), aggregator,
+                SummaryPublisher.forClient(client), publishInterval)) {
+            service.start();
+            while (System.currentTimeMillis() < deadline) {
+                discover(client, service);
+                long nextDiscovery = System.currentTimeMillis() + DISCOVERY_INTERVAL_MS;
+                while (System.currentTimeMillis() < Math.min(deadline, nextDiscovery)) {
+                    Thread.sleep(Math.min(publishInterval, Math.max(1, deadline - System.currentTimeMillis())));
+                    report(service);
+                }
+            }
+        }
+    }
+
+    private static void simulate(Map<String, String> options, FleetAggregator aggregator, long publishInterval,
+                                 long deadline) throws InterruptedException {
+        int fans = Integer.parseInt(options.getOrDefault("simulate", "1000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+            String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors()))));
+        long currentInterval = seconds(options, "current-interval", 3);
+        FanTwin.Settings twinSettings = new FanTwin.Settings()
+            .withStep(Math.min(1000, currentInterval))
+            .withCurrentInterval(currentInterval)
+            .withLogInterval(TimeUnit.HOURS.toMillis(1));
+
+        // The summary is printed by report() instead
+        SummaryPublisher discard = summary -> CompletableFuture.completedFuture(null);
+        try (InMemoryDataSource dataSource = new InMemoryDataSource();
+             FanFleet fleet = new FanFleet(dataSource, twinSettings, 1, threads);
+             FleetService service = new FleetService(dataSource, aggregator, discard, publishInterval)) {
+            for (FanTwin twin : fleet.addFans("SmartFan_SIM_", fans)) {
+                service.watch(twin.getDeviceId());
+            }
+            service.start();
+            System.out.println("Aggregating " + fans + " simulated fans, current every "
+                + TimeUnit.MILLISECONDS.toSeconds(currentInterval) + " s");
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(Math.min(publishInterval, Math.max(1, deadline - System.currentTimeMillis())));
+                report(service);
+            }
+        }
+    }
+
+    // Watches every device under smartfan/devices, shallow so logs are not downloaded
+    private static void discover(RtdbClient client, FleetService service) {
+        JsonElement devices = client.get(RtdbDataSource.ROOT_PATH + "/devices", "shallow=true").join();
+        if (devices == null || !devices.isJsonObject()) return;
+        for (String deviceId : devices.getAsJsonObject().keySet()) {
+            service.watch(deviceId);
+        }
+    }
+
+    private static void report(FleetService service) {
+        FleetSummary summary = service.getLastSummary();
+        long now = System.currentTimeMillis();
+        long updates = service.getAggregator().getUpdateCount();
+        long rate = lastReportMillis > 0 && now > lastReportMillis
+            ? (updates - lastUpdates) * 1000 / (now - lastReportMillis) : 0;
+        lastUpdates = updates;
+        lastReportMillis = now;
+        System.out.println((summary != null ? summary : "no summary yet") + " updates/s=" + rate
+            + " watched=" + service.getWatchedCount() + " publishErrors=" + service.getPublishErrors());
+    }
+
+    private static long seconds(Map<String, String> options, String key, long defaultSeconds) {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(key, String.valueOf(defaultSeconds))));
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "");
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,128 @@
+package com.qppd.smartfan.fleet;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Feeds a {@link FleetAggregator} from the devices' current nodes and publishes its summary
+ * at a fixed interval.
+ *
+ * Each watched device is one {@link SmartFanDataSource#observeCurrent} registration. With
+ * {@code RtdbDataSource} that is one streaming connection per device; producers in the same
+ * process, such as the gateway, can call {@link FleetAggregator#ingest} directly instead.
+ */
+public class FleetService implements AutoCloseable {
+    private final SmartFanDataSource dataSource;
+    private final FleetAggregator aggregator;
+    private final SummaryPublisher publisher;
+    private final long publishIntervalMillis;
+    private final Map<String, Registration> registrations = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    private final LongAdder observeErrors = new LongAdder();
+    private final LongAdder publishErrors = new LongAdder();
+    private volatile FleetSummary lastSummary;
+
+    public FleetService(SmartFanDataSource dataSource, FleetAggregator aggregator, SummaryPublisher publisher,
+                        long publishIntervalMillis) {
+        this.dataSource = dataSource;
+        this.aggregator = aggregator;
+        this.publisher = publisher;
+        this.publishIntervalMillis = publishIntervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FleetService");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::publish, publishIntervalMillis, publishIntervalMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts following a device. Watching one twice has no effect.
+     */
+    public synchronized void watch(String deviceId) {
+        if (registrations.containsKey(deviceId)) return;
+        registrations.put(deviceId, dataSource.observeCurrent(deviceId, new DataObserver<CurrentReading>() {
+            @Override
+            public void onChanged(CurrentReading value) {
+                aggregator.ingest(deviceId, value, System.currentTimeMillis());
+            }
+
+            @Override
+            public void onError(Exception error) {
+                observeErrors.increment();
+            }
+        }));
+    }
+
+    public synchronized void unwatch(String deviceId) {
+        Registration registration = registrations.remove(deviceId);
+        if (registration != null) {
+            registration.remove();
+            aggregator.remove(deviceId);
+        }
+    }
+
+    public synchronized int getWatchedCount() {
+        return registrations.size();
+    }
+
+    public FleetAggregator getAggregator() {
+        return aggregator;
+    }
+
+    /**
+     * The summary of the last publish, or null before the first one.
+     */
+    public FleetSummary getLastSummary() {
+        return lastSummary;
+    }
+
+    public long getObserveErrors() {
+        return observeErrors.sum();
+    }
+
+    public long getPublishErrors() {
+        return publishErrors.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        for (Registration registration : registrations.values()) {
+            registration.remove();
+        }
+        registrations.clear();
+    }
+
+    private void publish() {
+        long now = System.currentTimeMillis();
+        aggregator.expireStale(now);
+        FleetSummary summary = aggregator.snapshot(now);
+        lastSummary = summary;
+        // A slow database skips intervals rather than stacking up writes
+        if (!publishing.compareAndSet(false, true)) return;
+        try {
+            publisher.publish(summary).whenComplete((ignored, error) -> {
+                if (error != null) publishErrors.increment();
+                publishing.set(false);
+            });
+        } catch (RuntimeException e) {
+            publishErrors.increment();
+            publishing.set(false);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.qppd.smartfan.fleet;
+
+import java.util.Locale;
+
+/**
+ * Fleet-wide figures at one moment, as published to the summary node. Immutable.
+ */
+public final class FleetSummary {
+    /** Devices that ever reported. */
+    public final int devices;
+    /** Devices whose last update is within the staleness limit. */
+    public final int online;
+    public final int offline;
+    /** Sum of watt over online devices. */
+    public final double totalWatt;
+    /** Energy used since local midnight, or since the service started if that was later. */
+    public final double kwhToday;
+    /** Online devices above {@link #temperatureThreshold}. */
+    public final int overThreshold;
+    public final double temperatureThreshold;
+    /** Local date the kWh figure belongs to, yyyy-MM-dd. */
+    public final String day;
+    /** When the summary was taken, Unix milliseconds. */
+    public final long generatedAt;
+
+    public FleetSummary(int devices, int online, double totalWatt, double kwhToday, int overThreshold,
+                        double temperatureThreshold, String day, long generatedAt) {
+        this.devices = devices;
+        this.online = online;
+        this.offline = devices - online;
+        this.totalWatt = totalWatt;
+        this.kwhToday = kwhToday;
+        this.overThreshold = overThreshold;
+        this.temperatureThreshold = temperatureThreshold;
+        this.day = day;
+        this.generatedAt = generatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "devices=%d online=%d offline=%d watt=%.1f kwhToday=%.4f over%.1fC=%d day=%s",
+            devices, online, offline, totalWatt, kwhToday, temperatureThreshold, overThreshold, day);
+    }
+}
@@ -0,0 +1,39 @@
+package com.qppd.smartfan.fleet;
+
+import com.google.gson.JsonObject;
+import com.qppd.smartfan.rtdb.RtdbClient;
+import com.qppd.smartfan.rtdb.RtdbDataSource;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Makes a {@link FleetSummary} available to readers.
+ */
+public interface SummaryPublisher {
+    /** Where {@link #forClient(RtdbClient)} writes the summary. */
+    String SUMMARY_PATH = RtdbDataSource.ROOT_PATH + "/fleet/summary";
+
+    CompletableFuture<Void> publish(FleetSummary summary);
+
+    /**
+     * Replaces {@link #SUMMARY_PATH}, one small node dashboards can read instead of every
+     * device's subtree.
+     */
+    static SummaryPublisher forClient(RtdbClient client) {
+        return summary -> client.put(SUMMARY_PATH, toJson(summary));
+    }
+
+    static JsonObject toJson(FleetSummary summary) {
+        JsonObject json = new JsonObject();
+        json.addProperty("devices", summary.devices);
+        json.addProperty("online", summary.online);
+        json.addProperty("offline", summary.offline);
+        json.addProperty("totalWatt", Math.round(summary.totalWatt * 1000) / 1000.0);
+        json.addProperty("kwhToday", Math.round(summary.kwhToday * 10000) / 10000.0);
+        json.addProperty("overThreshold", summary.overThreshold);
+        json.addProperty("temperatureThreshold", summary.temperatureThreshold);
+        json.addProperty("day", summary.day);
+        // Seconds, like the devices' lastUpdate
+        json.addProperty("lastUpdate", summary.generatedAt / 1000);
+        return json;
+    }
+}
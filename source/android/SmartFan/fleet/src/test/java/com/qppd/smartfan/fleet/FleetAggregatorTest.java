@@ -0,0 +1,174 @@
+package com.qppd.smartfan.fleet;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.*;
+
+public class FleetAggregatorTest {
+    private static final double DELTA = 1e-9;
+    // 2024-06-01 10:00 in GMT+8
+    private static final long NOW = 1717207200000L;
+
+    private final FleetAggregator aggregator = new FleetAggregator(new FleetAggregator.Settings()
+        .withTemperatureThreshold(30).withStaleAfter(180000).withZone(TimeZone.getTimeZone("GMT+08:00")));
+
+    @Test
+    public void totals_followTheLatestReadingOfEachDevice() {
+        aggregator.ingest("fan1", reading(29.0, 40.0, 0.5, NOW), NOW);
+        aggregator.ingest("fan2", reading(31.5, 60.0, 1.0, NOW), NOW);
+        aggregator.ingest("fan1", reading(32.0, 45.5, 0.5, NOW + 1000), NOW + 1000);
+
+        FleetSummary summary = aggregator.snapshot(NOW + 1000);
+        assertEquals(2, summary.devices);
+        assertEquals(2, summary.online);
+        assertEquals(0, summary.offline);
+        assertEquals(105.5, summary.totalWatt, DELTA);
+        assertEquals(2, summary.overThreshold);
+        assertEquals("2024-06-01", summary.day);
+    }
+
+    @Test
+    public void olderReading_isIgnored() {
+        aggregator.ingest("fan1", reading(31.0, 50.0, 0.0, NOW), NOW);
+        aggregator.ingest("fan1", reading(25.0, 10.0, 0.0, NOW - 60000), NOW);
+
+        FleetSummary summary = aggregator.snapshot(NOW);
+        assertEquals(50.0, summary.totalWatt, DELTA);
+        assertEquals(1, summary.overThreshold);
+    }
+
+    @Test
+    public void staleDevices_goOfflineAndStopContributing() {
+        aggregator.ingest("fan1", reading(31.0, 50.0, 0.0, NOW), NOW);
+        aggregator.ingest("fan2", reading(31.0, 20.0, 0.0, NOW + 120000), NOW + 120000);
+
+        assertEquals(1, aggregator.expireStale(NOW + 180000));
+        assertEquals(0, aggregator.expireStale(NOW + 180000));
+        FleetSummary summary = aggregator.snapshot(NOW + 180000);
+        assertEquals(2, summary.devices);
+        assertEquals(1, summary.online);
+        assertEquals(1, summary.offline);
+        assertEquals(20.0, summary.totalWatt, DELTA);
+        assertEquals(1, summary.overThreshold);
+
+        // A fresh update brings it back
+        aggregator.ingest("fan1", reading(31.0, 50.0, 0.0, NOW + 190000), NOW + 190000);
+        assertEquals(2, aggregator.snapshot(NOW + 190000).online);
+    }
+
+    @Test
+    public void readingStaleOnArrival_countsAsOffline() {
+        aggregator.ingest("fan1", reading(35.0, 50.0, 0.0, NOW - 600000), NOW);
+
+        FleetSummary summary = aggregator.snapshot(NOW);
+        assertEquals(1, summary.devices);
+        assertEquals(0, summary.online);
+        assertEquals(0.0, summary.totalWatt, DELTA);
+        assertEquals(0, summary.overThreshold);
+    }
+
+    @Test
+    public void kwhToday_countsIncreasesAndTreatsDropsAsReboots() {
+        aggregator.ingest("fan1", reading(25.0, 10.0, 1.0, NOW), NOW);        // baseline
+        aggregator.ingest("fan1", reading(25.0, 10.0, 1.25, NOW + 1000), NOW + 1000);
+        aggregator.ingest("fan1", reading(25.0, 10.0, 0.1, NOW + 2000), NOW + 2000);  // rebooted
+        aggregator.ingest("fan1", reading(25.0, 10.0, 0.3, NOW + 3000), NOW + 3000);
+
+        assertEquals(0.25 + 0.1 + 0.2, aggregator.snapshot(NOW + 3000).kwhToday, 1e-6);
+    }
+
+    @Test
+    public void kwhToday_startsOverAtLocalMidnight() {
+        long beforeMidnight = 1717257540000L;  // 2024-06-01 23:59 GMT+8
+        aggregator.ingest("fan1", reading(25.0, 10.0, 1.0, beforeMidnight - 60000), beforeMidnight - 60000);
+        aggregator.ingest("fan1", reading(25.0, 10.0, 1.5, beforeMidnight), beforeMidnight);
+        assertEquals(0.5, aggregator.snapshot(beforeMidnight).kwhToday, 1e-6);
+
+        long afterMidnight = beforeMidnight + 120000;
+        aggregator.ingest("fan1", reading(25.0, 10.0, 1.75, afterMidnight), afterMidnight);
+        FleetSummary summary = aggregator.snapshot(afterMidnight);
+        assertEquals("2024-06-02", summary.day);
+        assertEquals(0.25, summary.kwhToday, 1e-6);
+    }
+
+    @Test
+    public void removedDevice_isForgotten() {
+        aggregator.ingest("fan1", reading(31.0, 50.0, 0.0, NOW), NOW);
+        aggregator.ingest("fan2", reading(25.0, 20.0, 0.0, NOW), NOW);
+        aggregator.ingest("fan1", null, NOW);
+
+        FleetSummary summary = aggregator.snapshot(NOW);
+        assertEquals(1, summary.devices);
+        assertEquals(1, summary.online);
+        assertEquals(20.0, summary.totalWatt, DELTA);
+        assertEquals(0, summary.overThreshold);
+    }
+
+    @Test
+    public void concurrentUpdates_leaveTotalsMatchingTheLastReadings() throws Exception {
+        int devices = 2000;
+        int threads = 8;
+        int updatesPerThread = 50000;
+        // Each thread owns a disjoint set of devices, so the last reading per device is known
+        double[] lastWatt = new double[devices];
+        boolean[] lastOver = new boolean[devices];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(thread);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < updatesPerThread; i++) {
+                    int device = thread + threads * random.nextInt(devices / threads);
+                    double watt = random.nextInt(1000) / 10.0;
+                    double temperature = 25 + random.nextInt(100) / 10.0;
+                    aggregator.ingest("fan" + device, reading(temperature, watt, 0.0, NOW), NOW);
+                    lastWatt[device] = watt;
+                    lastOver[device] = temperature > 30;
+                }
+            }));
+        }
+        for (Thread worker : workers) worker.start();
+        start.countDown();
+        // Removals and expiry running alongside must not corrupt the totals either
+        for (int i = 0; i < 1000; i++) {
+            aggregator.expireStale(NOW);
+            aggregator.snapshot(NOW);
+            if (ThreadLocalRandom.current().nextInt(10) == 0) aggregator.remove("unknown" + i);
+        }
+        for (Thread worker : workers) worker.join();
+
+        double expectedWatt = 0;
+        int expectedOver = 0;
+        int expectedDevices = 0;
+        for (int device = 0; device < devices; device++) {
+            expectedWatt += lastWatt[device];
+            if (lastOver[device]) expectedOver++;
+            if (lastWatt[device] > 0 || lastOver[device]) expectedDevices++;
+        }
+        FleetSummary summary = aggregator.snapshot(NOW);
+        assertEquals(expectedWatt, summary.totalWatt, 1e-6);
+        assertEquals(expectedOver, summary.overThreshold);
+        assertEquals(summary.devices, summary.online);
+        assertTrue(summary.devices >= expectedDevices);
+        assertEquals((long) threads * updatesPerThread, aggregator.getUpdateCount());
+    }
+
+    private static CurrentReading reading(double temperature, double watt, double kwh, long lastUpdateMillis) {
+        return new CurrentReading(temperature, null, 50, "auto", 240.0, watt / 240.0, watt, kwh,
+            lastUpdateMillis / 1000);
+    }
+}
@@ -0,0 +1,79 @@
+package com.qppd.smartfan.fleet;
+
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.sim.InMemoryDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FleetServiceTest {
+    private final InMemoryDataSource dataSource = new InMemoryDataSource();
+    private final BlockingQueue<FleetSummary> published = new LinkedBlockingQueue<>();
+    private final FleetService service = new FleetService(dataSource,
+        new FleetAggregator(new FleetAggregator.Settings()), summary -> {
+            published.add(summary);
+            return CompletableFuture.completedFuture(null);
+        }, 50);
+
+    @After
+    public void tearDown() {
+        service.close();
+        dataSource.close();
+    }
+
+    @Test
+    public void watchedDevices_arePublishedPeriodically() throws Exception {
+        service.watch("fan1");
+        service.watch("fan2");
+        service.watch("fan1");
+        service.start();
+        dataSource.writeCurrent("fan1", reading(31.0, 40.0), null);
+        dataSource.writeCurrent("fan2", reading(27.0, 60.0), null);
+        dataSource.writeCurrent("fan3", reading(35.0, 80.0), null);
+
+        FleetSummary summary = awaitSummary(2, 100.0);
+        assertEquals(2, summary.online);
+        assertEquals(1, summary.overThreshold);
+        assertEquals(2, service.getWatchedCount());
+    }
+
+    @Test
+    public void unwatchedDevice_leavesTheTotals() throws Exception {
+        service.watch("fan1");
+        service.watch("fan2");
+        service.start();
+        dataSource.writeCurrent("fan1", reading(31.0, 40.0), null);
+        dataSource.writeCurrent("fan2", reading(27.0, 60.0), null);
+        awaitSummary(2, 100.0);
+
+        service.unwatch("fan2");
+        dataSource.writeCurrent("fan2", reading(27.0, 70.0), null);
+        FleetSummary summary = awaitSummary(1, 40.0);
+        assertEquals(0, service.getPublishErrors());
+        assertEquals(1, summary.online);
+    }
+
+    private FleetSummary awaitSummary(int devices, double totalWatt) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        FleetSummary summary = null;
+        while (System.currentTimeMillis() < deadline) {
+            summary = published.poll(100, TimeUnit.MILLISECONDS);
+            if (summary != null && summary.devices == devices && Math.abs(summary.totalWatt - totalWatt) < 1e-9) {
+                return summary;
+            }
+        }
+        fail("No summary with " + devices + " devices and " + totalWatt + " W, last was " + summary);
+        return null;
+    }
+
+    private static CurrentReading reading(double temperature, double watt) {
+        return new CurrentReading(temperature, null, 50, "auto", 240.0, watt / 240.0, watt, 0.0,
+            System.currentTimeMillis() / 1000);
+    }
+}
@@ -0,0 +1,19 @@
+package com.qppd.smartfan.gateway;
+
+import com.google.gson.JsonObject;
+import com.qppd.smartfan.rtdb.RtdbClient;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies one multi-path update, keyed by paths from the database root.
+ */
+public interface BatchWriter {
+    CompletableFuture<Void> write(JsonObject update);
+
+    /**
+     * Writes with a PATCH at the root, which the database applies atomically.
+     */
+    static BatchWriter forClient(RtdbClient client) {
+        return update -> client.patch("", update);
+    }
+}
@@ -0,0 +1,13 @@
+package com.qppd.smartfan.gateway;
+
+/**
+ * What {@link TelemetryBatcher#submitLog} does when the log queue is full.
+ */
+public enum DropPolicy {
+    /** Wait for the writer to make room, up to the configured timeout, then drop the new row. */
+    BLOCK,
+    /** Drop the new row at once. */
+    DROP_NEWEST,
+    /** Make room by dropping the oldest queued row, keeping the history recent. */
+    DROP_OLDEST
+}
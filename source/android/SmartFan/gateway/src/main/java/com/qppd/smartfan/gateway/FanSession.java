@@ -0,0 +1,213 @@
+package com.qppd.smartfan.gateway;
+
+import com.qppd.smartfan.bridge.Esp32Link;
+import com.qppd.smartfan.bridge.SensorData;
+import com.qppd.smartfan.bridge.Transport;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.history.LogTime;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.TimeZone;
+
+/**
+ * One fan's ESP32 as seen by the gateway, doing what the ESP8266's loop does for it: ask for
+ * readings, integrate kWh from V * I, and every send interval hand a current update and a
+ * log row to the shared {@link TelemetryBatcher} instead of writing them itself.
+ *
+ * A lost link is reopened on a later {@link #tick(long)}. Nothing is uploaded before the
+ * first reading arrives, where the ESP8266 would upload zeros.
+ */
+public class FanSession implements Closeable {
+    /**
+     * Opens the transport to the fan, again after every disconnect.
+     */
+    public interface Opener {
+        Transport open() throws IOException;
+    }
+
+    private final String deviceId;
+    private final Opener opener;
+    private final TelemetryBatcher batcher;
+    private final Settings settings;
+
+    private Esp32Link link;
+    private boolean closed;
+    private long lastConnectAttemptMillis;
+    private long lastRequestMillis;
+    private long lastSendMillis;
+    private long lastKwhMillis;
+    private double kwh;
+    private String mode = ControlState.MODE_AUTO;
+
+    /**
+     * Timing of a session, defaulting to the ESP8266 firmware's. Immutable.
+     */
+    public static final class Settings {
+        final long sendIntervalMillis;
+        final long requestIntervalMillis;
+        final long freshMillis;
+        final long reconnectMillis;
+        final TimeZone zone;
+
+        public Settings() {
+            // DATA_SEND_INTERVAL, ESP32_REQUEST_INTERVAL and isDataFresh(10000); logs in GMT+8
+            this(60000, 30000, 10000, 5000, TimeZone.getTimeZone("GMT+08:00"));
+        }
+
+        private Settings(long sendIntervalMillis, long requestIntervalMillis, long freshMillis, long reconnectMillis,
+                         TimeZone zone) {
+            if (sendIntervalMillis <= 0 || requestIntervalMillis <= 0 || freshMillis <= 0 || reconnectMillis <= 0) {
+                throw new IllegalArgumentException("Intervals must be positive");
+            }
+            this.sendIntervalMillis = sendIntervalMillis;
+            this.requestIntervalMillis = requestIntervalMillis;
+            this.freshMillis = freshMillis;
+            this.reconnectMillis = reconnectMillis;
+            this.zone = zone;
+        }
+
+        public Settings withSendInterval(long millis) {
+            return new Settings(millis, requestIntervalMillis, freshMillis, reconnectMillis, zone);
+        }
+
+        public Settings withRequestInterval(long millis) {
+            return new Settings(sendIntervalMillis, millis, freshMillis, reconnectMillis, zone);
+        }
+
+        public Settings withReconnectInterval(long millis) {
+            return new Settings(sendIntervalMillis, requestIntervalMillis, freshMillis, millis, zone);
+        }
+
+        /**
+         * Zone of the datetime field of log rows.
+         */
+        public Settings withZone(TimeZone logZone) {
+            return new Settings(sendIntervalMillis, requestIntervalMillis, freshMillis, reconnectMillis, logZone);
+        }
+    }
+
+    public FanSession(String deviceId, Opener opener, TelemetryBatcher batcher, Settings settings) {
+        this.deviceId = deviceId;
+        this.opener = opener;
+        this.batcher = batcher;
+        this.settings = settings;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public synchronized boolean isConnected() {
+        return link != null && !link.isClosed();
+    }
+
+    /**
+     * The link while connected, for sending commands, or null.
+     */
+    public synchronized Esp32Link getLink() {
+        return isConnected() ? link : null;
+    }
+
+    /**
+     * Switches the fan's mode and reports it in later current updates, as the ESP8266 does
+     * when the control node changes.
+     */
+    public synchronized void setMode(String newMode) throws IOException {
+        if (!isConnected()) {
+            throw new IOException(deviceId + " is not connected");
+        }
+        link.setMode(newMode);
+        mode = newMode;
+    }
+
+    /**
+     * Connects if needed, integrates energy and uploads whatever is due. Called about once a
+     * second by the gateway.
+     */
+    public synchronized void tick(long nowMillis) {
+        if (closed) return;
+        if (!isConnected() && !connect(nowMillis)) return;
+
+        SensorData data = link.getLastSensorData();
+        if (link.isDataFresh(settings.freshMillis)) {
+            if (lastKwhMillis > 0) {
+                double hours = (nowMillis - lastKwhMillis) / 3600000.0;
+                kwh += data.getWatt() * hours / 1000.0;
+            }
+            lastKwhMillis = nowMillis;
+        }
+
+        try {
+            if (nowMillis - lastRequestMillis >= settings.requestIntervalMillis) {
+                lastRequestMillis = nowMillis;
+                link.sendFirebaseStatus("CONNECTED");
+                link.sendWiFiStatus("CONNECTED");
+                link.requestAllSensors();
+            }
+        } catch (IOException e) {
+            // The reader notices the broken link too, reconnecting happens on a later tick
+            return;
+        }
+
+        if (data.lastUpdateMillis > 0 && nowMillis - lastSendMillis >= settings.sendIntervalMillis) {
+            lastSendMillis = nowMillis;
+            upload(data, nowMillis / 1000);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (link != null) {
+            link.close();
+        }
+    }
+
+    private boolean connect(long nowMillis) {
+        if (nowMillis - lastConnectAttemptMillis < settings.reconnectMillis) return false;
+        lastConnectAttemptMillis = nowMillis;
+        Transport transport = null;
+        try {
+            transport = opener.open();
+            link = new Esp32Link(transport, new Esp32Link.Listener() {
+                @Override
+                public void onDisconnected(IOException cause) {
+                    batcher.getMetrics().fanDisconnects.increment();
+                }
+            });
+            link.start();
+            link.sendInit();
+            // Ask for readings right away rather than after the first request interval
+            lastRequestMillis = nowMillis - settings.requestIntervalMillis;
+            lastKwhMillis = 0;
+            return true;
+        } catch (IOException e) {
+            if (link == null && transport != null) {
+                try {
+                    transport.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+
+    // Same fields as the ESP8266 uploads (no humidity), rounded to the precision the ESP32 sends
+    private void upload(SensorData data, long nowSecond) {
+        double temperature = round(data.temperature, 100);
+        double voltage = round(data.voltage, 100);
+        double current = round(data.current, 1000);
+        double watt = round(data.getWatt(), 1000);
+        double roundedKwh = round(kwh, 10000);
+        batcher.submitCurrent(deviceId, new CurrentReading(temperature, null, data.fanSpeed, mode, voltage, current,
+            watt, roundedKwh, nowSecond));
+        batcher.submitLog(deviceId, new LogEntry(nowSecond, LogTime.formatDatetime(nowSecond * 1000, settings.zone),
+            temperature, (long) data.fanSpeed, voltage, current, watt, roundedKwh));
+    }
+
+    private static double round(double value, int scale) {
+        return Math.round(value * scale) / (double) scale;
+    }
+}
@@ -0,0 +1,97 @@
+package com.qppd.smartfan.gateway;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves many fans with one {@link TelemetryBatcher}: each fan gets a {@link FanSession}
+ * ticked once a second on a small shared thread pool, and all their uploads leave through
+ * the batcher's single writer.
+ */
+public class Gateway implements AutoCloseable {
+    private static final long TICK_MILLIS = 1000;
+
+    private final TelemetryBatcher batcher;
+    private final FanSession.Settings fanSettings;
+    private final ScheduledExecutorService scheduler;
+    private final List<FanSession> sessions = new ArrayList<>();
+    private final Random phaseRandom = new Random(1);
+
+    public Gateway(BatchWriter writer, TelemetryBatcher.Settings batchSettings, FanSession.Settings fanSettings,
+                   int threads) {
+        this.batcher = new TelemetryBatcher(writer, batchSettings, new GatewayMetrics());
+        this.fanSettings = fanSettings;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Gateway-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts serving a fan. It connects on its first tick.
+     */
+    public synchronized FanSession addFan(String deviceId, FanSession.Opener opener) {
+        FanSession session = new FanSession(deviceId, opener, batcher, fanSettings);
+        // Random phase, so that fans added together do not upload in lockstep
+        long phase = (long) (phaseRandom.nextDouble() * TICK_MILLIS);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                session.tick(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                // An escaping exception would silently cancel this session's schedule
+                System.err.println(deviceId + ": " + e);
+            }
+        }, phase, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        sessions.add(session);
+        return session;
+    }
+
+    public synchronized List<FanSession> getSessions() {
+        return Collections.unmodifiableList(new ArrayList<>(sessions));
+    }
+
+    public TelemetryBatcher getBatcher() {
+        return batcher;
+    }
+
+    public GatewayMetrics getMetrics() {
+        return batcher.getMetrics();
+    }
+
+    /**
+     * Disconnects every fan and writes what is still queued, waiting at most
+     * {@code timeoutMillis} for the writes.
+     */
+    public synchronized void close(long timeoutMillis) throws InterruptedException {
+        scheduler.shutdownNow();
+        for (FanSession session : sessions) {
+            try {
+                session.close();
+            } catch (IOException ignored) {
+            }
+        }
+        batcher.close(timeoutMillis);
+    }
+
+    /**
+     * {@link #close(long)} with a 30 second limit. An interrupt stops the wait and is kept
+     * on the calling thread.
+     */
+    @Override
+    public void close() {
+        try {
+            close(30000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
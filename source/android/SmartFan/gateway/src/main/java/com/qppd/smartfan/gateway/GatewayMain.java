@@ -0,0 +1,162 @@
+package com.qppd.smartfan.gateway;
+
+import com.qppd.smartfan.bridge.Esp32StandIn;
+import com.qppd.smartfan.bridge.Protocol;
+import com.qppd.smartfan.bridge.SerialTransport;
+import com.qppd.smartfan.bridge.TcpTransport;
+import com.qppd.smartfan.bridge.Transport;
+import com.qppd.smartfan.rtdb.RtdbClient;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line entry point of the gateway.
+ *
+ * <pre>
+ * ./gradlew :gateway:run --args="--fans SmartFan_A=/dev/ttyUSB0,SmartFan_B=tcp://10.0.0.21:7000 --database-url ..."
+ * ./gradlew :gateway:run --args="--stand-ins 200 --emulator 127.0.0.1:9000 --send-interval 5"
+ * </pre>
+ *
+ * --stand-ins serves simulated ESP32s ({@link Esp32StandIn}) over loopback TCP, which
+ * exercises the whole path without hardware.
+ */
+public final class GatewayMain {
+    private static final String DEFAULT_NAMESPACE = "demo-smartfan-default-rtdb";
+    private static final long REPORT_INTERVAL_MS = 10000;
+
+    private GatewayMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "0"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "2"));
+
+        TelemetryBatcher.Settings batchSettings = new TelemetryBatcher.Settings()
+            .withFlushInterval(Long.parseLong(options.getOrDefault("flush-interval", "1000")))
+            .withMaxBatchSize(Integer.parseInt(options.getOrDefault("max-batch", "500")))
+            .withQueueCapacity(Integer.parseInt(options.getOrDefault("queue-capacity", "10000")))
+            .withDropPolicy(DropPolicy.valueOf(options.getOrDefault("drop-policy", "BLOCK").toUpperCase(Locale.US)))
+            .withBlockTimeout(Long.parseLong(options.getOrDefault("block-timeout", "1000")));
+        FanSession.Settings fanSettings = new FanSession.Settings()
+            .withSendInterval(seconds(options, "send-interval", 60))
+            .withRequestInterval(seconds(options, "request-interval", 30));
+
+        try (Gateway gateway = new Gateway(writer(options), batchSettings, fanSettings, threads)) {
+            int fans = 0;
+            if (options.containsKey("fans")) {
+                for (String fan : options.get("fans").split(",")) {
+                    int separator = fan.indexOf('=');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Expected deviceId=endpoint, got " + fan);
+                    }
+                    gateway.addFan(fan.substring(0, separator), opener(fan.substring(separator + 1)));
+                    fans++;
+                }
+            }
+            ServerSocketChannel standInServer = null;
+            if (options.containsKey("stand-ins")) {
+                standInServer = ServerSocketChannel.open();
+                standInServer.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                int count = Integer.parseInt(options.get("stand-ins"));
+                Random random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+                for (int i = 0; i < count; i++) {
+                    float temperature = 22 + random.nextFloat() * 11;
+                    gateway.addFan(String.format(Locale.US, "SmartFan_GW_%05d", i),
+                        standInOpener(standInServer, temperature));
+                    fans++;
+                }
+            }
+            if (fans == 0) {
+                throw new IllegalArgumentException("Nothing to serve, use --fans or --stand-ins");
+            }
+            System.out.println("Serving " + fans + " fans");
+
+            long deadline = durationSeconds > 0
+                ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(durationSeconds) : Long.MAX_VALUE;
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(Math.min(REPORT_INTERVAL_MS, Math.max(1, deadline - System.currentTimeMillis())));
+                System.out.println(gateway.getMetrics());
+            }
+            if (standInServer != null) {
+                standInServer.close();
+            }
+        }
+    }
+
+    private static BatchWriter writer(Map<String, String> options) {
+        if (options.containsKey("emulator")) {
+            String[] hostPort = options.get("emulator").split(":");
+            return BatchWriter.forClient(RtdbClient.forEmulator(hostPort[0], Integer.parseInt(hostPort[1]),
+                options.getOrDefault("namespace", DEFAULT_NAMESPACE)));
+        }
+        if (options.containsKey("database-url")) {
+            return BatchWriter.forClient(new RtdbClient(URI.create(options.get("database-url")),
+                options.get("namespace"), options.get("access-token")));
+        }
+        if (options.containsKey("dry-run")) {
+            return update -> CompletableFuture.completedFuture(null);
+        }
+        throw new IllegalArgumentException("Use --emulator, --database-url or --dry-run");
+    }
+
+    // tcp://host:port, a pty (already raw) or a serial port (configured with stty)
+    private static FanSession.Opener opener(String endpoint) {
+        if (endpoint.startsWith("tcp://")) {
+            URI uri = URI.create(endpoint);
+            return () -> TcpTransport.connect(uri.getHost(), uri.getPort());
+        }
+        if (endpoint.startsWith("/dev/pts/")) {
+            return () -> SerialTransport.open(endpoint);
+        }
+        return () -> SerialTransport.open(endpoint, Protocol.BAUD_RATE);
+    }
+
+    // Every connection gets a fresh stand-in on the other end
+    private static FanSession.Opener standInOpener(ServerSocketChannel server, float temperature) {
+        InetSocketAddress address;
+        try {
+            address = (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return () -> {
+            synchronized (server) {
+                Transport fan = TcpTransport.connect(address.getHostString(), address.getPort());
+                Esp32StandIn standIn = new Esp32StandIn(TcpTransport.accept(server));
+                standIn.setTemperature(temperature);
+                standIn.start();
+                return fan;
+            }
+        };
+    }
+
+    private static long seconds(Map<String, String> options, String key, long defaultSeconds) {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(key, String.valueOf(defaultSeconds))));
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "");
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,138 @@
+package com.qppd.smartfan.gateway;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a gateway. Safe to read while it runs.
+ */
+public class GatewayMetrics {
+    final LongAdder currentsSubmitted = new LongAdder();
+    final LongAdder currentsCoalesced = new LongAdder();
+    final LongAdder logsSubmitted = new LongAdder();
+    final LongAdder logsDropped = new LongAdder();
+    final LongAdder opsAbandoned = new LongAdder();
+    final LongAdder opsRetried = new LongAdder();
+    final LongAdder writeErrors = new LongAdder();
+    final LongAdder fanDisconnects = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder opsWritten = new LongAdder();
+    private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+    private final LongAdder writeLatencyNanos = new LongAdder();
+    private final LongAccumulator maxWriteLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder blockedNanos = new LongAdder();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+    private volatile int queueDepth;
+    private volatile int pendingCurrents;
+
+    public long getCurrentsSubmitted() {
+        return currentsSubmitted.sum();
+    }
+
+    /** Current updates replaced by a newer one of the same device before they were written. */
+    public long getCurrentsCoalesced() {
+        return currentsCoalesced.sum();
+    }
+
+    public long getLogsSubmitted() {
+        return logsSubmitted.sum();
+    }
+
+    /** Log rows lost to the drop policy. */
+    public long getLogsDropped() {
+        return logsDropped.sum();
+    }
+
+    /** Updates given up after failing the maximum number of writes. */
+    public long getOpsAbandoned() {
+        return opsAbandoned.sum();
+    }
+
+    public long getOpsRetried() {
+        return opsRetried.sum();
+    }
+
+    public long getWriteErrors() {
+        return writeErrors.sum();
+    }
+
+    public long getFanDisconnects() {
+        return fanDisconnects.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getOpsWritten() {
+        return opsWritten.sum();
+    }
+
+    public double getMeanBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) opsWritten.sum() / count;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /** Mean time of a successful batch write, in milliseconds. */
+    public double getMeanWriteLatencyMillis() {
+        long count = batches.sum();
+        return count == 0 ? 0 : writeLatencyNanos.sum() / 1e6 / count;
+    }
+
+    public double getMaxWriteLatencyMillis() {
+        return maxWriteLatencyNanos.get() / 1e6;
+    }
+
+    /** Total time producers spent waiting for room under {@link DropPolicy#BLOCK}. */
+    public double getBlockedMillis() {
+        return blockedNanos.sum() / 1e6;
+    }
+
+    /** Log rows waiting to be written. */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /** Devices with a current update waiting to be written. */
+    public int getPendingCurrents() {
+        return pendingCurrents;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "current=%d (coalesced %d) logs=%d (dropped %d) pending(current=%d logs=%d max=%d) "
+                + "batches=%d size(mean=%.1f max=%d) writeLatency(mean=%.1fms max=%.1fms) writeErrors=%d "
+                + "retried=%d abandoned=%d blocked=%.0fms fanDisconnects=%d",
+            getCurrentsSubmitted(), getCurrentsCoalesced(), getLogsSubmitted(), getLogsDropped(),
+            getPendingCurrents(), getQueueDepth(), getMaxQueueDepth(), getBatches(), getMeanBatchSize(),
+            getMaxBatchSize(), getMeanWriteLatencyMillis(), getMaxWriteLatencyMillis(), getWriteErrors(),
+            getOpsRetried(), getOpsAbandoned(), getBlockedMillis(), getFanDisconnects());
+    }
+
+    void recordBatch(int ops, long latencyNanos) {
+        batches.increment();
+        opsWritten.add(ops);
+        maxBatchSize.accumulate(ops);
+        writeLatencyNanos.add(latencyNanos);
+        maxWriteLatencyNanos.accumulate(latencyNanos);
+    }
+
+    void recordBlocked(long nanos) {
+        blockedNanos.add(nanos);
+    }
+
+    void recordDepth(int pendingCurrentCount, int logQueueDepth) {
+        pendingCurrents = pendingCurrentCount;
+        queueDepth = logQueueDepth;
+        maxQueueDepth.accumulate(logQueueDepth);
+    }
+}
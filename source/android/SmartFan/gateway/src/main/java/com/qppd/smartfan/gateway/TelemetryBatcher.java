@@ -0,0 +1,372 @@
+package com.qppd.smartfan.gateway;
+
+import com.google.gson.JsonObject;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.rtdb.RtdbDataSource;
+import com.qppd.smartfan.rtdb.SmartFanJson;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects current updates and log rows from many devices and writes them as periodic
+ * multi-path updates through one {@link BatchWriter}.
+ *
+ * A device's current node is replaced on every upload, so only its latest pending update is
+ * kept; current updates therefore never occupy more than one slot per device. Log rows are
+ * all kept, in a queue bounded by {@link Settings#withQueueCapacity(int)} and governed by a
+ * {@link DropPolicy} when full.
+ *
+ * A single writer thread flushes when {@link Settings#withFlushInterval(long) the interval}
+ * has passed or a full batch is waiting, with one write in flight at a time, so rows of a
+ * device reach the database in order and a slow database pushes back on producers instead
+ * of piling up requests. Failed batches are queued again up to
+ * {@link Settings#withMaxAttempts(int)} times.
+ */
+public class TelemetryBatcher implements AutoCloseable {
+    private final BatchWriter writer;
+    private final Settings settings;
+    private final GatewayMetrics metrics;
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    // Guarded by lock
+    private LinkedHashMap<String, PendingCurrent> currents = new LinkedHashMap<>();
+    private final ArrayDeque<PendingLog> logs = new ArrayDeque<>();
+    private boolean closed;
+    private long nextFlushNanos;
+    private long retryAfterNanos;
+
+    /**
+     * Batching limits, defaulting to one write per second of at most 500 updates. Immutable.
+     */
+    public static final class Settings {
+        final long flushIntervalMillis;
+        final int maxBatchSize;
+        final int queueCapacity;
+        final DropPolicy dropPolicy;
+        final long blockTimeoutMillis;
+        final int maxAttempts;
+
+        public Settings() {
+            this(1000, 500, 10000, DropPolicy.BLOCK, 1000, 3);
+        }
+
+        private Settings(long flushIntervalMillis, int maxBatchSize, int queueCapacity, DropPolicy dropPolicy,
+                         long blockTimeoutMillis, int maxAttempts) {
+            if (flushIntervalMillis <= 0 || maxBatchSize <= 0 || queueCapacity <= 0 || blockTimeoutMillis < 0
+                || maxAttempts <= 0) {
+                throw new IllegalArgumentException("Limits must be positive");
+            }
+            this.flushIntervalMillis = flushIntervalMillis;
+            this.maxBatchSize = maxBatchSize;
+            this.queueCapacity = queueCapacity;
+            this.dropPolicy = dropPolicy;
+            this.blockTimeoutMillis = blockTimeoutMillis;
+            this.maxAttempts = maxAttempts;
+        }
+
+        /**
+         * Longest time an update waits for company before it is written.
+         */
+        public Settings withFlushInterval(long millis) {
+            return new Settings(millis, maxBatchSize, queueCapacity, dropPolicy, blockTimeoutMillis, maxAttempts);
+        }
+
+        /**
+         * Most paths in one write. A full batch is written without waiting for the interval.
+         */
+        public Settings withMaxBatchSize(int updates) {
+            return new Settings(flushIntervalMillis, updates, queueCapacity, dropPolicy, blockTimeoutMillis,
+                maxAttempts);
+        }
+
+        public Settings withQueueCapacity(int rows) {
+            return new Settings(flushIntervalMillis, maxBatchSize, rows, dropPolicy, blockTimeoutMillis, maxAttempts);
+        }
+
+        public Settings withDropPolicy(DropPolicy policy) {
+            return new Settings(flushIntervalMillis, maxBatchSize, queueCapacity, policy, blockTimeoutMillis,
+                maxAttempts);
+        }
+
+        /**
+         * How long {@link DropPolicy#BLOCK} waits for room before dropping the row.
+         */
+        public Settings withBlockTimeout(long millis) {
+            return new Settings(flushIntervalMillis, maxBatchSize, queueCapacity, dropPolicy, millis, maxAttempts);
+        }
+
+        /**
+         * Writes of an update before it is abandoned, including the first.
+         */
+        public Settings withMaxAttempts(int attempts) {
+            return new Settings(flushIntervalMillis, maxBatchSize, queueCapacity, dropPolicy, blockTimeoutMillis,
+                attempts);
+        }
+    }
+
+    private static final class PendingCurrent {
+        final String deviceId;
+        final CurrentReading reading;
+        final int attempts;
+
+        PendingCurrent(String deviceId, CurrentReading reading, int attempts) {
+            this.deviceId = deviceId;
+            this.reading = reading;
+            this.attempts = attempts;
+        }
+    }
+
+    private static final class PendingLog {
+        final String deviceId;
+        final LogEntry entry;
+        final int attempts;
+
+        PendingLog(String deviceId, LogEntry entry, int attempts) {
+            this.deviceId = deviceId;
+            this.entry = entry;
+            this.attempts = attempts;
+        }
+    }
+
+    public TelemetryBatcher(BatchWriter writer, Settings settings, GatewayMetrics metrics) {
+        this.writer = writer;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.nextFlushNanos = System.nanoTime();
+        this.retryAfterNanos = nextFlushNanos;
+        this.flusher = new Thread(this::flushLoop, "TelemetryBatcher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public GatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Queues a replacement of devices/{id}/current, superseding any pending one of the device.
+     * Returns false once the batcher is closed.
+     */
+    public boolean submitCurrent(String deviceId, CurrentReading reading) {
+        synchronized (lock) {
+            if (closed) return false;
+            if (currents.put(deviceId, new PendingCurrent(deviceId, reading, 0)) != null) {
+                metrics.currentsCoalesced.increment();
+            }
+            metrics.currentsSubmitted.increment();
+            onQueued();
+            return true;
+        }
+    }
+
+    /**
+     * Queues a devices/{id}/logs/{timestamp} row. Returns false if the row was dropped, because
+     * the queue stayed full under the drop policy or the batcher is closed.
+     */
+    public boolean submitLog(String deviceId, LogEntry entry) {
+        synchronized (lock) {
+            if (closed) return false;
+            if (logs.size() >= settings.queueCapacity && !makeRoom()) {
+                metrics.logsDropped.increment();
+                return false;
+            }
+            logs.addLast(new PendingLog(deviceId, entry, 0));
+            metrics.logsSubmitted.increment();
+            onQueued();
+            return true;
+        }
+    }
+
+    /**
+     * Stops accepting updates, writes what is pending (bounded by the retry limit) and stops
+     * the writer thread, waiting at most {@code timeoutMillis}.
+     */
+    public void close(long timeoutMillis) throws InterruptedException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        flusher.join(timeoutMillis);
+        if (flusher.isAlive()) {
+            flusher.interrupt();
+        }
+    }
+
+    /**
+     * {@link #close(long)} with a 30 second limit. An interrupt stops the wait and is kept
+     * on the calling thread.
+     */
+    @Override
+    public void close() {
+        try {
+            close(30000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Called with the lock held and the queue full; false if the row has to be dropped
+    private boolean makeRoom() {
+        switch (settings.dropPolicy) {
+            case DROP_OLDEST:
+                while (logs.size() >= settings.queueCapacity) {
+                    logs.pollFirst();
+                    metrics.logsDropped.increment();
+                }
+                return true;
+            case BLOCK:
+                long start = System.nanoTime();
+                long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.blockTimeoutMillis);
+                try {
+                    while (logs.size() >= settings.queueCapacity && !closed) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) return false;
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                    return !closed;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } finally {
+                    metrics.recordBlocked(System.nanoTime() - start);
+                }
+            case DROP_NEWEST:
+            default:
+                return false;
+        }
+    }
+
+    private void onQueued() {
+        int pending = currents.size() + logs.size();
+        metrics.recordDepth(currents.size(), logs.size());
+        // Wake the writer when the interval starts counting and when a batch is full
+        if (pending == 1 || pending >= settings.maxBatchSize) {
+            lock.notifyAll();
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingCurrent> batchCurrents = new ArrayList<>();
+        List<PendingLog> batchLogs = new ArrayList<>();
+        while (true) {
+            batchCurrents.clear();
+            batchLogs.clear();
+            synchronized (lock) {
+                try {
+                    awaitBatch();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (currents.isEmpty() && logs.isEmpty()) return;
+                drain(batchCurrents, batchLogs);
+                nextFlushNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.flushIntervalMillis);
+                metrics.recordDepth(currents.size(), logs.size());
+                // Producers blocked on a full queue can continue
+                lock.notifyAll();
+            }
+            if (!write(batchCurrents, batchLogs)) return;
+        }
+    }
+
+    // Waits until a full batch is pending, the interval has passed with something pending, or
+    // the batcher is closed. After a failed write even a full batch waits one interval.
+    private void awaitBatch() throws InterruptedException {
+        while (!closed) {
+            int pending = currents.size() + logs.size();
+            if (pending == 0) {
+                lock.wait();
+                continue;
+            }
+            long due = pending >= settings.maxBatchSize || retryAfterNanos - nextFlushNanos > 0
+                ? retryAfterNanos : nextFlushNanos;
+            long remaining = due - System.nanoTime();
+            if (remaining <= 0) return;
+            TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+        }
+    }
+
+    // Current updates first: they are what the app shows, and there is at most one per device
+    private void drain(List<PendingCurrent> batchCurrents, List<PendingLog> batchLogs) {
+        int room = settings.maxBatchSize;
+        Iterator<PendingCurrent> iterator = currents.values().iterator();
+        while (room > 0 && iterator.hasNext()) {
+            batchCurrents.add(iterator.next());
+            iterator.remove();
+            room--;
+        }
+        while (room > 0 && !logs.isEmpty()) {
+            batchLogs.add(logs.pollFirst());
+            room--;
+        }
+    }
+
+    // Returns false if the thread was interrupted
+    private boolean write(List<PendingCurrent> batchCurrents, List<PendingLog> batchLogs) {
+        JsonObject update = new JsonObject();
+        for (PendingCurrent pending : batchCurrents) {
+            update.add(RtdbDataSource.devicePath(pending.deviceId) + "/current", SmartFanJson.toJson(pending.reading));
+        }
+        for (PendingLog pending : batchLogs) {
+            update.add(RtdbDataSource.devicePath(pending.deviceId) + "/logs/" + pending.entry.timestamp,
+                SmartFanJson.toJson(pending.entry));
+        }
+
+        long start = System.nanoTime();
+        try {
+            writer.write(update).get();
+            metrics.recordBatch(batchCurrents.size() + batchLogs.size(), System.nanoTime() - start);
+            return true;
+        } catch (ExecutionException | RuntimeException e) {
+            metrics.writeErrors.increment();
+            requeue(batchCurrents, batchLogs);
+            return true;
+        } catch (InterruptedException e) {
+            requeue(batchCurrents, batchLogs);
+            return false;
+        }
+    }
+
+    // Puts a failed batch back at the head of the queue, ahead of anything newer
+    private void requeue(List<PendingCurrent> batchCurrents, List<PendingLog> batchLogs) {
+        synchronized (lock) {
+            retryAfterNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.flushIntervalMillis);
+            LinkedHashMap<String, PendingCurrent> retried = new LinkedHashMap<>();
+            for (PendingCurrent pending : batchCurrents) {
+                if (currents.containsKey(pending.deviceId)) {
+                    // A newer update replaces the failed one anyway
+                    metrics.currentsCoalesced.increment();
+                } else if (pending.attempts + 1 >= settings.maxAttempts) {
+                    metrics.opsAbandoned.increment();
+                } else {
+                    retried.put(pending.deviceId, new PendingCurrent(pending.deviceId, pending.reading,
+                        pending.attempts + 1));
+                    metrics.opsRetried.increment();
+                }
+            }
+            for (Map.Entry<String, PendingCurrent> entry : currents.entrySet()) {
+                retried.put(entry.getKey(), entry.getValue());
+            }
+            currents = retried;
+
+            // The queue may briefly hold up to one batch more than its capacity
+            for (int i = batchLogs.size() - 1; i >= 0; i--) {
+                PendingLog pending = batchLogs.get(i);
+                if (pending.attempts + 1 >= settings.maxAttempts) {
+                    metrics.opsAbandoned.increment();
+                } else {
+                    logs.addFirst(new PendingLog(pending.deviceId, pending.entry, pending.attempts + 1));
+                    metrics.opsRetried.increment();
+                }
+            }
+            metrics.recordDepth(currents.size(), logs.size());
+        }
+    }
+}
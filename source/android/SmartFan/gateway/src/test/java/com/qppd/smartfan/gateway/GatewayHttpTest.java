@@ -0,0 +1,166 @@
+package com.qppd.smartfan.gateway;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.qppd.smartfan.bridge.Esp32StandIn;
+import com.qppd.smartfan.bridge.TcpTransport;
+import com.qppd.smartfan.bridge.Transport;
+import com.qppd.smartfan.core.control.AutoModeRules;
+import com.qppd.smartfan.rtdb.RtdbClient;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * A gateway serving stand-in fans over loopback TCP and writing to a local HTTP server that
+ * answers like the database's REST API.
+ */
+public class GatewayHttpTest {
+    private final BlockingQueue<JsonObject> patches = new LinkedBlockingQueue<>();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final List<Esp32StandIn> standIns = new ArrayList<>();
+    private HttpServer database;
+    private ServerSocketChannel fanServer;
+    private Gateway gateway;
+
+    @Before
+    public void setUp() throws Exception {
+        database = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        database.createContext("/", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            boolean fail = failuresLeft.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+            if (!fail && "PATCH".equals(exchange.getRequestMethod()) && "/.json".equals(exchange.getRequestURI().getPath())) {
+                patches.add(JsonParser.parseString(body).getAsJsonObject());
+            }
+            byte[] response = (fail ? "{\"error\":\"unavailable\"}" : body).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(fail ? 503 : 200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        database.start();
+
+        fanServer = ServerSocketChannel.open();
+        fanServer.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        RtdbClient client = new RtdbClient(URI.create("http://127.0.0.1:" + database.getAddress().getPort()),
+            "test-ns", null);
+        gateway = new Gateway(BatchWriter.forClient(client),
+            new TelemetryBatcher.Settings().withFlushInterval(200),
+            new FanSession.Settings().withSendInterval(500).withRequestInterval(1000), 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        gateway.close(5000);
+        for (Esp32StandIn standIn : standIns) {
+            standIn.close();
+        }
+        fanServer.close();
+        database.stop(0);
+    }
+
+    @Test
+    public void uploadsOfManyFans_shareMultiPathWrites() throws Exception {
+        int fans = 20;
+        for (int i = 0; i < fans; i++) {
+            gateway.addFan("fan" + i, standIn(20 + i * 0.5f));
+        }
+
+        // Each fan uploads about once a second; collect until every fan has a current and a log
+        boolean[] seenCurrent = new boolean[fans];
+        boolean[] seenLog = new boolean[fans];
+        int writes = 0;
+        long deadline = System.currentTimeMillis() + 15000;
+        while (!allTrue(seenCurrent) || !allTrue(seenLog)) {
+            JsonObject patch = patches.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            assertNotNull("Not every fan uploaded", patch);
+            writes++;
+            for (String path : patch.keySet()) {
+                String[] parts = path.split("/");
+                assertEquals("smartfan", parts[0]);
+                assertEquals("devices", parts[1]);
+                int fan = Integer.parseInt(parts[2].substring(3));
+                JsonObject value = patch.getAsJsonObject(path);
+                if (parts[3].equals("current")) {
+                    seenCurrent[fan] = true;
+                    assertEquals(240.0, value.get("voltage").getAsDouble(), 0);
+                    assertEquals("auto", value.get("mode").getAsString());
+                    // Zero until the stand-in's first ALL frame arrives
+                    int fanSpeed = value.get("fanSpeed").getAsInt();
+                    assertTrue(fanSpeed == 0 || fanSpeed == fanSpeed(20 + fan * 0.5f));
+                } else {
+                    assertEquals("logs", parts[3]);
+                    seenLog[fan] = true;
+                    assertEquals(parts[4], value.get("timestamp").getAsString());
+                    assertTrue(value.get("datetime").getAsString().matches("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d"));
+                }
+            }
+        }
+        // 40 uploads in far fewer requests than the 40 an ESP8266 per fan would make
+        assertTrue("writes " + writes, writes < fans);
+        assertTrue(gateway.getMetrics().getMeanBatchSize() > 2);
+    }
+
+    @Test
+    public void failedWrites_areRetried() throws Exception {
+        failuresLeft.set(2);
+        gateway.addFan("fan0", standIn(25));
+
+        JsonObject patch = patches.poll(15, TimeUnit.SECONDS);
+        assertNotNull(patch);
+        assertTrue(patch.has("smartfan/devices/fan0/current"));
+        assertEquals(2, gateway.getMetrics().getWriteErrors());
+        assertEquals(0, gateway.getMetrics().getOpsAbandoned());
+    }
+
+    private FanSession.Opener standIn(float temperature) {
+        InetSocketAddress address;
+        try {
+            address = (InetSocketAddress) fanServer.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return () -> {
+            synchronized (fanServer) {
+                Transport fan = TcpTransport.connect(address.getHostString(), address.getPort());
+                Esp32StandIn standIn = new Esp32StandIn(TcpTransport.accept(fanServer), 200);
+                standIn.setTemperature(temperature);
+                standIn.start();
+                synchronized (standIns) {
+                    standIns.add(standIn);
+                }
+                return fan;
+            }
+        };
+    }
+
+    // Auto mode with the firmware's default target of 50%
+    private static int fanSpeed(float temperature) {
+        return Math.max(50, AutoModeRules.autoSpeed(temperature));
+    }
+
+    private static boolean allTrue(boolean[] values) {
+        for (boolean value : values) {
+            if (!value) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,260 @@
+package com.qppd.smartfan.gateway;
+
+import com.google.gson.JsonObject;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.history.LogEntry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TelemetryBatcherTest {
+    private final RecordingWriter writer = new RecordingWriter();
+    private TelemetryBatcher batcher;
+
+    @After
+    public void tearDown() throws Exception {
+        writer.releaseAll();
+        if (batcher != null) batcher.close(5000);
+    }
+
+    @Test
+    public void currents_areCoalescedPerDevice() throws Exception {
+        writer.hold();
+        batcher = new TelemetryBatcher(writer, new TelemetryBatcher.Settings().withFlushInterval(50), new GatewayMetrics());
+        batcher.submitCurrent("fan1", current(1));
+        JsonObject first = writer.awaitWrite();
+        for (int i = 2; i <= 5; i++) {
+            batcher.submitCurrent("fan1", current(i));
+        }
+        batcher.submitCurrent("fan2", current(9));
+        writer.releaseAll();
+
+        JsonObject second = writer.awaitWrite();
+        assertEquals(1, first.size());
+        assertEquals(2, second.size());
+        assertEquals(5, second.getAsJsonObject("smartfan/devices/fan1/current").get("lastUpdate").getAsLong());
+        assertEquals(3, batcher.getMetrics().getCurrentsCoalesced());
+    }
+
+    @Test
+    public void fullBatch_isWrittenWithoutWaitingForTheInterval() throws Exception {
+        batcher = new TelemetryBatcher(writer,
+            new TelemetryBatcher.Settings().withFlushInterval(60000).withMaxBatchSize(10), new GatewayMetrics());
+        // The first row goes out at once, after that rows wait for the interval or a full batch
+        batcher.submitLog("warmup", log(0));
+        assertEquals(1, writer.awaitWrite().size());
+        for (int i = 1; i <= 25; i++) {
+            batcher.submitLog("fan" + (i % 3), log(i));
+        }
+        assertEquals(10, writer.awaitWrite().size());
+        assertEquals(10, writer.awaitWrite().size());
+        assertNull(writer.writes.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(10, batcher.getMetrics().getMaxBatchSize());
+    }
+
+    @Test
+    public void logs_keepTheirOrderAcrossBatches() throws Exception {
+        batcher = new TelemetryBatcher(writer,
+            new TelemetryBatcher.Settings().withFlushInterval(10).withMaxBatchSize(7), new GatewayMetrics());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(batcher.submitLog("fan", log(i)));
+        }
+        batcher.close(5000);
+        batcher = null;
+
+        List<Long> timestamps = new ArrayList<>();
+        JsonObject write;
+        while ((write = writer.writes.poll()) != null) {
+            for (String path : write.keySet()) {
+                timestamps.add(Long.parseLong(path.substring(path.lastIndexOf('/') + 1)));
+            }
+        }
+        assertEquals(100, timestamps.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (long) timestamps.get(i));
+        }
+    }
+
+    @Test
+    public void dropNewest_rejectsRowsWhileFull() throws Exception {
+        batcher = heldBatcher(DropPolicy.DROP_NEWEST);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i <= 3, batcher.submitLog("fan", log(i)));
+        }
+        writer.releaseAll();
+        assertEquals(2, batcher.getMetrics().getLogsDropped());
+        assertEquals(firstRowAndQueued(1, 2, 3), writtenTimestamps(2));
+    }
+
+    @Test
+    public void dropOldest_keepsTheNewestRows() throws Exception {
+        batcher = heldBatcher(DropPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(batcher.submitLog("fan", log(i)));
+        }
+        writer.releaseAll();
+        assertEquals(2, batcher.getMetrics().getLogsDropped());
+        assertEquals(firstRowAndQueued(3, 4, 5), writtenTimestamps(2));
+    }
+
+    @Test
+    public void block_waitsForRoomAndTimesOut() throws Exception {
+        batcher = heldBatcher(DropPolicy.BLOCK);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(batcher.submitLog("fan", log(i)));
+        }
+        long start = System.nanoTime();
+        assertFalse(batcher.submitLog("fan", log(4)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+
+        // Once the writer drains the queue, a blocked producer gets through
+        CountDownLatch accepted = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            if (batcher.submitLog("fan", log(5))) accepted.countDown();
+        });
+        producer.start();
+        Thread.sleep(50);
+        writer.releaseAll();
+        assertTrue(accepted.await(2, TimeUnit.SECONDS));
+        assertTrue(batcher.getMetrics().getBlockedMillis() >= 150);
+    }
+
+    @Test
+    public void failedWrites_areRetriedThenAbandoned() throws Exception {
+        writer.hold();
+        batcher = new TelemetryBatcher(writer,
+            new TelemetryBatcher.Settings().withFlushInterval(20).withMaxAttempts(3), new GatewayMetrics());
+        batcher.submitLog("fan", log(0));
+        writer.awaitWrite();
+        batcher.submitLog("fan", log(1));
+        batcher.submitCurrent("fan", current(1));
+        writer.failNext(2);
+        writer.releaseAll();
+
+        JsonObject written = writer.awaitWrite();
+        assertEquals(2, written.size());
+        GatewayMetrics metrics = batcher.getMetrics();
+        assertEquals(2, metrics.getWriteErrors());
+        assertEquals(4, metrics.getOpsRetried());
+        assertEquals(0, metrics.getOpsAbandoned());
+
+        writer.failNext(3);
+        batcher.submitLog("fan", log(2));
+        Thread.sleep(300);
+        assertEquals(1, metrics.getOpsAbandoned());
+        assertNull(writer.writes.poll());
+    }
+
+    @Test
+    public void close_flushesPendingUpdates() throws Exception {
+        batcher = new TelemetryBatcher(writer, new TelemetryBatcher.Settings().withFlushInterval(60000),
+            new GatewayMetrics());
+        batcher.submitLog("fan", log(1));
+        writer.awaitWrite();
+        batcher.submitLog("fan", log(2));
+        batcher.submitCurrent("fan", current(2));
+        batcher.close(5000);
+
+        assertEquals(2, writer.awaitWrite().size());
+        assertFalse(batcher.submitLog("fan", log(3)));
+        batcher = null;
+    }
+
+    // Capacity 3 with the writer stuck on a first one-row batch
+    private TelemetryBatcher heldBatcher(DropPolicy policy) throws InterruptedException {
+        writer.hold();
+        TelemetryBatcher held = new TelemetryBatcher(writer, new TelemetryBatcher.Settings()
+            .withFlushInterval(20).withQueueCapacity(3).withDropPolicy(policy).withBlockTimeout(150),
+            new GatewayMetrics());
+        held.submitLog("fan", log(0));
+        writer.awaitWrite();
+        return held;
+    }
+
+    private static List<Long> firstRowAndQueued(long... queued) {
+        List<Long> expected = new ArrayList<>();
+        expected.add(0L);
+        for (long timestamp : queued) {
+            expected.add(timestamp);
+        }
+        return expected;
+    }
+
+    private List<Long> writtenTimestamps(int writes) throws InterruptedException {
+        List<Long> timestamps = new ArrayList<>();
+        timestamps.add(0L);
+        for (int i = 1; i < writes; i++) {
+            for (String path : writer.awaitWrite().keySet()) {
+                timestamps.add(Long.parseLong(path.substring(path.lastIndexOf('/') + 1)));
+            }
+        }
+        return timestamps;
+    }
+
+    private static CurrentReading current(long lastUpdate) {
+        return new CurrentReading(25.0, null, 50, "auto", 240.0, 0.175, 42.0, 0.5, lastUpdate);
+    }
+
+    private static LogEntry log(long timestamp) {
+        return new LogEntry(timestamp, "2025-01-01 08:00:00", 25.0, 50L, 240.0, 0.175, 42.0, 0.5);
+    }
+
+    /**
+     * Records every write. Writes can be held back, to fill the queue, or made to fail.
+     */
+    private static final class RecordingWriter implements BatchWriter {
+        final BlockingQueue<JsonObject> writes = new LinkedBlockingQueue<>();
+        private final List<CompletableFuture<Void>> held = new ArrayList<>();
+        private boolean holding;
+        private int failures;
+
+        @Override
+        public synchronized CompletableFuture<Void> write(JsonObject update) {
+            if (failures > 0) {
+                failures--;
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new RuntimeException("Injected failure"));
+                return failed;
+            }
+            writes.add(update);
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            if (holding) {
+                held.add(future);
+            } else {
+                future.complete(null);
+            }
+            return future;
+        }
+
+        synchronized void hold() {
+            holding = true;
+        }
+
+        synchronized void failNext(int count) {
+            failures = count;
+        }
+
+        synchronized void releaseAll() {
+            holding = false;
+            for (CompletableFuture<Void> future : held) {
+                future.complete(null);
+            }
+            held.clear();
+        }
+
+        JsonObject awaitWrite() throws InterruptedException {
+            JsonObject update = writes.poll(5, TimeUnit.SECONDS);
+            assertNotNull("No write", update);
+            return update;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.qppd.smartfan.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.UiDevice;
+import java.io.IOException;
+import kotlin.Unit;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Collects the baseline profile shipped as app/src/main/baseline-prof.txt. Covers startup
+ * into the dashboard and the history screen with its charts. Needs a rooted device or an API 33+ emulator.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @BeforeClass
+    public static void setUpBackend() throws IOException {
+        FakeBackend.seed();
+        SmartFanActions.ensureSignedIn(UiDevice.getInstance(InstrumentationRegistry.getInstrumentation()));
+    }
+
+    @Test
+    public void generate() {
+        baselineProfileRule.collectBaselineProfile(SmartFanActions.PACKAGE_NAME, scope -> {
+            scope.pressHome();
+            scope.startActivityAndWait();
+            SmartFanActions.waitForDashboard(scope.getDevice());
+            SmartFanActions.openHistory(scope.getDevice());
+            SmartFanActions.browseHistoryCharts(scope.getDevice());
+            SmartFanActions.flingHistory(scope.getDevice());
+            return Unit.INSTANCE;
+        });
+    }
+}
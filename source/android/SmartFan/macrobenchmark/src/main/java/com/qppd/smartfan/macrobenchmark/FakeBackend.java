@@ -0,0 +1,242 @@
+package com.qppd.smartfan.macrobenchmark;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Seeds the Firebase Local Emulator Suite with a benchmark account and a 30-day history.
+ *
+ * The data is generated from a fixed seed so every run measures the same workload. The app's
+ * benchmark build type points Firebase at the same emulator (see SmartFanApplication).
+ */
+public final class FakeBackend {
+    public static final String EMAIL = "benchmark@smartfan.test";
+    public static final String PASSWORD = "benchmark123";
+    public static final String DEVICE_ID = "SmartFan_ESP8266_BENCH";
+    public static final String DEVICE_NAME = "Benchmark Fan";
+
+    private static final int HISTORY_DAYS = 30;
+    private static final int LOG_INTERVAL_SECONDS = 60; // Matches the ESP8266 DATA_SEND_INTERVAL
+    private static final int DATABASE_PORT = 9000;
+    private static final int AUTH_PORT = 9099;
+
+    private static boolean seeded = false;
+
+    private FakeBackend() {
+    }
+
+    public static synchronized void seed() throws IOException {
+        if (seeded) return;
+
+        String host = InstrumentationRegistry.getArguments().getString("emulatorHost", "10.0.2.2");
+        String namespace = resolveNamespace();
+        String uid = createUser(host);
+
+        String databaseUrl = "http://" + host + ":" + DATABASE_PORT;
+        String devicePath = "smartfan/devices/" + DEVICE_ID;
+        long now = System.currentTimeMillis() / 1000;
+
+        try {
+            JSONObject user = new JSONObject();
+            user.put("deviceId", DEVICE_ID);
+            user.put("devices", new JSONObject().put(DEVICE_ID, DEVICE_NAME));
+            write(databaseUrl, namespace, "smartfan/users/" + uid, "PUT", user.toString());
+
+            JSONObject control = new JSONObject();
+            control.put("mode", "auto");
+            control.put("fanSpeed", 50);
+            control.put("targetTemperature", 25.0);
+            control.put("manualControl", false);
+
+            JSONObject device = new JSONObject();
+            device.put("name", DEVICE_NAME);
+            device.put("control", control);
+            device.put("current", reading(now, HISTORY_DAYS * 86400 / LOG_INTERVAL_SECONDS, 0).put("lastUpdate", now));
+            write(databaseUrl, namespace, devicePath, "PUT", device.toString());
+        } catch (JSONException e) {
+            throw new IOException("Failed to build seed data", e);
+        }
+
+        // One request per day keeps each payload small enough for the emulator
+        long start = now - (long) HISTORY_DAYS * 86400;
+        int samplesPerDay = 86400 / LOG_INTERVAL_SECONDS;
+        Random random = new Random(30);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        double kwh = 0;
+        for (int day = 0; day < HISTORY_DAYS; day++) {
+            StringBuilder logs = new StringBuilder("{");
+            for (int i = 0; i < samplesPerDay; i++) {
+                int index = day * samplesPerDay + i;
+                long timestamp = start + (long) index * LOG_INTERVAL_SECONDS;
+                try {
+                    JSONObject entry = reading(timestamp, index, random.nextGaussian());
+                    kwh += entry.getDouble("watt") * LOG_INTERVAL_SECONDS / 3600000.0;
+                    entry.put("kwh", Math.round(kwh * 1000) / 1000.0);
+                    entry.put("timestamp", timestamp);
+                    entry.put("datetime", format.format(new Date(timestamp * 1000)));
+                    if (i > 0) logs.append(',');
+                    logs.append('"').append(timestamp).append("\":").append(entry);
+                } catch (JSONException e) {
+                    throw new IOException("Failed to build log entry", e);
+                }
+            }
+            logs.append('}');
+            write(databaseUrl, namespace, devicePath + "/logs", "PATCH", logs.toString());
+        }
+
+        seeded = true;
+    }
+
+    // Daily temperature cycle peaking mid-afternoon, with the fan following the ESP32 auto ladder
+    private static JSONObject reading(long timestamp, int index, double noise) throws JSONException {
+        double hour = (timestamp % 86400) / 3600.0;
+        double temperature = 27.0 + 4.0 * Math.sin(2 * Math.PI * (hour - 9) / 24) + 0.3 * noise;
+        int fanSpeed = autoFanSpeed(temperature);
+        double voltage = 220.0 + 2.0 * Math.sin(index / 97.0);
+        double current = fanSpeed / 100.0 * 0.35;
+
+        JSONObject entry = new JSONObject();
+        entry.put("temperature", Math.round(temperature * 100) / 100.0);
+        entry.put("humidity", Math.round((65.0 - (temperature - 27.0) * 2.5) * 100) / 100.0);
+        entry.put("fanSpeed", fanSpeed);
+        entry.put("mode", "auto");
+        entry.put("voltage", Math.round(voltage * 100) / 100.0);
+        entry.put("current", Math.round(current * 1000) / 1000.0);
+        entry.put("watt", Math.round(voltage * current * 100) / 100.0);
+        entry.put("kwh", 0.0);
+        return entry;
+    }
+
+    private static int autoFanSpeed(double temperature) {
+        if (temperature >= 32) return 99;
+        if (temperature >= 30) return 90;
+        if (temperature >= 28) return 80;
+        if (temperature >= 26) return 70;
+        if (temperature >= 24) return 60;
+        if (temperature >= 22) return 50;
+        return 0;
+    }
+
+    private static String createUser(String host) throws IOException {
+        String authUrl = "http://" + host + ":" + AUTH_PORT + "/identitytoolkit.googleapis.com/v1/accounts:";
+        String body;
+        try {
+            body = new JSONObject()
+                .put("email", EMAIL)
+                .put("password", PASSWORD)
+                .put("returnSecureToken", true)
+                .toString();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+
+        // Sign up on a fresh emulator, sign in when a previous run already created the account
+        HttpResponse response = request(authUrl + "signUp?key=fake-api-key", "POST", body, false);
+        if (response.code != HttpURLConnection.HTTP_OK) {
+            response = request(authUrl + "signInWithPassword?key=fake-api-key", "POST", body, false);
+        }
+        if (response.code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Auth emulator rejected benchmark user: " + response.body);
+        }
+        try {
+            return new JSONObject(response.body).getString("localId");
+        } catch (JSONException e) {
+            throw new IOException("Unexpected auth emulator response: " + response.body, e);
+        }
+    }
+
+    private static void write(String databaseUrl, String namespace, String path, String method, String json)
+            throws IOException {
+        String url = databaseUrl + "/" + path + ".json?ns=" + Uri.encode(namespace);
+        HttpResponse response = request(url, method, json, true);
+        if (response.code != HttpURLConnection.HTTP_OK) {
+            throw new IOException(method + " " + path + " failed (" + response.code + "): " + response.body);
+        }
+    }
+
+    private static HttpResponse request(String url, String method, String body, boolean owner) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            // HttpURLConnection has no PATCH, the database REST API accepts an override header
+            if ("PATCH".equals(method)) {
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+            } else {
+                connection.setRequestMethod(method);
+            }
+            if (owner) {
+                // Admin access on the database emulator, bypasses security rules
+                connection.setRequestProperty("Authorization", "Bearer owner");
+            }
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+
+            int code = connection.getResponseCode();
+            InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+            return new HttpResponse(code, in != null ? readFully(in) : "");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // The emulator keys data by namespace, which has to match the app's configured database
+    private static String resolveNamespace() throws IOException {
+        String override = InstrumentationRegistry.getArguments().getString("databaseNamespace");
+        if (override != null) return override;
+
+        try {
+            Context appContext = InstrumentationRegistry.getInstrumentation().getContext()
+                .createPackageContext(SmartFanActions.PACKAGE_NAME, 0);
+            int resId = appContext.getResources()
+                .getIdentifier("firebase_database_url", "string", SmartFanActions.PACKAGE_NAME);
+            if (resId == 0) {
+                throw new IOException("App has no firebase_database_url, pass -e databaseNamespace");
+            }
+            String host = Uri.parse(appContext.getString(resId)).getHost();
+            int dot = host.indexOf('.');
+            return dot > 0 ? host.substring(0, dot) : host;
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new IOException("Benchmark build of the app is not installed", e);
+        }
+    }
+
+    private static class HttpResponse {
+        final int code;
+        final String body;
+
+        HttpResponse(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.qppd.smartfan.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.UiDevice;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import kotlin.Unit;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Measures frame timing while flinging HistoryActivity over the seeded 30-day history.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class HistoryScrollBenchmark {
+    private static final int ITERATIONS = 5;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    private final CompilationMode compilationMode;
+
+    public HistoryScrollBenchmark(CompilationMode compilationMode) {
+        this.compilationMode = compilationMode;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {
+            {new CompilationMode.None()},
+            {new CompilationMode.Partial()},
+        });
+    }
+
+    @BeforeClass
+    public static void setUpBackend() throws IOException {
+        FakeBackend.seed();
+        SmartFanActions.ensureSignedIn(UiDevice.getInstance(InstrumentationRegistry.getInstrumentation()));
+    }
+
+    @Test
+    public void flingHistory() {
+        benchmarkRule.measureRepeated(
+            SmartFanActions.PACKAGE_NAME,
+            Collections.singletonList(new FrameTimingMetric()),
+            compilationMode,
+            StartupMode.WARM,
+            ITERATIONS,
+            scope -> {
+                // Loading and charting the history is not part of the measured fling
+                scope.startActivityAndWait();
+                SmartFanActions.waitForDashboard(scope.getDevice());
+                SmartFanActions.openHistory(scope.getDevice());
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                SmartFanActions.flingHistory(scope.getDevice());
+                return Unit.INSTANCE;
+            });
+    }
+}
@@ -0,0 +1,98 @@
+package com.qppd.smartfan.macrobenchmark;
+
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * UI journeys shared by the benchmarks and the baseline profile generator.
+ */
+public final class SmartFanActions {
+    public static final String PACKAGE_NAME = "com.qppd.smartfan";
+
+    private static final long SCREEN_TIMEOUT_MS = 15000;
+    // The history screen loads the whole 30-day log before showing the list
+    private static final long HISTORY_TIMEOUT_MS = 60000;
+
+    private SmartFanActions() {
+    }
+
+    /**
+     * Launches the app once and signs in with the seeded account if needed. Auth state
+     * survives process kills, so measured iterations start on the dashboard.
+     */
+    public static void ensureSignedIn(UiDevice device) throws IOException {
+        device.executeShellCommand("am start -W -n " + PACKAGE_NAME + "/.ui.SplashActivity");
+        device.wait(Until.hasObject(By.res(Pattern.compile(PACKAGE_NAME + ":id/(editTextEmail|cardDeviceStatus)"))),
+            SCREEN_TIMEOUT_MS);
+
+        UiObject2 email = device.findObject(By.res(PACKAGE_NAME, "editTextEmail"));
+        if (email != null) {
+            email.setText(FakeBackend.EMAIL);
+            device.findObject(By.res(PACKAGE_NAME, "editTextPassword")).setText(FakeBackend.PASSWORD);
+            device.findObject(By.res(PACKAGE_NAME, "buttonLogin")).click();
+        }
+        waitForDashboard(device);
+        device.pressHome();
+    }
+
+    public static void waitForDashboard(UiDevice device) {
+        if (!device.wait(Until.hasObject(By.res(PACKAGE_NAME, "cardDeviceStatus")), SCREEN_TIMEOUT_MS)) {
+            throw new AssertionError("Dashboard did not appear");
+        }
+    }
+
+    public static void openHistory(UiDevice device) {
+        UiObject2 historyButton = device.findObject(By.res(PACKAGE_NAME, "buttonHistory"));
+        if (historyButton == null) {
+            // Quick actions sit at the bottom of the dashboard
+            historyButton = device.findObject(By.scrollable(true))
+                .scrollUntil(Direction.DOWN, Until.findObject(By.res(PACKAGE_NAME, "buttonHistory")));
+        }
+        historyButton.click();
+
+        if (!device.wait(Until.hasObject(By.res(PACKAGE_NAME, "recyclerViewLogs").hasChild(By.depth(1))),
+                HISTORY_TIMEOUT_MS)) {
+            throw new AssertionError("History logs did not load");
+        }
+    }
+
+    /**
+     * Switches the history filters and zooms into the temperature chart, so the chart
+     * series, downsampling and detail loading run as they do for a user.
+     */
+    public static void browseHistoryCharts(UiDevice device) {
+        for (String chip : new String[]{"chip7days", "chip30days", "chipRecent", "chip24h"}) {
+            UiObject2 filter = device.findObject(By.res(PACKAGE_NAME, chip));
+            if (filter != null) {
+                filter.click();
+                device.waitForIdle();
+            }
+        }
+        UiObject2 chart = device.findObject(By.res(PACKAGE_NAME, "chartTemperature"));
+        if (chart != null) {
+            chart.setGestureMargin(chart.getVisibleBounds().width() / 10);
+            chart.pinchOpen(0.8f);
+            device.waitForIdle();
+            chart.pinchClose(0.8f);
+            device.waitForIdle();
+        }
+    }
+
+    public static void flingHistory(UiDevice device) {
+        UiObject2 scroller = device.findObject(By.scrollable(true));
+        // Keep gestures away from the system navigation areas
+        scroller.setGestureMargin(device.getDisplayWidth() / 5);
+        for (int i = 0; i < 3; i++) {
+            scroller.fling(Direction.DOWN);
+        }
+        for (int i = 0; i < 3; i++) {
+            scroller.fling(Direction.UP);
+        }
+        device.waitForIdle();
+    }
+}
@@ -0,0 +1,75 @@
+package com.qppd.smartfan.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.UiDevice;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import kotlin.Unit;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Measures launch through SplashActivity until the dashboard shows its first reading
+ * (timeToFullDisplay, reported by MainActivity), with and without the baseline profile.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class StartupBenchmark {
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    private final StartupMode startupMode;
+    private final CompilationMode compilationMode;
+
+    public StartupBenchmark(StartupMode startupMode, CompilationMode compilationMode) {
+        this.startupMode = startupMode;
+        this.compilationMode = compilationMode;
+    }
+
+    @Parameterized.Parameters(name = "{0},{1}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][] {
+            {StartupMode.COLD, new CompilationMode.None()},
+            {StartupMode.COLD, new CompilationMode.Partial()},
+            {StartupMode.WARM, new CompilationMode.None()},
+            {StartupMode.WARM, new CompilationMode.Partial()},
+        });
+    }
+
+    @BeforeClass
+    public static void setUpBackend() throws IOException {
+        FakeBackend.seed();
+        SmartFanActions.ensureSignedIn(UiDevice.getInstance(InstrumentationRegistry.getInstrumentation()));
+    }
+
+    @Test
+    public void startup() {
+        benchmarkRule.measureRepeated(
+            SmartFanActions.PACKAGE_NAME,
+            Collections.singletonList(new StartupTimingMetric()),
+            compilationMode,
+            startupMode,
+            ITERATIONS,
+            scope -> {
+                scope.pressHome();
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                scope.startActivityAndWait();
+                SmartFanActions.waitForDashboard(scope.getDevice());
+                return Unit.INSTANCE;
+            });
+    }
+}
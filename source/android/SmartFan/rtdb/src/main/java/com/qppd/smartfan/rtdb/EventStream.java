@@ -0,0 +1,187 @@
+package com.qppd.smartfan.rtdb;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A streaming (server-sent events) subscription to one database node.
+ *
+ * The server first sends the whole node as a put at "/", then a put or patch for every
+ * change below it. When the connection drops the stream reconnects with exponential
+ * backoff and the server starts over with a full put, so listeners that apply events to a
+ * {@link JsonTree} stay consistent. A revoked token or a rules rejection ends the stream.
+ */
+public final class EventStream implements AutoCloseable {
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private final RtdbClient client;
+    private final String path;
+    private final Listener listener;
+    private volatile boolean closed;
+    private volatile Flow.Subscription subscription;
+    private long backoffMs = MIN_BACKOFF_MS;
+
+    public interface Listener {
+        /**
+         * Replaces the value at {@code path}, relative to the streamed node ("/" is the node itself).
+         */
+        void onPut(String path, JsonElement data);
+
+        /**
+         * Replaces the given children of the value at {@code path}.
+         */
+        void onPatch(String path, JsonObject data);
+
+        /**
+         * The stream failed. It is retried unless {@code fatal} is set.
+         */
+        void onError(Exception error, boolean fatal);
+    }
+
+    EventStream(RtdbClient client, String path, Listener listener) {
+        this.client = client;
+        this.path = path;
+        this.listener = listener;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    void connect() {
+        if (closed) return;
+        HttpRequest request = client.request(path, null)
+            .header("Accept", "text/event-stream")
+            .GET()
+            .build();
+        client.httpClient()
+            .sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(new LineSubscriber()))
+            .whenComplete((response, error) -> {
+                if (closed) return;
+                if (error != null) {
+                    retry(error instanceof Exception ? (Exception) error : new RuntimeException(error));
+                } else if (response.statusCode() / 100 != 2) {
+                    boolean fatal = response.statusCode() == 401 || response.statusCode() == 403;
+                    Exception failure = new RtdbException(response.statusCode(),
+                        "Stream of " + path + " failed (" + response.statusCode() + ")");
+                    if (fatal) {
+                        listener.onError(failure, true);
+                    } else {
+                        retry(failure);
+                    }
+                } else {
+                    // The server closed a healthy stream, pick it up again right away
+                    retry(null);
+                }
+            });
+    }
+
+    private void retry(Exception error) {
+        if (error != null) {
+            listener.onError(error, false);
+        }
+        long delay;
+        synchronized (this) {
+            delay = backoffMs;
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+        if (!client.reconnectScheduler.isShutdown()) {
+            client.reconnectScheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void dispatch(String event, String data) {
+        switch (event) {
+            case "put":
+            case "patch":
+                JsonObject payload;
+                try {
+                    payload = JsonParser.parseString(data).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    listener.onError(e, false);
+                    return;
+                }
+                synchronized (this) {
+                    backoffMs = MIN_BACKOFF_MS;
+                }
+                String eventPath = payload.get("path").getAsString();
+                JsonElement eventData = payload.get("data");
+                if ("put".equals(event)) {
+                    listener.onPut(eventPath, eventData);
+                } else if (eventData.isJsonObject()) {
+                    listener.onPatch(eventPath, eventData.getAsJsonObject());
+                }
+                break;
+            case "cancel":
+                closed = true;
+                listener.onError(new RtdbException(403, "Stream of " + path + " cancelled: " + data), true);
+                break;
+            case "auth_revoked":
+                closed = true;
+                listener.onError(new RtdbException(401, "Stream of " + path + " lost its credential"), true);
+                break;
+            default:
+                // keep-alive
+                break;
+        }
+    }
+
+    private class LineSubscriber implements Flow.Subscriber<String> {
+        private String event;
+        private final StringBuilder data = new StringBuilder();
+
+        @Override
+        public void onSubscribe(Flow.Subscription newSubscription) {
+            subscription = newSubscription;
+            if (closed) {
+                newSubscription.cancel();
+            } else {
+                newSubscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (closed) return;
+            if (line.isEmpty()) {
+                if (event != null) {
+                    dispatch(event, data.toString());
+                }
+                event = null;
+                data.setLength(0);
+            } else if (line.startsWith("event:")) {
+                event = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring(5).trim());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Reported through the response future
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
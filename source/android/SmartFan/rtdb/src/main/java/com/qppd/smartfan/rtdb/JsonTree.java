@@ -0,0 +1,59 @@
+package com.qppd.smartfan.rtdb;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import java.util.Map;
+
+/**
+ * Local copy of a streamed node, kept up to date by applying {@link EventStream} events.
+ * Not thread-safe; a stream delivers its events one at a time.
+ */
+public final class JsonTree {
+    private JsonElement root = JsonNull.INSTANCE;
+
+    public JsonElement getRoot() {
+        return root;
+    }
+
+    public void put(String path, JsonElement data) {
+        root = set(root, segments(path), 0, data);
+    }
+
+    public void patch(String path, JsonObject children) {
+        String[] base = segments(path);
+        for (Map.Entry<String, JsonElement> child : children.entrySet()) {
+            String[] childSegments = segments(child.getKey());
+            String[] full = new String[base.length + childSegments.length];
+            System.arraycopy(base, 0, full, 0, base.length);
+            System.arraycopy(childSegments, 0, full, base.length, childSegments.length);
+            root = set(root, full, 0, child.getValue());
+        }
+    }
+
+    private static JsonElement set(JsonElement node, String[] segments, int index, JsonElement value) {
+        if (index == segments.length) {
+            return value == null ? JsonNull.INSTANCE : value;
+        }
+        JsonObject object = node != null && node.isJsonObject() ? node.getAsJsonObject() : new JsonObject();
+        JsonElement updated = set(object.get(segments[index]), segments, index + 1, value);
+        if (updated.isJsonNull()) {
+            object.remove(segments[index]);
+        } else {
+            object.add(segments[index], updated);
+        }
+        // Like the database, a node without children does not exist
+        return object.size() == 0 ? JsonNull.INSTANCE : object;
+    }
+
+    private static String[] segments(String path) {
+        String trimmed = path;
+        while (trimmed.startsWith("/")) {
+            trimmed = trimmed.substring(1);
+        }
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+    }
+}
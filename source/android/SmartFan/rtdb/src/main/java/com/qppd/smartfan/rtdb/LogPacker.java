@@ -0,0 +1,205 @@
+package com.qppd.smartfan.rtdb;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.qppd.smartfan.core.history.LogBlockCodec;
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogDigests;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moves closed hours or days of per-row logs into blocks under logBlocks (see
+ * {@link LogBlocks}), so a month of history downloads as one small value per block.
+ *
+ * Each block is written in the same multi-path update that deletes its rows, so readers
+ * never miss a row. Rows that arrive for a block after it was packed, such as a backfill,
+ * are merged into it on the next run. Rows whose key is not their timestamp, and rows of a
+ * block that cannot be read, are left alone.
+ *
+ * The packer also keeps the {@link LogDigests digest} of every closed day with packed rows:
+ * it is written with the day's last changed block, or on its own when it is missing or
+ * stale, so a failed run is repaired by the next one. Days with a block that cannot be read
+ * get no digest.
+ */
+public class LogPacker {
+    // Bounds the size of one update
+    private static final int BLOCKS_PER_WRITE = 24;
+
+    private final RtdbClient client;
+    private final long blockSeconds;
+
+    /**
+     * @param blockSeconds {@link LogBlocks#HOUR_SECONDS} or {@link LogBlocks#DAY_SECONDS}
+     */
+    public LogPacker(RtdbClient client, long blockSeconds) {
+        if (blockSeconds <= 0 || blockSeconds > LogBlocks.MAX_BLOCK_SECONDS
+                || LogBlocks.DAY_SECONDS % blockSeconds != 0) {
+            throw new IllegalArgumentException("Blocks must divide a day, got " + blockSeconds + " s");
+        }
+        this.client = client;
+        this.blockSeconds = blockSeconds;
+    }
+
+    /**
+     * Packs the rows of every block that ends at or before {@code beforeSeconds}. Completes
+     * with the number of rows moved.
+     */
+    public CompletableFuture<Integer> pack(String deviceId, long beforeSeconds) {
+        String devicePath = RtdbDataSource.devicePath(deviceId);
+        long end = LogBlocks.blockStart(beforeSeconds, blockSeconds);
+        String lastKey = String.valueOf(end - 1);
+        CompletableFuture<JsonElement> digests = client.get(devicePath + "/" + LogDigests.PATH,
+            RtdbClient.keyRange("0", lastKey));
+        return client.get(devicePath + "/logs", RtdbClient.keyRange("0", lastKey))
+            .thenCombine(client.get(devicePath + "/" + LogBlocks.PATH, RtdbClient.keyRange("0", lastKey)),
+                (rows, blocks) -> plan(rows, blocks, end))
+            .thenCombine(digests, Plan::withDigests)
+            .thenCompose(writes -> write(devicePath, writes, 0, 0));
+    }
+
+    // One update per BLOCKS_PER_WRITE blocks that gained rows
+    private Plan plan(JsonElement rowsJson, JsonElement blocksJson, long end) {
+        TreeMap<Long, List<LogEntry>> rowsByBlock = new TreeMap<>();
+        if (rowsJson.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> child : rowsJson.getAsJsonObject().entrySet()) {
+                LogEntry entry = SmartFanJson.toLogEntry(child.getValue());
+                if (entry == null || entry.timestamp == null || !child.getKey().equals(entry.timestamp.toString())) {
+                    continue;
+                }
+                rowsByBlock.computeIfAbsent(LogBlocks.blockStart(entry.timestamp, blockSeconds),
+                    start -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        // Every row of every closed day after this run, by day, to digest
+        Plan plan = new Plan(end);
+        Map<Long, List<LogEntry>> existing = new TreeMap<>();
+        Set<Long> damaged = new HashSet<>();
+        if (blocksJson.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> packed : blocksJson.getAsJsonObject().entrySet()) {
+                long key;
+                try {
+                    key = Long.parseLong(packed.getKey());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                List<LogEntry> packedRows = new ArrayList<>();
+                try {
+                    LogBlockCodec.decodeBase64(packed.getValue().getAsString(), Long.MIN_VALUE, Long.MAX_VALUE,
+                        packedRows);
+                } catch (IllegalArgumentException | UnsupportedOperationException | IllegalStateException e) {
+                    // A damaged block, or one from a newer version; its rows stay where they are
+                    damaged.add(key);
+                    plan.damagedDays.add(LogBlocks.blockStart(key, LogBlocks.DAY_SECONDS));
+                    continue;
+                }
+                existing.put(key, packedRows);
+                plan.addRows(packedRows);
+            }
+        }
+
+        Write current = null;
+        for (Map.Entry<Long, List<LogEntry>> block : rowsByBlock.entrySet()) {
+            if (damaged.contains(block.getKey())) continue;
+            long day = LogBlocks.blockStart(block.getKey(), LogBlocks.DAY_SECONDS);
+            String key = String.valueOf(block.getKey());
+            TreeMap<Long, LogEntry> merged = new TreeMap<>();
+            List<LogEntry> packedRows = existing.get(block.getKey());
+            if (packedRows != null) {
+                for (LogEntry entry : packedRows) {
+                    merged.put(entry.timestamp, entry);
+                }
+            }
+            for (LogEntry row : block.getValue()) {
+                merged.put(row.timestamp, row);
+            }
+            plan.addRows(block.getValue());
+            if (current == null || current.blocks == BLOCKS_PER_WRITE) {
+                current = new Write();
+                plan.writes.add(current);
+            }
+            plan.lastWriteOfDay.put(day, current);
+            current.update.add(LogBlocks.PATH + "/" + key,
+                new JsonPrimitive(LogBlockCodec.encodeBase64(new ArrayList<>(merged.values()))));
+            for (LogEntry row : block.getValue()) {
+                current.update.add("logs/" + row.timestamp, JsonNull.INSTANCE);
+            }
+            current.blocks++;
+            current.rows += block.getValue().size();
+        }
+        return plan;
+    }
+
+    private CompletableFuture<Integer> write(String devicePath, List<Write> writes, int index, int moved) {
+        if (index == writes.size()) {
+            return CompletableFuture.completedFuture(moved);
+        }
+        Write next = writes.get(index);
+        return client.patch(devicePath, next.update)
+            .thenCompose(v -> write(devicePath, writes, index + 1, moved + next.rows));
+    }
+
+    private static class Write {
+        final JsonObject update = new JsonObject();
+        int blocks;
+        int rows;
+    }
+
+    private static class Plan {
+        final long end;
+        final List<Write> writes = new ArrayList<>();
+        final TreeMap<Long, TreeMap<Long, LogEntry>> rowsByDay = new TreeMap<>();
+        final Set<Long> damagedDays = new HashSet<>();
+        final Map<Long, Write> lastWriteOfDay = new HashMap<>();
+
+        Plan(long end) {
+            this.end = end;
+        }
+
+        // Later rows replace earlier ones with the same timestamp, as rows replace block rows
+        void addRows(List<LogEntry> rows) {
+            for (LogEntry row : rows) {
+                long day = LogBlocks.blockStart(row.timestamp, LogBlocks.DAY_SECONDS);
+                TreeMap<Long, LogEntry> dayRows = rowsByDay.get(day);
+                if (dayRows == null) {
+                    dayRows = new TreeMap<>();
+                    rowsByDay.put(day, dayRows);
+                }
+                dayRows.put(row.timestamp, row);
+            }
+        }
+
+        // Adds the digest of each closed day whose stored one is missing or differs
+        List<Write> withDigests(JsonElement digestsJson) {
+            JsonObject stored = digestsJson.isJsonObject() ? digestsJson.getAsJsonObject() : new JsonObject();
+            Write digestsOnly = null;
+            for (Map.Entry<Long, TreeMap<Long, LogEntry>> day : rowsByDay.entrySet()) {
+                if (day.getKey() + LogBlocks.DAY_SECONDS > end || damagedDays.contains(day.getKey())) continue;
+                String key = String.valueOf(day.getKey());
+                LogDigest digest = LogDigest.of(day.getValue().values());
+                if (digest.equals(SmartFanJson.toLogDigest(stored.get(key)))) continue;
+                Write write = lastWriteOfDay.get(day.getKey());
+                if (write == null) {
+                    if (digestsOnly == null) {
+                        digestsOnly = new Write();
+                        writes.add(digestsOnly);
+                    }
+                    write = digestsOnly;
+                }
+                write.update.add(LogDigests.PATH + "/" + key, SmartFanJson.toJson(digest));
+            }
+            return writes;
+        }
+    }
+}
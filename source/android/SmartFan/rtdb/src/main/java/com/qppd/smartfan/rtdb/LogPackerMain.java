@@ -0,0 +1,71 @@
+package com.qppd.smartfan.rtdb;
+
+import com.qppd.smartfan.core.history.LogBlocks;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs old per-row logs into blocks, for example from a daily cron job.
+ *
+ * <pre>
+ * ./gradlew :rtdb:packLogs --args="--devices SmartFan_ESP8266_001 --database-url ... --access-token ..."
+ * ./gradlew :rtdb:packLogs --args="--devices SmartFan_A,SmartFan_B --emulator 127.0.0.1:9000 --block hour --keep-hours 6"
+ * </pre>
+ *
+ * Rows from the last --keep-hours (default 24) stay as rows, so the firmware and the
+ * dashboard keep working on them unchanged.
+ */
+public final class LogPackerMain {
+    private static final String DEFAULT_NAMESPACE = "demo-smartfan-default-rtdb";
+
+    private LogPackerMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (!options.containsKey("devices")) {
+            throw new IllegalArgumentException("Use --devices id[,id...]");
+        }
+        long blockSeconds = "hour".equals(options.getOrDefault("block", "day"))
+            ? LogBlocks.HOUR_SECONDS : LogBlocks.DAY_SECONDS;
+        long keepSeconds = TimeUnit.HOURS.toSeconds(Long.parseLong(options.getOrDefault("keep-hours", "24")));
+        long beforeSeconds = System.currentTimeMillis() / 1000 - keepSeconds;
+
+        LogPacker packer = new LogPacker(client(options), blockSeconds);
+        for (String deviceId : options.get("devices").split(",")) {
+            int moved = packer.pack(deviceId, beforeSeconds).get();
+            System.out.println(deviceId + ": packed " + moved + " rows");
+        }
+    }
+
+    private static RtdbClient client(Map<String, String> options) {
+        if (options.containsKey("emulator")) {
+            String[] hostPort = options.get("emulator").split(":");
+            return RtdbClient.forEmulator(hostPort[0], Integer.parseInt(hostPort[1]),
+                options.getOrDefault("namespace", DEFAULT_NAMESPACE));
+        }
+        if (options.containsKey("database-url")) {
+            return new RtdbClient(URI.create(options.get("database-url")), options.get("namespace"),
+                options.get("access-token"));
+        }
+        throw new IllegalArgumentException("Use --emulator or --database-url");
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "");
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,155 @@
+package com.qppd.smartfan.rtdb;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Minimal client for the Realtime Database REST API, including its server-sent event
+ * streaming. Works against a production database and against the Firebase emulator.
+ *
+ * All requests are asynchronous and share one {@link HttpClient}, so thousands of
+ * concurrent streams cost connections but no threads. Futures complete and stream
+ * listeners run on the HTTP client's executor.
+ */
+public class RtdbClient {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final String databaseUrl;
+    private final String namespace;
+    private final String accessToken;
+    private final HttpClient httpClient;
+    final ScheduledExecutorService reconnectScheduler;
+
+    /**
+     * @param databaseUrl for example https://smartfan-xyz-default-rtdb.firebaseio.com or
+     *                    http://127.0.0.1:9000 for the emulator
+     * @param namespace   database name, required by the emulator; null for production URLs
+     * @param accessToken OAuth2 access token sent as a bearer token, or null for rules that
+     *                    allow unauthenticated access
+     */
+    public RtdbClient(URI databaseUrl, String namespace, String accessToken) {
+        String url = databaseUrl.toString();
+        this.databaseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.namespace = namespace;
+        this.accessToken = accessToken;
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+        this.reconnectScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RtdbClient-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Client for the Realtime Database emulator, with admin access that bypasses security
+     * rules.
+     */
+    public static RtdbClient forEmulator(String host, int port, String namespace) {
+        return new RtdbClient(URI.create("http://" + host + ":" + port), namespace, "owner");
+    }
+
+    /**
+     * Query string selecting the children whose keys lie in {@code [startAt, endAt]}.
+     */
+    public static String keyRange(String startAt, String endAt) {
+        return "orderBy=" + encode("\"$key\"")
+            + "&startAt=" + encode("\"" + startAt + "\"")
+            + "&endAt=" + encode("\"" + endAt + "\"");
+    }
+
+    /**
+     * Reads a node. Completes with {@link JsonNull} if it does not exist.
+     *
+     * @param query extra query parameters, already encoded, or null
+     */
+    public CompletableFuture<JsonElement> get(String path, String query) {
+        return send(request(path, query).timeout(REQUEST_TIMEOUT).GET().build())
+            .thenApply(body -> body.isEmpty() ? JsonNull.INSTANCE : JsonParser.parseString(body));
+    }
+
+    /**
+     * Replaces a node.
+     */
+    public CompletableFuture<Void> put(String path, JsonElement value) {
+        return send(request(path, null).timeout(REQUEST_TIMEOUT).PUT(body(value)).build()).thenApply(body -> null);
+    }
+
+    /**
+     * Updates the given children of a node. Keys may be paths relative to the node, so a
+     * patch at the root is an atomic multi-path update.
+     */
+    public CompletableFuture<Void> patch(String path, JsonElement children) {
+        return send(request(path, null).timeout(REQUEST_TIMEOUT).method("PATCH", body(children)).build())
+            .thenApply(body -> null);
+    }
+
+    /**
+     * Streams a node: the listener gets its full value first and then every change, until
+     * the stream is closed. Dropped connections are re-established with backoff.
+     */
+    public EventStream listen(String path, EventStream.Listener listener) {
+        EventStream stream = new EventStream(this, path, listener);
+        stream.connect();
+        return stream;
+    }
+
+    HttpClient httpClient() {
+        return httpClient;
+    }
+
+    HttpRequest.Builder request(String path, String query) {
+        StringBuilder url = new StringBuilder(databaseUrl).append('/');
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        url.append(trimmed).append(".json");
+        char separator = '?';
+        if (namespace != null) {
+            url.append(separator).append("ns=").append(encode(namespace));
+            separator = '&';
+        }
+        if (query != null && !query.isEmpty()) {
+            url.append(separator).append(query);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url.toString()));
+        if (accessToken != null) {
+            builder.header("Authorization", "Bearer " + accessToken);
+        }
+        return builder;
+    }
+
+    private CompletableFuture<String> send(HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+            .thenApply(response -> {
+                if (response.statusCode() / 100 != 2) {
+                    throw new CompletionException(new RtdbException(response.statusCode(),
+                        request.method() + " " + request.uri().getPath() + " failed (" + response.statusCode()
+                            + "): " + response.body()));
+                }
+                String body = response.body();
+                return "null".equals(body) ? "" : body;
+            });
+    }
+
+    private static HttpRequest.BodyPublisher body(JsonElement value) {
+        return HttpRequest.BodyPublishers.ofString(value.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
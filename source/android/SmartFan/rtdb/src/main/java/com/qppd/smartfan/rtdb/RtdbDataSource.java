@@ -0,0 +1,235 @@
+package com.qppd.smartfan.rtdb;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogDigests;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * {@link SmartFanDataSource} over the database REST API, for JVM tools that run against
+ * the Firebase emulator or a real project. Callbacks run on the HTTP client's threads.
+ */
+public class RtdbDataSource implements SmartFanDataSource {
+    public static final String ROOT_PATH = "smartfan";
+
+    private final RtdbClient client;
+
+    public RtdbDataSource(RtdbClient client) {
+        this.client = client;
+    }
+
+    public RtdbClient getClient() {
+        return client;
+    }
+
+    public static String devicePath(String deviceId) {
+        return ROOT_PATH + "/devices/" + deviceId;
+    }
+
+    @Override
+    public void fetchUserDeviceId(String uid, DataCallback<String> callback) {
+        complete(client.get(ROOT_PATH + "/users/" + uid + "/deviceId", null), callback, json -> {
+            String deviceId = json.isJsonPrimitive() ? json.getAsString() : null;
+            return deviceId != null && !deviceId.isEmpty() ? deviceId : null;
+        });
+    }
+
+    @Override
+    public Registration observeCurrent(String deviceId, DataObserver<CurrentReading> observer) {
+        return observe(devicePath(deviceId) + "/current", observer, SmartFanJson::toCurrentReading);
+    }
+
+    @Override
+    public Registration observeControl(String deviceId, DataObserver<ControlState> observer) {
+        return observe(devicePath(deviceId) + "/control", observer, SmartFanJson::toControlState);
+    }
+
+    @Override
+    public void fetchLogs(String deviceId, long fromMillis, long toMillis, DataCallback<List<LogEntry>> callback) {
+        long fromSeconds = Math.floorDiv(fromMillis + 999, 1000L);
+        long lastSeconds = Math.floorDiv(toMillis - 1, 1000L);
+        if (fromSeconds > lastSeconds) {
+            callback.onSuccess(new ArrayList<>());
+            return;
+        }
+        String query = RtdbClient.keyRange(String.valueOf(fromSeconds), String.valueOf(lastSeconds));
+        // Packed history, in blocks that may start up to a day before the range
+        String blockQuery = RtdbClient.keyRange(String.valueOf(LogBlocks.firstBlockKey(fromSeconds)),
+            String.valueOf(lastSeconds));
+        CompletableFuture<List<LogEntry>> logs = client.get(devicePath(deviceId) + "/logs", query)
+            .thenCombine(client.get(devicePath(deviceId) + "/" + LogBlocks.PATH, blockQuery), (rows, blocks) -> {
+                List<String> encoded = new ArrayList<>();
+                if (blocks.isJsonObject()) {
+                    for (Map.Entry<String, JsonElement> block : blocks.getAsJsonObject().entrySet()) {
+                        if (block.getValue().isJsonPrimitive()) encoded.add(block.getValue().getAsString());
+                    }
+                }
+                return LogBlocks.merge(toLogEntries(rows), encoded, fromSeconds, lastSeconds);
+            });
+        complete(logs, callback, entries -> entries);
+    }
+
+    @Override
+    public void fetchLogDigests(String deviceId, long fromMillis, long toMillis,
+                                DataCallback<Map<Long, LogDigest>> callback) {
+        long fromSeconds = Math.floorDiv(fromMillis + 999, 1000L);
+        long lastSeconds = Math.floorDiv(toMillis - 1, 1000L);
+        if (fromSeconds > lastSeconds) {
+            callback.onSuccess(new TreeMap<>());
+            return;
+        }
+        String query = RtdbClient.keyRange(String.valueOf(fromSeconds), String.valueOf(lastSeconds));
+        complete(client.get(devicePath(deviceId) + "/" + LogDigests.PATH, query), callback, json -> {
+            Map<Long, LogDigest> digests = new TreeMap<>();
+            if (json.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> child : json.getAsJsonObject().entrySet()) {
+                    LogDigest digest = SmartFanJson.toLogDigest(child.getValue());
+                    if (digest == null) continue;
+                    try {
+                        digests.put(Long.parseLong(child.getKey()), digest);
+                    } catch (NumberFormatException e) {
+                        // Not a day key
+                    }
+                }
+            }
+            return digests;
+        });
+    }
+
+    private static List<LogEntry> toLogEntries(JsonElement json) {
+        // The REST API returns an unordered object
+        TreeMap<Long, LogEntry> ordered = new TreeMap<>();
+        if (json.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> child : json.getAsJsonObject().entrySet()) {
+                LogEntry entry = SmartFanJson.toLogEntry(child.getValue());
+                if (entry == null) continue;
+                try {
+                    ordered.put(Long.parseLong(child.getKey()), entry);
+                } catch (NumberFormatException e) {
+                    // Not a log written by the firmware
+                }
+            }
+        }
+        return new ArrayList<>(ordered.values());
+    }
+
+    @Override
+    public void writeCurrent(String deviceId, CurrentReading reading, DataCallback<Void> callback) {
+        complete(client.put(devicePath(deviceId) + "/current", SmartFanJson.toJson(reading)), callback, v -> null);
+    }
+
+    @Override
+    public void appendLog(String deviceId, LogEntry entry, DataCallback<Void> callback) {
+        if (entry.timestamp == null) {
+            if (callback != null) {
+                callback.onError(new IllegalArgumentException("Log entries are keyed by timestamp"));
+            }
+            return;
+        }
+        complete(client.put(devicePath(deviceId) + "/logs/" + entry.timestamp, SmartFanJson.toJson(entry)),
+            callback, v -> null);
+    }
+
+    @Override
+    public void updateControl(String deviceId, ControlState changes, DataCallback<Void> callback) {
+        complete(client.patch(devicePath(deviceId) + "/control", SmartFanJson.toJson(changes)), callback, v -> null);
+    }
+
+    @Override
+    public void updateControls(Map<String, ControlState> changesByDevice, DataCallback<Void> callback) {
+        // Field-level paths, so fields a device's changes leave out keep their values
+        JsonObject update = new JsonObject();
+        for (Map.Entry<String, ControlState> device : changesByDevice.entrySet()) {
+            String controlPath = devicePath(device.getKey()) + "/control/";
+            for (Map.Entry<String, JsonElement> field : SmartFanJson.toJson(device.getValue()).entrySet()) {
+                update.add(controlPath + field.getKey(), field.getValue());
+            }
+        }
+        if (update.size() == 0) {
+            if (callback != null) callback.onSuccess(null);
+            return;
+        }
+        complete(client.patch("", update), callback, v -> null);
+    }
+
+    @Override
+    public void fetchGroups(String uid, DataCallback<List<DeviceGroup>> callback) {
+        complete(client.get(groupsPath(uid), null), callback, json -> {
+            List<DeviceGroup> groups = new ArrayList<>();
+            if (json.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> child : json.getAsJsonObject().entrySet()) {
+                    DeviceGroup group = SmartFanJson.toDeviceGroup(child.getKey(), child.getValue());
+                    if (group != null) groups.add(group);
+                }
+            }
+            return groups;
+        });
+    }
+
+    @Override
+    public void saveGroup(String uid, DeviceGroup group, DataCallback<Void> callback) {
+        complete(client.put(groupsPath(uid) + "/" + group.id, SmartFanJson.toJson(group)), callback, v -> null);
+    }
+
+    @Override
+    public void deleteGroup(String uid, String groupId, DataCallback<Void> callback) {
+        complete(client.put(groupsPath(uid) + "/" + groupId, JsonNull.INSTANCE), callback, v -> null);
+    }
+
+    private static String groupsPath(String uid) {
+        return ROOT_PATH + "/users/" + uid + "/groups";
+    }
+
+    private <T> Registration observe(String path, DataObserver<T> observer, Function<JsonElement, T> mapper) {
+        JsonTree tree = new JsonTree();
+        EventStream stream = client.listen(path, new EventStream.Listener() {
+            @Override
+            public void onPut(String eventPath, JsonElement data) {
+                tree.put(eventPath, data);
+                observer.onChanged(mapper.apply(tree.getRoot()));
+            }
+
+            @Override
+            public void onPatch(String eventPath, JsonObject data) {
+                tree.patch(eventPath, data);
+                observer.onChanged(mapper.apply(tree.getRoot()));
+            }
+
+            @Override
+            public void onError(Exception error, boolean fatal) {
+                observer.onError(error);
+            }
+        });
+        return stream::close;
+    }
+
+    private static <R, T> void complete(CompletableFuture<R> future, DataCallback<T> callback, Function<R, T> mapper) {
+        future.whenComplete((result, error) -> {
+            if (callback == null) return;
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                callback.onError(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+            } else {
+                callback.onSuccess(mapper.apply(result));
+            }
+        });
+    }
+}
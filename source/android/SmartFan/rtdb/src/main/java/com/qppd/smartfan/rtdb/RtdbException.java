@@ -0,0 +1,21 @@
+package com.qppd.smartfan.rtdb;
+
+import java.io.IOException;
+
+/**
+ * A request the database answered with an error status.
+ */
+public class RtdbException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public RtdbException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,179 @@
+package com.qppd.smartfan.rtdb;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogDigests;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the SmartFan model to and from the JSON stored in the database, with the field
+ * names the ESP8266 firmware and the app use. Missing or mistyped fields map to null.
+ */
+public final class SmartFanJson {
+
+    private SmartFanJson() {
+    }
+
+    public static JsonObject toJson(CurrentReading reading) {
+        JsonObject json = new JsonObject();
+        json.addProperty("temperature", reading.temperature);
+        json.addProperty("humidity", reading.humidity);
+        json.addProperty("fanSpeed", reading.fanSpeed);
+        json.addProperty("mode", reading.mode);
+        json.addProperty("voltage", reading.voltage);
+        json.addProperty("current", reading.current);
+        json.addProperty("watt", reading.watt);
+        json.addProperty("kwh", reading.kwh);
+        json.addProperty("lastUpdate", reading.lastUpdate);
+        return withoutNulls(json);
+    }
+
+    public static JsonObject toJson(ControlState control) {
+        JsonObject json = new JsonObject();
+        json.addProperty("mode", control.mode);
+        json.addProperty("fanSpeed", control.fanSpeed);
+        json.addProperty("targetTemperature", control.targetTemperature);
+        json.addProperty("manualControl", control.manualControl);
+        json.addProperty("updatedAt", control.updatedAt);
+        return withoutNulls(json);
+    }
+
+    public static JsonObject toJson(LogEntry entry) {
+        JsonObject json = new JsonObject();
+        json.addProperty("timestamp", entry.timestamp);
+        json.addProperty("datetime", entry.datetime);
+        json.addProperty("temperature", entry.temperature);
+        json.addProperty("fanSpeed", entry.fanSpeed);
+        json.addProperty("voltage", entry.voltage);
+        json.addProperty("current", entry.current);
+        json.addProperty("watt", entry.watt);
+        json.addProperty("kwh", entry.kwh);
+        return withoutNulls(json);
+    }
+
+    public static JsonObject toJson(LogDigest digest) {
+        JsonObject json = new JsonObject();
+        json.addProperty(LogDigests.ROWS, digest.rows);
+        json.addProperty(LogDigests.HASH, digest.hashHex());
+        return json;
+    }
+
+    /**
+     * A group as {@code {name, devices: {deviceId: true}}}; the id is the node's key.
+     */
+    public static JsonObject toJson(DeviceGroup group) {
+        JsonObject json = new JsonObject();
+        json.addProperty("name", group.name);
+        JsonObject devices = new JsonObject();
+        for (String deviceId : group.deviceIds) {
+            devices.addProperty(deviceId, true);
+        }
+        json.add("devices", devices);
+        return withoutNulls(json);
+    }
+
+    public static CurrentReading toCurrentReading(JsonElement element) {
+        if (element == null || !element.isJsonObject()) return null;
+        JsonObject json = element.getAsJsonObject();
+        Long fanSpeed = getLong(json, "fanSpeed");
+        return new CurrentReading(
+            getDouble(json, "temperature"),
+            getDouble(json, "humidity"),
+            fanSpeed != null ? fanSpeed.intValue() : null,
+            getString(json, "mode"),
+            getDouble(json, "voltage"),
+            getDouble(json, "current"),
+            getDouble(json, "watt"),
+            getDouble(json, "kwh"),
+            getLong(json, "lastUpdate"));
+    }
+
+    public static ControlState toControlState(JsonElement element) {
+        if (element == null || !element.isJsonObject()) return null;
+        JsonObject json = element.getAsJsonObject();
+        Long fanSpeed = getLong(json, "fanSpeed");
+        JsonElement manualControl = json.get("manualControl");
+        return new ControlState(
+            getString(json, "mode"),
+            fanSpeed != null ? fanSpeed.intValue() : null,
+            getDouble(json, "targetTemperature"),
+            manualControl != null && manualControl.isJsonPrimitive() && manualControl.getAsJsonPrimitive().isBoolean()
+                ? manualControl.getAsBoolean() : null,
+            getLong(json, "updatedAt"));
+    }
+
+    public static LogEntry toLogEntry(JsonElement element) {
+        if (element == null || !element.isJsonObject()) return null;
+        JsonObject json = element.getAsJsonObject();
+        return new LogEntry(
+            getLong(json, "timestamp"),
+            getString(json, "datetime"),
+            getDouble(json, "temperature"),
+            getLong(json, "fanSpeed"),
+            getDouble(json, "voltage"),
+            getDouble(json, "current"),
+            getDouble(json, "watt"),
+            getDouble(json, "kwh"));
+    }
+
+    /** Null unless both fields are present and well formed. */
+    public static LogDigest toLogDigest(JsonElement element) {
+        if (element == null || !element.isJsonObject()) return null;
+        JsonObject json = element.getAsJsonObject();
+        Long rows = getLong(json, LogDigests.ROWS);
+        String hash = getString(json, LogDigests.HASH);
+        if (rows == null || hash == null) return null;
+        try {
+            return new LogDigest(rows.intValue(), LogDigest.parseHash(hash));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static DeviceGroup toDeviceGroup(String id, JsonElement element) {
+        if (element == null || !element.isJsonObject()) return null;
+        JsonObject json = element.getAsJsonObject();
+        List<String> deviceIds = new ArrayList<>();
+        JsonElement devices = json.get("devices");
+        if (devices != null && devices.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> member : devices.getAsJsonObject().entrySet()) {
+                if (!member.getValue().isJsonNull()) deviceIds.add(member.getKey());
+            }
+        }
+        return new DeviceGroup(id, getString(json, "name"), deviceIds);
+    }
+
+    private static JsonObject withoutNulls(JsonObject json) {
+        JsonObject compact = new JsonObject();
+        for (String key : json.keySet()) {
+            JsonElement value = json.get(key);
+            if (!value.isJsonNull()) {
+                compact.add(key, value);
+            }
+        }
+        return compact;
+    }
+
+    private static Double getDouble(JsonObject json, String key) {
+        JsonElement value = json.get(key);
+        if (value == null || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isNumber()) return null;
+        return value.getAsDouble();
+    }
+
+    private static Long getLong(JsonObject json, String key) {
+        Double value = getDouble(json, key);
+        return value != null ? Math.round(value) : null;
+    }
+
+    private static String getString(JsonObject json, String key) {
+        JsonElement value = json.get(key);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+}
@@ -0,0 +1,156 @@
+package com.qppd.smartfan.rtdb;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The client against a local HTTP server that answers like the database's REST API.
+ */
+public class RtdbClientTest {
+    private final BlockingQueue<String> requests = new LinkedBlockingQueue<>();
+    private final CountDownLatch streamDone = new CountDownLatch(1);
+    private HttpServer database;
+    private RtdbClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        database = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        database.createContext("/", this::answer);
+        database.start();
+        client = new RtdbClient(URI.create("http://127.0.0.1:" + database.getAddress().getPort() + "/"),
+            "smartfan", "token");
+    }
+
+    @After
+    public void tearDown() {
+        streamDone.countDown();
+        database.stop(0);
+    }
+
+    @Test
+    public void get_sendsPathNamespaceAndQuery() throws Exception {
+        JsonElement value = client.get("devices/fan-1/logs", RtdbClient.keyRange("100", "200")).get(5, TimeUnit.SECONDS);
+        assertEquals("{\"100\":{\"temperature\":30.5}}", value.toString());
+        assertEquals("GET /devices/fan-1/logs.json ns=smartfan&orderBy=\"$key\"&startAt=\"100\"&endAt=\"200\""
+            + " Bearer token", requests.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void get_missingNodeIsJsonNull() throws Exception {
+        assertTrue(client.get("missing", null).get(5, TimeUnit.SECONDS).isJsonNull());
+    }
+
+    @Test
+    public void patch_sendsTheChildren() throws Exception {
+        JsonObject children = new JsonObject();
+        children.addProperty("devices/fan-1/control/fanSpeed", 80);
+        client.patch("/", children).get(5, TimeUnit.SECONDS);
+        assertEquals("PATCH /.json ns=smartfan Bearer token {\"devices/fan-1/control/fanSpeed\":80}",
+            requests.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void errorStatus_failsWithRtdbException() throws Exception {
+        try {
+            client.put("denied", new JsonObject()).join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof RtdbException);
+            assertEquals(403, ((RtdbException) e.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void listen_deliversPutsAndPatchesUntilCancelled() throws Exception {
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        EventStream stream = client.listen("devices/fan-1/control", new EventStream.Listener() {
+            @Override
+            public void onPut(String path, JsonElement data) {
+                events.add("put " + path + " " + data);
+            }
+
+            @Override
+            public void onPatch(String path, JsonObject data) {
+                events.add("patch " + path + " " + data);
+            }
+
+            @Override
+            public void onError(Exception error, boolean fatal) {
+                events.add("error " + fatal + " " + ((RtdbException) error).getStatusCode());
+            }
+        });
+        try {
+            assertEquals("put / {\"fanSpeed\":50,\"mode\":\"auto\"}", events.poll(5, TimeUnit.SECONDS));
+            assertEquals("patch / {\"fanSpeed\":80}", events.poll(5, TimeUnit.SECONDS));
+            assertEquals("put /mode \"manual\"", events.poll(5, TimeUnit.SECONDS));
+            assertEquals("error true 403", events.poll(5, TimeUnit.SECONDS));
+            assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        requests.add((method + " " + path + " " + exchange.getRequestURI().getQuery() + " "
+            + exchange.getRequestHeaders().getFirst("Authorization") + " " + body).trim());
+
+        if ("text/event-stream".equals(exchange.getRequestHeaders().getFirst("Accept"))) {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                send(out, "put", "{\"path\":\"/\",\"data\":{\"fanSpeed\":50,\"mode\":\"auto\"}}");
+                send(out, "keep-alive", "null");
+                send(out, "patch", "{\"path\":\"/\",\"data\":{\"fanSpeed\":80}}");
+                send(out, "put", "{\"path\":\"/mode\",\"data\":\"manual\"}");
+                send(out, "cancel", "Permission denied");
+                streamDone.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        int status = 200;
+        String response = body;
+        if (path.startsWith("/denied")) {
+            status = 403;
+            response = "{\"error\":\"Permission denied\"}";
+        } else if (path.startsWith("/missing")) {
+            response = "null";
+        } else if ("GET".equals(method)) {
+            response = "{\"100\":{\"temperature\":30.5}}";
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void send(OutputStream out, String event, String data) throws IOException {
+        out.write(("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
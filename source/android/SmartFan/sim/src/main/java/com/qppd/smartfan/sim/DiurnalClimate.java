@@ -0,0 +1,40 @@
+package com.qppd.smartfan.sim;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Daily room temperature cycle of one simulated site, peaking in the afternoon of the
+ * device's GMT+8 local time. The mean, swing and peak hour are drawn from the seed.
+ */
+final class DiurnalClimate {
+    static final TimeZone DEVICE_ZONE = TimeZone.getTimeZone("GMT+8");
+    private static final long ZONE_OFFSET_SECONDS = DEVICE_ZONE.getRawOffset() / 1000;
+
+    private final double meanTemperature;
+    private final double dailyAmplitude;
+    private final double peakHour;
+
+    DiurnalClimate(long seed) {
+        Random climate = new Random(seed);
+        meanTemperature = 26.5 + climate.nextGaussian() * 1.5;
+        dailyAmplitude = 3.0 + climate.nextDouble() * 2.0;
+        peakHour = 13.5 + climate.nextDouble() * 2.0;
+    }
+
+    /**
+     * Temperature of the daily cycle alone at the given Unix time.
+     */
+    double baseline(long epochSecond) {
+        double hour = Math.floorMod(localSecond(epochSecond), 86400L) / 3600.0;
+        return meanTemperature + dailyAmplitude * Math.cos(2 * Math.PI * (hour - peakHour) / 24);
+    }
+
+    static long localDay(long epochSecond) {
+        return Math.floorDiv(localSecond(epochSecond), 86400L);
+    }
+
+    private static long localSecond(long epochSecond) {
+        return epochSecond + ZONE_OFFSET_SECONDS;
+    }
+}
@@ -0,0 +1,41 @@
+package com.qppd.smartfan.sim;
+
+import java.util.Random;
+
+/**
+ * Electrical readings of a simulated fan, following what the firmware reports: the ESP32
+ * sends a fixed 240 V and the ACS712 current, and the ESP8266 uploads watt = V * I.
+ */
+final class FanElectrics {
+    static final double VOLTAGE = 240.0;
+
+    private static final double IDLE_CURRENT = 0.01;
+    private static final double BASE_CURRENT = 0.05;
+    private static final double FULL_SPEED_CURRENT = 0.25;
+
+    private FanElectrics() {
+    }
+
+    /**
+     * Motor current in amperes at a fan speed, with a little sensor noise. Rounded like the
+     * serial protocol does.
+     */
+    static double current(int fanSpeed, Random random) {
+        double current = fanSpeed == 0
+            ? IDLE_CURRENT
+            : BASE_CURRENT + FULL_SPEED_CURRENT * fanSpeed / 100.0 + random.nextGaussian() * 0.004;
+        return round(Math.max(0, current), 1000);
+    }
+
+    static double watt(double current) {
+        return round(current * VOLTAGE, 100);
+    }
+
+    static double kwhFor(double watt, double seconds) {
+        return watt * seconds / 3600.0 / 1000.0;
+    }
+
+    static double round(double value, double scale) {
+        return Math.round(value * scale) / scale;
+    }
+}
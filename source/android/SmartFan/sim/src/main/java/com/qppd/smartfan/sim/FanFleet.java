@@ -0,0 +1,90 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many {@link FanTwin}s against one data source on a small shared thread pool.
+ *
+ * Each twin steps on its own schedule with a random phase, so load on the data source is
+ * spread evenly instead of arriving in bursts.
+ */
+public class FanFleet implements AutoCloseable {
+    private final SmartFanDataSource dataSource;
+    private final FanTwin.Settings settings;
+    private final long seed;
+    private final FleetStats stats = new FleetStats();
+    private final List<FanTwin> twins = new ArrayList<>();
+    private final Random phaseRandom;
+    private final ScheduledExecutorService scheduler;
+
+    public FanFleet(SmartFanDataSource dataSource, FanTwin.Settings settings, long seed, int threads) {
+        this.dataSource = dataSource;
+        this.settings = settings;
+        this.seed = seed;
+        this.phaseRandom = new Random(seed);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "FanFleet-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Device id of the fan with the given index, e.g. SmartFan_SIM_00042.
+     */
+    public static String deviceId(String prefix, int index) {
+        return String.format(Locale.US, "%s%05d", prefix, index);
+    }
+
+    /**
+     * Adds and starts {@code count} twins named with {@link #deviceId(String, int)}.
+     */
+    public synchronized List<FanTwin> addFans(String prefix, int count) {
+        List<FanTwin> added = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String deviceId = deviceId(prefix, twins.size());
+            FanTwin twin = new FanTwin(deviceId, dataSource, settings, stats,
+                TelemetryGenerator.mix(seed, deviceId.hashCode()));
+            twin.start(System.currentTimeMillis());
+
+            long phase = (long) (phaseRandom.nextDouble() * settings.stepMillis);
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    twin.step(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    // An escaping exception would silently cancel this twin's schedule
+                    System.err.println(twin.getDeviceId() + ": " + e);
+                }
+            }, phase, settings.stepMillis, TimeUnit.MILLISECONDS);
+            twins.add(twin);
+            added.add(twin);
+        }
+        return added;
+    }
+
+    public synchronized List<FanTwin> getTwins() {
+        return Collections.unmodifiableList(new ArrayList<>(twins));
+    }
+
+    public FleetStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        for (FanTwin twin : twins) {
+            twin.stop();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.control.AutoModeRules;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.history.LogTime;
+import java.util.Random;
+
+/**
+ * Simulated fan that behaves like an ESP32 + ESP8266 pair towards the database.
+ *
+ * It observes its devices/{id}/control node and applies the ESP32 speed rules to a sensor
+ * temperature driven by a first-order thermal model: the room follows a daily cycle and the
+ * moving air pulls the reading slightly below it. Like the ESP8266 it replaces
+ * devices/{id}/current and appends to devices/{id}/logs at fixed intervals.
+ *
+ * A twin owns no thread. Its owner calls {@link #step(long)} periodically (see
+ * {@link FanFleet}), which is what lets thousands of twins share a few threads.
+ */
+public class FanTwin {
+    // Time constant of the sensor temperature following the room
+    private static final double THERMAL_TIME_CONSTANT_S = 600;
+    // How far a fan at full speed pulls the sensor reading below the room temperature
+    private static final double FULL_SPEED_COOLING = 1.2;
+
+    private final String deviceId;
+    private final SmartFanDataSource dataSource;
+    private final Settings settings;
+    private final FleetStats stats;
+    private final DiurnalClimate climate;
+    private final Random random;
+
+    private Registration controlRegistration;
+    private ControlState control = ControlState.defaults();
+    private double temperature = Double.NaN;
+    private double dayOffset;
+    private long day = Long.MIN_VALUE;
+    private int fanSpeed;
+    private double current;
+    private double watt;
+    private double kwh;
+    private long lastStepMillis;
+    private long lastCurrentMillis;
+    private long lastLogMillis;
+
+    /**
+     * Timing of a twin, defaulting to the firmware's. Immutable.
+     */
+    public static final class Settings {
+        final long stepMillis;
+        final long currentIntervalMillis;
+        final long logIntervalMillis;
+        final boolean publishOnControlChange;
+
+        public Settings() {
+            // SENSOR_READ_INTERVAL of the ESP32 and DATA_SEND_INTERVAL of the ESP8266
+            this(2000, 60000, 60000, false);
+        }
+
+        private Settings(long stepMillis, long currentIntervalMillis, long logIntervalMillis,
+                         boolean publishOnControlChange) {
+            if (stepMillis <= 0 || currentIntervalMillis <= 0 || logIntervalMillis <= 0) {
+                throw new IllegalArgumentException("Intervals must be positive");
+            }
+            this.stepMillis = stepMillis;
+            this.currentIntervalMillis = currentIntervalMillis;
+            this.logIntervalMillis = logIntervalMillis;
+            this.publishOnControlChange = publishOnControlChange;
+        }
+
+        public Settings withStep(long millis) {
+            return new Settings(millis, currentIntervalMillis, logIntervalMillis, publishOnControlChange);
+        }
+
+        public Settings withCurrentInterval(long millis) {
+            return new Settings(stepMillis, millis, logIntervalMillis, publishOnControlChange);
+        }
+
+        public Settings withLogInterval(long millis) {
+            return new Settings(stepMillis, currentIntervalMillis, millis, publishOnControlChange);
+        }
+
+        /**
+         * Publishes devices/{id}/current as soon as a control change is applied instead of at
+         * the next interval. The firmware does not, but it makes control round trips measurable.
+         */
+        public Settings withPublishOnControlChange(boolean publish) {
+            return new Settings(stepMillis, currentIntervalMillis, logIntervalMillis, publish);
+        }
+
+        public long getStepMillis() {
+            return stepMillis;
+        }
+    }
+
+    public FanTwin(String deviceId, SmartFanDataSource dataSource, Settings settings, FleetStats stats, long seed) {
+        this.deviceId = deviceId;
+        this.dataSource = dataSource;
+        this.settings = settings;
+        this.stats = stats;
+        this.climate = new DiurnalClimate(seed);
+        this.random = new Random(TelemetryGenerator.mix(seed, 1));
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Starts following the control node. The first readings are published on the next step.
+     */
+    public synchronized void start(long nowMillis) {
+        lastStepMillis = nowMillis;
+        // Spread uploads so that a fleet started at once does not write in lockstep
+        lastCurrentMillis = nowMillis - (long) (random.nextDouble() * settings.currentIntervalMillis);
+        lastLogMillis = nowMillis - (long) (random.nextDouble() * settings.logIntervalMillis);
+        controlRegistration = dataSource.observeControl(deviceId, new DataObserver<ControlState>() {
+            @Override
+            public void onChanged(ControlState value) {
+                onControl(value);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                stats.controlErrors.increment();
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        if (controlRegistration != null) {
+            controlRegistration.remove();
+            controlRegistration = null;
+        }
+    }
+
+    public synchronized int getFanSpeed() {
+        return fanSpeed;
+    }
+
+    public synchronized double getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * Advances the simulation to {@code nowMillis} and uploads whatever is due.
+     */
+    public synchronized void step(long nowMillis) {
+        long nowSecond = nowMillis / 1000;
+        double elapsedSeconds = Math.max(0, nowMillis - lastStepMillis) / 1000.0;
+        lastStepMillis = nowMillis;
+
+        long today = DiurnalClimate.localDay(nowSecond);
+        if (today != day) {
+            dayOffset = day == Long.MIN_VALUE ? random.nextGaussian() : 0.7 * dayOffset + random.nextGaussian() * 0.8;
+            day = today;
+        }
+
+        double room = climate.baseline(nowSecond) + dayOffset;
+        double equilibrium = room - FULL_SPEED_COOLING * fanSpeed / 100.0;
+        if (Double.isNaN(temperature)) {
+            temperature = equilibrium;
+        } else {
+            double blend = 1 - Math.exp(-elapsedSeconds / THERMAL_TIME_CONSTANT_S);
+            temperature += (equilibrium - temperature) * blend;
+        }
+        double reading = FanElectrics.round(temperature + random.nextGaussian() * 0.05, 100);
+
+        applySpeed(reading);
+        kwh += FanElectrics.kwhFor(watt, elapsedSeconds);
+
+        if (nowMillis - lastCurrentMillis >= settings.currentIntervalMillis) {
+            lastCurrentMillis = nowMillis;
+            publishCurrent(reading, nowSecond);
+        }
+        if (nowMillis - lastLogMillis >= settings.logIntervalMillis) {
+            lastLogMillis = nowMillis;
+            publishLog(reading, nowSecond);
+        }
+    }
+
+    private synchronized void onControl(ControlState value) {
+        stats.controlUpdates.increment();
+        // A missing or partial node falls back to the defaults MainActivity would write
+        control = value != null ? ControlState.defaults().merge(value) : ControlState.defaults();
+        if (Double.isNaN(temperature)) return;
+
+        double reading = FanElectrics.round(temperature, 100);
+        applySpeed(reading);
+        if (settings.publishOnControlChange) {
+            lastCurrentMillis = System.currentTimeMillis();
+            publishCurrent(reading, lastCurrentMillis / 1000);
+        }
+    }
+
+    private void applySpeed(double reading) {
+        fanSpeed = AutoModeRules.effectiveSpeed(control.isAutoMode(), reading, control.fanSpeed);
+        current = FanElectrics.current(fanSpeed, random);
+        watt = FanElectrics.watt(current);
+    }
+
+    private void publishCurrent(double reading, long nowSecond) {
+        CurrentReading currentReading = new CurrentReading(reading, null, fanSpeed, control.mode,
+            FanElectrics.VOLTAGE, current, watt, FanElectrics.round(kwh, 10000), nowSecond);
+        dataSource.writeCurrent(deviceId, currentReading, stats.writeCallback(stats.currentWrites));
+    }
+
+    private void publishLog(double reading, long nowSecond) {
+        LogEntry entry = new LogEntry(nowSecond, LogTime.formatDatetime(nowSecond * 1000, DiurnalClimate.DEVICE_ZONE),
+            reading, (long) fanSpeed, FanElectrics.VOLTAGE, current, watt, FanElectrics.round(kwh, 10000));
+        dataSource.appendLog(deviceId, entry, stats.writeCallback(stats.logWrites));
+    }
+}
@@ -0,0 +1,114 @@
+package com.qppd.smartfan.sim;
+
+import com.google.gson.JsonObject;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import com.qppd.smartfan.rtdb.RtdbClient;
+import com.qppd.smartfan.rtdb.RtdbDataSource;
+import com.qppd.smartfan.rtdb.SmartFanJson;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line entry point that runs a fleet of simulated fans.
+ *
+ * <pre>
+ * ./gradlew :sim:run --args="--fans 1000 --emulator 127.0.0.1:9000"
+ * ./gradlew :sim:run --args="--fans 10 --link-uid &lt;uid&gt; --publish-on-control"
+ * </pre>
+ *
+ * Without --emulator or --database-url the fleet runs against an {@link InMemoryDataSource},
+ * which is useful to check how many twins one machine sustains.
+ */
+public final class FanTwinMain {
+    private static final String DEFAULT_NAMESPACE = "demo-smartfan-default-rtdb";
+    private static final long REPORT_INTERVAL_MS = 10000;
+
+    private FanTwinMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int fans = Integer.parseInt(options.getOrDefault("fans", "10"));
+        String prefix = options.getOrDefault("prefix", "SmartFan_SIM_");
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+            String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors()))));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "0"));
+
+        FanTwin.Settings settings = new FanTwin.Settings()
+            .withCurrentInterval(seconds(options, "current-interval", 60))
+            .withLogInterval(seconds(options, "log-interval", 60))
+            .withPublishOnControlChange(options.containsKey("publish-on-control"));
+
+        SmartFanDataSource dataSource;
+        RtdbClient client = null;
+        if (options.containsKey("emulator")) {
+            String[] hostPort = options.get("emulator").split(":");
+            client = RtdbClient.forEmulator(hostPort[0], Integer.parseInt(hostPort[1]),
+                options.getOrDefault("namespace", DEFAULT_NAMESPACE));
+        } else if (options.containsKey("database-url")) {
+            client = new RtdbClient(URI.create(options.get("database-url")), options.get("namespace"),
+                options.get("access-token"));
+        }
+        dataSource = client != null ? new RtdbDataSource(client) : new InMemoryDataSource();
+
+        try (FanFleet fleet = new FanFleet(dataSource, settings, seed, threads)) {
+            List<FanTwin> twins = fleet.addFans(prefix, fans);
+            if (client != null) {
+                registerDevices(client, twins, options.get("link-uid"));
+            }
+            System.out.println("Running " + twins.size() + " fans (" + twins.get(0).getDeviceId() + " ... "
+                + twins.get(twins.size() - 1).getDeviceId() + ")");
+
+            long deadline = durationSeconds > 0
+                ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(durationSeconds) : Long.MAX_VALUE;
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(Math.min(REPORT_INTERVAL_MS, Math.max(1, deadline - System.currentTimeMillis())));
+                System.out.println(fleet.getStats());
+            }
+        }
+    }
+
+    // Gives every twin a name and a control node, and optionally links them to an account
+    private static void registerDevices(RtdbClient client, List<FanTwin> twins, String uid) {
+        JsonObject update = new JsonObject();
+        JsonObject control = SmartFanJson.toJson(ControlState.defaults());
+        for (FanTwin twin : twins) {
+            String deviceId = twin.getDeviceId();
+            String name = "Simulated " + deviceId.substring(deviceId.length() - 5);
+            update.addProperty(RtdbDataSource.devicePath(deviceId) + "/name", name);
+            update.add(RtdbDataSource.devicePath(deviceId) + "/control", control);
+            if (uid != null) {
+                update.addProperty(RtdbDataSource.ROOT_PATH + "/users/" + uid + "/devices/" + deviceId, name);
+            }
+        }
+        if (uid != null) {
+            update.addProperty(RtdbDataSource.ROOT_PATH + "/users/" + uid + "/deviceId", twins.get(0).getDeviceId());
+        }
+        client.patch("", update).join();
+    }
+
+    private static long seconds(Map<String, String> options, String key, long defaultSeconds) {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault(key, String.valueOf(defaultSeconds))));
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "");
+            }
+        }
+        return options;
+    }
+}
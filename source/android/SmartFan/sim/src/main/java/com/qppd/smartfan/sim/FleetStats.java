@@ -0,0 +1,76 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.data.DataCallback;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by the twins of a fleet. Safe to read while the fleet runs.
+ */
+public class FleetStats {
+    final LongAdder currentWrites = new LongAdder();
+    final LongAdder logWrites = new LongAdder();
+    final LongAdder writeErrors = new LongAdder();
+    final LongAdder controlUpdates = new LongAdder();
+    final LongAdder controlErrors = new LongAdder();
+    private final LongAdder writeLatencyNanos = new LongAdder();
+    private final LongAccumulator maxWriteLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    public long getCurrentWrites() {
+        return currentWrites.sum();
+    }
+
+    public long getLogWrites() {
+        return logWrites.sum();
+    }
+
+    public long getWriteErrors() {
+        return writeErrors.sum();
+    }
+
+    public long getControlUpdates() {
+        return controlUpdates.sum();
+    }
+
+    public long getControlErrors() {
+        return controlErrors.sum();
+    }
+
+    /**
+     * Mean time from issuing a write until the data source confirmed it, in milliseconds.
+     */
+    public double getMeanWriteLatencyMillis() {
+        long writes = currentWrites.sum() + logWrites.sum();
+        return writes == 0 ? 0 : writeLatencyNanos.sum() / 1e6 / writes;
+    }
+
+    public double getMaxWriteLatencyMillis() {
+        return maxWriteLatencyNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("current=%d logs=%d writeErrors=%d control=%d controlErrors=%d "
+                + "writeLatency(mean=%.1fms max=%.1fms)",
+            getCurrentWrites(), getLogWrites(), getWriteErrors(), getControlUpdates(), getControlErrors(),
+            getMeanWriteLatencyMillis(), getMaxWriteLatencyMillis());
+    }
+
+    DataCallback<Void> writeCallback(LongAdder counter) {
+        long startNanos = System.nanoTime();
+        return new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                long latency = System.nanoTime() - startNanos;
+                writeLatencyNanos.add(latency);
+                maxWriteLatencyNanos.accumulate(latency);
+                counter.increment();
+            }
+
+            @Override
+            public void onError(Exception error) {
+                writeErrors.increment();
+            }
+        };
+    }
+}
@@ -0,0 +1,334 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.DeviceGroup;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.data.SmartFanDataSource;
+import com.qppd.smartfan.core.history.LogBlocks;
+import com.qppd.smartfan.core.history.LogDigest;
+import com.qppd.smartfan.core.history.LogDigests;
+import com.qppd.smartfan.core.history.LogEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SmartFanDataSource} that keeps everything in memory, for tests, simulators and
+ * benchmarks that must run without a Firebase project.
+ *
+ * Every callback and observer notification is delivered on the data source's own dispatcher
+ * thread, optionally after a simulated network latency plus uniform random jitter. The
+ * jitter comes from a seeded generator, so runs are repeatable. Notifications of a single
+ * observer are never reordered by jitter, the same guarantee Firebase gives.
+ *
+ * Log entries are stored and returned as is rather than copied, so callers must treat
+ * fetched entries as read only.
+ */
+public class InMemoryDataSource implements SmartFanDataSource, AutoCloseable {
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final Random jitterRandom;
+    private final ScheduledExecutorService dispatcher;
+    private final ConcurrentMap<String, String> userDeviceIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Device> devices = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, DeviceGroup>> userGroups = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a data source that delivers as fast as the dispatcher thread allows.
+     */
+    public InMemoryDataSource() {
+        this(0, 0, 0);
+    }
+
+    /**
+     * Creates a data source that delays every delivery by {@code latencyMillis} plus up to
+     * {@code jitterMillis}.
+     */
+    public InMemoryDataSource(long latencyMillis, long jitterMillis, long seed) {
+        if (latencyMillis < 0 || jitterMillis < 0) {
+            throw new IllegalArgumentException("Latency and jitter must not be negative");
+        }
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.jitterRandom = new Random(seed);
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "InMemoryDataSource");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Seeding helpers. These apply immediately and bypass latency.
+
+    public void setUserDeviceId(String uid, String deviceId) {
+        userDeviceIds.put(uid, deviceId);
+    }
+
+    /**
+     * Stores log entries keyed by their timestamp. Entries without one are skipped.
+     */
+    public void putLogs(String deviceId, Collection<LogEntry> entries) {
+        ConcurrentSkipListMap<Long, LogEntry> logs = device(deviceId).logs;
+        for (LogEntry entry : entries) {
+            if (entry.timestamp != null) {
+                logs.put(entry.timestamp, entry);
+            }
+        }
+    }
+
+    /**
+     * Streams generated history straight into the store and returns the number of entries.
+     */
+    public int loadHistory(String deviceId, TelemetryGenerator generator, long startMillis, long endMillis) {
+        ConcurrentSkipListMap<Long, LogEntry> logs = device(deviceId).logs;
+        int sizeBefore = logs.size();
+        generator.generate(startMillis, endMillis, entry -> logs.put(entry.timestamp, entry));
+        return logs.size() - sizeBefore;
+    }
+
+    public Set<String> getDeviceIds() {
+        return devices.keySet();
+    }
+
+    public int getLogCount(String deviceId) {
+        Device device = devices.get(deviceId);
+        return device != null ? device.logs.size() : 0;
+    }
+
+    @Override
+    public void fetchUserDeviceId(String uid, DataCallback<String> callback) {
+        String deviceId = userDeviceIds.get(uid);
+        deliver(() -> callback.onSuccess(deviceId));
+    }
+
+    @Override
+    public Registration observeCurrent(String deviceId, DataObserver<CurrentReading> observer) {
+        Device device = device(deviceId);
+        synchronized (device) {
+            return device.currentObservers.add(observer, device.current);
+        }
+    }
+
+    @Override
+    public Registration observeControl(String deviceId, DataObserver<ControlState> observer) {
+        Device device = device(deviceId);
+        synchronized (device) {
+            return device.controlObservers.add(observer, device.control);
+        }
+    }
+
+    @Override
+    public void fetchLogs(String deviceId, long fromMillis, long toMillis, DataCallback<List<LogEntry>> callback) {
+        Device device = devices.get(deviceId);
+        long fromSeconds = Math.floorDiv(fromMillis + 999, 1000L);
+        long lastSeconds = Math.floorDiv(toMillis - 1, 1000L);
+        List<LogEntry> entries = device == null || fromSeconds > lastSeconds
+            ? new ArrayList<>()
+            : new ArrayList<>(device.logs.subMap(fromSeconds, true, lastSeconds, true).values());
+        deliver(() -> callback.onSuccess(entries));
+    }
+
+    /**
+     * Digests computed from the stored rows, as if a writer kept them for every day.
+     */
+    @Override
+    public void fetchLogDigests(String deviceId, long fromMillis, long toMillis,
+                                DataCallback<Map<Long, LogDigest>> callback) {
+        Device device = devices.get(deviceId);
+        long fromSeconds = Math.floorDiv(fromMillis + 999, 1000L);
+        long lastSeconds = Math.floorDiv(toMillis - 1, 1000L);
+        Map<Long, LogDigest> digests = new TreeMap<>();
+        if (device != null && fromSeconds <= lastSeconds) {
+            // Whole days whose start lies in the range
+            long lastDayEnd = LogBlocks.blockStart(lastSeconds, LogBlocks.DAY_SECONDS) + LogBlocks.DAY_SECONDS - 1;
+            List<LogEntry> rows = new ArrayList<>(device.logs.subMap(fromSeconds, true, lastDayEnd, true).values());
+            digests.putAll(LogDigests.byDay(rows));
+        }
+        deliver(() -> callback.onSuccess(digests));
+    }
+
+    @Override
+    public void writeCurrent(String deviceId, CurrentReading reading, DataCallback<Void> callback) {
+        Device device = device(deviceId);
+        synchronized (device) {
+            device.current = reading;
+            device.currentObservers.notifyChanged(reading);
+        }
+        complete(callback);
+    }
+
+    @Override
+    public void appendLog(String deviceId, LogEntry entry, DataCallback<Void> callback) {
+        if (entry.timestamp == null) {
+            deliver(() -> callback.onError(new IllegalArgumentException("Log entries are keyed by timestamp")));
+            return;
+        }
+        device(deviceId).logs.put(entry.timestamp, entry);
+        complete(callback);
+    }
+
+    @Override
+    public void updateControl(String deviceId, ControlState changes, DataCallback<Void> callback) {
+        applyControl(deviceId, changes);
+        complete(callback);
+    }
+
+    @Override
+    public void updateControls(Map<String, ControlState> changesByDevice, DataCallback<Void> callback) {
+        // Nothing here can fail halfway, so applying the devices one by one is as good as atomic
+        for (Map.Entry<String, ControlState> changes : changesByDevice.entrySet()) {
+            applyControl(changes.getKey(), changes.getValue());
+        }
+        complete(callback);
+    }
+
+    @Override
+    public void fetchGroups(String uid, DataCallback<List<DeviceGroup>> callback) {
+        Map<String, DeviceGroup> groups = userGroups.get(uid);
+        List<DeviceGroup> result = groups != null ? new ArrayList<>(groups.values()) : new ArrayList<>();
+        deliver(() -> callback.onSuccess(result));
+    }
+
+    @Override
+    public void saveGroup(String uid, DeviceGroup group, DataCallback<Void> callback) {
+        userGroups.computeIfAbsent(uid, id -> new ConcurrentHashMap<>()).put(group.id, group);
+        complete(callback);
+    }
+
+    @Override
+    public void deleteGroup(String uid, String groupId, DataCallback<Void> callback) {
+        Map<String, DeviceGroup> groups = userGroups.get(uid);
+        if (groups != null) groups.remove(groupId);
+        complete(callback);
+    }
+
+    /**
+     * Stops the dispatcher. Pending deliveries are dropped.
+     */
+    @Override
+    public void close() {
+        dispatcher.shutdownNow();
+    }
+
+    private Device device(String deviceId) {
+        return devices.computeIfAbsent(deviceId, id -> new Device());
+    }
+
+    private void applyControl(String deviceId, ControlState changes) {
+        Device device = device(deviceId);
+        synchronized (device) {
+            // Like updateChildren, a missing node is created with just the given fields
+            ControlState updated = device.control != null ? device.control.merge(changes) : changes;
+            device.control = updated;
+            device.controlObservers.notifyChanged(updated);
+        }
+    }
+
+    private void complete(DataCallback<Void> callback) {
+        if (callback != null) {
+            deliver(() -> callback.onSuccess(null));
+        }
+    }
+
+    private void deliver(Runnable delivery) {
+        deliverAt(System.nanoTime() + nextDelayNanos(), delivery);
+    }
+
+    private void deliverAt(long dueNanos, Runnable delivery) {
+        if (dispatcher.isShutdown()) return;
+        long delay = dueNanos - System.nanoTime();
+        if (delay <= 0) {
+            dispatcher.execute(delivery);
+        } else {
+            dispatcher.schedule(delivery, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private long nextDelayNanos() {
+        long delayMillis = latencyMillis;
+        if (jitterMillis > 0) {
+            synchronized (jitterRandom) {
+                delayMillis += (long) (jitterRandom.nextDouble() * jitterMillis);
+            }
+        }
+        return TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    // Writes and observer registration synchronize on the Device so that every observer sees
+    // each value exactly once, starting with the value current when it registered
+    private class Device {
+        final ConcurrentSkipListMap<Long, LogEntry> logs = new ConcurrentSkipListMap<>();
+        final ObserverList<CurrentReading> currentObservers = new ObserverList<>();
+        final ObserverList<ControlState> controlObservers = new ObserverList<>();
+        CurrentReading current;
+        ControlState control;
+    }
+
+    private class ObserverList<T> {
+        private final List<ObserverEntry<T>> entries = new CopyOnWriteArrayList<>();
+
+        Registration add(DataObserver<T> observer, T currentValue) {
+            ObserverEntry<T> entry = new ObserverEntry<>(observer);
+            entries.add(entry);
+            // Firebase delivers the current value to every new listener
+            schedule(entry, currentValue);
+            return () -> {
+                entry.removed = true;
+                entries.remove(entry);
+            };
+        }
+
+        void notifyChanged(T value) {
+            for (ObserverEntry<T> entry : entries) {
+                schedule(entry, value);
+            }
+        }
+
+        private void schedule(ObserverEntry<T> entry, T value) {
+            long due;
+            synchronized (entry) {
+                // Jitter may not overtake an earlier value. Each delivery takes the oldest queued
+                // value rather than its own, so equal due times cannot reorder them either.
+                due = Math.max(System.nanoTime() + nextDelayNanos(), entry.lastDueNanos);
+                entry.lastDueNanos = due;
+                entry.queued.add(value);
+            }
+            deliverAt(due, () -> {
+                T next;
+                synchronized (entry) {
+                    next = entry.queued.removeFirst();
+                }
+                if (!entry.removed) {
+                    entry.observer.onChanged(next);
+                }
+            });
+        }
+    }
+
+    private static class ObserverEntry<T> {
+        final DataObserver<T> observer;
+        // LinkedList since a missing node is delivered as null
+        final LinkedList<T> queued = new LinkedList<>();
+        volatile boolean removed;
+        long lastDueNanos = Long.MIN_VALUE;
+
+        ObserverEntry(DataObserver<T> observer) {
+            this.observer = observer;
+        }
+    }
+}
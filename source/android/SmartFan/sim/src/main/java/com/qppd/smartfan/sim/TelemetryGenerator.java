@@ -0,0 +1,152 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.control.AutoModeRules;
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.history.LogEntry;
+import com.qppd.smartfan.core.history.LogTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.function.Consumer;
+
+/**
+ * Deterministic synthetic device logs that look like what the ESP8266 uploads.
+ *
+ * Temperature follows a daily cycle in the device's GMT+8 local time, shifted by a slow
+ * day-to-day random walk and short-term correlated noise. Fan speed is derived from it with
+ * the ESP32's own rules ({@link AutoModeRules}) and the configured control state. Current
+ * grows with fan speed, voltage is the ESP32's fixed 240 V and watt is V * I as the ESP8266
+ * uploads it. kWh accumulates in RAM on the device, so it drops back to zero after the
+ * occasional simulated reboot, which also leaves a short gap in the log.
+ *
+ * The same seed, control state and time range always produce the same entries.
+ */
+public final class TelemetryGenerator {
+    public static final TimeZone DEVICE_ZONE = DiurnalClimate.DEVICE_ZONE;
+    public static final int DEFAULT_INTERVAL_SECONDS = 60;
+
+    private static final int MAX_REBOOT_GAP_SECONDS = 5 * 60;
+
+    private final long seed;
+    private final int intervalSeconds;
+    private final ControlState control;
+    private final double rebootsPerDay;
+    private final DiurnalClimate climate;
+
+    public TelemetryGenerator(long seed) {
+        this(seed, DEFAULT_INTERVAL_SECONDS, ControlState.defaults(), 0.1);
+    }
+
+    private TelemetryGenerator(long seed, int intervalSeconds, ControlState control, double rebootsPerDay) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("intervalSeconds must be positive");
+        }
+        this.seed = seed;
+        this.intervalSeconds = intervalSeconds;
+        this.control = control;
+        this.rebootsPerDay = rebootsPerDay;
+        this.climate = new DiurnalClimate(seed);
+    }
+
+    /**
+     * Returns a generator for another device, with its own climate and noise but the same
+     * settings. Thousands of devices can be derived from one base seed this way.
+     */
+    public TelemetryGenerator forDevice(String deviceId) {
+        return new TelemetryGenerator(mix(seed, deviceId.hashCode()), intervalSeconds, control, rebootsPerDay);
+    }
+
+    public TelemetryGenerator withInterval(int seconds) {
+        return new TelemetryGenerator(seed, seconds, control, rebootsPerDay);
+    }
+
+    /**
+     * Uses a different /control state. The default is {@link ControlState#defaults()}.
+     */
+    public TelemetryGenerator withControl(ControlState newControl) {
+        return new TelemetryGenerator(seed, intervalSeconds, ControlState.defaults().merge(newControl),
+            rebootsPerDay);
+    }
+
+    /**
+     * Sets the average number of simulated reboots per day. Zero gives gap-free logs with
+     * monotonic kWh.
+     */
+    public TelemetryGenerator withRebootsPerDay(double perDay) {
+        return new TelemetryGenerator(seed, intervalSeconds, control, perDay);
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Generates the entries with {@code startMillis <= timestamp < endMillis}, oldest first.
+     */
+    public List<LogEntry> generate(long startMillis, long endMillis) {
+        long count = Math.max(0, (endMillis - startMillis) / 1000 / intervalSeconds + 1);
+        List<LogEntry> entries = new ArrayList<>((int) Math.min(count, Integer.MAX_VALUE - 8));
+        generate(startMillis, endMillis, entries::add);
+        return entries;
+    }
+
+    /**
+     * Streams the entries with {@code startMillis <= timestamp < endMillis} to {@code sink},
+     * oldest first, without holding them in memory.
+     */
+    public void generate(long startMillis, long endMillis, Consumer<LogEntry> sink) {
+        // Align to the interval so that overlapping ranges produce the same timestamps
+        long firstSecond = ceilDiv(startMillis, 1000L * intervalSeconds) * intervalSeconds;
+        long endSecond = ceilDiv(endMillis, 1000L);
+
+        Random random = new Random(mix(seed, firstSecond));
+        double rebootChance = rebootsPerDay * intervalSeconds / 86400.0;
+        long currentDay = Long.MIN_VALUE;
+        double dayOffset = random.nextGaussian() * 1.0;
+        double noise = 0;
+        double kwh = random.nextDouble() * 5;
+        long resumeAt = Long.MIN_VALUE;
+
+        for (long second = firstSecond; second < endSecond; second += intervalSeconds) {
+            long day = DiurnalClimate.localDay(second);
+            if (day != currentDay) {
+                // Mean reverting day-to-day drift (a warm spell, a cool rainy day)
+                if (currentDay != Long.MIN_VALUE) {
+                    dayOffset = 0.7 * dayOffset + random.nextGaussian() * 0.8;
+                }
+                currentDay = day;
+            }
+            noise = 0.9 * noise + random.nextGaussian() * 0.12;
+
+            if (second < resumeAt) continue;
+            if (random.nextDouble() < rebootChance) {
+                // The device restarts, kWh is lost and nothing is logged until it is back
+                kwh = 0;
+                resumeAt = second + intervalSeconds + random.nextInt(MAX_REBOOT_GAP_SECONDS);
+                continue;
+            }
+
+            double temperature = FanElectrics.round(climate.baseline(second) + dayOffset + noise, 100);
+            int fanSpeed = AutoModeRules.effectiveSpeed(control.isAutoMode(), temperature, control.fanSpeed);
+            double current = FanElectrics.current(fanSpeed, random);
+            double watt = FanElectrics.watt(current);
+            kwh += FanElectrics.kwhFor(watt, intervalSeconds);
+
+            sink.accept(new LogEntry(second, LogTime.formatDatetime(second * 1000, DEVICE_ZONE),
+                temperature, (long) fanSpeed, FanElectrics.VOLTAGE, current, watt, FanElectrics.round(kwh, 10000)));
+        }
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    // SplitMix64 finalizer, so nearby seeds give unrelated streams
+    static long mix(long seed, long salt) {
+        long z = seed + 0x9E3779B97F4A7C15L * (salt + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
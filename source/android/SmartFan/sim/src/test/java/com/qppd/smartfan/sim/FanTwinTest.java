@@ -0,0 +1,77 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.CurrentReading;
+import com.qppd.smartfan.core.data.DataObserver;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FanTwinTest {
+    private final InMemoryDataSource dataSource = new InMemoryDataSource();
+    private final FleetStats stats = new FleetStats();
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void controlWrite_changesTheSpeedAndIsPublished() throws Exception {
+        FanTwin twin = new FanTwin("fan-1", dataSource,
+            new FanTwin.Settings().withPublishOnControlChange(true), stats, 5);
+        long now = System.currentTimeMillis();
+        twin.start(now);
+        awaitControlUpdates(1);
+        // Not yet due to publish
+        twin.step(now);
+
+        BlockingQueue<CurrentReading> published = new LinkedBlockingQueue<>();
+        dataSource.observeCurrent("fan-1", new DataObserver<CurrentReading>() {
+            @Override
+            public void onChanged(CurrentReading value) {
+                if (value != null) published.add(value);
+            }
+
+            @Override
+            public void onError(Exception error) {
+            }
+        });
+
+        dataSource.updateControl("fan-1", manual(100), null);
+        CurrentReading reading = published.poll(5, TimeUnit.SECONDS);
+        assertNotNull(reading);
+        assertEquals(100, twin.getFanSpeed());
+        assertEquals(Integer.valueOf(100), reading.fanSpeed);
+        double fullSpeedWatt = reading.watt;
+
+        dataSource.updateControl("fan-1", manual(0), null);
+        reading = published.poll(5, TimeUnit.SECONDS);
+        assertNotNull(reading);
+        assertEquals(0, twin.getFanSpeed());
+        assertTrue(reading.watt < fullSpeedWatt);
+
+        twin.stop();
+        dataSource.updateControl("fan-1", manual(60), null);
+        assertNull(published.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, twin.getFanSpeed());
+        assertEquals(0, stats.getControlErrors());
+    }
+
+    private static ControlState manual(int speed) {
+        return new ControlState(ControlState.MODE_MANUAL, speed, null, true);
+    }
+
+    private void awaitControlUpdates(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stats.getControlUpdates() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.data.DataCallback;
+import com.qppd.smartfan.core.data.DataObserver;
+import com.qppd.smartfan.core.data.Registration;
+import com.qppd.smartfan.core.history.LogEntry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InMemoryDataSourceTest {
+    private static final long START = 1709596800000L;
+
+    private final InMemoryDataSource dataSource = new InMemoryDataSource(2, 3, 1);
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void observeControl_seesEachUpdateInOrder() throws Exception {
+        BlockingQueue<Object> seen = new LinkedBlockingQueue<>();
+        Registration registration = dataSource.observeControl("fan-1", observer(seen));
+        assertEquals("none", seen.poll(5, TimeUnit.SECONDS));
+
+        for (int speed = 10; speed <= 100; speed += 10) {
+            dataSource.updateControl("fan-1", manual(speed), null);
+        }
+        for (int speed = 10; speed <= 100; speed += 10) {
+            ControlState state = (ControlState) seen.poll(5, TimeUnit.SECONDS);
+            assertEquals(Integer.valueOf(speed), state.fanSpeed);
+            assertEquals(ControlState.MODE_MANUAL, state.mode);
+        }
+
+        // Only the given fields change
+        dataSource.updateControl("fan-1", new ControlState(ControlState.MODE_AUTO, null, null, false), null);
+        ControlState state = (ControlState) seen.poll(5, TimeUnit.SECONDS);
+        assertTrue(state.isAutoMode());
+        assertEquals(Integer.valueOf(100), state.fanSpeed);
+
+        registration.remove();
+        dataSource.updateControl("fan-1", manual(30), null);
+        assertNull(seen.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void observeControl_startsWithTheCurrentValue() throws Exception {
+        BlockingQueue<Object> done = new LinkedBlockingQueue<>();
+        dataSource.updateControl("fan-1", manual(60), callback(done));
+        assertEquals("done", done.poll(5, TimeUnit.SECONDS));
+
+        BlockingQueue<Object> seen = new LinkedBlockingQueue<>();
+        dataSource.observeControl("fan-1", observer(seen));
+        assertEquals(Integer.valueOf(60), ((ControlState) seen.poll(5, TimeUnit.SECONDS)).fanSpeed);
+    }
+
+    @Test
+    public void fetchLogs_returnsTheRangeOldestFirst() throws Exception {
+        int loaded = dataSource.loadHistory("fan-1", new TelemetryGenerator(3).withRebootsPerDay(0),
+            START, START + 60 * 60 * 1000L);
+        assertEquals(60, loaded);
+
+        BlockingQueue<List<LogEntry>> fetched = new LinkedBlockingQueue<>();
+        dataSource.fetchLogs("fan-1", START + 10 * 60 * 1000L, START + 20 * 60 * 1000L,
+            new DataCallback<List<LogEntry>>() {
+                @Override
+                public void onSuccess(List<LogEntry> value) {
+                    fetched.add(value);
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    fetched.add(new ArrayList<>());
+                }
+            });
+        List<LogEntry> rows = fetched.poll(5, TimeUnit.SECONDS);
+        assertEquals(10, rows.size());
+        assertEquals(START / 1000 + 10 * 60, (long) rows.get(0).timestamp);
+        assertEquals(START / 1000 + 19 * 60, (long) rows.get(9).timestamp);
+    }
+
+    private static ControlState manual(int speed) {
+        return new ControlState(ControlState.MODE_MANUAL, speed, null, true);
+    }
+
+    private static DataObserver<ControlState> observer(BlockingQueue<Object> seen) {
+        return new DataObserver<ControlState>() {
+            @Override
+            public void onChanged(ControlState value) {
+                seen.add(value != null ? value : "none");
+            }
+
+            @Override
+            public void onError(Exception error) {
+                seen.add(error);
+            }
+        };
+    }
+
+    private static DataCallback<Void> callback(BlockingQueue<Object> done) {
+        return new DataCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                done.add("done");
+            }
+
+            @Override
+            public void onError(Exception error) {
+                done.add(error);
+            }
+        };
+    }
+}
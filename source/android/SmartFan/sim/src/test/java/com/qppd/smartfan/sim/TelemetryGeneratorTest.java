@@ -0,0 +1,74 @@
+package com.qppd.smartfan.sim;
+
+import com.qppd.smartfan.core.data.ControlState;
+import com.qppd.smartfan.core.history.LogEntry;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TelemetryGeneratorTest {
+    // 2024-03-05 00:00:00 UTC
+    private static final long START = 1709596800000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void generate_sameSeedGivesSameRows() {
+        List<LogEntry> first = new TelemetryGenerator(42).generate(START, START + DAY);
+        List<LogEntry> second = new TelemetryGenerator(42).generate(START, START + DAY);
+        assertFalse(first.isEmpty());
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertSameRow(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void generate_otherSeedOrDeviceGivesOtherRows() {
+        List<LogEntry> base = new TelemetryGenerator(42).generate(START, START + DAY);
+        List<LogEntry> otherSeed = new TelemetryGenerator(43).generate(START, START + DAY);
+        List<LogEntry> otherDevice = new TelemetryGenerator(42).forDevice("fan-2").generate(START, START + DAY);
+        assertFalse(sameTemperatures(base, otherSeed));
+        assertFalse(sameTemperatures(base, otherDevice));
+    }
+
+    @Test
+    public void generate_keepsRangeAndInterval() {
+        List<LogEntry> rows = new TelemetryGenerator(7).withRebootsPerDay(0).withInterval(30)
+            .generate(START + 1, START + 60 * 60 * 1000L);
+        assertEquals(119, rows.size());
+        assertEquals(START / 1000 + 30, (long) rows.get(0).timestamp);
+        for (int i = 1; i < rows.size(); i++) {
+            assertEquals(30, rows.get(i).timestamp - rows.get(i - 1).timestamp);
+            assertTrue(rows.get(i).kwh >= rows.get(i - 1).kwh);
+        }
+    }
+
+    @Test
+    public void generate_followsManualSpeed() {
+        ControlState manual = new ControlState(ControlState.MODE_MANUAL, 80, null, true);
+        List<LogEntry> rows = new TelemetryGenerator(7).withControl(manual).generate(START, START + DAY);
+        for (LogEntry row : rows) {
+            assertEquals(80L, (long) row.fanSpeed);
+        }
+    }
+
+    private static void assertSameRow(LogEntry expected, LogEntry actual) {
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.datetime, actual.datetime);
+        assertEquals(expected.temperature, actual.temperature);
+        assertEquals(expected.fanSpeed, actual.fanSpeed);
+        assertEquals(expected.current, actual.current);
+        assertEquals(expected.watt, actual.watt);
+        assertEquals(expected.kwh, actual.kwh);
+    }
+
+    private static boolean sameTemperatures(List<LogEntry> a, List<LogEntry> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).temperature.equals(b.get(i).temperature)) return false;
+        }
+        return true;
+    }
+}
@@ -1,5 +1,6 @@
 #include "FirebaseConfig.h"
 #include "ESPCommunication.h"
+#include "LocalControl.h"
 #include "addons/TokenHelper.h"
 #include "addons/RTDBHelper.h"
 
@@ -12,6 +13,7 @@ FirebaseManager::FirebaseManager() {
     controlParentPath = "smartfan/devices";
     deviceId = "SmartFan_ESP8266_001"; // Default device ID
     espComm = nullptr;
+    localControl = nullptr;
     lastTokenCheck = 0;
     controlStreamActive = false;
     lastMode = "";
@@ -154,6 +156,10 @@ void FirebaseManager::setESPCommunication(ESPCommunication* comm) {
     espComm = comm;
 }
 
+void FirebaseManager::setLocalControl(LocalControl* local) {
+    localControl = local;
+}
+
 void FirebaseManager::initializeStreams() {
     Serial.println("Initializing Firebase streams...");
     
@@ -258,6 +264,20 @@ void FirebaseManager::controlStreamCallback(MultiPathStream stream) {
     Serial.println("Path: " + stream.dataPath);
     Serial.println("Value: " + stream.value);
     
+    // A change older than one already applied, e.g. a phone's Firebase write arriving after
+    // its own newer LAN command, must not undo it
+    LocalControl* local = globalFirebaseManager->localControl;
+    if (local) {
+        uint64_t updatedAt = stream.get("/updatedAt") ? LocalControl::parseU64(stream.value) : 0;
+        if (!local->acceptChange(updatedAt)) {
+            Serial.println("⏭️ Ignoring older control change");
+            return;
+        }
+        // Changes made over the LAN did not go through here
+        globalFirebaseManager->lastMode = local->getMode();
+        globalFirebaseManager->lastFanSpeed = local->getFanSpeed();
+    }
+    
     // Handle mode changes (manual/auto)
     if (stream.get("/mode")) {
         String newMode = stream.value;
@@ -271,6 +291,7 @@ void FirebaseManager::controlStreamCallback(MultiPathStream stream) {
             if (globalFirebaseManager->espComm) {
                 globalFirebaseManager->espComm->setMode(newMode);
                 Serial.println("📡 Sent mode change to ESP32: " + newMode);
+                if (local) local->noteMode(newMode);
             }
         }
     }
@@ -287,6 +308,7 @@ void FirebaseManager::controlStreamCallback(MultiPathStream stream) {
             if (globalFirebaseManager->espComm) {
                 globalFirebaseManager->espComm->setFanSpeed(newFanSpeed);
                 Serial.println("📡 Sent fan speed change to ESP32: " + String(newFanSpeed));
+                if (local) local->noteFanSpeed(newFanSpeed);
             }
         }
     }
@@ -300,6 +322,7 @@ void FirebaseManager::controlStreamCallback(MultiPathStream stream) {
         if (globalFirebaseManager->espComm) {
             globalFirebaseManager->espComm->setTargetTemperature(targetTemp);
             Serial.println("📡 Sent target temperature to ESP32: " + String(targetTemp, 1) + "°C");
+            if (local) local->noteTargetTemperature(targetTemp);
         }
     }
     
@@ -313,6 +336,7 @@ void FirebaseManager::controlStreamCallback(MultiPathStream stream) {
         if (globalFirebaseManager->espComm) {
             globalFirebaseManager->espComm->setMode(mode);
             Serial.println("📡 Sent manual control state to ESP32: " + mode);
+            if (local) local->noteMode(mode);
         }
     }
 }
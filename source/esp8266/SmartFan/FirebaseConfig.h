@@ -10,6 +10,7 @@
 
 // Forward declaration for communication interface
 class ESPCommunication;
+class LocalControl;
 
 class FirebaseManager {
 public:
@@ -27,6 +28,7 @@ public:
     void initializeStreams();
     void handleStreams();
     void setESPCommunication(ESPCommunication* comm);
+    void setLocalControl(LocalControl* local);
     
     // Manual check for tokens (non-realtime)
     void checkTokensUpdate();
@@ -39,6 +41,7 @@ private:
     FirebaseAuth auth;
     FirebaseConfig config;
     ESPCommunication* espComm;  // Reference to ESP communication
+    LocalControl* localControl; // LAN control path, reconciled with the control stream
     
     // Device token management
     String deviceTokens[MAX_TOKENS];
@@ -0,0 +1,223 @@
+#include "LocalControl.h"
+#include "ESPCommunication.h"
+#include "NTPConfig.h"
+
+LocalControl::LocalControl() : server(LOCAL_CONTROL_PORT) {
+    espComm = nullptr;
+    started = false;
+    appliedUpdatedAt = 0;
+    mode = "auto";      // The ESP32 starts in auto mode
+    fanSpeed = -1;      // Unknown until set
+    targetTemperature = NAN;
+    stateChanged = false;
+}
+
+void LocalControl::begin(const String& id, ESPCommunication* comm) {
+    deviceId = id;
+    espComm = comm;
+    discovery.begin(LOCAL_DISCOVERY_PORT);
+    server.begin();
+    server.setNoDelay(true);
+    started = true;
+    Serial.println(getCurrentLogPrefix() + "📶 Local control on " + WiFi.localIP().toString()
+        + " (discovery UDP " + String(LOCAL_DISCOVERY_PORT) + ", control TCP " + String(LOCAL_CONTROL_PORT) + ")");
+}
+
+void LocalControl::handle() {
+    if (!started) return;
+    handleDiscovery();
+    acceptClients();
+    readClients();
+    if (stateChanged) {
+        stateChanged = false;
+        broadcast(stateLine());
+    }
+}
+
+bool LocalControl::acceptChange(uint64_t updatedAt) {
+    // Unstamped writers (older apps, schedules) always win; ties are the same change
+    // arriving by both paths
+    if (updatedAt != 0 && updatedAt < appliedUpdatedAt) {
+        return false;
+    }
+    if (updatedAt != 0) {
+        appliedUpdatedAt = updatedAt;
+    }
+    return true;
+}
+
+void LocalControl::noteMode(const String& newMode) {
+    mode = newMode;
+    stateChanged = true;
+}
+
+void LocalControl::noteFanSpeed(int newFanSpeed) {
+    fanSpeed = newFanSpeed;
+    stateChanged = true;
+}
+
+void LocalControl::noteTargetTemperature(float newTargetTemperature) {
+    targetTemperature = newTargetTemperature;
+    stateChanged = true;
+}
+
+void LocalControl::publishReading(float temperature, float humidity, int speed, float voltage, float current, float watt, float kwh) {
+    if (!started || clientCount() == 0) return;
+    String line = "READING";
+    line += " temperature=" + String(temperature, 2);
+    line += " humidity=" + String(humidity, 2);
+    line += " fanSpeed=" + String(speed);
+    line += " mode=" + mode;
+    line += " voltage=" + String(voltage, 2);
+    line += " current=" + String(current, 3);
+    line += " watt=" + String(watt, 2);
+    line += " kwh=" + String(kwh, 4);
+    broadcast(line);
+}
+
+int LocalControl::clientCount() {
+    int count = 0;
+    for (int i = 0; i < LOCAL_MAX_CLIENTS; i++) {
+        if (clients[i] && clients[i].connected()) count++;
+    }
+    return count;
+}
+
+void LocalControl::handleDiscovery() {
+    int size = discovery.parsePacket();
+    if (size <= 0) return;
+    char request[32];
+    int length = discovery.read(request, sizeof(request) - 1);
+    if (length <= 0) return;
+    request[length] = '\0';
+    String text = String(request);
+    text.trim();
+    if (text != "SMARTFAN_DISCOVER") return;
+
+    String answer = "SMARTFAN " + deviceId + " " + String(LOCAL_CONTROL_PORT);
+    discovery.beginPacket(discovery.remoteIP(), discovery.remotePort());
+    discovery.write(answer.c_str(), answer.length());
+    discovery.endPacket();
+}
+
+void LocalControl::acceptClients() {
+    if (!server.hasClient()) return;
+    WiFiClient incoming = server.available();
+    for (int i = 0; i < LOCAL_MAX_CLIENTS; i++) {
+        if (!clients[i] || !clients[i].connected()) {
+            clients[i] = incoming;
+            clients[i].setNoDelay(true);
+            lines[i] = "";
+            lines[i].reserve(64);
+            Serial.println(getCurrentLogPrefix() + "📱 Phone connected from " + clients[i].remoteIP().toString());
+            sendLine(i, stateLine());
+            return;
+        }
+    }
+    // Every slot is taken
+    incoming.stop();
+}
+
+void LocalControl::readClients() {
+    for (int i = 0; i < LOCAL_MAX_CLIENTS; i++) {
+        if (!clients[i] || !clients[i].connected()) continue;
+        while (clients[i].available()) {
+            char c = clients[i].read();
+            if (c == '\n') {
+                handleLine(i, lines[i]);
+                lines[i] = "";
+            } else if (c != '\r') {
+                if (lines[i].length() >= LOCAL_MAX_LINE) {
+                    // Not our protocol; drop the phone rather than the heap
+                    clients[i].stop();
+                    break;
+                }
+                lines[i] += c;
+            }
+        }
+    }
+}
+
+void LocalControl::handleLine(int client, const String& line) {
+    if (!line.startsWith("SET ")) return;
+    int stampEnd = line.indexOf(' ', 4);
+    String stamp = stampEnd > 0 ? line.substring(4, stampEnd) : line.substring(4);
+    uint64_t updatedAt = parseU64(stamp);
+
+    if (!acceptChange(updatedAt)) {
+        Serial.println(getCurrentLogPrefix() + "⏭️ Ignoring older local change " + stamp);
+        sendLine(client, "STALE " + stamp);
+        return;
+    }
+
+    // Same commands, in the same order, as the Firebase control stream callback
+    int position = stampEnd;
+    while (position > 0 && position < (int) line.length()) {
+        int end = line.indexOf(' ', position + 1);
+        String field = end > 0 ? line.substring(position + 1, end) : line.substring(position + 1);
+        position = end;
+        int equals = field.indexOf('=');
+        if (equals <= 0) continue;
+        String name = field.substring(0, equals);
+        String value = field.substring(equals + 1);
+
+        if (name == "mode") {
+            espComm->setMode(value);
+            noteMode(value);
+        } else if (name == "fanSpeed") {
+            espComm->setFanSpeed(value.toInt());
+            noteFanSpeed(value.toInt());
+        } else if (name == "targetTemperature") {
+            espComm->setTargetTemperature(value.toFloat());
+            noteTargetTemperature(value.toFloat());
+        } else if (name == "manualControl") {
+            String manualMode = value == "true" ? "manual" : "auto";
+            espComm->setMode(manualMode);
+            noteMode(manualMode);
+        }
+    }
+    Serial.println(getCurrentLogPrefix() + "📱 Local change applied: " + line);
+    sendLine(client, "ACK " + stamp);
+}
+
+void LocalControl::sendLine(int client, const String& line) {
+    if (!clients[client] || !clients[client].connected()) return;
+    clients[client].print(line);
+    clients[client].print('\n');
+}
+
+void LocalControl::broadcast(const String& line) {
+    for (int i = 0; i < LOCAL_MAX_CLIENTS; i++) {
+        sendLine(i, line);
+    }
+}
+
+String LocalControl::stateLine() {
+    String line = "STATE " + u64ToString(appliedUpdatedAt) + " mode=" + mode;
+    line += " manualControl=" + String(mode == "manual" ? "true" : "false");
+    if (fanSpeed >= 0) line += " fanSpeed=" + String(fanSpeed);
+    if (!isnan(targetTemperature)) line += " targetTemperature=" + String(targetTemperature, 1);
+    return line;
+}
+
+uint64_t LocalControl::parseU64(const String& text) {
+    uint64_t value = 0;
+    for (unsigned int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (c < '0' || c > '9') break;
+        value = value * 10 + (c - '0');
+    }
+    return value;
+}
+
+String LocalControl::u64ToString(uint64_t value) {
+    // String() has no 64-bit overload on older cores
+    char buffer[21];
+    int position = sizeof(buffer) - 1;
+    buffer[position] = '\0';
+    do {
+        buffer[--position] = '0' + (value % 10);
+        value /= 10;
+    } while (value > 0);
+    return String(buffer + position);
+}
@@ -0,0 +1,68 @@
+#ifndef LOCAL_CONTROL_H
+#define LOCAL_CONTROL_H
+
+#include <Arduino.h>
+#include <ESP8266WiFi.h>
+#include <WiFiUdp.h>
+
+// Direct control from phones on the same network, so a slider change does not have to
+// travel through Firebase. The protocol is documented in LanProtocol.java of the Android
+// project; the Firebase control stream keeps working next to it.
+#define LOCAL_DISCOVERY_PORT 4210
+#define LOCAL_CONTROL_PORT 4211
+#define LOCAL_MAX_CLIENTS 2
+#define LOCAL_MAX_LINE 256
+
+class ESPCommunication;
+
+class LocalControl {
+public:
+    LocalControl();
+    void begin(const String& deviceId, ESPCommunication* comm);
+    void handle();  // Call from loop()
+
+    // Last-writer-wins check shared by both paths: true if a change stamped updatedAt
+    // (Unix ms, 0 if the writer did not stamp it) is not older than the last one applied,
+    // in which case it becomes the last one applied.
+    bool acceptChange(uint64_t updatedAt);
+
+    // Record what was sent to the ESP32 so phones learn about it
+    void noteMode(const String& mode);
+    void noteFanSpeed(int fanSpeed);
+    void noteTargetTemperature(float targetTemperature);
+
+    void publishReading(float temperature, float humidity, int fanSpeed, float voltage, float current, float watt, float kwh);
+
+    const String& getMode() const { return mode; }
+    int getFanSpeed() const { return fanSpeed; }
+    int clientCount();
+
+    static uint64_t parseU64(const String& text);
+
+private:
+    WiFiUDP discovery;
+    WiFiServer server;
+    WiFiClient clients[LOCAL_MAX_CLIENTS];
+    String lines[LOCAL_MAX_CLIENTS];
+    ESPCommunication* espComm;
+    String deviceId;
+    bool started;
+
+    // Control state as last sent to the ESP32, from either path
+    uint64_t appliedUpdatedAt;
+    String mode;
+    int fanSpeed;
+    float targetTemperature;
+    bool stateChanged;
+
+    void handleDiscovery();
+    void acceptClients();
+    void readClients();
+    void handleLine(int client, const String& line);
+    void sendLine(int client, const String& line);
+    void broadcast(const String& line);
+    String stateLine();
+    static String u64ToString(uint64_t value);
+};
+
+#endif // LOCAL_CONTROL_H
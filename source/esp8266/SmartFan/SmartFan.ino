@@ -6,9 +6,11 @@
 #include "WiFiManager.h"
 #include "ESPCommunication.h"
 #include "NTPConfig.h"
+#include "LocalControl.h"
 
 FirebaseManager firebaseManager;
 ESPCommunication espComm(ESP_SERIAL_RX, ESP_SERIAL_TX);
+LocalControl localControl;
 
 // Smart Fan data variables - now populated from ESP32
 struct SmartFanData {
@@ -120,6 +122,10 @@ void setup() {
     // Set ESP communication reference in Firebase manager for real-time control
     firebaseManager.setESPCommunication(&espComm);
     
+    // Direct control from phones on the same WiFi, reconciled with the control stream
+    localControl.begin(fanData.deviceId, &espComm);
+    firebaseManager.setLocalControl(&localControl);
+    
     Serial.println(getCurrentLogPrefix() + "Smart Fan ESP8266 Initialized Successfully!");
     Serial.printf("Final Free Heap: %d bytes\n", ESP.getFreeHeap());
     
@@ -145,6 +151,9 @@ void loop() {
         firebaseManager.handleStreams();
     }
     
+    // Serve phones on the local network
+    localControl.handle();
+    
     // Update local data with ESP32 sensor readings
     updateDataFromESP32();
     
@@ -195,6 +204,7 @@ void updateDataFromESP32() {
         fanData.voltage = sensorData.voltage;
         fanData.current = sensorData.current;
         fanData.fanSpeed = sensorData.fanSpeed;
+        fanData.mode = localControl.getMode();  // As last commanded, by either path
         fanData.esp32Connected = true;
         
         // Calculate kWh
@@ -205,6 +215,14 @@ void updateDataFromESP32() {
             fanData.kwh += (watt * hours) / 1000.0;
         }
         lastKwhUpdate = millis();
+        
+        // Phones on the LAN get every reading instead of one a minute from Firebase
+        static unsigned long lastPublishedUpdate = 0;
+        if (sensorData.lastUpdate != lastPublishedUpdate) {
+            lastPublishedUpdate = sensorData.lastUpdate;
+            localControl.publishReading(fanData.temperature, fanData.humidity, fanData.fanSpeed,
+                fanData.voltage, fanData.current, fanData.voltage * fanData.current, fanData.kwh);
+        }
     } else {
         fanData.esp32Connected = false;
     }